@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.backend;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring. Each node is placed at several points of the ring (the virtual nodes), computed from its
+ * name. A key belongs to the node owning the first point following the hash of the key. Adding a node only moves
+ * the keys placed between the new points and their predecessors, about {@code 1 / n} of the keys.
+ *
+ * @param <T> the type of node
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+class HashRing<T> {
+
+  private final TreeMap<Long, T> ring = new TreeMap<>();
+
+  /**
+   * Creates the ring.
+   *
+   * @param nodes        the nodes, indexed by their names. The placement of a node only depends on its name.
+   * @param virtualNodes the number of points of each node
+   */
+  HashRing(Map<String, T> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("The ring must contain at least one node");
+    }
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("The number of virtual nodes must be strictly positive");
+    }
+    for (Map.Entry<String, T> node : nodes.entrySet()) {
+      for (int i = 0; i < virtualNodes; i++) {
+        ring.put(hash(node.getKey() + "#" + i), node.getValue());
+      }
+    }
+  }
+
+  /**
+   * @param key the key
+   * @return the node owning the key
+   */
+  T get(String key) {
+    Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  /**
+   * Hashes the given value using the first 8 bytes of its MD5 digest, which are evenly distributed.
+   */
+  private static long hash(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+      long hash = 0;
+      for (int i = 0; i < 8; i++) {
+        hash = (hash << 8) | (digest[i] & 0xFF);
+      }
+      return hash;
+    } catch (NoSuchAlgorithmException e) {
+      // MD5 is supported by all the JVMs
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.backend;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes the Redis keys used by the {@code keys} layout of the {@link RedisBackend}. With {@code records} as base
+ * key:
+ * <ul>
+ * <li>{@code records:record:<id>} contains the encoded record,</li>
+ * <li>{@code records:ids} is the set of the registration ids,</li>
+ * <li>{@code records:index:<field>:<value>} is the set of the registration ids of the records having the given value
+ * for the given field. The name, type and status are indexed, as well as the configured metadata entries
+ * ({@code records:index:metadata:<entry>:<value>}),</li>
+ * <li>{@code records:indexes:<id>} is the set of the index keys containing the record, so the record can be
+ * removed from them.</li>
+ * </ul>
+ * The indexed values are case-folded, as the {@link io.vertx.ext.discovery.RecordFilter} ignores the case. The index
+ * keys are not escaped, so two values may share an index key. Index lookups may therefore return more records than
+ * the filter accepts: the filter must still be applied to the returned records.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+class KeyLayout {
+
+  private final String key;
+  private final Set<String> indexedMetadata;
+
+  KeyLayout(String key, JsonArray indexedMetadata) {
+    this.key = key;
+    this.indexedMetadata = new HashSet<>();
+    for (Object entry : indexedMetadata) {
+      this.indexedMetadata.add((String) entry);
+    }
+  }
+
+  String recordKey(String uuid) {
+    return key + ":record:" + uuid;
+  }
+
+  String indexesKey(String uuid) {
+    return key + ":indexes:" + uuid;
+  }
+
+  String idsKey() {
+    return key + ":ids";
+  }
+
+  /**
+   * @return the keys of the indexes the given record belongs to
+   */
+  List<String> indexKeys(Record record) {
+    List<String> keys = new ArrayList<>();
+    if (record.getName() != null) {
+      keys.add(indexKey("name", record.getName()));
+    }
+    if (record.getType() != null) {
+      keys.add(indexKey("type", record.getType()));
+    }
+    if (record.getStatus() != null) {
+      keys.add(indexKey("status", record.getStatus().name()));
+    }
+    JsonObject metadata = record.getMetadata();
+    if (metadata != null) {
+      for (String entry : indexedMetadata) {
+        Object value = metadata.getValue(entry);
+        if (isIndexable(value)) {
+          keys.add(indexKey("metadata:" + entry, value));
+        }
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Computes the keys of the indexes to intersect to find the records matching the given filter.
+   *
+   * @param filter              the filter
+   * @param includeOutOfService whether or not the records not in the {@code UP} status are accepted
+   * @return the index keys, empty if the filter cannot be evaluated using the indexes
+   */
+  List<String> indexKeys(JsonObject filter, boolean includeOutOfService) {
+    List<String> keys = new ArrayList<>();
+    for (String field : filter.fieldNames()) {
+      Object value = filter.getValue(field);
+      if ("*".equals(value) || !isIndexable(value)) {
+        continue;
+      }
+      switch (field) {
+        case "name":
+        case "type":
+        case "status":
+          keys.add(indexKey(field, value));
+          break;
+        case "registration":
+          break;
+        default:
+          if (indexedMetadata.contains(field)) {
+            keys.add(indexKey("metadata:" + field, value));
+          }
+      }
+    }
+    if (!includeOutOfService) {
+      keys.add(indexKey("status", Status.UP.name()));
+    }
+    return keys;
+  }
+
+  private String indexKey(String field, Object value) {
+    return key + ":index:" + field + ":" + fold(value.toString());
+  }
+
+  private static boolean isIndexable(Object value) {
+    return value instanceof String || value instanceof Number || value instanceof Boolean;
+  }
+
+  /**
+   * Folds the case of the given value, character by character, as {@link String#equalsIgnoreCase(String)} does.
+   */
+  private static String fold(String value) {
+    StringBuilder builder = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      builder.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.backend;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A local cache of the records stored in Redis, used by the {@link RedisBackend}. It is loaded from Redis, and then
+ * kept up to date using the registration ids of the modified records, published on a Redis channel by the backends
+ * on each modification. Each notified record is retrieved again (or removed from the cache if it does not exist
+ * anymore).
+ * <p>
+ * As Redis pub/sub does not guarantee the delivery of the messages (for instance when the connection is lost), the
+ * cache is reloaded when the subscription is (re-)established, and can be reloaded periodically.
+ * <p>
+ * The messages carry the identifier of the backend that made the modifications. The modifications made by the backend
+ * owning the cache are applied directly (see {@link #onLocalModification(String, Record)}), so their notifications are
+ * ignored.
+ * <p>
+ * The cached records are frozen, the returned records are copies.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+class RecordCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RecordCache.class);
+
+  private final Vertx vertx;
+  private final String origin;
+  private final Consumer<Handler<AsyncResult<List<Record>>>> loader;
+  private final BiConsumer<String, Handler<AsyncResult<Record>>> fetcher;
+  private final MessageConsumer<JsonObject> consumer;
+  private final RedisClient subscriber;
+  private final long timer;
+
+  /**
+   * The cached records (registration -> record), {@code null} until a load has completed.
+   */
+  private volatile Map<String, Record> records;
+
+  /**
+   * The registration ids notified while a load is in progress, {@code null} when no load is in progress.
+   */
+  private Set<String> pending;
+
+  /**
+   * Creates the cache, subscribes to the channel and starts the initial load.
+   *
+   * @param vertx   the vert.x instance
+   * @param options the Redis options, a dedicated connection is used for the subscription
+   * @param channel the channel on which the registration ids of the modified records are published
+   * @param origin  the identifier of the backend owning the cache, its notifications are ignored
+   * @param period  the reload period in ms, 0 to disable the periodic reload
+   * @param loader  retrieves all the records from Redis
+   * @param fetcher retrieves a record from Redis, {@code null} if it does not exist
+   */
+  RecordCache(Vertx vertx, RedisOptions options, String channel, String origin, long period,
+              Consumer<Handler<AsyncResult<List<Record>>>> loader,
+              BiConsumer<String, Handler<AsyncResult<Record>>> fetcher) {
+    this.vertx = vertx;
+    this.origin = origin;
+    this.loader = loader;
+    this.fetcher = fetcher;
+    consumer = vertx.eventBus().<JsonObject>consumer("io.vertx.redis." + channel, msg -> {
+      JsonObject value = msg.body().getJsonObject("value");
+      if (value != null && value.getValue("message") instanceof String) {
+        JsonObject message = new JsonObject(value.getString("message"));
+        if (!origin.equals(message.getString("origin"))) {
+          for (Object uuid : message.getJsonArray("ids")) {
+            invalidate((String) uuid);
+          }
+        }
+      }
+    });
+    subscriber = RedisClient.create(vertx, options);
+    subscriber.subscribe(channel, ar -> {
+      if (ar.succeeded()) {
+        load();
+      } else {
+        LOGGER.warn("Cannot subscribe to the Redis channel " + channel + ", the records are not cached", ar.cause());
+      }
+    });
+    timer = period > 0 ? vertx.setPeriodic(period, l -> load()) : -1;
+  }
+
+  /**
+   * @param origin the identifier of the backend that made the modifications
+   * @param uuids  the registration ids of the modified records
+   * @return the published message
+   */
+  static String message(String origin, Collection<String> uuids) {
+    return new JsonObject().put("origin", origin).put("ids", new JsonArray(new ArrayList<>(uuids))).encode();
+  }
+
+  /**
+   * Stops the notifications and the periodic reload, and closes the subscription connection.
+   */
+  void close() {
+    consumer.unregister();
+    if (timer >= 0) {
+      vertx.cancelTimer(timer);
+    }
+    subscriber.close(ar -> {
+      if (ar.failed()) {
+        LOGGER.warn("Cannot close the Redis subscription connection", ar.cause());
+      }
+    });
+  }
+
+  private synchronized void load() {
+    if (pending != null) {
+      // Already loading
+      return;
+    }
+    pending = new HashSet<>();
+    loader.accept(ar -> {
+      Set<String> notified;
+      synchronized (this) {
+        notified = pending;
+        pending = null;
+        if (ar.failed()) {
+          LOGGER.warn("Cannot load the records in the Redis cache", ar.cause());
+          return;
+        }
+        Map<String, Record> snapshot = new ConcurrentHashMap<>();
+        for (Record record : ar.result()) {
+          snapshot.put(record.getRegistration(), record.freeze());
+        }
+        records = snapshot;
+      }
+      // The records modified during the load may be outdated
+      notified.forEach(this::invalidate);
+    });
+  }
+
+  private void invalidate(String uuid) {
+    synchronized (this) {
+      if (pending != null) {
+        pending.add(uuid);
+      }
+      if (records == null) {
+        return;
+      }
+    }
+    fetcher.accept(uuid, ar -> {
+      Map<String, Record> current = records;
+      if (current == null) {
+        return;
+      }
+      if (ar.failed()) {
+        // The entry may be outdated, stop serving from the cache until the next load
+        LOGGER.warn("Cannot refresh the record " + uuid + " in the Redis cache", ar.cause());
+        records = null;
+        load();
+      } else if (ar.result() == null) {
+        current.remove(uuid);
+      } else {
+        current.put(uuid, ar.result().freeze());
+      }
+    });
+  }
+
+  /**
+   * Applies a modification made by this backend, so it is visible without waiting for the notification.
+   *
+   * @param uuid   the registration id
+   * @param record the new version of the record, {@code null} if it has been removed
+   */
+  void onLocalModification(String uuid, Record record) {
+    synchronized (this) {
+      if (pending != null) {
+        // The load in progress may have read the previous version
+        pending.add(uuid);
+      }
+    }
+    Map<String, Record> current = records;
+    if (current != null) {
+      if (record == null) {
+        current.remove(uuid);
+      } else {
+        current.put(uuid, record.freeze());
+      }
+    }
+  }
+
+  /**
+   * @return whether or not the lookups can be served from the cache
+   */
+  boolean isLoaded() {
+    return records != null;
+  }
+
+  /**
+   * @param uuid the registration id
+   * @return a copy of the cached record, {@code null} if none
+   */
+  Record getRecord(String uuid) {
+    Record record = records.get(uuid);
+    return record == null ? null : new Record(record);
+  }
+
+  /**
+   * Gets the cached records accepted by the given filter.
+   *
+   * @param filter              the filter
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @return the matching records, copied so they can be modified by the caller
+   */
+  List<Record> getRecords(Function<Record, Boolean> filter, boolean includeOutOfService) {
+    return records.values().stream()
+        .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+        .filter(filter::apply)
+        .map(Record::new)
+        .collect(Collectors.toList());
+  }
+}
@@ -20,31 +20,308 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
+import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.Batches;
 import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import io.vertx.ext.discovery.spi.RecordCursor;
 import io.vertx.redis.RedisClient;
 import io.vertx.redis.RedisOptions;
+import io.vertx.redis.op.ScanOptions;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * An implementation of the discovery backend based on Redis.
+ * <p>
+ * By default, the records are stored in a single hash. The {@code keys} layout (configured using
+ * {@code layout}) stores each record in its own key, and maintains sets indexing the name, type and status of the
+ * records, as well as the metadata entries listed in {@code indexed-metadata} (see {@link KeyLayout}). Filtered
+ * lookups then intersect the index sets ({@code SINTER}) and retrieve only the selected records ({@code MGET}).
+ * <p>
+ * The registration ids of the modified records are published on a channel ({@code channel}, {@code <key>:changes} by
+ * default) unless {@code publish-changes} is {@code false}. When {@code cache} is {@code true}, the backend keeps a
+ * local copy of the records, kept up to date using these notifications (see {@link RecordCache}), and serves the
+ * lookups from it.
+ * <p>
+ * When {@code shards} (a JSON array of Redis configurations) is set, the records are spread over several Redis
+ * servers using a consistent hash ring of their registration ids (see {@link Shards}).
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class RedisBackend implements DiscoveryBackend {
 
+  /**
+   * Lua script selecting the records matching a filter on the server side, among a batch of entries returned by
+   * {@code HSCAN}, so the time spent by the Redis server on each call is bounded. It mirrors {@link RecordFilter}, but
+   * accepts non-ASCII strings (the Lua case conversion only handles ASCII), so the returned records must still be
+   * checked on the client side. It returns the next {@code HSCAN} cursor, followed by the matching records.
+   * <p>
+   * KEYS[1] is the hash key, ARGV[1] the encoded filter, ARGV[2] whether or not out of service records are accepted,
+   * ARGV[3] the {@code HSCAN} cursor, ARGV[4] the {@code COUNT} hint.
+   */
+  private static final String FILTER_SCRIPT =
+      "local filter = cjson.decode(ARGV[1])\n" +
+          "local includeOutOfService = ARGV[2] == 'true'\n" +
+          "local function matches(actual, expected)\n" +
+          "  if actual == nil or actual == cjson.null then return false end\n" +
+          "  if expected == '*' then return true end\n" +
+          "  if type(actual) == 'string' then\n" +
+          "    local e = tostring(expected)\n" +
+          "    if actual:find('[\\128-\\255]') or e:find('[\\128-\\255]') then return true end\n" +
+          "    return actual:lower() == e:lower()\n" +
+          "  end\n" +
+          "  return actual == expected\n" +
+          "end\n" +
+          "local scan = redis.call('HSCAN', KEYS[1], ARGV[3], 'COUNT', ARGV[4])\n" +
+          "local result = {scan[1]}\n" +
+          "local entries = scan[2]\n" +
+          "for i = 2, #entries, 2 do\n" +
+          "  local record = cjson.decode(entries[i])\n" +
+          "  local accepted = includeOutOfService or record['status'] == 'UP'\n" +
+          "  if accepted then\n" +
+          "    for k, v in pairs(filter) do\n" +
+          "      local actual\n" +
+          "      if k == 'name' or k == 'registration' or k == 'status' or k == 'type' then\n" +
+          "        actual = record[k]\n" +
+          "      elseif type(record['metadata']) == 'table' then\n" +
+          "        actual = record['metadata'][k]\n" +
+          "      end\n" +
+          "      if not matches(actual, v) then accepted = false break end\n" +
+          "    end\n" +
+          "  end\n" +
+          "  if accepted then result[#result + 1] = entries[i] end\n" +
+          "end\n" +
+          "return result\n";
+
+  /**
+   * Lua script removing a record and returning it, in a single atomic operation. It returns an empty array if the
+   * record does not exist.
+   * <p>
+   * KEYS[1] is the hash key, ARGV[1] the registration id.
+   */
+  private static final String REMOVE_SCRIPT =
+      "local record = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+          "if not record then return {} end\n" +
+          "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+          "return {record}\n";
+
+  /**
+   * Lua script removing several records and returning the removed ones, in a single atomic operation. Unknown ids are
+   * ignored.
+   * <p>
+   * KEYS[1] is the hash key, ARGV the registration ids.
+   */
+  private static final String REMOVE_ALL_SCRIPT =
+      "local result = {}\n" +
+          "for i = 1, #ARGV do\n" +
+          "  local record = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+          "  if record then\n" +
+          "    redis.call('HDEL', KEYS[1], ARGV[i])\n" +
+          "    result[#result + 1] = record\n" +
+          "  end\n" +
+          "end\n" +
+          "return result\n";
+
+  /**
+   * Lua script replacing a record only if it exists, so an update racing with a removal cannot register the record
+   * again. It returns the previous version of the record, or an empty array if the record does not exist.
+   * <p>
+   * KEYS[1] is the hash key, ARGV[1] the registration id, ARGV[2] the encoded record.
+   */
+  private static final String UPDATE_SCRIPT =
+      "local record = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+          "if not record then return {} end\n" +
+          "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+          "return {record}\n";
+
+  /**
+   * Lua script replacing several records, only if they exist, in a single atomic operation. It returns the
+   * registration ids of the updated records.
+   * <p>
+   * KEYS[1] is the hash key, ARGV the registration ids, each followed by the encoded record.
+   */
+  private static final String UPDATE_ALL_SCRIPT =
+      "local result = {}\n" +
+          "for i = 1, #ARGV, 2 do\n" +
+          "  if redis.call('HEXISTS', KEYS[1], ARGV[i]) == 1 then\n" +
+          "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+          "    result[#result + 1] = ARGV[i]\n" +
+          "  end\n" +
+          "end\n" +
+          "return result\n";
+
+  /**
+   * Lua script removing a record only if it has not been modified since it has been read, used to move records
+   * between shards. It returns an empty array if the record does not exist or has been modified.
+   * <p>
+   * KEYS[1] is the hash key, ARGV[1] the registration id, ARGV[2] the expected encoded record.
+   */
+  private static final String REMOVE_IF_EQUALS_SCRIPT =
+      "if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then return {} end\n" +
+          "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+          "return {1}\n";
+
+  /**
+   * The default maximum number of records sent in a single command by the bulk operations.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /**
+   * The default {@code COUNT} hint of the {@code HSCAN} commands, when the {@code scan} read mode is used.
+   */
+  public static final int DEFAULT_SCAN_COUNT = 100;
+
+  /**
+   * Lua script storing a record in the {@code keys} layout, and updating the indexes. It returns an empty array if
+   * the record must exist but does not, or must not exist but does.
+   * <p>
+   * KEYS[1] is the record key, KEYS[2] the set of the index keys of the record, KEYS[3] the set of the registration
+   * ids, the other keys are the new index keys of the record. ARGV[1] is the registration id, ARGV[2] the encoded
+   * record, ARGV[3] is {@code update} if the record must exist, {@code create} if it must not exist.
+   */
+  private static final String PUT_SCRIPT =
+      "local previous = redis.call('GET', KEYS[1])\n" +
+          "if ARGV[3] == 'update' and not previous then return {} end\n" +
+          "if ARGV[3] == 'create' and previous then return {} end\n" +
+          "for _, index in ipairs(redis.call('SMEMBERS', KEYS[2])) do\n" +
+          "  redis.call('SREM', index, ARGV[1])\n" +
+          "end\n" +
+          "redis.call('DEL', KEYS[2])\n" +
+          "redis.call('SET', KEYS[1], ARGV[2])\n" +
+          "redis.call('SADD', KEYS[3], ARGV[1])\n" +
+          "for i = 4, #KEYS do\n" +
+          "  redis.call('SADD', KEYS[i], ARGV[1])\n" +
+          "  redis.call('SADD', KEYS[2], KEYS[i])\n" +
+          "end\n" +
+          "return {1}\n";
+
+  /**
+   * Lua script removing a record in the {@code keys} layout, and updating the indexes. It returns the removed record,
+   * or an empty array if the record does not exist, or is not the expected version.
+   * <p>
+   * KEYS[1] is the record key, KEYS[2] the set of the index keys of the record, KEYS[3] the set of the registration
+   * ids. ARGV[1] is the registration id, the optional ARGV[2] the expected encoded record.
+   */
+  private static final String DELETE_SCRIPT =
+      "local record = redis.call('GET', KEYS[1])\n" +
+          "if not record or (ARGV[2] and record ~= ARGV[2]) then return {} end\n" +
+          "for _, index in ipairs(redis.call('SMEMBERS', KEYS[2])) do\n" +
+          "  redis.call('SREM', index, ARGV[1])\n" +
+          "end\n" +
+          "redis.call('DEL', KEYS[1], KEYS[2])\n" +
+          "redis.call('SREM', KEYS[3], ARGV[1])\n" +
+          "return {record}\n";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RedisBackend.class);
+
+  /**
+   * Identifies this backend in the change notifications, so its cache ignores its own modifications.
+   */
+  private final String origin = UUID.randomUUID().toString();
+
   private RedisClient redis;
   private String key;
+  private String channel;
+  private boolean publishChanges;
+  private RecordCache cache;
+  private Shards shards;
+  private KeyLayout layout;
+  private int batchSize;
+  private boolean scan;
+  private int scanCount;
 
   @Override
   public void init(Vertx vertx, JsonObject configuration) {
+    JsonArray shardConfigurations = configuration.getJsonArray("shards");
+    if (shardConfigurations != null) {
+      shards = new Shards(vertx, configuration, shardConfigurations);
+      if (configuration.getBoolean("rebalance", true)) {
+        shards.rebalance(ar -> {
+          if (ar.failed()) {
+            LOGGER.warn("Cannot move the records to the shards owning them", ar.cause());
+          } else if (ar.result() > 0) {
+            LOGGER.info(ar.result() + " records have been moved to the shards owning them");
+          }
+        });
+      }
+      return;
+    }
     key = configuration.getString("key", "records");
+    batchSize = configuration.getInteger("batch-size", DEFAULT_BATCH_SIZE);
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be strictly positive");
+    }
+    String mode = configuration.getString("read-mode", "hgetall");
+    if (!"hgetall".equals(mode) && !"scan".equals(mode)) {
+      throw new IllegalArgumentException("Unknown read mode '" + mode + "', hgetall or scan expected");
+    }
+    scan = "scan".equals(mode);
+    scanCount = configuration.getInteger("scan-count", DEFAULT_SCAN_COUNT);
+    if (scanCount < 1) {
+      throw new IllegalArgumentException("The scan count must be strictly positive");
+    }
+    String storage = configuration.getString("layout", "hash");
+    if ("keys".equals(storage)) {
+      layout = new KeyLayout(key, configuration.getJsonArray("indexed-metadata", new JsonArray()));
+    } else if (!"hash".equals(storage)) {
+      throw new IllegalArgumentException("Unknown layout '" + storage + "', hash or keys expected");
+    }
+    channel = configuration.getString("channel", key + ":changes");
+    publishChanges = configuration.getBoolean("publish-changes", true);
+    long reloadPeriod = configuration.getLong("cache-reload-period", 0L);
+    boolean cached = configuration.getBoolean("cache", false);
+    if (cached && !publishChanges && reloadPeriod <= 0) {
+      throw new IllegalArgumentException("The cache is never refreshed when the changes are not published, set "
+          + "cache-reload-period or enable publish-changes");
+    }
     redis = RedisClient.create(vertx, new RedisOptions(configuration));
+    if (cached) {
+      cache = new RecordCache(vertx, new RedisOptions(configuration), channel, origin, reloadPeriod,
+          this::readRecords, this::readRecord);
+    }
+  }
+
+  /**
+   * Closes the cache, if any, and the Redis connections.
+   */
+  @Override
+  public void close() {
+    if (shards != null) {
+      shards.close();
+      return;
+    }
+    if (cache != null) {
+      cache.close();
+    }
+    redis.close(ar -> {
+      if (ar.failed()) {
+        LOGGER.warn("Cannot close the Redis connection", ar.cause());
+      }
+    });
   }
 
   @Override
@@ -53,9 +330,31 @@ public class RedisBackend implements DiscoveryBackend {
       resultHandler.handle(Future.failedFuture("The record has already been registered"));
       return;
     }
-    String uuid = UUID.randomUUID().toString();
-    record.setRegistration(uuid);
-    redis.hset(key, uuid, record.toJson().encode(), ar -> {
+    record.setRegistration(UUID.randomUUID().toString());
+    if (shards != null) {
+      shards.owner(record.getRegistration()).insert(record, resultHandler);
+    } else {
+      insert(record, resultHandler);
+    }
+  }
+
+  /**
+   * Stores a record, whose registration id has been assigned.
+   */
+  void insert(Record record, Handler<AsyncResult<Record>> completionHandler) {
+    Handler<AsyncResult<Record>> resultHandler = stored(Collections.singletonList(record), completionHandler);
+    String uuid = record.getRegistration();
+    if (layout != null) {
+      put(record, "store", ar -> {
+        if (ar.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(record));
+        } else {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        }
+      });
+      return;
+    }
+    redis.hset(key, uuid, record.encode(), ar -> {
       if (ar.succeeded()) {
         resultHandler.handle(Future.succeededFuture(record));
       } else {
@@ -70,44 +369,660 @@ public class RedisBackend implements DiscoveryBackend {
     remove(record.getRegistration(), resultHandler);
   }
 
+  /**
+   * Removes the record using a single script, so the record is retrieved and removed atomically, in one round trip.
+   */
   @Override
   public void remove(String uuid, Handler<AsyncResult<Record>> resultHandler) {
     Objects.requireNonNull(uuid, "No registration id in the record");
+    Handler<AsyncResult<Record>> handler = ar -> {
+      if (ar.succeeded() && ar.result() == null) {
+        resultHandler.handle(Future.failedFuture("Record '" + uuid + "' not found"));
+      } else {
+        resultHandler.handle(ar);
+      }
+    };
+    if (shards != null) {
+      shards.removeIfExists(uuid, handler);
+    } else {
+      removeIfExists(uuid, handler);
+    }
+  }
 
-    redis.hget(key, uuid, ar -> {
-      if (ar.succeeded()) {
-        if (ar.result() != null) {
-          redis.hdel(key, uuid, deletion -> {
-            if (deletion.succeeded()) {
-              resultHandler.handle(Future.succeededFuture(
-                  new Record(new JsonObject(ar.result()))));
-            } else {
-              resultHandler.handle(Future.failedFuture(deletion.cause()));
+  /**
+   * Removes a record, if it exists.
+   *
+   * @param uuid              the registration id
+   * @param completionHandler called with the removed record, {@code null} if the record does not exist
+   */
+  void removeIfExists(String uuid, Handler<AsyncResult<Record>> completionHandler) {
+    Handler<AsyncResult<Record>> resultHandler = ar -> {
+      if (ar.succeeded() && ar.result() != null) {
+        onRemoved(Collections.singletonList(uuid));
+      }
+      completionHandler.handle(ar);
+    };
+    if (layout != null) {
+      delete(uuid, null, resultHandler);
+      return;
+    }
+    redis.eval(REMOVE_SCRIPT, Collections.singletonList(key), Collections.singletonList(uuid), ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      } else if (ar.result().isEmpty()) {
+        resultHandler.handle(Future.succeededFuture(null));
+      } else {
+        resultHandler.handle(Future.succeededFuture(new Record(new JsonObject(ar.result().getString(0)))));
+      }
+    });
+  }
+
+  /**
+   * Updates the record using a single script. The update fails if the record does not exist (for instance because it
+   * has been removed concurrently).
+   */
+  @Override
+  public void update(Record record, Handler<AsyncResult<Void>> resultHandler) {
+    Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+    Handler<AsyncResult<Boolean>> handler = ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      } else if (!ar.result()) {
+        resultHandler.handle(Future.failedFuture("Record '" + record.getRegistration() + "' not found"));
+      } else {
+        resultHandler.handle(Future.succeededFuture());
+      }
+    };
+    if (shards != null) {
+      shards.updateIfExists(record, handler);
+    } else {
+      updateIfExists(record, handler);
+    }
+  }
+
+  /**
+   * Updates a record, if it exists.
+   *
+   * @param record            the record
+   * @param completionHandler called with {@code false} if the record does not exist
+   */
+  void updateIfExists(Record record, Handler<AsyncResult<Boolean>> completionHandler) {
+    Handler<AsyncResult<Boolean>> resultHandler = ar -> {
+      if (ar.succeeded() && ar.result()) {
+        onStored(Collections.singletonList(record));
+      }
+      completionHandler.handle(ar);
+    };
+    if (layout != null) {
+      put(record, "update", resultHandler);
+      return;
+    }
+    redis.eval(UPDATE_SCRIPT, Collections.singletonList(key),
+        Arrays.asList(record.getRegistration(), record.encode()), ar -> {
+          if (ar.succeeded()) {
+            resultHandler.handle(Future.succeededFuture(!ar.result().isEmpty()));
+          } else {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+          }
+        });
+  }
+
+  /**
+   * Stores the records using {@code HMSET} commands, each storing up to {@code batch-size} records. The commands are
+   * pipelined.
+   */
+  @Override
+  public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    for (Record record : records) {
+      if (record.getRegistration() != null) {
+        resultHandler.handle(Future.failedFuture("The record has already been registered"));
+        return;
+      }
+    }
+    for (Record record : records) {
+      record.setRegistration(UUID.randomUUID().toString());
+    }
+    if (shards != null) {
+      shards.scatter(records, Record::getRegistration, RedisBackend::insertAll, resultHandler);
+    } else {
+      insertAll(records, resultHandler);
+    }
+  }
+
+  /**
+   * Stores records, whose registration ids have been assigned. The records of each batch are notified once the batch
+   * has been stored, even if another batch fails, and are part of the result. Fails only if all the batches fail.
+   */
+  void insertAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (layout != null) {
+      putAll(records, false, resultHandler);
+      return;
+    }
+    writeInBatches(records, storing(this::hmset), resultHandler);
+  }
+
+  /**
+   * Retrieves and removes the records using scripts, each removing up to {@code batch-size} records atomically. The
+   * scripts are pipelined. Unknown ids are ignored. The records removed by each batch are notified once the batch has
+   * been executed, even if another batch fails, and are part of the result. Fails only if all the batches fail.
+   */
+  @Override
+  public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (shards != null) {
+      shards.removeAll(uuids, resultHandler);
+      return;
+    }
+    if (layout != null) {
+      Batches.<String, Record>forEach(uuids, (uuid, handler) -> delete(uuid, null, ar -> {
+        if (ar.succeeded() && ar.result() != null) {
+          onRemoved(Collections.singletonList(uuid));
+        }
+        handler.handle(ar);
+      }), ar -> {
+        if (ar.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(ar.result().stream()
+              .filter(Objects::nonNull).collect(Collectors.toList())));
+        } else {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        }
+      });
+      return;
+    }
+    this.<String, Record>writeInBatches(uuids, (batch, handler) ->
+        redis.eval(REMOVE_ALL_SCRIPT, Collections.singletonList(key), batch, ar -> {
+          if (ar.succeeded()) {
+            List<Record> removed = ar.result().stream()
+                .map(json -> new Record(new JsonObject((String) json)))
+                .collect(Collectors.toList());
+            onRemoved(removed.stream().map(Record::getRegistration).collect(Collectors.toList()));
+            handler.handle(Future.succeededFuture(removed));
+          } else {
+            handler.handle(Future.failedFuture(ar.cause()));
+          }
+        }), resultHandler);
+  }
+
+  /**
+   * Updates the records using scripts, each updating up to {@code batch-size} records atomically, and only if they
+   * exist, so an update racing with a removal cannot register the record again. The scripts are pipelined. The records
+   * that do not exist are not part of the result. The records updated by each batch are notified once the batch has
+   * been executed, even if another batch fails, and are part of the result. Fails only if all the batches fail.
+   */
+  @Override
+  public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    for (Record record : records) {
+      Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+    }
+    if (shards != null) {
+      shards.updateAll(records, resultHandler);
+      return;
+    }
+    if (layout != null) {
+      putAll(records, true, resultHandler);
+      return;
+    }
+    writeInBatches(records, storing(this::updateBatch), resultHandler);
+  }
+
+  /**
+   * Moves the records stored on a shard not owning them anymore, for instance after the addition of a shard. Does
+   * nothing if the backend is not sharded. Called on startup, unless {@code rebalance} is {@code false}.
+   *
+   * @param resultHandler called with the number of moved records
+   */
+  void rebalance(Handler<AsyncResult<Integer>> resultHandler) {
+    if (shards == null) {
+      resultHandler.handle(Future.succeededFuture(0));
+    } else {
+      shards.rebalance(resultHandler);
+    }
+  }
+
+  /**
+   * Gets the encoded records, as stored, used to move records between shards.
+   *
+   * @param resultHandler called with the encoded records (registration -> encoded record)
+   */
+  void getEncodedRecords(Handler<AsyncResult<Map<String, String>>> resultHandler) {
+    Handler<AsyncResult<JsonObject>> handler = ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      Map<String, String> entries = new LinkedHashMap<>();
+      ar.result().forEach(entry -> entries.put(entry.getKey(), (String) entry.getValue()));
+      resultHandler.handle(Future.succeededFuture(entries));
+    };
+    if (layout == null) {
+      redis.hgetall(key, handler);
+      return;
+    }
+    redis.smembers(layout.idsKey(), ids -> {
+      if (ids.failed()) {
+        handler.handle(Future.failedFuture(ids.cause()));
+        return;
+      }
+      List<String> uuids = new ArrayList<>();
+      ids.result().forEach(uuid -> uuids.add((String) uuid));
+      this.<String, JsonObject>executeInBatches(uuids, (batch, batchHandler) ->
+          redis.mgetMany(batch.stream().map(layout::recordKey).collect(Collectors.toList()), ar -> {
+            if (ar.failed()) {
+              batchHandler.handle(Future.failedFuture(ar.cause()));
+              return;
+            }
+            JsonObject entries = new JsonObject();
+            for (int i = 0; i < batch.size(); i++) {
+              // Removed concurrently if null
+              if (ar.result().getValue(i) != null) {
+                entries.put(batch.get(i), ar.result().getString(i));
+              }
             }
-          });
+            batchHandler.handle(Future.succeededFuture(Collections.singletonList(entries)));
+          }), ar -> {
+        if (ar.failed()) {
+          handler.handle(Future.failedFuture(ar.cause()));
         } else {
-          resultHandler.handle(Future.failedFuture("Record '" + uuid + "' not found"));
+          JsonObject all = new JsonObject();
+          ar.result().forEach(all::mergeIn);
+          handler.handle(Future.succeededFuture(all));
         }
+      });
+    });
+  }
+
+  /**
+   * Stores an encoded record, only if no record with the same registration id exists, used to move records between
+   * shards.
+   *
+   * @param uuid          the registration id
+   * @param encoded       the encoded record
+   * @param resultHandler called with {@code false} if a record with the same registration id exists
+   */
+  void insertIfAbsent(String uuid, String encoded, Handler<AsyncResult<Boolean>> resultHandler) {
+    Record record = new Record(new JsonObject(encoded));
+    Handler<AsyncResult<Boolean>> handler = ar -> {
+      if (ar.succeeded() && ar.result()) {
+        onStored(Collections.singletonList(record));
+      }
+      resultHandler.handle(ar);
+    };
+    if (layout != null) {
+      put(record, encoded, "create", handler);
+      return;
+    }
+    redis.hsetnx(key, uuid, encoded, ar -> {
+      if (ar.succeeded()) {
+        handler.handle(Future.succeededFuture(ar.result() == 1));
+      } else {
+        handler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Removes a record only if it has not been modified, used to move records between shards.
+   *
+   * @param uuid          the registration id
+   * @param encoded       the expected encoded record
+   * @param resultHandler called with {@code false} if the record does not exist or has been modified
+   */
+  void removeIfEquals(String uuid, String encoded, Handler<AsyncResult<Boolean>> resultHandler) {
+    Handler<AsyncResult<Boolean>> handler = ar -> {
+      if (ar.succeeded() && ar.result()) {
+        onRemoved(Collections.singletonList(uuid));
+      }
+      resultHandler.handle(ar);
+    };
+    if (layout != null) {
+      delete(uuid, encoded, ar -> {
+        if (ar.succeeded()) {
+          handler.handle(Future.succeededFuture(ar.result() != null));
+        } else {
+          handler.handle(Future.failedFuture(ar.cause()));
+        }
+      });
+      return;
+    }
+    redis.eval(REMOVE_IF_EQUALS_SCRIPT, Collections.singletonList(key), Arrays.asList(uuid, encoded), ar -> {
+      if (ar.succeeded()) {
+        handler.handle(Future.succeededFuture(!ar.result().isEmpty()));
+      } else {
+        handler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * @return whether or not the lookups are served from the cache
+   */
+  boolean isCacheLoaded() {
+    return cache != null && cache.isLoaded();
+  }
+
+  /**
+   * Wraps the given handler to notify the modification of the given records once successfully stored or updated.
+   */
+  private <T> Handler<AsyncResult<T>> stored(List<Record> records, Handler<AsyncResult<T>> resultHandler) {
+    return ar -> {
+      if (ar.succeeded()) {
+        onStored(records);
+      }
+      resultHandler.handle(ar);
+    };
+  }
+
+  /**
+   * Wraps the given batch operation to notify the records it has stored or updated, once the batch succeeded.
+   */
+  private BiConsumer<List<Record>, Handler<AsyncResult<List<Record>>>> storing(
+      BiConsumer<List<Record>, Handler<AsyncResult<List<Record>>>> operation) {
+    return (batch, handler) -> operation.accept(batch, ar -> {
+      if (ar.succeeded()) {
+        onStored(ar.result());
+      }
+      handler.handle(ar);
+    });
+  }
+
+  /**
+   * Updates the cache with the given stored or updated records, and publishes their modification.
+   */
+  private void onStored(List<Record> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    if (cache != null) {
+      records.forEach(record -> cache.onLocalModification(record.getRegistration(), record));
+    }
+    publish(records.stream().map(Record::getRegistration).collect(Collectors.toList()));
+  }
+
+  /**
+   * Updates the cache with the given removed records, and publishes their removal.
+   */
+  private void onRemoved(List<String> uuids) {
+    if (uuids.isEmpty()) {
+      return;
+    }
+    if (cache != null) {
+      uuids.forEach(uuid -> cache.onLocalModification(uuid, null));
+    }
+    publish(uuids);
+  }
+
+  /**
+   * Publishes the registration ids of the modified records on the change channel. The reply is not awaited.
+   */
+  private void publish(List<String> uuids) {
+    if (publishChanges) {
+      redis.publish(channel, RecordCache.message(origin, uuids), ar -> {
+        if (ar.failed()) {
+          LOGGER.warn("Cannot publish the modification of " + uuids + " on " + channel, ar.cause());
+        }
+      });
+    }
+  }
+
+  private void hmset(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    JsonObject entries = new JsonObject();
+    for (Record record : records) {
+      entries.put(record.getRegistration(), record.encode());
+    }
+    redis.hmset(key, entries, ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(new ArrayList<>(records)));
       } else {
         resultHandler.handle(Future.failedFuture(ar.cause()));
       }
     });
   }
 
-  @Override
-  public void update(Record record, Handler<AsyncResult<Void>> resultHandler) {
-    Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
-    redis.hset(key, record.getRegistration(), record.toJson().encode(), ar -> {
+  /**
+   * Updates a batch of records using {@link #UPDATE_ALL_SCRIPT}.
+   *
+   * @param resultHandler called with the updated records, the records that do not exist are ignored
+   */
+  private void updateBatch(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    List<String> arguments = new ArrayList<>(records.size() * 2);
+    for (Record record : records) {
+      arguments.add(record.getRegistration());
+      arguments.add(record.encode());
+    }
+    redis.eval(UPDATE_ALL_SCRIPT, Collections.singletonList(key), arguments, ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      Set<String> updated = new HashSet<>();
+      for (Object uuid : ar.result()) {
+        updated.add((String) uuid);
+      }
+      resultHandler.handle(Future.succeededFuture(records.stream()
+          .filter(record -> updated.contains(record.getRegistration()))
+          .collect(Collectors.toList())));
+    });
+  }
+
+  /**
+   * Splits the given items in batches of {@code batch-size} items.
+   */
+  private <T> List<List<T>> split(List<T> items) {
+    List<List<T>> batches = new ArrayList<>();
+    for (int i = 0; i < items.size(); i += batchSize) {
+      batches.add(new ArrayList<>(items.subList(i, Math.min(items.size(), i + batchSize))));
+    }
+    return batches;
+  }
+
+  /**
+   * Splits the given items in batches of {@code batch-size} items, and executes the given operation on each batch.
+   * The operations are sent without waiting for the previous replies, so the Redis client pipelines them. The results
+   * are concatenated, in the order of the batches. The first failure is reported.
+   */
+  private <T, R> void executeInBatches(List<T> items, BiConsumer<List<T>, Handler<AsyncResult<List<R>>>> operation,
+                                       Handler<AsyncResult<List<R>>> resultHandler) {
+    List<List<T>> batches = split(items);
+    int count = batches.size();
+    if (count == 0) {
+      resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+      return;
+    }
+    List<List<R>> results = new ArrayList<>(Collections.nCopies(count, null));
+    AtomicInteger remaining = new AtomicInteger(count);
+    AtomicBoolean failed = new AtomicBoolean();
+    for (int i = 0; i < count; i++) {
+      int index = i;
+      operation.accept(batches.get(i), ar -> {
+        if (ar.failed()) {
+          if (failed.compareAndSet(false, true)) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+          }
+          return;
+        }
+        synchronized (results) {
+          results.set(index, ar.result());
+        }
+        if (remaining.decrementAndGet() == 0 && !failed.get()) {
+          List<R> all = new ArrayList<>();
+          synchronized (results) {
+            results.forEach(all::addAll);
+          }
+          resultHandler.handle(Future.succeededFuture(all));
+        }
+      });
+    }
+  }
+
+  /**
+   * Executes a write operation in batches, as {@link #executeInBatches(List, BiConsumer, Handler)}. The batches that
+   * succeeded have been written, and notified, even if other batches failed: their results are concatenated, in the
+   * order of the batches, and the operation only fails if all the batches failed.
+   */
+  private <T, R> void writeInBatches(List<T> items, BiConsumer<List<T>, Handler<AsyncResult<List<R>>>> operation,
+                                     Handler<AsyncResult<List<R>>> resultHandler) {
+    Batches.<List<T>, List<R>>forEach(split(items), operation, ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<R> all = new ArrayList<>();
+      ar.result().forEach(all::addAll);
+      resultHandler.handle(Future.succeededFuture(all));
+    });
+  }
+
+  /**
+   * Stores or updates a record in the {@code keys} layout, using a single script.
+   *
+   * @param record        the record, with its registration id
+   * @param mode          {@code store} to store the record in any case, {@code update} if the record must already
+   *                      exist, {@code create} if it must not exist
+   * @param resultHandler called with {@code false} if the record has not been stored because of the mode
+   */
+  private void put(Record record, String mode, Handler<AsyncResult<Boolean>> resultHandler) {
+    put(record, record.encode(), mode, resultHandler);
+  }
+
+  private void put(Record record, String encoded, String mode, Handler<AsyncResult<Boolean>> resultHandler) {
+    String uuid = record.getRegistration();
+    List<String> keys = new ArrayList<>();
+    keys.add(layout.recordKey(uuid));
+    keys.add(layout.indexesKey(uuid));
+    keys.add(layout.idsKey());
+    keys.addAll(layout.indexKeys(record));
+    redis.eval(PUT_SCRIPT, keys, Arrays.asList(uuid, encoded, mode), ar -> {
       if (ar.succeeded()) {
-        resultHandler.handle(Future.succeededFuture());
+        resultHandler.handle(Future.succeededFuture(!ar.result().isEmpty()));
       } else {
         resultHandler.handle(Future.failedFuture(ar.cause()));
       }
     });
   }
 
+  /**
+   * Stores or updates the records in the {@code keys} layout. The scripts are pipelined. Each record is notified once
+   * stored, even if another one fails. The records that cannot be stored are not part of the result, the operation
+   * only fails if no record could be stored.
+   *
+   * @param update        whether or not the records must already exist, the missing ones are not part of the result
+   * @param resultHandler called with the stored or updated records
+   */
+  private void putAll(List<Record> records, boolean update, Handler<AsyncResult<List<Record>>> resultHandler) {
+    Batches.<Record, Record>forEach(records, (record, handler) -> put(record, update ? "update" : "store", ar -> {
+      if (ar.failed()) {
+        handler.handle(Future.failedFuture(ar.cause()));
+      } else if (ar.result()) {
+        onStored(Collections.singletonList(record));
+        handler.handle(Future.succeededFuture(record));
+      } else {
+        handler.handle(Future.succeededFuture(null));
+      }
+    }), ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      } else {
+        resultHandler.handle(Future.succeededFuture(ar.result().stream()
+            .filter(Objects::nonNull).collect(Collectors.toList())));
+      }
+    });
+  }
+
+  /**
+   * Removes a record in the {@code keys} layout, using a single script.
+   *
+   * @param uuid          the registration id
+   * @param expected      the expected encoded record, {@code null} to remove any version
+   * @param resultHandler called with the removed record, {@code null} if the record does not exist, or is not the
+   *                      expected version
+   */
+  private void delete(String uuid, String expected, Handler<AsyncResult<Record>> resultHandler) {
+    redis.eval(DELETE_SCRIPT, Arrays.asList(layout.recordKey(uuid), layout.indexesKey(uuid), layout.idsKey()),
+        expected == null ? Collections.singletonList(uuid) : Arrays.asList(uuid, expected), ar -> {
+          if (ar.failed()) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+          } else if (ar.result().isEmpty()) {
+            resultHandler.handle(Future.succeededFuture(null));
+          } else {
+            resultHandler.handle(Future.succeededFuture(new Record(new JsonObject(ar.result().getString(0)))));
+          }
+        });
+  }
+
+  /**
+   * Retrieves the records having the given registration ids in the {@code keys} layout, using {@code MGET} commands
+   * retrieving up to {@code batch-size} records. The records removed concurrently are ignored.
+   */
+  private void fetch(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    this.<String, Record>executeInBatches(uuids, (batch, handler) ->
+        redis.mgetMany(batch.stream().map(layout::recordKey).collect(Collectors.toList()), ar -> {
+          if (ar.failed()) {
+            handler.handle(Future.failedFuture(ar.cause()));
+            return;
+          }
+          List<Record> records = new ArrayList<>();
+          for (Object json : ar.result()) {
+            if (json != null) {
+              records.add(new Record(new JsonObject((String) json)));
+            }
+          }
+          handler.handle(Future.succeededFuture(records));
+        }), resultHandler);
+  }
+
+  /**
+   * Retrieves the records whose registration ids are returned by the given command, in the {@code keys} layout.
+   */
+  private void fetch(Consumer<Handler<AsyncResult<JsonArray>>> ids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    ids.accept(ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<String> uuids = new ArrayList<>();
+      for (Object uuid : ar.result()) {
+        uuids.add((String) uuid);
+      }
+      fetch(uuids, resultHandler);
+    });
+  }
+
+  /**
+   * Gets all the records, using a single {@code HGETALL} command, or, in the {@code scan} read mode, iterating over
+   * the hash using {@code HSCAN}.
+   */
   @Override
   public void getRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (shards != null) {
+      shards.gather((shard, handler) -> shard.getRecords(handler), resultHandler);
+      return;
+    }
+    if (isCacheLoaded()) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecords(record -> true, true)));
+      return;
+    }
+    readRecords(resultHandler);
+  }
+
+  private void readRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (layout != null) {
+      fetch(handler -> redis.smembers(layout.idsKey(), handler), resultHandler);
+      return;
+    }
+    if (scan) {
+      // HSCAN may return an entry several times, the records are deduplicated
+      Map<String, Record> records = new LinkedHashMap<>();
+      scan(record -> {
+        records.put(record.getRegistration(), record);
+        return true;
+      }, ar -> {
+        if (ar.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(new ArrayList<>(records.values())));
+        } else {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        }
+      });
+      return;
+    }
     redis.hgetall(key, ar -> {
       if (ar.succeeded()) {
         JsonObject entries = ar.result();
@@ -120,9 +1035,261 @@ public class RedisBackend implements DiscoveryBackend {
     });
   }
 
+  /**
+   * Gets the records matching the given filter. The filter is evaluated by a Lua script on the Redis server, on
+   * batches of up to {@code batch-size} entries, so only the matching records are transferred and parsed, and the
+   * Redis server is never blocked by the evaluation of the filter on all the records. In the {@code scan} read mode,
+   * the hash is iterated using {@code HSCAN} and the filter is evaluated on the client side.
+   */
+  @Override
+  public void getRecords(JsonObject filter, boolean includeOutOfService,
+                         Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (shards != null) {
+      shards.gather((shard, handler) -> shard.getRecords(filter, includeOutOfService, handler), resultHandler);
+      return;
+    }
+    JsonObject query = filter == null ? new JsonObject() : filter;
+    RecordFilter compiled = RecordFilter.compile(query);
+    if (isCacheLoaded()) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecords(compiled, includeOutOfService)));
+      return;
+    }
+    if (layout != null) {
+      Handler<AsyncResult<List<Record>>> handler = ar -> {
+        if (ar.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(ar.result().stream()
+              .filter(compiled::test)
+              .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+              .collect(Collectors.toList())));
+        } else {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        }
+      };
+      Object registration = query.getValue("registration");
+      List<String> indexes = layout.indexKeys(query, includeOutOfService);
+      if (registration instanceof String && !"*".equals(registration)) {
+        fetch(Collections.singletonList((String) registration), handler);
+      } else if (indexes.isEmpty()) {
+        fetch(ids -> redis.smembers(layout.idsKey(), ids), handler);
+      } else {
+        fetch(ids -> redis.sinter(indexes, ids), handler);
+      }
+      return;
+    }
+    if (scan) {
+      // HSCAN may return an entry several times, the matching records are deduplicated
+      Map<String, Record> records = new LinkedHashMap<>();
+      scan(record -> {
+        if (compiled.test(record) && (includeOutOfService || record.getStatus() == Status.UP)) {
+          records.put(record.getRegistration(), record);
+        }
+        return true;
+      }, ar -> {
+        if (ar.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(new ArrayList<>(records.values())));
+        } else {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        }
+      });
+      return;
+    }
+    // HSCAN may return an entry several times, the matching records are deduplicated
+    Map<String, Record> records = new LinkedHashMap<>();
+    filter(query, includeOutOfService, record -> {
+      records.put(record.getRegistration(), record);
+      return true;
+    }, ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(new ArrayList<>(records.values())));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Iterates over the records matching the given filter, using {@link #FILTER_SCRIPT} on batches of up to
+   * {@code batch-size} entries. Each matching record is passed to the visitor, which returns {@code false} to stop
+   * the iteration. As {@code HSCAN} may return an entry several times, a record may be visited several times.
+   *
+   * @param query               the filter
+   * @param includeOutOfService whether or not out of service records are accepted
+   * @param visitor             the visitor
+   * @param completion          called when the iteration is completed or has failed
+   */
+  private void filter(JsonObject query, boolean includeOutOfService, Function<Record, Boolean> visitor,
+                      Handler<AsyncResult<Void>> completion) {
+    filter("0", query.encode(), RecordFilter.compile(query), includeOutOfService, visitor, completion);
+  }
+
+  private void filter(String cursor, String encoded, RecordFilter compiled, boolean includeOutOfService,
+                      Function<Record, Boolean> visitor, Handler<AsyncResult<Void>> completion) {
+    redis.eval(FILTER_SCRIPT, Collections.singletonList(key),
+        Arrays.asList(encoded, Boolean.toString(includeOutOfService), cursor, Integer.toString(batchSize)), ar -> {
+          if (ar.failed()) {
+            completion.handle(Future.failedFuture(ar.cause()));
+            return;
+          }
+          String next = ar.result().getString(0);
+          for (int i = 1; i < ar.result().size(); i++) {
+            Record record = new Record(new JsonObject(ar.result().getString(i)));
+            if (compiled.test(record) && (includeOutOfService || record.getStatus() == Status.UP)
+                && !visitor.apply(record)) {
+              completion.handle(Future.succeededFuture());
+              return;
+            }
+          }
+          if ("0".equals(next)) {
+            completion.handle(Future.succeededFuture());
+          } else {
+            filter(next, encoded, compiled, includeOutOfService, visitor, completion);
+          }
+        });
+  }
+
+  /**
+   * Finds a record accepted by the given filter. The records are iterated batch by batch, and the lookup stops at the
+   * first accepted record. When the filter is a {@link RecordFilter}, it is evaluated on the Redis server by
+   * {@link #FILTER_SCRIPT}, except in the {@code scan} read mode. Otherwise, the hash is iterated using
+   * {@code HSCAN}. In the {@code keys} layout, the indexes are used when they match the filter, and the set of
+   * registration ids is iterated using {@code SSCAN} otherwise.
+   */
+  @Override
+  public void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                         Handler<AsyncResult<Record>> resultHandler) {
+    if (shards != null) {
+      shards.<Record>gather((shard, handler) -> shard.findRecord(filter, includeOutOfService, ar -> {
+        if (ar.succeeded()) {
+          handler.handle(Future.succeededFuture(ar.result() == null
+              ? Collections.emptyList() : Collections.singletonList(ar.result())));
+        } else {
+          handler.handle(Future.failedFuture(ar.cause()));
+        }
+      }), ar -> {
+        if (ar.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(ar.result().isEmpty() ? null : ar.result().get(0)));
+        } else {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        }
+      });
+      return;
+    }
+    if (isCacheLoaded()) {
+      List<Record> records = cache.getRecords(filter, includeOutOfService);
+      resultHandler.handle(Future.succeededFuture(records.isEmpty() ? null : records.get(0)));
+      return;
+    }
+    if (layout != null) {
+      JsonObject query = filter instanceof RecordFilter ? ((RecordFilter) filter).toJson() : null;
+      Object registration = query == null ? null : query.getValue("registration");
+      if ((registration instanceof String && !"*".equals(registration))
+          || (query != null && !layout.indexKeys(query, true).isEmpty())) {
+        // The filter has indexed fields, so the indexes narrow the lookup to the matching records
+        getRecords(query, includeOutOfService, ar -> {
+          if (ar.failed()) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+          } else {
+            resultHandler.handle(Future.succeededFuture(ar.result().isEmpty() ? null : ar.result().get(0)));
+          }
+        });
+      } else {
+        find("0", filter, includeOutOfService, resultHandler);
+      }
+      return;
+    }
+    AtomicReference<Record> found = new AtomicReference<>();
+    Function<Record, Boolean> visitor = record -> {
+      if ((includeOutOfService || record.getStatus() == Status.UP) && filter.apply(record)) {
+        found.set(record);
+        return false;
+      }
+      return true;
+    };
+    Handler<AsyncResult<Void>> completion = ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(found.get()));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    };
+    if (filter instanceof RecordFilter && !scan) {
+      filter(((RecordFilter) filter).toJson(), includeOutOfService, visitor, completion);
+    } else {
+      scan(visitor, completion);
+    }
+  }
+
+  /**
+   * Finds a record accepted by the given filter in the {@code keys} layout, iterating over the set of registration ids
+   * using {@code SSCAN}. The records of each batch of ids are retrieved using {@code MGET}, and the iteration stops at
+   * the first accepted record.
+   */
+  private void find(String cursor, Function<Record, Boolean> filter, boolean includeOutOfService,
+                    Handler<AsyncResult<Record>> resultHandler) {
+    redis.sscan(layout.idsKey(), cursor, new ScanOptions().setCount(scanCount), ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      String next = ar.result().getString(0);
+      List<String> uuids = new ArrayList<>();
+      for (Object uuid : ar.result().getJsonArray(1)) {
+        uuids.add((String) uuid);
+      }
+      fetch(uuids, fetched -> {
+        if (fetched.failed()) {
+          resultHandler.handle(Future.failedFuture(fetched.cause()));
+          return;
+        }
+        for (Record record : fetched.result()) {
+          if ((includeOutOfService || record.getStatus() == Status.UP) && filter.apply(record)) {
+            resultHandler.handle(Future.succeededFuture(record));
+            return;
+          }
+        }
+        if ("0".equals(next)) {
+          resultHandler.handle(Future.succeededFuture(null));
+        } else {
+          find(next, filter, includeOutOfService, resultHandler);
+        }
+      });
+    });
+  }
+
+  /**
+   * Opens a cursor on the records matching the given filter. The hash is iterated using {@code HSCAN}, so the
+   * records are transferred and parsed batch by batch, and the client memory does not depend on the size of the
+   * registry. As {@code HSCAN} may return an entry several times (when the hash is resized during the iteration), the
+   * cursor may return a record several times. In the {@code keys} layout, the matching records are retrieved using the
+   * indexes when the first batch is requested. When the cache is enabled and loaded, the records are taken from the
+   * cache.
+   */
+  @Override
+  public RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    if (shards != null) {
+      return shards.cursor(filter, includeOutOfService);
+    }
+    if (layout != null || isCacheLoaded()) {
+      return DiscoveryBackend.super.cursor(filter, includeOutOfService);
+    }
+    return new ScanCursor(RecordFilter.compile(filter), includeOutOfService);
+  }
+
   @Override
   public void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
-    redis.hget(key, uuid, ar -> {
+    if (shards != null) {
+      shards.getRecord(uuid, resultHandler);
+      return;
+    }
+    if (isCacheLoaded()) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecord(uuid)));
+      return;
+    }
+    readRecord(uuid, resultHandler);
+  }
+
+  private void readRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    Handler<AsyncResult<String>> handler = ar -> {
       if (ar.succeeded()) {
         if (ar.result() != null) {
           resultHandler.handle(Future.succeededFuture(new Record(new JsonObject(ar.result()))));
@@ -132,6 +1299,105 @@ public class RedisBackend implements DiscoveryBackend {
       } else {
         resultHandler.handle(Future.failedFuture(ar.cause()));
       }
+    };
+    if (layout != null) {
+      redis.get(layout.recordKey(uuid), handler);
+    } else {
+      redis.hget(key, uuid, handler);
+    }
+  }
+
+  /**
+   * Iterates over the hash using {@code HSCAN}, with the configured {@code COUNT} hint, so each reply, and the time
+   * spent by the Redis server on each command, are bounded. Each record is decoded and passed to the visitor, which
+   * returns {@code false} to stop the iteration. Nothing is kept between the commands, so the memory used does not
+   * depend on the size of the registry, but as {@code HSCAN} may return an entry several times, a record may be
+   * visited several times.
+   *
+   * @param visitor    the visitor
+   * @param completion called when the iteration is completed or has failed
+   */
+  private void scan(Function<Record, Boolean> visitor, Handler<AsyncResult<Void>> completion) {
+    scan("0", visitor, completion);
+  }
+
+  private void scan(String cursor, Function<Record, Boolean> visitor,
+                    Handler<AsyncResult<Void>> completion) {
+    redis.hscan(key, cursor, new ScanOptions().setCount(scanCount), ar -> {
+      if (ar.failed()) {
+        completion.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      String next = ar.result().getString(0);
+      JsonArray entries = ar.result().getJsonArray(1);
+      // The entries alternate the registration ids and the encoded records
+      for (int i = 0; i + 1 < entries.size(); i += 2) {
+        if (!visitor.apply(new Record(new JsonObject(entries.getString(i + 1))))) {
+          completion.handle(Future.succeededFuture());
+          return;
+        }
+      }
+      if ("0".equals(next)) {
+        completion.handle(Future.succeededFuture());
+      } else {
+        scan(next, visitor, completion);
+      }
     });
   }
+
+  /**
+   * A cursor iterating over the hash using {@code HSCAN}, with the configured {@code scan-count}. The {@code COUNT} of
+   * {@code HSCAN} is only a hint, so the matching records exceeding the requested batch size are buffered for the
+   * next batches. Only the position in the hash and these records are kept between the batches, so, as {@code HSCAN}
+   * may return an entry several times, the cursor does not skip the duplicates.
+   */
+  private class ScanCursor implements RecordCursor {
+
+    private final RecordFilter filter;
+    private final boolean includeOutOfService;
+    private final Deque<Record> pending = new ArrayDeque<>();
+    private String cursor = "0";
+    private boolean done;
+
+    private ScanCursor(RecordFilter filter, boolean includeOutOfService) {
+      this.filter = filter;
+      this.includeOutOfService = includeOutOfService;
+    }
+
+    @Override
+    public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+      if (!pending.isEmpty() || done) {
+        List<Record> records = new ArrayList<>();
+        while (!pending.isEmpty() && records.size() < max) {
+          records.add(pending.poll());
+        }
+        resultHandler.handle(Future.succeededFuture(records));
+        return;
+      }
+      redis.hscan(key, cursor, new ScanOptions().setCount(scanCount), ar -> {
+        if (ar.failed()) {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+          return;
+        }
+        cursor = ar.result().getString(0);
+        done = "0".equals(cursor);
+        JsonArray entries = ar.result().getJsonArray(1);
+        // The entries alternate the registration ids and the encoded records
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+          Record record = new Record(new JsonObject(entries.getString(i + 1)));
+          if (filter.test(record) && (includeOutOfService || record.getStatus() == Status.UP)) {
+            pending.add(record);
+          }
+        }
+        // Scans again if none of the scanned records matches, an empty batch would denote the end of the cursor
+        next(max, resultHandler);
+      });
+    }
+
+    @Override
+    public void close() {
+      done = true;
+      pending.clear();
+    }
+  }
 }
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.backend;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.spi.Batches;
+import io.vertx.ext.discovery.spi.RecordCursor;
+import io.vertx.redis.RedisOptions;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The shards of a sharded {@link RedisBackend}. Each shard is a {@link RedisBackend} connected to a different Redis
+ * server. The records are placed on the shards using a consistent hash ring of their registration ids (see
+ * {@link HashRing}), so the operations on a single record are sent to a single shard. The lookups are sent to all the
+ * shards, and their results are concatenated.
+ * <p>
+ * When a shard is added, some records are not stored on the shard owning them until they are moved (see
+ * {@link #rebalance(Handler)}). In the meantime, the operations on a record missing on its owner are retried on the
+ * other shards.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+class Shards {
+
+  /**
+   * The default number of points of each shard on the hash ring.
+   */
+  static final int DEFAULT_VIRTUAL_NODES = 160;
+
+  /**
+   * An operation executed on a shard for the given items.
+   */
+  @FunctionalInterface
+  interface ShardOperation<T, R> {
+    void execute(RedisBackend shard, List<T> items, Handler<AsyncResult<List<R>>> resultHandler);
+  }
+
+  private final List<RedisBackend> shards = new ArrayList<>();
+  private final HashRing<RedisBackend> ring;
+
+  /**
+   * Creates the shards.
+   *
+   * @param vertx          the vert.x instance
+   * @param configuration  the backend configuration, shared by the shards
+   * @param configurations the configuration of each shard, overriding the backend configuration. The shard is
+   *                       identified by its {@code name} entry, or by its host and port. It must not change when
+   *                       shards are added or removed.
+   */
+  Shards(Vertx vertx, JsonObject configuration, JsonArray configurations) {
+    Map<String, RedisBackend> nodes = new LinkedHashMap<>();
+    for (Object entry : configurations) {
+      JsonObject merged = configuration.copy();
+      merged.remove("shards");
+      merged.mergeIn((JsonObject) entry);
+      RedisOptions options = new RedisOptions(merged);
+      String name = merged.getString("name", options.getHost() + ":" + options.getPort());
+      if (nodes.containsKey(name)) {
+        throw new IllegalArgumentException("Duplicate shard '" + name + "'");
+      }
+      RedisBackend shard = new RedisBackend();
+      shard.init(vertx, merged);
+      nodes.put(name, shard);
+      shards.add(shard);
+    }
+    ring = new HashRing<>(nodes, configuration.getInteger("virtual-nodes", DEFAULT_VIRTUAL_NODES));
+  }
+
+  /**
+   * Closes the shards.
+   */
+  void close() {
+    shards.forEach(RedisBackend::close);
+  }
+
+  /**
+   * @param uuid the registration id
+   * @return the shard owning the record
+   */
+  RedisBackend owner(String uuid) {
+    return ring.get(uuid);
+  }
+
+  /**
+   * Groups the given items by shard, and executes the given (write) operation on each shard having items. The results
+   * of the shards that succeeded are concatenated, even if other shards failed: the operation only fails if all the
+   * shards fail.
+   *
+   * @param items         the items
+   * @param registration  extracts the registration id of an item
+   * @param operation     the operation
+   * @param resultHandler the result handler
+   */
+  <T, R> void scatter(List<T> items, Function<T, String> registration, ShardOperation<T, R> operation,
+                      Handler<AsyncResult<List<R>>> resultHandler) {
+    Map<RedisBackend, List<T>> groups = new LinkedHashMap<>();
+    for (T item : items) {
+      groups.computeIfAbsent(owner(registration.apply(item)), shard -> new ArrayList<>()).add(item);
+    }
+    Batches.<RedisBackend, List<R>>forEach(new ArrayList<>(groups.keySet()),
+        (shard, handler) -> operation.execute(shard, groups.get(shard), handler), ar -> {
+          if (ar.failed()) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+            return;
+          }
+          List<R> all = new ArrayList<>();
+          ar.result().forEach(all::addAll);
+          resultHandler.handle(Future.succeededFuture(all));
+        });
+  }
+
+  /**
+   * Executes the given operation on all the shards. The results are concatenated, in the order of the shards. The
+   * first failure is reported.
+   */
+  <R> void gather(BiConsumer<RedisBackend, Handler<AsyncResult<List<R>>>> operation,
+                  Handler<AsyncResult<List<R>>> resultHandler) {
+    execute(shards, operation, resultHandler);
+  }
+
+  private static <R> void execute(List<RedisBackend> targets,
+                                  BiConsumer<RedisBackend, Handler<AsyncResult<List<R>>>> operation,
+                                  Handler<AsyncResult<List<R>>> resultHandler) {
+    if (targets.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+      return;
+    }
+    List<List<R>> results = new ArrayList<>(Collections.nCopies(targets.size(), null));
+    AtomicInteger remaining = new AtomicInteger(targets.size());
+    AtomicBoolean failed = new AtomicBoolean();
+    for (int i = 0; i < targets.size(); i++) {
+      int index = i;
+      operation.accept(targets.get(i), ar -> {
+        if (ar.failed()) {
+          if (failed.compareAndSet(false, true)) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+          }
+          return;
+        }
+        synchronized (results) {
+          results.set(index, ar.result());
+        }
+        if (remaining.decrementAndGet() == 0 && !failed.get()) {
+          List<R> all = new ArrayList<>();
+          synchronized (results) {
+            results.forEach(all::addAll);
+          }
+          resultHandler.handle(Future.succeededFuture(all));
+        }
+      });
+    }
+  }
+
+  /**
+   * Opens a cursor iterating over the shards one after the other.
+   */
+  RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    return new ShardCursor(filter, includeOutOfService);
+  }
+
+  /**
+   * Gets a record from its owner, or from the other shards if its owner does not have it.
+   */
+  void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    withFallback(uuid, (shard, handler) -> shard.getRecord(uuid, handler), resultHandler);
+  }
+
+  /**
+   * Updates a record on its owner, or on the other shards if its owner does not have it.
+   */
+  void updateIfExists(Record record, Handler<AsyncResult<Boolean>> resultHandler) {
+    withFallback(record.getRegistration(), (shard, handler) -> shard.updateIfExists(record, handler), resultHandler);
+  }
+
+  /**
+   * Removes a record from its owner, or from the other shards if its owner does not have it.
+   */
+  void removeIfExists(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    withFallback(uuid, (shard, handler) -> shard.removeIfExists(uuid, handler), resultHandler);
+  }
+
+  /**
+   * Updates the records on their owners. The records missing on their owner are then updated on the other shards.
+   */
+  void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    this.<Record, Record>scatter(records, Record::getRegistration, RedisBackend::updateAll, ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(ar);
+        return;
+      }
+      Set<String> updated = ar.result().stream().map(Record::getRegistration).collect(Collectors.toSet());
+      List<Record> missing = records.stream()
+          .filter(record -> !updated.contains(record.getRegistration()))
+          .collect(Collectors.toList());
+      retryOnOtherShards(missing, Record::getRegistration, RedisBackend::updateAll, ar.result(), resultHandler);
+    });
+  }
+
+  /**
+   * Removes the records from their owners. The records missing on their owner are then removed from the other shards.
+   */
+  void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    this.<String, Record>scatter(uuids, Function.identity(), RedisBackend::removeAll, ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(ar);
+        return;
+      }
+      Set<String> removed = ar.result().stream().map(Record::getRegistration).collect(Collectors.toSet());
+      List<String> missing = uuids.stream().filter(uuid -> !removed.contains(uuid)).collect(Collectors.toList());
+      retryOnOtherShards(missing, Function.identity(), RedisBackend::removeAll, ar.result(), resultHandler);
+    });
+  }
+
+  /**
+   * Executes the given operation on the shards not owning the given items, and adds the results to the given ones.
+   */
+  private <T> void retryOnOtherShards(List<T> missing, Function<T, String> registration,
+                                      ShardOperation<T, Record> operation, List<Record> results,
+                                      Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (missing.isEmpty() || shards.size() == 1) {
+      resultHandler.handle(Future.succeededFuture(results));
+      return;
+    }
+    this.<Record>gather((shard, handler) -> {
+      List<T> items = missing.stream()
+          .filter(item -> owner(registration.apply(item)) != shard)
+          .collect(Collectors.toList());
+      if (items.isEmpty()) {
+        handler.handle(Future.succeededFuture(new ArrayList<>()));
+      } else {
+        operation.execute(shard, items, handler);
+      }
+    }, ar -> {
+      if (ar.succeeded()) {
+        List<Record> all = new ArrayList<>(results);
+        all.addAll(ar.result());
+        resultHandler.handle(Future.succeededFuture(all));
+      } else if (!results.isEmpty()) {
+        // The records processed by their owner are part of the result
+        resultHandler.handle(Future.succeededFuture(results));
+      } else {
+        resultHandler.handle(ar);
+      }
+    });
+  }
+
+  /**
+   * Executes the given operation on the owner of the record and, while it reports a miss (a {@code null} or
+   * {@code false} result), on the other shards, one after the other.
+   */
+  private <T> void withFallback(String uuid, BiConsumer<RedisBackend, Handler<AsyncResult<T>>> operation,
+                                Handler<AsyncResult<T>> resultHandler) {
+    RedisBackend owner = owner(uuid);
+    List<RedisBackend> candidates = new ArrayList<>();
+    candidates.add(owner);
+    shards.stream().filter(shard -> shard != owner).forEach(candidates::add);
+    tryNext(candidates.iterator(), operation, null, resultHandler);
+  }
+
+  private <T> void tryNext(Iterator<RedisBackend> candidates,
+                           BiConsumer<RedisBackend, Handler<AsyncResult<T>>> operation, AsyncResult<T> miss,
+                           Handler<AsyncResult<T>> resultHandler) {
+    if (!candidates.hasNext()) {
+      resultHandler.handle(miss);
+      return;
+    }
+    operation.accept(candidates.next(), ar -> {
+      if (ar.succeeded() && (ar.result() == null || Boolean.FALSE.equals(ar.result()))) {
+        tryNext(candidates, operation, ar, resultHandler);
+      } else {
+        resultHandler.handle(ar);
+      }
+    });
+  }
+
+  /**
+   * Moves the records that are not stored on the shard owning them, for instance after the addition of a shard.
+   * <p>
+   * Each record is first copied to its owner, unless its owner already has a version of the record (which is then the
+   * most recent one, as the modifications are sent to the owner first). The record is then removed from the previous
+   * shard only if it has not been modified in the meantime; otherwise the copy is removed, and the record is moved by
+   * a later rebalance. A record may be returned twice by the lookups executed during the move.
+   *
+   * @param resultHandler called with the number of moved records
+   */
+  void rebalance(Handler<AsyncResult<Integer>> resultHandler) {
+    this.<String>gather(this::moveMisplacedRecords, ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(ar.result().size()));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Moves the records misplaced on the given shard.
+   *
+   * @param resultHandler called with the registration ids of the moved records
+   */
+  private void moveMisplacedRecords(RedisBackend shard, Handler<AsyncResult<List<String>>> resultHandler) {
+    shard.getEncodedRecords(ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<Map.Entry<String, String>> misplaced = ar.result().entrySet().stream()
+          .filter(entry -> owner(entry.getKey()) != shard)
+          .collect(Collectors.toList());
+      if (misplaced.isEmpty()) {
+        resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+        return;
+      }
+      List<String> moved = Collections.synchronizedList(new ArrayList<>());
+      AtomicInteger remaining = new AtomicInteger(misplaced.size());
+      AtomicBoolean failed = new AtomicBoolean();
+      for (Map.Entry<String, String> entry : misplaced) {
+        move(shard, entry.getKey(), entry.getValue(), done -> {
+          if (done.failed()) {
+            if (failed.compareAndSet(false, true)) {
+              resultHandler.handle(Future.failedFuture(done.cause()));
+            }
+            return;
+          }
+          if (done.result()) {
+            moved.add(entry.getKey());
+          }
+          if (remaining.decrementAndGet() == 0 && !failed.get()) {
+            resultHandler.handle(Future.succeededFuture(new ArrayList<>(moved)));
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Moves a record from the given shard to its owner.
+   *
+   * @param resultHandler called with {@code true} if the record has been removed from the given shard
+   */
+  private void move(RedisBackend from, String uuid, String encoded, Handler<AsyncResult<Boolean>> resultHandler) {
+    RedisBackend to = owner(uuid);
+    to.insertIfAbsent(uuid, encoded, inserted -> {
+      if (inserted.failed()) {
+        resultHandler.handle(Future.failedFuture(inserted.cause()));
+        return;
+      }
+      from.removeIfEquals(uuid, encoded, removed -> {
+        if (removed.failed() || removed.result() || !inserted.result()) {
+          resultHandler.handle(removed);
+          return;
+        }
+        // Modified or removed in the meantime, the record stays where it is
+        to.removeIfEquals(uuid, encoded, undone -> {
+          if (undone.succeeded()) {
+            resultHandler.handle(Future.succeededFuture(false));
+          } else {
+            resultHandler.handle(Future.failedFuture(undone.cause()));
+          }
+        });
+      });
+    });
+  }
+
+  /**
+   * A cursor iterating over the cursors of the shards, one after the other.
+   */
+  private class ShardCursor implements RecordCursor {
+
+    private final JsonObject filter;
+    private final boolean includeOutOfService;
+    private final Iterator<RedisBackend> remaining;
+    private RecordCursor current;
+    private boolean closed;
+
+    private ShardCursor(JsonObject filter, boolean includeOutOfService) {
+      this.filter = filter;
+      this.includeOutOfService = includeOutOfService;
+      this.remaining = shards.iterator();
+    }
+
+    @Override
+    public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+      if (current == null) {
+        if (closed || !remaining.hasNext()) {
+          resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+          return;
+        }
+        current = remaining.next().cursor(filter, includeOutOfService);
+      }
+      current.next(max, ar -> {
+        if (ar.succeeded() && ar.result().isEmpty()) {
+          // This shard is exhausted, continue with the next one
+          current.close();
+          current = null;
+          next(max, resultHandler);
+        } else {
+          resultHandler.handle(ar);
+        }
+      });
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      if (current != null) {
+        current.close();
+        current = null;
+      }
+    }
+  }
+}
@@ -52,6 +52,49 @@
  * The configuration is the client configuration as well as `key` indicating in which _key_ on Redis
  * the records are stored.
  *
+ * The bulk operations (used, for instance, by the bridges importing many services) send the records in batches of
+ * `batch-size` records (1000 by default). The batches are pipelined, so importing thousands of services takes a few
+ * round trips. Bulk updates only replace the records that still exist, so they never register a removed record
+ * again. The modifications made by each batch are notified as soon as the batch succeeds, even if another batch
+ * fails.
+ *
+ * Filtered lookups are evaluated by a Lua script on the Redis server, on batches of `batch-size` records iterated
+ * using `HSCAN`, so only the matching records are transferred, and the server is never blocked by a scan of the whole
+ * registry.
+ *
+ * By default, the records are read using `HGETALL`, in a single reply. On large registries, set `read-mode` to
+ * `scan`: the hash is then iterated using `HSCAN`, retrieving about `scan-count` records (100 by default, must be
+ * strictly positive) per command. It bounds the size of each reply and the time the Redis server spends on each
+ * command. Lookups stop the iteration as soon as a record is found. Cursors do not remember the returned records, so
+ * a record may be returned more than once if the registry is modified during the iteration.
+ *
+ * Alternatively, set `layout` to `keys` to store each record in its own key instead of a single hash. In this layout,
+ * the backend maintains Redis sets indexing the records by name, type and status, as well as by the metadata entries
+ * listed in `indexed-metadata` (a JSON array). A filtered lookup intersects the sets matching the filter and retrieves
+ * only the selected records, so looking up a few records in a large registry does not transfer the whole registry.
+ * The entries of the filter that are not indexed are evaluated on the retrieved records. The indexes are updated
+ * atomically with the records, using Lua scripts.
+ *
+ * Each backend publishes the registration ids of the records it modifies on a Redis channel (`channel`,
+ * `<key>:changes` by default). When `cache` is `true`, the backend keeps a local copy of the records and serves the
+ * lookups from it, without contacting Redis. The copy is loaded when the backend starts, and each record notified on
+ * the channel is retrieved again. As Redis does not guarantee the delivery of published messages, the copy can also be
+ * reloaded periodically, by setting `cache-reload-period` (in ms). All the backends sharing the records must publish
+ * their modifications: do not set `publish-changes` to `false` when a cache is used. A cache without notifications
+ * nor periodic reload is rejected. The modifications made by a backend are applied to its own cache directly, so
+ * their notifications are ignored by this backend. The subscription and the periodic reload are stopped when the
+ * discovery service is closed.
+ *
+ * To spread the records over several Redis servers, set `shards` to a JSON array containing the configuration of each
+ * server (for instance its `host` and `port`). These configurations override the other entries of the backend
+ * configuration. The records are placed on the servers using a consistent hash ring of their registration ids
+ * (each server is placed `virtual-nodes` times on the ring, 160 by default), and the lookups are sent to all the
+ * servers. The position of a server on the ring depends on its `name` entry (or on its host and port), so adding a
+ * server only moves a fraction of the records. These records are moved to their new server when the backend starts
+ * (unless `rebalance` is set to `false`). Until they are moved, the operations on a record missing on its server are
+ * retried on the other servers. Each record is removed from its previous server only if it has not been modified
+ * during the move.
+ *
  * Here is an example:
  *
  * [source,$lang]
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.backend;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the placement of the keys by the {@link HashRing}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class HashRingTest {
+
+  private static Map<String, String> nodes(int count) {
+    Map<String, String> nodes = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      nodes.put("node-" + i, "node-" + i);
+    }
+    return nodes;
+  }
+
+  @Test
+  public void testDistribution() {
+    HashRing<String> ring = new HashRing<>(nodes(4), 160);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < 10000; i++) {
+      counts.merge(ring.get(UUID.randomUUID().toString()), 1, Integer::sum);
+    }
+    assertThat(counts).hasSize(4);
+    counts.values().forEach(count -> assertThat(count).isBetween(1500, 3500));
+  }
+
+  @Test
+  public void testAddingANodeMovesAFractionOfTheKeys() {
+    HashRing<String> before = new HashRing<>(nodes(4), 160);
+    HashRing<String> after = new HashRing<>(nodes(5), 160);
+    int moved = 0;
+    for (int i = 0; i < 10000; i++) {
+      String key = UUID.randomUUID().toString();
+      String owner = after.get(key);
+      if (!owner.equals(before.get(key))) {
+        // Keys only move to the new node
+        assertThat(owner).isEqualTo("node-4");
+        moved++;
+      }
+    }
+    // About 1/5 of the keys
+    assertThat(moved).isBetween(1000, 3000);
+  }
+}
@@ -17,17 +17,24 @@
 package io.vertx.ext.discovery.backend;
 
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
 import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.RecordCursor;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
 import org.junit.*;
 import redis.embedded.RedisServer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.jayway.awaitility.Awaitility.await;
@@ -163,4 +170,509 @@ public class RedisBackendTest {
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testAtomicRemovalAndConditionalUpdate() {
+    RedisBackend backend = new RedisBackend();
+    backend.init(vertx, new JsonObject().put("key", "atomic-records"));
+
+    AtomicReference<List<Record>> stored = new AtomicReference<>();
+    backend.storeAll(Arrays.asList(new Record().setName("my-service-1"), new Record().setName("my-service-2"),
+        new Record().setName("my-service-3")), ar -> stored.set(ar.result()));
+    await().untilAtomic(stored, not(nullValue()));
+    Record record = stored.get().get(0);
+
+    // The removal returns the removed record
+    AtomicReference<Record> removed = new AtomicReference<>();
+    backend.remove(record.getRegistration(), ar -> removed.set(ar.result()));
+    await().untilAtomic(removed, not(nullValue()));
+    assertThat(removed.get().getName()).isEqualTo("my-service-1");
+
+    // The record cannot be removed twice, nor be registered again by an update
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    backend.remove(record.getRegistration(), ar -> failure.set(ar.cause()));
+    await().untilAtomic(failure, not(nullValue()));
+    assertThat(failure.get().getMessage()).contains("not found");
+
+    failure.set(null);
+    backend.update(record.setStatus(Status.DOWN), ar -> failure.set(ar.cause()));
+    await().untilAtomic(failure, not(nullValue()));
+    AtomicBoolean completed = new AtomicBoolean();
+    AtomicReference<Record> retrieved = new AtomicReference<>(record);
+    backend.getRecord(record.getRegistration(), ar -> {
+      retrieved.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    assertThat(retrieved.get()).isNull();
+
+    // Existing records are updated
+    completed.set(false);
+    backend.update(stored.get().get(1).setStatus(Status.OUT_OF_SERVICE), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+
+    // Unknown ids are ignored by the bulk removal
+    AtomicReference<List<Record>> removedRecords = new AtomicReference<>();
+    backend.removeAll(Arrays.asList(record.getRegistration(), stored.get().get(1).getRegistration(),
+        stored.get().get(2).getRegistration()), ar -> removedRecords.set(ar.result()));
+    await().untilAtomic(removedRecords, not(nullValue()));
+    assertThat(removedRecords.get()).hasSize(2);
+    assertThat(removedRecords.get().get(0).getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    assertThat(removedRecords.get().get(1).getName()).isEqualTo("my-service-3");
+  }
+
+  @Test
+  public void testBulkOperationsInBatches() {
+    RedisBackend backend = new RedisBackend();
+    backend.init(vertx, new JsonObject().put("key", "batched-records").put("batch-size", 2));
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      records.add(new Record().setName("my-service-" + i).setStatus(Status.UP));
+    }
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.storeAll(records, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(5);
+
+    records.forEach(record -> record.setStatus(Status.OUT_OF_SERVICE));
+    result.set(null);
+    backend.updateAll(records, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(5);
+
+    result.set(null);
+    backend.getRecords(ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(5);
+    result.get().forEach(record -> assertThat(record.getStatus()).isEqualTo(Status.OUT_OF_SERVICE));
+
+    List<String> uuids = new ArrayList<>();
+    records.forEach(record -> uuids.add(record.getRegistration()));
+    result.set(null);
+    backend.removeAll(uuids, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    // The removed records are returned in the order of the ids
+    for (int i = 0; i < 5; i++) {
+      assertThat(result.get().get(i).getName()).isEqualTo("my-service-" + i);
+    }
+  }
+
+  @Test
+  public void testBulkUpdateDoesNotRegisterRemovedRecords() {
+    checkBulkUpdateOfRemovedRecords(new JsonObject().put("key", "updated-records").put("batch-size", 2));
+    checkBulkUpdateOfRemovedRecords(new JsonObject().put("key", "updated-keys").put("layout", "keys"));
+  }
+
+  private void checkBulkUpdateOfRemovedRecords(JsonObject configuration) {
+    RedisBackend backend = new RedisBackend();
+    backend.init(vertx, configuration);
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      records.add(new Record().setName("my-service-" + i).setStatus(Status.UP));
+    }
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.storeAll(records, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+
+    AtomicBoolean completed = new AtomicBoolean();
+    backend.remove(records.get(2), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+
+    records.forEach(record -> record.setStatus(Status.OUT_OF_SERVICE));
+    result.set(null);
+    backend.updateAll(records, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    // The removed record is not part of the result, and is not registered again
+    assertThat(result.get()).hasSize(4);
+    assertThat(result.get()).doesNotContain(records.get(2));
+
+    AtomicReference<Record> retrieved = new AtomicReference<>(records.get(2));
+    completed.set(false);
+    backend.getRecord(records.get(2).getRegistration(), ar -> {
+      retrieved.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    assertThat(retrieved.get()).isNull();
+
+    List<String> uuids = new ArrayList<>();
+    records.forEach(record -> uuids.add(record.getRegistration()));
+    result.set(null);
+    backend.removeAll(uuids, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(4);
+  }
+
+  @Test
+  public void testScanReadMode() {
+    RedisBackend backend = new RedisBackend();
+    backend.init(vertx, new JsonObject().put("key", "scanned-records").put("read-mode", "scan").put("scan-count", 2));
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(new Record().setName("my-service-" + i).setStatus(i % 2 == 0 ? Status.UP : Status.OUT_OF_SERVICE)
+          .setMetadata(new JsonObject().put("index", i)));
+    }
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.storeAll(records, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+
+    result.set(null);
+    backend.getRecords(ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(10);
+
+    result.set(null);
+    backend.getRecords(new JsonObject().put("name", "*"), false, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(5);
+
+    AtomicReference<Record> found = new AtomicReference<>();
+    backend.findRecord(record -> record.getMetadata().getInteger("index") == 7, true, ar -> found.set(ar.result()));
+    await().untilAtomic(found, not(nullValue()));
+    assertThat(found.get().getName()).isEqualTo("my-service-7");
+
+    AtomicBoolean completed = new AtomicBoolean();
+    found.set(new Record());
+    backend.findRecord(record -> record.getMetadata().getInteger("index") == 7, false, ar -> {
+      found.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    assertThat(found.get()).isNull();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidScanCount() {
+    new RedisBackend().init(vertx, new JsonObject().put("read-mode", "scan").put("scan-count", 0));
+  }
+
+  @Test
+  public void testKeysLayout() {
+    RedisBackend backend = new RedisBackend();
+    backend.init(vertx, new JsonObject().put("key", "indexed-records").put("layout", "keys")
+        .put("indexed-metadata", new JsonArray().add("zone")));
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(new Record().setName("my-service-" + (i % 5)).setType(i < 5 ? "http-endpoint" : "message-source")
+          .setStatus(Status.UP).setMetadata(new JsonObject().put("zone", i % 2 == 0 ? "EU" : "US").put("index", i)));
+    }
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.storeAll(records, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+
+    assertThat(lookup(backend, new JsonObject())).hasSize(10);
+    assertThat(lookup(backend, new JsonObject().put("name", "MY-SERVICE-1"))).hasSize(2);
+    assertThat(lookup(backend, new JsonObject().put("type", "http-endpoint").put("zone", "eu"))).hasSize(3);
+    // Not indexed, evaluated on the returned records
+    assertThat(lookup(backend, new JsonObject().put("zone", "us").put("index", 3))).hasSize(1);
+    assertThat(lookup(backend, new JsonObject().put("registration", records.get(4).getRegistration())))
+        .hasSize(1);
+
+    // The indexes follow the updates
+    AtomicBoolean completed = new AtomicBoolean();
+    backend.update(records.get(0).setStatus(Status.OUT_OF_SERVICE), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    assertThat(lookup(backend, new JsonObject().put("name", "my-service-0"))).hasSize(1);
+    assertThat(lookup(backend, new JsonObject().put("status", "out_of_service"))).isEmpty();
+
+    AtomicReference<Record> found = new AtomicReference<>();
+    backend.findRecord(record -> record.getMetadata().getInteger("index") == 9, false, ar -> found.set(ar.result()));
+    await().untilAtomic(found, not(nullValue()));
+    assertThat(found.get().getName()).isEqualTo("my-service-4");
+
+    // And the removals
+    AtomicReference<Record> removed = new AtomicReference<>();
+    backend.remove(records.get(1).getRegistration(), ar -> removed.set(ar.result()));
+    await().untilAtomic(removed, not(nullValue()));
+    assertThat(lookup(backend, new JsonObject().put("name", "my-service-1"))).hasSize(1);
+
+    List<String> uuids = new ArrayList<>();
+    records.forEach(record -> uuids.add(record.getRegistration()));
+    result.set(null);
+    backend.removeAll(uuids, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    assertThat(result.get()).hasSize(9);
+    assertThat(lookup(backend, new JsonObject())).isEmpty();
+  }
+
+  private List<Record> lookup(RedisBackend backend, JsonObject filter) {
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.getRecords(filter, false, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    return result.get();
+  }
+
+  @Test
+  public void testCache() {
+    RedisBackend writer = new RedisBackend();
+    writer.init(vertx, new JsonObject().put("key", "cached-records"));
+    RedisBackend reader = new RedisBackend();
+    reader.init(vertx, new JsonObject().put("key", "cached-records").put("cache", true));
+    await().until(reader::isCacheLoaded);
+
+    AtomicReference<Record> stored = new AtomicReference<>();
+    writer.store(new Record().setName("my-service").setStatus(Status.UP), ar -> stored.set(ar.result()));
+    await().untilAtomic(stored, not(nullValue()));
+    String uuid = stored.get().getRegistration();
+    await().until(() -> name(reader, uuid) != null);
+    assertThat(name(reader, uuid)).isEqualTo("my-service");
+
+    // A modification not notified is not seen, the lookups are served from the cache
+    AtomicBoolean completed = new AtomicBoolean();
+    RedisClient client = RedisClient.create(vertx, new RedisOptions());
+    client.hset("cached-records", uuid, new Record(stored.get()).setName("changed").encode(),
+        ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    assertThat(name(reader, uuid)).isEqualTo("my-service");
+    assertThat(lookupName(reader, new JsonObject().put("name", "my-service"))).isEqualTo("my-service");
+
+    // Notified modifications refresh the cached record
+    completed.set(false);
+    writer.update(stored.get().setName("updated"), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    await().until(() -> "updated".equals(name(reader, uuid)));
+
+    // The removals evict it
+    completed.set(false);
+    writer.remove(uuid, ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    await().until(() -> name(reader, uuid) == null);
+    assertThat(lookupName(reader, new JsonObject())).isNull();
+
+    // The local modifications are applied directly
+    stored.set(null);
+    reader.store(new Record().setName("local").setStatus(Status.UP), ar -> stored.set(ar.result()));
+    await().untilAtomic(stored, not(nullValue()));
+    assertThat(name(reader, stored.get().getRegistration())).isEqualTo("local");
+
+    reader.close();
+    writer.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCacheWithoutRefresh() {
+    new RedisBackend().init(vertx, new JsonObject().put("cache", true).put("publish-changes", false));
+  }
+
+  private String name(RedisBackend backend, String uuid) {
+    AtomicBoolean completed = new AtomicBoolean();
+    AtomicReference<Record> record = new AtomicReference<>();
+    backend.getRecord(uuid, ar -> {
+      record.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    return record.get() == null ? null : record.get().getName();
+  }
+
+  private int count(RedisBackend backend) {
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    backend.getRecords(ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    return records.get().size();
+  }
+
+  private String lookupName(RedisBackend backend, JsonObject filter) {
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    backend.getRecords(filter, false, ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    return records.get().isEmpty() ? null : records.get().get(0).getName();
+  }
+
+  @Test
+  public void testSharding() throws Exception {
+    for (int port : Arrays.asList(6380, 6381)) {
+      RedisServer shard = new RedisServer(port);
+      shard.start();
+      instances.put(port, shard);
+    }
+    try {
+      JsonObject shardA = new JsonObject().put("name", "a").put("port", 6380);
+      JsonObject shardB = new JsonObject().put("name", "b").put("port", 6381);
+      RedisBackend single = new RedisBackend();
+      single.init(vertx, new JsonObject().put("key", "sharded-records").put("shards", new JsonArray().add(shardA)));
+
+      List<Record> records = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        records.add(new Record().setName("my-service-" + i).setStatus(Status.UP));
+      }
+      AtomicReference<List<Record>> result = new AtomicReference<>();
+      single.storeAll(records, ar -> result.set(ar.result()));
+      await().untilAtomic(result, not(nullValue()));
+
+      // Add a shard, the records are still found until moved
+      RedisBackend sharded = new RedisBackend();
+      sharded.init(vertx, new JsonObject().put("key", "sharded-records").put("rebalance", false)
+          .put("shards", new JsonArray().add(shardA).add(shardB)));
+      result.set(null);
+      sharded.getRecords(ar -> result.set(ar.result()));
+      await().untilAtomic(result, not(nullValue()));
+      assertThat(result.get()).hasSize(50);
+
+      // The operations on a single record fall back to the previous shard
+      for (Record record : records) {
+        AtomicReference<Record> found = new AtomicReference<>();
+        sharded.getRecord(record.getRegistration(), ar -> found.set(ar.result()));
+        await().untilAtomic(found, not(nullValue()));
+        AtomicBoolean updated = new AtomicBoolean();
+        sharded.update(found.get().setMetadata(new JsonObject().put("updated", true)),
+            ar -> updated.set(ar.succeeded()));
+        await().untilAtomic(updated, is(true));
+      }
+
+      AtomicReference<Integer> moved = new AtomicReference<>();
+      sharded.rebalance(ar -> moved.set(ar.result()));
+      await().untilAtomic(moved, not(nullValue()));
+      assertThat(moved.get()).isBetween(1, 49);
+
+      // Each record is found on its shard
+      for (Record record : records) {
+        AtomicReference<Record> found = new AtomicReference<>();
+        sharded.getRecord(record.getRegistration(), ar -> found.set(ar.result()));
+        await().untilAtomic(found, not(nullValue()));
+        assertThat(found.get().getName()).isEqualTo(record.getName());
+      }
+      RedisBackend onB = new RedisBackend();
+      onB.init(vertx, new JsonObject().put("key", "sharded-records").put("port", 6381));
+      result.set(null);
+      onB.getRecords(ar -> result.set(ar.result()));
+      await().untilAtomic(result, not(nullValue()));
+      assertThat(result.get()).hasSize(moved.get());
+      result.get().forEach(record -> assertThat(record.getMetadata().getBoolean("updated")).isTrue());
+
+      // Scatter-gather
+      result.set(null);
+      sharded.getRecords(new JsonObject().put("name", "my-service-42"), false, ar -> result.set(ar.result()));
+      await().untilAtomic(result, not(nullValue()));
+      assertThat(result.get()).hasSize(1);
+
+      List<Record> fetched = new ArrayList<>();
+      RecordCursor cursor = sharded.cursor(new JsonObject(), false);
+      AtomicBoolean done = new AtomicBoolean();
+      while (!done.get()) {
+        AtomicReference<List<Record>> batch = new AtomicReference<>();
+        cursor.next(7, ar -> batch.set(ar.result()));
+        await().untilAtomic(batch, not(nullValue()));
+        fetched.addAll(batch.get());
+        done.set(batch.get().isEmpty());
+      }
+      assertThat(fetched).hasSize(50);
+
+      List<String> uuids = new ArrayList<>();
+      records.forEach(record -> uuids.add(record.getRegistration()));
+      result.set(null);
+      sharded.removeAll(uuids, ar -> result.set(ar.result()));
+      await().untilAtomic(result, not(nullValue()));
+      assertThat(result.get()).hasSize(50);
+
+      // Records added on the first shard only are moved when a sharded backend starts
+      records.forEach(record -> record.setRegistration(null));
+      result.set(null);
+      single.storeAll(records, ar -> result.set(ar.result()));
+      await().untilAtomic(result, not(nullValue()));
+      RedisBackend restarted = new RedisBackend();
+      restarted.init(vertx, new JsonObject().put("key", "sharded-records")
+          .put("shards", new JsonArray().add(shardA).add(shardB)));
+      await().until(() -> count(onB) > 0);
+    } finally {
+      instances.values().forEach(RedisServer::stop);
+      instances.clear();
+    }
+  }
+
+  @Test
+  public void testFilteredLookup() {
+    backend.init(vertx, new JsonObject().put("key", "filtered-records"));
+
+    Record record1 = new Record().setName("service-a").setType("http-endpoint").setStatus(Status.UP)
+        .setMetadata(new JsonObject().put("zone", "eu").put("weight", 2));
+    Record record2 = new Record().setName("service-a").setType("message-source").setStatus(Status.UP)
+        .setMetadata(new JsonObject().put("zone", "us"));
+    Record record3 = new Record().setName("service-b").setType("http-endpoint").setStatus(Status.OUT_OF_SERVICE)
+        .setMetadata(new JsonObject().put("zone", "eu"));
+
+    AtomicBoolean completed = new AtomicBoolean();
+    backend.store(record1, ar -> backend.store(record2, ar2 -> backend.store(record3, ar3 ->
+        completed.set(ar3.succeeded()))));
+    await().untilAtomic(completed, is(true));
+
+    assertThat(lookup(new JsonObject().put("name", "SERVICE-A"), false)).hasSize(2);
+    assertThat(lookup(new JsonObject().put("type", "http-endpoint"), false))
+        .extracting(Record::getRegistration).containsExactly(record1.getRegistration());
+    assertThat(lookup(new JsonObject().put("type", "http-endpoint"), true)).hasSize(2);
+    assertThat(lookup(new JsonObject().put("weight", 2), false))
+        .extracting(Record::getRegistration).containsExactly(record1.getRegistration());
+    assertThat(lookup(new JsonObject().put("zone", "*"), true)).hasSize(3);
+    assertThat(lookup(new JsonObject().put("zone", "eu").put("status", "out_of_service"), true))
+        .extracting(Record::getRegistration).containsExactly(record3.getRegistration());
+    assertThat(lookup(new JsonObject().put("name", "missing"), true)).isEmpty();
+    assertThat(lookup(null, false)).hasSize(2);
+
+    AtomicReference<Record> found = new AtomicReference<>();
+    backend.findRecord(RecordFilter.compile(new JsonObject().put("zone", "EU")), true, ar -> found.set(ar.result()));
+    await().untilAtomic(found, not(nullValue()));
+    assertThat(found.get().getMetadata().getString("zone")).isEqualTo("eu");
+    found.set(null);
+    backend.findRecord(record -> "us".equals(record.getMetadata().getString("zone")), false,
+        ar -> found.set(ar.result()));
+    await().untilAtomic(found, not(nullValue()));
+    assertThat(found.get().getRegistration()).isEqualTo(record2.getRegistration());
+    AtomicBoolean missed = new AtomicBoolean();
+    backend.findRecord(record -> "service-b".equals(record.getName()), false,
+        ar -> missed.set(ar.succeeded() && ar.result() == null));
+    await().untilAtomic(missed, is(true));
+
+    for (Record record : Arrays.asList(record1, record2, record3)) {
+      completed.set(false);
+      backend.remove(record, ar -> completed.set(ar.succeeded()));
+      await().untilAtomic(completed, is(true));
+    }
+  }
+
+  @Test
+  public void testCursor() {
+    // Scans more entries than the batch size, the exceeding records are kept for the next batches
+    backend.init(vertx, new JsonObject().put("key", "scanned-records").put("scan-count", 20));
+
+    List<Record> records = new ArrayList<>();
+    AtomicInteger stored = new AtomicInteger();
+    for (int i = 0; i < 50; i++) {
+      Record record = new Record().setName("record-" + i).setStatus(i % 5 == 0 ? Status.OUT_OF_SERVICE : Status.UP);
+      records.add(record);
+      backend.store(record, ar -> stored.incrementAndGet());
+    }
+    await().untilAtomic(stored, is(50));
+
+    RecordCursor cursor = backend.cursor(null, false);
+    List<Record> scanned = new ArrayList<>();
+    AtomicBoolean completed = new AtomicBoolean();
+    while (!completed.get()) {
+      AtomicReference<List<Record>> batch = new AtomicReference<>();
+      cursor.next(7, ar -> batch.set(ar.result()));
+      await().untilAtomic(batch, not(nullValue()));
+      assertThat(batch.get().size()).isLessThanOrEqualTo(7);
+      scanned.addAll(batch.get());
+      completed.set(batch.get().isEmpty());
+    }
+    cursor.close();
+    assertThat(scanned).hasSize(40);
+    assertThat(scanned.stream().map(Record::getRegistration).distinct().count()).isEqualTo(40);
+
+    for (Record record : records) {
+      completed.set(false);
+      backend.remove(record, ar -> completed.set(ar.succeeded()));
+      await().untilAtomic(completed, is(true));
+    }
+  }
+
+  private List<Record> lookup(JsonObject filter, boolean includeOutOfService) {
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.getRecords(filter, includeOutOfService, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    return result.get();
+  }
+
+}
@@ -31,7 +31,9 @@ import io.vertx.ext.discovery.spi.ServiceType;
 import io.vertx.ext.discovery.types.HttpLocation;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A discovery bridge importing services from Consul.
@@ -123,6 +125,7 @@ public class ConsulDiscoveryBridge implements DiscoveryBridge {
 
   private void retrieveIndividualServices(JsonObject jsonObject, Future<Void> completed) {
     List<String> ids = new ArrayList<>();
+    List<ImportedConsulService> toPublish = new ArrayList<>();
 
     List<Future> futures = new ArrayList<>();
     jsonObject.fieldNames().stream().forEach(name -> {
@@ -139,7 +142,7 @@ public class ConsulDiscoveryBridge implements DiscoveryBridge {
           .handler(response -> {
             response.exceptionHandler(error)
                 .bodyHandler(buffer -> {
-                  String id = importService(buffer.toJsonArray(), future);
+                  String id = importService(buffer.toJsonArray(), toPublish, future);
                   if (id != null) {
                     ids.add(id);
                   }
@@ -153,24 +156,93 @@ public class ConsulDiscoveryBridge implements DiscoveryBridge {
     CompositeFuture.all(futures).setHandler(ar -> {
       if (ar.failed()) {
         LOGGER.error("Fail to retrieve the services from consul", ar.cause());
+        // Publish the services that have been retrieved anyway
+        publish(toPublish, null);
+        completed.fail(ar.cause());
       } else {
         List<ImportedConsulService> toRemove = new ArrayList<>();
-        imports.stream().filter(svc -> !ids.contains(svc.id())).forEach(svc -> {
-          toRemove.add(svc);
-          svc.unregister(discovery, null);
-        });
+        imports.stream().filter(svc -> !ids.contains(svc.id())).forEach(toRemove::add);
         imports.removeAll(toRemove);
+        unpublish(toRemove, null);
+        publish(toPublish, completed);
       }
+    });
+  }
 
-      if (ar.succeeded()) {
-        completed.complete();
+  /**
+   * Publishes the records of the given imported services at once, using a single backend operation when possible.
+   *
+   * @param services   the imported services
+   * @param completion the completion future, may be {@code null}
+   */
+  private void publish(List<ImportedConsulService> services, Future<Void> completion) {
+    if (services.isEmpty()) {
+      if (completion != null) {
+        completion.complete();
+      }
+      return;
+    }
+    List<Record> records = new ArrayList<>();
+    services.forEach(svc -> records.add(svc.record()));
+    discovery.publishAll(records, ar -> {
+      if (ar.failed()) {
+        LOGGER.error("Fail to import the services from consul", ar.cause());
+        // The services will be imported during the next scan
+        imports.removeAll(services);
+        if (completion != null) {
+          completion.fail(ar.cause());
+        }
       } else {
-        completed.fail(ar.cause());
+        // The services that could not be published will be imported during the next scan. The published records are
+        // identified by their registration id, as the result may contain other instances than the passed records.
+        Set<String> published = new HashSet<>();
+        ar.result().forEach(record -> published.add(record.getRegistration()));
+        services.stream()
+            .filter(svc -> svc.record().getRegistration() == null
+                || !published.contains(svc.record().getRegistration()))
+            .forEach(imports::remove);
+        if (completion != null) {
+          completion.complete();
+        }
+      }
+    });
+  }
+
+  /**
+   * Un-publishes the records of the given imported services at once, using a single backend operation when possible.
+   *
+   * @param services   the imported services
+   * @param completion the completion future, may be {@code null}
+   */
+  private void unpublish(List<ImportedConsulService> services, Future<Void> completion) {
+    List<String> registrations = new ArrayList<>();
+    services.stream()
+        .filter(svc -> svc.record().getRegistration() != null)
+        .forEach(svc -> {
+          LOGGER.info("Unregistering " + svc.name());
+          registrations.add(svc.record().getRegistration());
+        });
+    if (registrations.isEmpty()) {
+      if (completion != null) {
+        completion.complete();
+      }
+      return;
+    }
+    discovery.unpublishAll(registrations, ar -> {
+      if (ar.succeeded()) {
+        services.forEach(svc -> svc.record().setRegistration(null));
+      }
+      if (completion != null) {
+        if (ar.succeeded()) {
+          completion.complete();
+        } else {
+          completion.fail(ar.cause());
+        }
       }
     });
   }
 
-  private String importService(JsonArray array, Future<Void> future) {
+  private String importService(JsonArray array, List<ImportedConsulService> toPublish, Future<Void> future) {
     if (array.isEmpty()) {
       Future.failedFuture("no service with the given name");
       return null;
@@ -224,12 +296,14 @@ public class ConsulDiscoveryBridge implements DiscoveryBridge {
 
       // the id must be unique, so check if the service has already being imported
       ImportedConsulService imported = getImportedServiceById(id);
-      if (imported != null) {
-        future.complete();
-      } else {
+      if (imported == null) {
         LOGGER.info("Importing service " + record.getName() + " from consul");
-        imports.add(new ImportedConsulService(name, id, record).register(discovery, future));
+        // The service is published with the other imported services once they have all been retrieved
+        imported = new ImportedConsulService(name, id, record);
+        imports.add(imported);
+        toPublish.add(imported);
       }
+      future.complete();
 
       return id;
     }
@@ -251,26 +325,6 @@ public class ConsulDiscoveryBridge implements DiscoveryBridge {
       vertx.cancelTimer(scanTask);
     }
     // Remove all the services that has been imported
-    List<Future> list = new ArrayList<>();
-    imports.stream().forEach(imported -> {
-      Future<Void> fut = Future.future();
-      fut.setHandler(ar -> {
-        LOGGER.info("Unregistering " + imported.name());
-        if (ar.succeeded()) {
-          list.add(Future.succeededFuture());
-        } else {
-          list.add(Future.failedFuture(ar.cause()));
-        }
-      });
-      imported.unregister(discovery, fut);
-    });
-
-    CompositeFuture.all(list).setHandler(ar -> {
-      if (ar.succeeded()) {
-        future.complete();
-      } else {
-        future.fail(ar.cause());
-      }
-    });
+    unpublish(new ArrayList<>(imports), future);
   }
 }
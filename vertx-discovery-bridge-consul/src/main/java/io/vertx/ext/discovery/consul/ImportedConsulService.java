@@ -98,6 +98,13 @@ public class ImportedConsulService {
     }
   }
 
+  /**
+   * @return the record, with its registration id once registered
+   */
+  public Record record() {
+    return record;
+  }
+
   /**
    * @return the id
    */
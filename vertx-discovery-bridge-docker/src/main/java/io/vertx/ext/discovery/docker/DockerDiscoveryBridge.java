@@ -153,23 +153,23 @@ public class DockerDiscoveryBridge implements DiscoveryBridge {
           // Detect lost containers
           services.stream()
               .filter(service -> isNotRunning(service.id(), running))
-              .forEach(service -> {
-                unpublish(service);
-                toRemove.add(service);
-              });
+              .forEach(toRemove::add);
           services.removeAll(toRemove);
+          unpublish(toRemove);
 
           if (running != null) {
             // Detect new containers
+            List<DockerService> toAdd = new ArrayList<>();
             running.stream()
                 .filter(container -> !isKnown(container))
                 .forEach(container -> {
                   DockerService service = new DockerService(container, host);
                   if (!service.records().isEmpty()) {
-                    services.add(service);
-                    publish(service);
+                    toAdd.add(service);
                   }
                 });
+            services.addAll(toAdd);
+            publish(toAdd);
           }
 
           if (completion != null) {
@@ -179,28 +179,51 @@ public class DockerDiscoveryBridge implements DiscoveryBridge {
     );
   }
 
-  private void publish(DockerService service) {
-    for (Record record : service.records()) {
-      discovery.publish(record, ar -> {
-        if (ar.succeeded()) {
-          record.setRegistration(ar.result().getRegistration());
-          LOGGER.info("Service from container " + service.id() + " on location "
-              + record.getLocation() + " has been published");
-        } else {
-          LOGGER.error("Service from container " + service.id() + " on location "
-              + record.getLocation() + " could not have been published", ar.cause());
-        }
-      });
+  private void publish(List<DockerService> services) {
+    List<Record> records = new ArrayList<>();
+    services.forEach(service -> records.addAll(service.records()));
+    if (records.isEmpty()) {
+      return;
     }
+    // Publish all the records at once, using a single backend operation when possible
+    discovery.publishAll(records, ar -> {
+      if (ar.failed()) {
+        LOGGER.error("Services from containers " + ids(services) + " could not have been published", ar.cause());
+        return;
+      }
+      for (Record record : ar.result()) {
+        LOGGER.info("Service from container " + record.getMetadata().getString("docker.id") + " on location "
+            + record.getLocation() + " has been published");
+      }
+      if (ar.result().size() < records.size()) {
+        LOGGER.error((records.size() - ar.result().size()) + " services from containers " + ids(services)
+            + " could not have been published");
+      }
+    });
   }
 
-  private void unpublish(DockerService service) {
-    for (Record record : service.records()) {
-      discovery.unpublish(record.getRegistration(), ar -> {
-        LOGGER.info("Service from container " + service.id()
-            + " on location " + record.getLocation() + " has been unpublished");
-      });
+  private void unpublish(List<DockerService> services) {
+    List<String> registrations = new ArrayList<>();
+    services.forEach(service -> service.records().stream()
+        .filter(record -> record.getRegistration() != null)
+        .forEach(record -> registrations.add(record.getRegistration())));
+    if (registrations.isEmpty()) {
+      return;
     }
+    discovery.unpublishAll(registrations, ar -> {
+      for (DockerService service : services) {
+        for (Record record : service.records()) {
+          LOGGER.info("Service from container " + service.id()
+              + " on location " + record.getLocation() + " has been unpublished");
+        }
+      }
+    });
+  }
+
+  private static List<String> ids(List<DockerService> services) {
+    List<String> ids = new ArrayList<>();
+    services.forEach(service -> ids.add(service.id()));
+    return ids;
   }
 
   private boolean isKnown(Container container) {
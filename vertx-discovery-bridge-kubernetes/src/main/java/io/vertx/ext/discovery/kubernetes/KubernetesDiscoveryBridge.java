@@ -32,6 +32,7 @@ import io.vertx.ext.discovery.spi.ServiceType;
 import io.vertx.ext.discovery.types.HttpEndpoint;
 import io.vertx.ext.discovery.types.HttpLocation;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -100,12 +101,14 @@ public class KubernetesDiscoveryBridge implements Watcher<Service>, DiscoveryBri
             synchronized (KubernetesDiscoveryBridge.this) {
               watcher = kubernetesClient.services().inNamespace(namespace)
                   .watch(this);
+              List<Record> imported = new ArrayList<>();
               for (Service service : list.getItems()) {
                 Record record = createRecord(service);
                 if (addRecordIfNotContained(record)) {
-                  publishRecord(record);
+                  imported.add(record);
                 }
               }
+              publishRecords(imported);
             }
             future.complete(kubernetesClient);
           } catch (KubernetesClientException e) {
@@ -140,6 +143,24 @@ public class KubernetesDiscoveryBridge implements Watcher<Service>, DiscoveryBri
     });
   }
 
+  private void publishRecords(List<Record> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    // Publish all the services at once, using a single backend operation when possible
+    discovery.publishAll(records, ar -> {
+      if (ar.succeeded()) {
+        for (Record record : ar.result()) {
+          LOGGER.info("Kubernetes service published in the vert.x service registry: "
+              + record.toJson());
+        }
+      } else {
+        LOGGER.error("Kubernetes services not published in the vert.x service registry",
+            ar.cause());
+      }
+    });
+  }
+
   private synchronized boolean addRecordIfNotContained(Record record) {
     for (Record rec : records) {
       if (areTheSameService(rec, record)) {
@@ -315,6 +336,16 @@ public class KubernetesDiscoveryBridge implements Watcher<Service>, DiscoveryBri
   @Override
   public void onClose(KubernetesClientException e) {
     // rather bad, un-publish all the services
-    records.forEach(this::unpublishRecord);
+    List<String> registrations = new ArrayList<>();
+    records.stream()
+        .filter(record -> record.getRegistration() != null)
+        .forEach(record -> registrations.add(record.getRegistration()));
+    discovery.unpublishAll(registrations, ar -> {
+      if (ar.failed()) {
+        LOGGER.error("Cannot unregister kubernetes services", ar.cause());
+      } else {
+        LOGGER.info("Kubernetes services unregistered from the vert.x registry");
+      }
+    });
   }
 }
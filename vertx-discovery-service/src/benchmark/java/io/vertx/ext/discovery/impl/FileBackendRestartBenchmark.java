@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed by the {@link FileDiscoveryBackend} to rebuild its registry on startup, from a snapshot
+ * or from the journal only.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileBackendRestartBenchmark {
+
+  @Param({"true", "false"})
+  private boolean compacted;
+
+  @Param({"100000"})
+  private int size;
+
+  private File directory;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("vertx-discovery-benchmark").toFile();
+    Vertx vertx = Vertx.vertx();
+    FileDiscoveryBackend backend = new FileDiscoveryBackend();
+    // With a threshold of 0, the journal is compacted into a snapshot after the first write
+    backend.init(vertx, config().put("compaction-threshold", compacted ? 0 : Long.MAX_VALUE));
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      records.add(new Record()
+          .setName("service-" + i)
+          .setType("http-endpoint")
+          .setStatus(Status.UP)
+          .setLocation(new JsonObject().put("endpoint", "http://host-" + i + ".acme.org:8080/api"))
+          .setMetadata(new JsonObject().put("zone", "eu-west-" + (i % 3))));
+    }
+    CompletableFuture<Void> stored = new CompletableFuture<>();
+    backend.storeAll(records, ar -> {
+      if (ar.succeeded()) {
+        stored.complete(null);
+      } else {
+        stored.completeExceptionally(ar.cause());
+      }
+    });
+    stored.get();
+    backend.close();
+    close(vertx);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(directory.toPath());
+  }
+
+  @Benchmark
+  public int restart() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    FileDiscoveryBackend backend = new FileDiscoveryBackend();
+    try {
+      backend.init(vertx, config());
+      // Completed once the registry has been restored
+      CompletableFuture<Integer> count = new CompletableFuture<>();
+      backend.getRecords(ar -> count.complete(ar.result().size()));
+      return count.get();
+    } finally {
+      backend.close();
+      close(vertx);
+    }
+  }
+
+  private JsonObject config() {
+    return new JsonObject().put("path", directory.getAbsolutePath()).put("compaction-threshold", Long.MAX_VALUE);
+  }
+
+  private static void close(Vertx vertx) throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(FileBackendRestartBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link RecordStorageCodec}s of the default backend: latency of
+ * {@link DefaultDiscoveryBackend#getRecords(io.vertx.core.Handler)} (JMH), and heap footprint of the stored records
+ * (printed by {@link #main(String[])} before running the benchmarks).
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RecordStorageBenchmark {
+
+  @Param({"json", "binary"})
+  private String codec;
+
+  @Param({"10000"})
+  private int size;
+
+  private Vertx vertx;
+  private DefaultDiscoveryBackend backend;
+
+  @Setup
+  public void setUp() {
+    vertx = Vertx.vertx();
+    backend = new DefaultDiscoveryBackend();
+    backend.init(vertx, new JsonObject().put("storage-codec", codec));
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      records.add(record(i));
+    }
+    // The registry is local, so the operation completes synchronously
+    backend.storeAll(records, ar -> {
+      if (ar.failed()) {
+        throw new IllegalStateException(ar.cause());
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public void getRecords(Blackhole blackhole) {
+    backend.getRecords(ar -> blackhole.consume(ar.result()));
+  }
+
+  private static Record record(int i) {
+    return new Record()
+        .setName("service-" + i)
+        .setType("http-endpoint")
+        .setStatus(Status.UP)
+        .setLocation(new JsonObject()
+            .put("endpoint", "http://host-" + i + ".acme.org:8080/api")
+            .put("host", "host-" + i + ".acme.org")
+            .put("port", 8080)
+            .put("root", "/api")
+            .put("ssl", false))
+        .setMetadata(new JsonObject().put("zone", "eu-west-" + (i % 3)).put("version", "1.0." + i));
+  }
+
+  /**
+   * Measures the heap retained by the stored values of each codec.
+   */
+  private static void footprint(String name, int size) {
+    RecordStorageCodec<?> codec = RecordStorageCodec.forName(name);
+    Object[] values = new Object[size];
+    long before = usedMemory();
+    for (int i = 0; i < size; i++) {
+      values[i] = codec.encode(record(i).setRegistration(Integer.toString(i)));
+    }
+    long after = usedMemory();
+    System.out.println(name + " codec: " + (after - before) / size + " bytes per record (" + values.length
+        + " records)");
+  }
+
+  private static long usedMemory() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    footprint("json", 100000);
+    footprint("binary", 100000);
+    new Runner(new OptionsBuilder().include(RecordStorageBenchmark.class.getSimpleName()).build()).run();
+  }
+}
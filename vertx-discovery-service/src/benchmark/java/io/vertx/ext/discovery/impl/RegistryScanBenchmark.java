@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares two full scans of the registry: reading the entries of a vert.x local map key by key through the
+ * {@link LocalMap} API, and the single pass over a snapshot of a {@link SnapshotMap} ({@link SnapshotMap#copy()}), as
+ * done by {@link AsyncMap#getAll(io.vertx.core.Handler)}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RegistryScanBenchmark {
+
+  @Param({"10000", "100000"})
+  private int size;
+
+  private Vertx vertx;
+  private LocalMap<String, String> map;
+  private SnapshotMap<String, String> snapshotMap;
+
+  @Setup
+  public void setUp() {
+    vertx = Vertx.vertx();
+    map = vertx.sharedData().getLocalMap("benchmark.local-map");
+    snapshotMap = SnapshotMap.get(vertx, "benchmark.snapshot-map");
+    for (int i = 0; i < size; i++) {
+      String record = "{\"name\":\"service-" + i + "\",\"status\":\"UP\",\"registration\":\"" + i + "\"}";
+      map.put(Integer.toString(i), record);
+      snapshotMap.put(Integer.toString(i), record);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public void keyByKey(Blackhole blackhole) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (String key : map.keySet()) {
+      String value = map.get(key);
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    blackhole.consume(result);
+  }
+
+  @Benchmark
+  public void singlePass(Blackhole blackhole) {
+    blackhole.consume(snapshotMap.copy());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RegistryScanBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the update throughput of the {@link DefaultDiscoveryBackend}, used directly or through the
+ * {@link WriteBehindDiscoveryBackend}. Each invocation updates every record concurrently, and waits for all the
+ * updates to be acknowledged.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@OperationsPerInvocation(WriteBehindBenchmark.SIZE)
+public class WriteBehindBenchmark {
+
+  static final int SIZE = 1000;
+
+  @Param({"direct", "write-behind"})
+  private String mode;
+
+  private Vertx vertx;
+  private DiscoveryBackend backend;
+  private List<Record> records;
+
+  @Setup
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    if ("direct".equals(mode)) {
+      backend = new DefaultDiscoveryBackend();
+    } else {
+      backend = new WriteBehindDiscoveryBackend(new DefaultDiscoveryBackend());
+    }
+    backend.init(vertx, new JsonObject().put("write-behind", new JsonObject()));
+    List<Record> list = new ArrayList<>();
+    for (int i = 0; i < SIZE; i++) {
+      list.add(new Record()
+          .setName("service-" + i)
+          .setType("http-endpoint")
+          .setStatus(Status.UP)
+          .setLocation(new JsonObject().put("endpoint", "http://host-" + i + ".acme.org:8080/api")));
+    }
+    CompletableFuture<List<Record>> stored = new CompletableFuture<>();
+    backend.storeAll(list, ar -> {
+      if (ar.succeeded()) {
+        stored.complete(ar.result());
+      } else {
+        stored.completeExceptionally(ar.cause());
+      }
+    });
+    records = stored.get();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    backend.close();
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get();
+  }
+
+  @Benchmark
+  public void update() throws Exception {
+    CompletableFuture<Void> updated = new CompletableFuture<>();
+    AtomicInteger remaining = new AtomicInteger(records.size());
+    for (Record record : records) {
+      backend.update(record, ar -> {
+        if (ar.failed()) {
+          updated.completeExceptionally(ar.cause());
+        } else if (remaining.decrementAndGet() == 0) {
+          updated.complete(null);
+        }
+      });
+    }
+    updated.get();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(WriteBehindBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -33,9 +33,30 @@ public class DiscoveryOptionsConverter {
     if (json.getValue("backendConfiguration") instanceof JsonObject) {
       obj.setBackendConfiguration(((JsonObject)json.getValue("backendConfiguration")).copy());
     }
+    if (json.getValue("batchAnnounceAddress") instanceof String) {
+      obj.setBatchAnnounceAddress((String)json.getValue("batchAnnounceAddress"));
+    }
+    if (json.getValue("leaseAddress") instanceof String) {
+      obj.setLeaseAddress((String)json.getValue("leaseAddress"));
+    }
+    if (json.getValue("leaseResolution") instanceof Number) {
+      obj.setLeaseResolution(((Number)json.getValue("leaseResolution")).longValue());
+    }
     if (json.getValue("name") instanceof String) {
       obj.setName((String)json.getValue("name"));
     }
+    if (json.getValue("nearCache") instanceof Boolean) {
+      obj.setNearCache((Boolean)json.getValue("nearCache"));
+    }
+    if (json.getValue("nearCacheReconciliationPeriod") instanceof Number) {
+      obj.setNearCacheReconciliationPeriod(((Number)json.getValue("nearCacheReconciliationPeriod")).longValue());
+    }
+    if (json.getValue("recordCodec") instanceof Boolean) {
+      obj.setRecordCodec((Boolean)json.getValue("recordCodec"));
+    }
+    if (json.getValue("removeExpiredRecords") instanceof Boolean) {
+      obj.setRemoveExpiredRecords((Boolean)json.getValue("removeExpiredRecords"));
+    }
     if (json.getValue("usageAddress") instanceof String) {
       obj.setUsageAddress((String)json.getValue("usageAddress"));
     }
@@ -48,9 +69,20 @@ public class DiscoveryOptionsConverter {
     if (obj.getBackendConfiguration() != null) {
       json.put("backendConfiguration", obj.getBackendConfiguration());
     }
+    if (obj.getBatchAnnounceAddress() != null) {
+      json.put("batchAnnounceAddress", obj.getBatchAnnounceAddress());
+    }
+    if (obj.getLeaseAddress() != null) {
+      json.put("leaseAddress", obj.getLeaseAddress());
+    }
+    json.put("leaseResolution", obj.getLeaseResolution());
     if (obj.getName() != null) {
       json.put("name", obj.getName());
     }
+    json.put("nearCache", obj.isNearCache());
+    json.put("nearCacheReconciliationPeriod", obj.getNearCacheReconciliationPeriod());
+    json.put("recordCodec", obj.isRecordCodec());
+    json.put("removeExpiredRecords", obj.isRemoveExpiredRecords());
     if (obj.getUsageAddress() != null) {
       json.put("usageAddress", obj.getUsageAddress());
     }
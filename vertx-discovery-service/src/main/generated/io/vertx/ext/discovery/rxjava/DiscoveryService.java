@@ -168,6 +168,66 @@ public class DiscoveryService {
     return resultHandler;
   }
 
+  /**
+   * Publishes a record with a lease. The record expires unless its lease is renewed (see {@link io.vertx.rxjava.ext.discovery.DiscoveryService#renew})
+   * before the given delay: it is then marked as <code>DOWN</code>, or removed (see
+   * {@link io.vertx.ext.discovery.DiscoveryOptions}), and the change is announced. The lease is tracked by
+   * all the nodes, so the records of a crashed node expire, but it is lost if all the nodes are restarted. The leases
+   * must be enabled using {@link io.vertx.ext.discovery.DiscoveryOptions}, otherwise the publication fails.
+   * @param record the record
+   * @param lease the lease duration in ms, must be strictly positive
+   * @param resultHandler handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to renew the lease, modify and un-register the service.
+   */
+  public void publish(Record record, long lease, Handler<AsyncResult<Record>> resultHandler) { 
+    delegate.publish(record, lease, resultHandler);
+  }
+
+  /**
+   * Publishes a record with a lease. The record expires unless its lease is renewed (see {@link io.vertx.rxjava.ext.discovery.DiscoveryService#renew})
+   * before the given delay: it is then marked as <code>DOWN</code>, or removed (see
+   * {@link io.vertx.ext.discovery.DiscoveryOptions}), and the change is announced. The lease is tracked by
+   * all the nodes, so the records of a crashed node expire, but it is lost if all the nodes are restarted. The leases
+   * must be enabled using {@link io.vertx.ext.discovery.DiscoveryOptions}, otherwise the publication fails.
+   * @param record the record
+   * @param lease the lease duration in ms, must be strictly positive
+   * @return 
+   */
+  public Observable<Record> publishObservable(Record record, long lease) { 
+    io.vertx.rx.java.ObservableFuture<Record> resultHandler = io.vertx.rx.java.RxHelper.observableFuture();
+    publish(record, lease, resultHandler.toHandler());
+    return resultHandler;
+  }
+
+  /**
+   * Renews the lease of a record published with {@link io.vertx.rxjava.ext.discovery.DiscoveryService#publish}, for the same duration. This
+   * operation does not access the backend.
+   * @param id the registration id
+   * @param resultHandler handler called when the operation has completed. It fails if the record has no lease anymore, because it has expired or has been un-published.
+   */
+  public void renew(String id, Handler<AsyncResult<Void>> resultHandler) { 
+    delegate.renew(id, new Handler<AsyncResult<java.lang.Void>>() {
+      public void handle(AsyncResult<java.lang.Void> ar) {
+        if (ar.succeeded()) {
+          resultHandler.handle(io.vertx.core.Future.succeededFuture(ar.result()));
+        } else {
+          resultHandler.handle(io.vertx.core.Future.failedFuture(ar.cause()));
+        }
+      }
+    });
+  }
+
+  /**
+   * Renews the lease of a record published with {@link io.vertx.rxjava.ext.discovery.DiscoveryService#publish}, for the same duration. This
+   * operation does not access the backend.
+   * @param id the registration id
+   * @return 
+   */
+  public Observable<Void> renewObservable(String id) { 
+    io.vertx.rx.java.ObservableFuture<Void> resultHandler = io.vertx.rx.java.RxHelper.observableFuture();
+    renew(id, resultHandler.toHandler());
+    return resultHandler;
+  }
+
   /**
    * Un-publishes a record.
    * @param id the registration id
@@ -149,6 +149,36 @@ public class DiscoveryService {
       }
     } : null);
   }
+  /**
+   * Publishes a record with a lease. The record expires unless its lease is renewed (see {@link io.vertx.ext.discovery.groovy.DiscoveryService#renew})
+   * before the given delay: it is then marked as <code>DOWN</code>, or removed (see
+   * {@link io.vertx.ext.discovery.DiscoveryOptions}), and the change is announced. The lease is tracked by
+   * all the nodes, so the records of a crashed node expire, but it is lost if all the nodes are restarted. The leases
+   * must be enabled using {@link io.vertx.ext.discovery.DiscoveryOptions}, otherwise the publication fails.
+   * @param record the record (see <a href="../../../../../../../cheatsheet/Record.html">Record</a>)
+   * @param lease the lease duration in ms, must be strictly positive
+   * @param resultHandler handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to renew the lease, modify and un-register the service.
+   */
+  public void publish(Map<String, Object> record = [:], long lease, Handler<AsyncResult<Map<String, Object>>> resultHandler) {
+    delegate.publish(record != null ? new io.vertx.ext.discovery.Record(new io.vertx.core.json.JsonObject(record)) : null, lease, resultHandler != null ? new Handler<AsyncResult<io.vertx.ext.discovery.Record>>() {
+      public void handle(AsyncResult<io.vertx.ext.discovery.Record> ar) {
+        if (ar.succeeded()) {
+          resultHandler.handle(io.vertx.core.Future.succeededFuture((Map<String, Object>)InternalHelper.wrapObject(ar.result()?.toJson())));
+        } else {
+          resultHandler.handle(io.vertx.core.Future.failedFuture(ar.cause()));
+        }
+      }
+    } : null);
+  }
+  /**
+   * Renews the lease of a record published with {@link io.vertx.ext.discovery.groovy.DiscoveryService#publish}, for the same duration. This
+   * operation does not access the backend.
+   * @param id the registration id
+   * @param resultHandler handler called when the operation has completed. It fails if the record has no lease anymore, because it has expired or has been un-published.
+   */
+  public void renew(String id, Handler<AsyncResult<Void>> resultHandler) {
+    delegate.renew(id, resultHandler);
+  }
   /**
    * Un-publishes a record.
    * @param id the registration id
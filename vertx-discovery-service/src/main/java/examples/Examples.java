@@ -19,9 +19,11 @@ package examples;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.discovery.DiscoveryOptions;
 import io.vertx.ext.discovery.DiscoveryService;
 import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordWatch;
 import io.vertx.ext.discovery.ServiceReference;
 import io.vertx.ext.discovery.types.HttpEndpoint;
 import io.vertx.ext.jdbc.JDBCClient;
@@ -167,6 +169,39 @@ public class Examples {
 
   }
 
+  public void example41(DiscoveryService service) {
+    ReadStream<Record> stream = service.recordStream(new JsonObject().put("some-label", "some-value"));
+    stream
+        .exceptionHandler(failure -> {
+          // lookup failed
+        })
+        .endHandler(v -> {
+          // all the matching records have been received
+        })
+        .handler(record -> {
+          // Called for each matching record
+        });
+  }
+
+  public void example42(DiscoveryService service) {
+    RecordWatch watch = service.watch(new JsonObject().put("name", "some-service"), event -> {
+      switch (event.type()) {
+        case ADDED:
+          // A matching record has been published (or was already published)
+          break;
+        case MODIFIED:
+          // A matching record has been updated
+          break;
+        case REMOVED:
+          // A record does not match anymore, or has been withdrawn
+          break;
+      }
+    });
+
+    // Later, stop watching
+    watch.close();
+  }
+
   public void example5(DiscoveryService discovery, Record record) {
     ServiceReference reference = discovery.getReference(record);
 
@@ -29,11 +29,21 @@ public class DiscoveryOptions {
 
   public static final String DEFAULT_ANNOUNCE_ADDRESS = "vertx.discovery.announce";
   public static final String DEFAULT_USAGE_ADDRESS = "vertx.discovery.usage";
+  public static final long DEFAULT_NEAR_CACHE_RECONCILIATION_PERIOD = 60000L;
+  public static final String DEFAULT_LEASE_ADDRESS = null;
+  public static final long DEFAULT_LEASE_RESOLUTION = 1000L;
 
   private String announceAddress = DEFAULT_ANNOUNCE_ADDRESS;
+  private String batchAnnounceAddress = null;
   private JsonObject backendConfiguration = new JsonObject();
   private String name = null;
   private String usageAddress = DEFAULT_USAGE_ADDRESS;
+  private boolean nearCache = false;
+  private long nearCacheReconciliationPeriod = DEFAULT_NEAR_CACHE_RECONCILIATION_PERIOD;
+  private boolean recordCodec = false;
+  private String leaseAddress = DEFAULT_LEASE_ADDRESS;
+  private long leaseResolution = DEFAULT_LEASE_RESOLUTION;
+  private boolean removeExpiredRecords = false;
 
   /**
    * Creates a new instance of {@link DiscoveryOptions} using the default values.
@@ -49,9 +59,16 @@ public class DiscoveryOptions {
    */
   public DiscoveryOptions(DiscoveryOptions other) {
     this.announceAddress = other.announceAddress;
+    this.batchAnnounceAddress = other.batchAnnounceAddress;
     this.backendConfiguration = other.backendConfiguration.copy();
     this.name = other.name;
     this.usageAddress = other.usageAddress;
+    this.nearCache = other.nearCache;
+    this.nearCacheReconciliationPeriod = other.nearCacheReconciliationPeriod;
+    this.recordCodec = other.recordCodec;
+    this.leaseAddress = other.leaseAddress;
+    this.leaseResolution = other.leaseResolution;
+    this.removeExpiredRecords = other.removeExpiredRecords;
   }
 
   /**
@@ -95,6 +112,29 @@ public class DiscoveryOptions {
     return this;
   }
 
+  /**
+   * @return the event bus address on which the batches of modifications are announced, {@code null} if the batches
+   * are announced record by record on the announce address.
+   */
+  public String getBatchAnnounceAddress() {
+    return batchAnnounceAddress;
+  }
+
+  /**
+   * Sets the event bus address on which the batches of modifications ({@code publishAll}, {@code unpublishAll} and
+   * {@code updateAll}) are announced. When set, each batch is announced by a single message, a JSON array of records,
+   * on this address instead of one message per record on the announce address, so the consumers of the announcements
+   * must also listen to this address. This address must be consistent in the whole application. By default, it is
+   * not set.
+   *
+   * @param batchAnnounceAddress the address, {@code null} to announce the batches record by record
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setBatchAnnounceAddress(String batchAnnounceAddress) {
+    this.batchAnnounceAddress = batchAnnounceAddress;
+    return this;
+  }
+
   /**
    * @return the backend configuration. Cannot be {@code null}.
    */
@@ -157,4 +197,125 @@ public class DiscoveryOptions {
     this.usageAddress = usageAddress;
     return this;
   }
+
+  /**
+   * @return whether or not the node-local replica of the registry is enabled.
+   */
+  public boolean isNearCache() {
+    return nearCache;
+  }
+
+  /**
+   * Enables or disables the near cache: a node-local, read-only replica of the registry. The replica is loaded from
+   * the backend once, and then kept up to date using the events received on the announce address. Lookups are
+   * served from memory.
+   *
+   * @param nearCache {@code true} to enable the near cache
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setNearCache(boolean nearCache) {
+    this.nearCache = nearCache;
+    return this;
+  }
+
+  /**
+   * @return the period (in ms) between two reconciliations of the near cache with the backend.
+   */
+  public long getNearCacheReconciliationPeriod() {
+    return nearCacheReconciliationPeriod;
+  }
+
+  /**
+   * Sets the period (in ms) between two reconciliations of the near cache with the backend. The reconciliation
+   * reloads the records from the backend to repair missed announcements. {@code 0} disables the reconciliation.
+   *
+   * @param nearCacheReconciliationPeriod the period in milliseconds
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setNearCacheReconciliationPeriod(long nearCacheReconciliationPeriod) {
+    this.nearCacheReconciliationPeriod = nearCacheReconciliationPeriod;
+    return this;
+  }
+
+  /**
+   * @return whether or not the announcements and usage events are sent using the {@link RecordMessageCodec}.
+   */
+  public boolean isRecordCodec() {
+    return recordCodec;
+  }
+
+  /**
+   * Sets whether or not the announcements and usage events are sent using the {@link RecordMessageCodec}. When
+   * enabled, the announcement bodies are {@link Record} instances instead of JSON objects (the batch announcements,
+   * see {@link #setBatchAnnounceAddress(String)}, remain JSON arrays), local consumers receive them without copy,
+   * and they are sent to other nodes in a compact binary form. The usage event body is the {@link Record}, and the
+   * {@code type} and {@code id} are sent as headers. All the nodes consuming these events must register the codec
+   * using {@link RecordMessageCodec#register(io.vertx.core.Vertx)}.
+   *
+   * @param recordCodec {@code true} to send the records using the binary codec
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setRecordCodec(boolean recordCodec) {
+    this.recordCodec = recordCodec;
+    return this;
+  }
+
+  /**
+   * @return the event bus address on which the lease heartbeats are sent, {@code null} if the leases are disabled.
+   */
+  public String getLeaseAddress() {
+    return leaseAddress;
+  }
+
+  /**
+   * Sets the event bus address on which the lease heartbeats are sent, and enables the leases. The records published
+   * with a lease (see {@link DiscoveryService#publish(Record, long, io.vertx.core.Handler)}) expire if their lease is
+   * not renewed in time. This address must be consistent in the whole application. The leases are disabled by
+   * default.
+   *
+   * @param leaseAddress the address, {@code null} to disable the leases
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setLeaseAddress(String leaseAddress) {
+    this.leaseAddress = leaseAddress;
+    return this;
+  }
+
+  /**
+   * @return the precision (in ms) of the lease expiration.
+   */
+  public long getLeaseResolution() {
+    return leaseResolution;
+  }
+
+  /**
+   * Sets the precision (in ms) of the lease expiration: the expired leases are checked once per period. A record
+   * expires at most this delay after the end of its lease.
+   *
+   * @param leaseResolution the precision in milliseconds, must be strictly positive
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setLeaseResolution(long leaseResolution) {
+    this.leaseResolution = leaseResolution;
+    return this;
+  }
+
+  /**
+   * @return whether the records whose lease has expired are removed, or only marked as {@link Status#DOWN}.
+   */
+  public boolean isRemoveExpiredRecords() {
+    return removeExpiredRecords;
+  }
+
+  /**
+   * Sets whether the records whose lease has expired are removed from the backend. By default, they are kept, with the
+   * {@link Status#DOWN} status. In both cases, the change is announced.
+   *
+   * @param removeExpiredRecords {@code true} to remove the expired records
+   * @return the current {@link DiscoveryOptions}
+   */
+  public DiscoveryOptions setRemoveExpiredRecords(boolean removeExpiredRecords) {
+    this.removeExpiredRecords = removeExpiredRecords;
+    return this;
+  }
 }
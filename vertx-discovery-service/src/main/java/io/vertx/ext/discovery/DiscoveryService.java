@@ -22,6 +22,7 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.discovery.impl.DiscoveryImpl;
 import io.vertx.ext.discovery.spi.DiscoveryBridge;
 
@@ -140,6 +141,31 @@ public interface DiscoveryService {
    */
   void publish(Record record, Handler<AsyncResult<Record>> resultHandler);
 
+  /**
+   * Publishes a record with a lease. The record expires unless its lease is renewed (see
+   * {@link #renew(String, Handler)}) before the given delay: it is then marked as {@code DOWN}, or removed (see
+   * {@link DiscoveryOptions#setRemoveExpiredRecords(boolean)}), and the change is announced. The lease is tracked by
+   * all the nodes, so the records of a crashed node expire, but it is lost if all the nodes are restarted. The leases
+   * must be enabled using {@link DiscoveryOptions#setLeaseAddress(String)}, otherwise the publication fails.
+   *
+   * @param record        the record
+   * @param lease         the lease duration in ms, must be strictly positive
+   * @param resultHandler handler called when the operation has completed (successfully or not). In case of success,
+   *                      the passed record has a registration id required to renew the lease, modify and un-register
+   *                      the service.
+   */
+  void publish(Record record, long lease, Handler<AsyncResult<Record>> resultHandler);
+
+  /**
+   * Renews the lease of a record published with {@link #publish(Record, long, Handler)}, for the same duration. This
+   * operation does not access the backend.
+   *
+   * @param id            the registration id
+   * @param resultHandler handler called when the operation has completed. It fails if the record has no lease
+   *                      anymore, because it has expired or has been un-published.
+   */
+  void renew(String id, Handler<AsyncResult<Void>> resultHandler);
+
   /**
    * Un-publishes a record.
    *
@@ -148,6 +174,34 @@ public interface DiscoveryService {
    */
   void unpublish(String id, Handler<AsyncResult<Void>> resultHandler);
 
+  /**
+   * Publishes a set of records. Unlike calling {@link #publish(Record, Handler)} for each record, the records are
+   * stored using a single backend operation when the backend supports it. An announcement is sent for each published
+   * record.
+   * <p>
+   * The batch is not atomic: records that cannot be published are not part of the result.
+   *
+   * @param records       the records
+   * @param resultHandler handler called when the operation has completed (successfully or not). In case of success,
+   *                      it receives the published records. As for {@link #publish(Record, Handler)}, the passed
+   *                      records have their registration id set.
+   */
+  @GenIgnore
+  void publishAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler);
+
+  /**
+   * Un-publishes a set of records. Unlike calling {@link #unpublish(String, Handler)} for each record, the records are
+   * removed using a single backend operation when the backend supports it. An announcement is sent for each withdrawn
+   * record.
+   * <p>
+   * Unknown registration ids are ignored.
+   *
+   * @param ids           the registration ids
+   * @param resultHandler handler called when the operation has completed (successfully or not).
+   */
+  @GenIgnore
+  void unpublishAll(List<String> ids, Handler<AsyncResult<Void>> resultHandler);
+
   /**
    * Lookups for a single record.
    * <p>
@@ -247,6 +301,37 @@ public interface DiscoveryService {
   void getRecords(Function<Record, Boolean> filter, boolean includeOutOfService,
                   Handler<AsyncResult<List<Record>>> resultHandler);
 
+  /**
+   * Lookups for the records matching the given filter, and streams them. Unlike
+   * {@link #getRecords(JsonObject, Handler)}, the records are not loaded all at once: they are retrieved from the
+   * backend batch by batch, as the consumer processes them. Pausing the stream stops the retrieval.
+   * <p>
+   * The lookup starts when a handler is set on the returned stream. The end handler is called once all the matching
+   * records have been delivered.
+   *
+   * @param filter the filter - see {@link #getRecord(JsonObject, Handler)}
+   * @return the stream of matching records
+   */
+  @GenIgnore
+  ReadStream<Record> recordStream(JsonObject filter);
+
+  /**
+   * Watches the records matching the given filter. The handler first receives a {@link RecordEvent.Type#ADDED} event
+   * for each record currently matching the filter, and then an event each time a record enters the set of matching
+   * records ({@link RecordEvent.Type#ADDED}), is modified and still matches ({@link RecordEvent.Type#MODIFIED}), or
+   * leaves it ({@link RecordEvent.Type#REMOVED}).
+   * <p>
+   * As for the lookups, only records with the {@code UP} status are considered, unless the filter has a constraint on
+   * the {@code status}. The changes are evaluated once per modification, whatever the number of watches. The records
+   * passed in the events are shared between the watches, and must not be modified.
+   *
+   * @param filter  the filter - see {@link #getRecord(JsonObject, Handler)}
+   * @param handler the handler receiving the events
+   * @return the watch, to be closed to stop receiving events
+   */
+  @GenIgnore
+  RecordWatch watch(JsonObject filter, Handler<RecordEvent> handler);
+
   /**
    * Updates the given record. The record must has been published, and has it's registration id set.
    *
@@ -255,6 +340,19 @@ public interface DiscoveryService {
    */
   void update(Record record, Handler<AsyncResult<Record>> resultHandler);
 
+  /**
+   * Updates a set of records. The records must have been published, and have their registration id set. Unlike
+   * calling {@link #update(Record, Handler)} for each record, the records are updated using a single backend
+   * operation when the backend supports it. An announcement is sent for each updated record.
+   * <p>
+   * The batch is not atomic: records that cannot be updated are not part of the result.
+   *
+   * @param records       the updated records
+   * @param resultHandler handler called when the operation has completed, receiving the updated records.
+   */
+  @GenIgnore
+  void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler);
+
   /**
    * @return the set of service references retrieved by this discovery service.
    */
@@ -17,8 +17,15 @@
 package io.vertx.ext.discovery;
 
 import io.vertx.codegen.annotations.DataObject;
+import io.vertx.codegen.annotations.GenIgnore;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -44,6 +51,13 @@ public class Record {
 
   private String type;
 
+  /**
+   * Whether or not the record is frozen. Frozen records cannot be modified, and cache their encoded form.
+   */
+  private boolean frozen;
+
+  private volatile String encoded;
+
   /**
    * Creates a new {@link Record}.
    */
@@ -61,22 +75,24 @@ public class Record {
   }
 
   /**
-   * @return the JSON representation of the current {@link Record}.
+   * @return the JSON representation of the current {@link Record}. For frozen records, the location and metadata are
+   * copied, so the returned JSON object can be modified.
    */
   public JsonObject toJson() {
     JsonObject json = new JsonObject();
     RecordConverter.toJson(this, json);
-    return json;
+    return frozen ? json.copy() : json;
   }
 
   /**
-   * Creates a new {@link Record} by copying the values from another {@link Record}.
+   * Creates a new {@link Record} by copying the values from another {@link Record}. The location and metadata are
+   * copied too, so the two records can be modified independently. The copy of a frozen record is not frozen.
    *
    * @param other the record to copy
    */
   public Record(Record other) {
-    this.location = other.location;
-    this.metadata = other.metadata;
+    this.location = other.location == null ? null : other.location.copy();
+    this.metadata = other.metadata == null ? null : other.metadata.copy();
     this.name = other.name;
     this.status = other.status;
     this.registration = other.registration;
@@ -85,7 +101,7 @@ public class Record {
 
   /**
    * @return the json object describing the location of the service. By convention, this json object should contain
-   * the {@link #ENDPOINT} entry.
+   * the {@link #ENDPOINT} entry. The location of a frozen record cannot be modified.
    */
   public JsonObject getLocation() {
     return location;
@@ -99,6 +115,7 @@ public class Record {
    * @return the current {@link Record}
    */
   public Record setLocation(JsonObject location) {
+    checkNotFrozen();
     this.location = location;
     return this;
   }
@@ -106,13 +123,14 @@ public class Record {
   /**
    * Gets the metadata attached to the record.
    *
-   * @return the metadata, cannot be {@code null}.
+   * @return the metadata, cannot be {@code null}. The metadata of a frozen record cannot be modified.
    */
   public JsonObject getMetadata() {
     return metadata;
   }
 
   public Record setMetadata(JsonObject metadata) {
+    checkNotFrozen();
     this.metadata = metadata;
     return this;
   }
@@ -133,6 +151,7 @@ public class Record {
    * @return the current {@link Record}
    */
   public Record setName(String name) {
+    checkNotFrozen();
     this.name = name;
     return this;
   }
@@ -155,6 +174,7 @@ public class Record {
    */
   public Record setStatus(Status status) {
     Objects.requireNonNull(status);
+    checkNotFrozen();
     this.status = status;
     return this;
   }
@@ -166,6 +186,7 @@ public class Record {
    * @return the current {@link Record}
    */
   public Record setRegistration(String reg) {
+    checkNotFrozen();
     this.registration = reg;
     return this;
   }
@@ -198,48 +219,104 @@ public class Record {
    * @return the current {@link Record}
    */
   public Record setType(String type) {
+    checkNotFrozen();
     this.type = type;
     return this;
   }
 
   /**
-   * Checks whether or not the current {@link Record} matches the filter.
+   * Checks whether or not the current {@link Record} matches the filter. The filter is compiled for each call, use
+   * {@link RecordFilter#compile(JsonObject)} to check several records against the same filter.
    *
    * @param filter the filter
    * @return whether or not the record matches the filter
    */
   public boolean match(JsonObject filter) {
-    for (String key : filter.fieldNames()) {
-      boolean match;
-      switch (key) {
-        case "name":
-          match = match(getName(), filter.getString("name"));
-          break;
-        case "registration":
-          match = match(getRegistration(), filter.getString("registration"));
-          break;
-        case "status":
-          match = match(getStatus().name(), filter.getString("status"));
-          break;
-        default:
-          // metadata
-          match = match(getMetadata().getValue(key), filter.getValue(key));
-          break;
-      }
-
-      if (!match) {
-        return false;
-      }
+    return RecordFilter.compile(filter).test(this);
+  }
+
+  /**
+   * Creates a frozen copy of the current {@link Record}. Frozen records cannot be modified: the setters throw an
+   * {@link IllegalStateException}. The location and metadata are copied into read-only JSON objects, whose
+   * modification methods throw an {@link UnsupportedOperationException}, including on nested objects and arrays. In
+   * exchange, the JSON encoding ({@link #encode()}) is computed once and then reused, so frozen records can be
+   * stored and returned several times (for instance by the REST endpoint) without being serialized again.
+   *
+   * @return the frozen copy, or the current {@link Record} if already frozen
+   */
+  public Record freeze() {
+    if (frozen) {
+      return this;
+    }
+    Record copy = new Record();
+    copy.location = readOnly(location);
+    copy.metadata = readOnly(metadata);
+    copy.name = name;
+    copy.status = status;
+    copy.registration = registration;
+    copy.type = type;
+    copy.frozen = true;
+    return copy;
+  }
+
+  private static JsonObject readOnly(JsonObject json) {
+    return json == null ? null : new JsonObject(readOnly(json.getMap()));
+  }
+
+  private static Map<String, Object> readOnly(Map<String, Object> map) {
+    Map<String, Object> copy = new LinkedHashMap<>();
+    map.forEach((key, value) -> copy.put(key, readOnlyValue(value)));
+    return Collections.unmodifiableMap(copy);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object readOnlyValue(Object value) {
+    if (value instanceof JsonObject) {
+      return readOnly(((JsonObject) value).getMap());
+    }
+    if (value instanceof Map) {
+      return readOnly((Map<String, Object>) value);
+    }
+    if (value instanceof JsonArray) {
+      return readOnlyValue(((JsonArray) value).getList());
     }
+    if (value instanceof List) {
+      List<Object> copy = new ArrayList<>();
+      ((List<Object>) value).forEach(item -> copy.add(readOnlyValue(item)));
+      return Collections.unmodifiableList(copy);
+    }
+    return value;
+  }
 
-    return true;
+  /**
+   * @return whether or not the record is frozen, and so cannot be modified.
+   */
+  @GenIgnore
+  public boolean isFrozen() {
+    return frozen;
   }
 
-  private boolean match(Object actual, Object expected) {
-    return actual != null
-        && ("*".equals(expected) ||
-        (actual instanceof String ?
-            ((String) actual).equalsIgnoreCase(expected.toString()) : actual.equals(expected)));
+  /**
+   * Encodes the record to a JSON string. The result is cached if the record is frozen.
+   *
+   * @return the JSON string
+   */
+  public String encode() {
+    if (!frozen) {
+      return toJson().encode();
+    }
+    String result = encoded;
+    if (result == null) {
+      // Concurrent calls may encode the record several times, but always to the same value.
+      result = toJson().encode();
+      encoded = result;
+    }
+    return result;
   }
 
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("The record is frozen and cannot be modified");
+    }
+  }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery;
+
+import java.util.Objects;
+
+/**
+ * An event delivered to a watch (see {@link DiscoveryService#watch(io.vertx.core.json.JsonObject,
+ * io.vertx.core.Handler)}), describing how the set of records matching the watched filter has changed.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordEvent {
+
+  /**
+   * The type of change.
+   */
+  public enum Type {
+    /**
+     * The record matches the filter, and did not before (or is part of the initial snapshot).
+     */
+    ADDED,
+    /**
+     * The record matched the filter, has been modified, and still matches the filter.
+     */
+    MODIFIED,
+    /**
+     * The record matched the filter, and does not anymore (it has been withdrawn or modified).
+     */
+    REMOVED
+  }
+
+  private final Type type;
+  private final Record record;
+
+  /**
+   * Creates a new {@link RecordEvent}.
+   *
+   * @param type   the type of change, must not be {@code null}
+   * @param record the record, must not be {@code null}
+   */
+  public RecordEvent(Type type, Record record) {
+    this.type = Objects.requireNonNull(type);
+    this.record = Objects.requireNonNull(record);
+  }
+
+  /**
+   * @return the type of change.
+   */
+  public Type type() {
+    return type;
+  }
+
+  /**
+   * @return the record. For {@link Type#REMOVED} events, it is the record as announced: withdrawn records have the
+   * {@link Status#DOWN} status.
+   */
+  public Record record() {
+    return record;
+  }
+
+  @Override
+  public String toString() {
+    return type + " " + record.encode();
+  }
+}
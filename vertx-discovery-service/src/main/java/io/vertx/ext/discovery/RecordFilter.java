@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.discovery;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A JSON filter compiled into a predicate on {@link Record}. The filter syntax is the one described in
+ * {@link DiscoveryService#getRecord(JsonObject, io.vertx.core.Handler)}.
+ * <p>
+ * The filter is analysed once: expected values are converted to the form they are compared with, wildcards are
+ * resolved into presence checks and the checks are ordered from the most selective (registration, name) to the least
+ * selective (status, presence). Testing a record does not allocate.
+ * <p>
+ * Instances are immutable and can be shared and reused.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public final class RecordFilter implements Function<Record, Boolean> {
+
+  /**
+   * A filter accepting all records.
+   */
+  public static final RecordFilter ALL = new RecordFilter(new JsonObject(), new ArrayList<>());
+
+  private static final int REGISTRATION = 0;
+  private static final int NAME = 1;
+  private static final int TYPE = 2;
+  private static final int METADATA = 3;
+  private static final int STATUS = 4;
+  private static final int PRESENCE = 5;
+
+  private final JsonObject filter;
+  private final Predicate<Record>[] checks;
+
+  @SuppressWarnings("unchecked")
+  private RecordFilter(JsonObject filter, List<Check> checks) {
+    this.filter = filter;
+    checks.sort(Comparator.comparingInt(check -> check.rank));
+    this.checks = checks.stream().map(check -> check.predicate).toArray(Predicate[]::new);
+  }
+
+  /**
+   * Compiles the given JSON filter.
+   *
+   * @param filter the filter, {@code null} or empty to accept all records
+   * @return the compiled filter
+   */
+  public static RecordFilter compile(JsonObject filter) {
+    if (filter == null || filter.isEmpty()) {
+      return ALL;
+    }
+
+    List<Check> checks = new ArrayList<>();
+    for (String key : filter.fieldNames()) {
+      Object expected = filter.getValue(key);
+      switch (key) {
+        case "registration":
+          checks.add(string(REGISTRATION, Record::getRegistration, expected));
+          break;
+        case "name":
+          checks.add(string(NAME, Record::getName, expected));
+          break;
+        case "type":
+          checks.add(string(TYPE, Record::getType, expected));
+          break;
+        case "status":
+          checks.add(status(expected));
+          break;
+        default:
+          checks.add(metadata(key, expected));
+          break;
+      }
+    }
+    return new RecordFilter(filter.copy(), checks);
+  }
+
+  /**
+   * Checks whether or not the given record is accepted by the filter.
+   *
+   * @param record the record
+   * @return {@code true} if the record matches the filter
+   */
+  public boolean test(Record record) {
+    for (Predicate<Record> check : checks) {
+      if (!check.test(record)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Boolean apply(Record record) {
+    return test(record);
+  }
+
+  /**
+   * @return whether or not the filter has a constraint on the record status. If not, lookups only accept records with
+   * the {@code UP} status.
+   */
+  public boolean hasStatusConstraint() {
+    return filter.getValue("status") != null;
+  }
+
+  /**
+   * @return a copy of the JSON filter this filter has been compiled from.
+   */
+  public JsonObject toJson() {
+    return filter.copy();
+  }
+
+  @Override
+  public String toString() {
+    return "RecordFilter" + filter.encode();
+  }
+
+  private static Check string(int rank, Function<Record, String> attribute, Object expected) {
+    if (expected == null) {
+      return new Check(rank, r -> false);
+    }
+    if ("*".equals(expected)) {
+      return new Check(PRESENCE, r -> attribute.apply(r) != null);
+    }
+    String value = expected.toString();
+    return new Check(rank, r -> {
+      String actual = attribute.apply(r);
+      return actual != null && actual.equalsIgnoreCase(value);
+    });
+  }
+
+  private static Check status(Object expected) {
+    if (expected == null) {
+      return new Check(STATUS, r -> false);
+    }
+    if ("*".equals(expected)) {
+      return new Check(PRESENCE, r -> r.getStatus() != null);
+    }
+    // Resolve the status once, instead of comparing the names for each record
+    for (Status status : Status.values()) {
+      if (status.name().equalsIgnoreCase(expected.toString())) {
+        return new Check(STATUS, r -> r.getStatus() == status);
+      }
+    }
+    return new Check(STATUS, r -> false);
+  }
+
+  private static Check metadata(String key, Object expected) {
+    if (expected == null) {
+      return new Check(METADATA, r -> false);
+    }
+    if ("*".equals(expected)) {
+      return new Check(PRESENCE, r -> r.getMetadata() != null && r.getMetadata().getValue(key) != null);
+    }
+    // String values are compared ignoring the case with the string form of the expected value, other values must be
+    // equal to the expected value.
+    String value = expected.toString();
+    return new Check(METADATA, r -> {
+      Object actual = r.getMetadata() == null ? null : r.getMetadata().getValue(key);
+      if (actual == null) {
+        return false;
+      }
+      if (actual instanceof String) {
+        return ((String) actual).equalsIgnoreCase(value);
+      }
+      return actual.equals(expected);
+    });
+  }
+
+  private static class Check {
+    private final int rank;
+    private final Predicate<Record> predicate;
+
+    private Check(int rank, Predicate<Record> predicate) {
+      this.rank = rank;
+      this.predicate = Objects.requireNonNull(predicate);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.ext.discovery.impl.RecordBinaryFormat;
+
+/**
+ * An event bus codec for {@link Record}, used for the announcements and the usage events when
+ * {@link DiscoveryOptions#setRecordCodec(boolean)} is enabled.
+ * <p>
+ * Local deliveries pass the record as it is, without copying it: the received records are shared between the
+ * consumers. The discovery service only sends frozen records (see {@link Record#freeze()}). Records sent to other
+ * nodes are written using a compact, length-prefixed, binary form instead of JSON. The codec must be registered on
+ * every node consuming these events, using {@link #register(Vertx)}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordMessageCodec implements MessageCodec<Record, Record> {
+
+  /**
+   * The name of the codec.
+   */
+  public static final String NAME = "vertx.discovery.record";
+
+  /**
+   * Registers the codec used to send records on the event bus. Registering the codec several times on the same Vert.x
+   * instance is harmless.
+   *
+   * @param vertx the vert.x instance
+   */
+  public static void register(Vertx vertx) {
+    try {
+      vertx.eventBus().registerCodec(new RecordMessageCodec());
+    } catch (IllegalStateException e) {
+      // Already registered
+    }
+  }
+
+  @Override
+  public void encodeToWire(Buffer buffer, Record record) {
+    int start = buffer.length();
+    // Placeholder for the length
+    buffer.appendInt(0);
+    new RecordBinaryFormat().write(buffer, record);
+    buffer.setInt(start, buffer.length() - start - 4);
+  }
+
+  @Override
+  public Record decodeFromWire(int pos, Buffer buffer) {
+    Record record = new Record();
+    new RecordBinaryFormat().read(buffer, pos + 4, record);
+    return record;
+  }
+
+  @Override
+  public Record transform(Record record) {
+    return record;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
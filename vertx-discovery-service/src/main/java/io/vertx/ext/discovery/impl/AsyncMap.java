@@ -17,16 +17,30 @@
 package io.vertx.ext.discovery.impl;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.spi.cluster.ClusterManager;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
- * An asynchronous map facade. The underlying map is either a distributed sync map, or a
- * local map.
+ * An asynchronous map facade. The underlying map is either a distributed sync map, or a node-local
+ * {@link SnapshotMap}.
+ * <p>
+ * When vert.x is not clustered, the operations are executed directly on the calling thread, as the local map never
+ * blocks. Only the call of the result handler is dispatched, on the caller context, so the result handler is never
+ * called before the method returns. When vert.x is clustered, all the operations are executed on the distributed sync
+ * map in a worker thread. A dedicated {@link WorkerExecutor} can be used instead of the vert.x worker pool, and the
+ * read operations can be executed unordered so that the reads issued from the same context run in parallel. The
+ * write operations, single-entry or bulk, are always executed in order, so a put followed by a remove of the same
+ * key, issued from the same context, cannot be reordered.
  * <p>
  * It does not implement all Map method on purpose, just the required ones.
  *
@@ -34,81 +48,231 @@ import java.util.*;
  */
 public class AsyncMap<K, V> {
 
-
   private final Vertx vertx;
   private final Map<K, V> syncMap;
+  private final boolean local;
+  private final WorkerExecutor executor;
+  private final boolean ordered;
 
   /**
    * Creates a new async map.
    *
    * @param vertx the vert.x instance
-   * @param name  the name of the underlying structure (either a local map for non-clustered
+   * @param name  the name of the underlying structure (either a snapshot map for non-clustered
    *              vert.x, or a sync map for clustered vert.x)
    */
   public AsyncMap(Vertx vertx, String name) {
+    this(vertx, name, null, true);
+  }
+
+  /**
+   * Creates a new async map.
+   *
+   * @param vertx    the vert.x instance
+   * @param name     the name of the underlying structure (either a snapshot map for non-clustered
+   *                 vert.x, or a sync map for clustered vert.x)
+   * @param executor the worker executor running the operations on the sync map, {@code null} to use the vert.x
+   *                 worker pool
+   * @param ordered  whether or not the read operations issued from the same context on the sync map are executed in
+   *                 order. The write operations are always executed in order
+   */
+  public AsyncMap(Vertx vertx, String name, WorkerExecutor executor, boolean ordered) {
     this.vertx = vertx;
+    this.executor = executor;
+    this.ordered = ordered;
     ClusterManager clusterManager = ((VertxInternal) vertx).getClusterManager();
     if (clusterManager == null) {
-      syncMap = new LocalMapWrapper<>(vertx.sharedData().<K, V>getLocalMap(name));
+      syncMap = SnapshotMap.get(vertx, name);
+      local = true;
     } else {
       syncMap = clusterManager.getSyncMap(name);
+      local = false;
     }
   }
 
+  /**
+   * Executes the given read operation on the sync map: directly when the map is local, in a worker thread otherwise.
+   * In both cases, the result handler is called asynchronously, on the caller context.
+   */
+  private <T> void execute(Supplier<T> operation, Handler<AsyncResult<T>> resultHandler) {
+    execute(operation, ordered, resultHandler);
+  }
+
+  /**
+   * Executes the given write operation on the sync map. Unlike the reads, the writes are always executed in order.
+   */
+  private <T> void write(Supplier<T> operation, Handler<AsyncResult<T>> resultHandler) {
+    execute(operation, true, resultHandler);
+  }
+
+  private <T> void execute(Supplier<T> operation, boolean ordered, Handler<AsyncResult<T>> resultHandler) {
+    if (local) {
+      Context context = vertx.getOrCreateContext();
+      Future<T> result;
+      try {
+        result = Future.succeededFuture(operation.get());
+      } catch (RuntimeException e) {
+        result = Future.failedFuture(e);
+      }
+      Future<T> completion = result;
+      context.runOnContext(v -> resultHandler.handle(completion));
+    } else if (executor != null) {
+      executor.<T>executeBlocking(future -> future.complete(operation.get()), ordered, resultHandler);
+    } else {
+      vertx.<T>executeBlocking(future -> future.complete(operation.get()), ordered, resultHandler);
+    }
+  }
+
+  /**
+   * Gets a copy of all the entries. When vert.x is not clustered, the copy is built in a single pass over a consistent
+   * snapshot of the map (see {@link SnapshotMap#copy()}): it does not contain a part of the concurrent modifications.
+   *
+   * @param asyncResultHandler the result handler
+   */
   public void getAll(Handler<AsyncResult<Map<K, V>>> asyncResultHandler) {
-    vertx.<Map<K, V>>executeBlocking(
-        future -> {
-          Map<K, V> map = new LinkedHashMap<>();
-          syncMap.entrySet().stream().forEach(entry -> map.put(entry.getKey(), entry.getValue()));
-          future.complete(map);
-        },
-        asyncResultHandler
-    );
+    execute(() -> {
+      if (syncMap instanceof SnapshotMap) {
+        return ((SnapshotMap<K, V>) syncMap).copy();
+      }
+      return new LinkedHashMap<>(syncMap);
+    }, asyncResultHandler);
+  }
+
+  /**
+   * Gets the entries associated with the given keys. Keys without value are not in the resulting map.
+   *
+   * @param keys               the keys
+   * @param asyncResultHandler the result handler
+   */
+  public void getAll(Collection<K> keys, Handler<AsyncResult<Map<K, V>>> asyncResultHandler) {
+    execute(() -> {
+      Map<K, V> map = new LinkedHashMap<>();
+      for (K key : keys) {
+        V value = syncMap.get(key);
+        if (value != null) {
+          map.put(key, value);
+        }
+      }
+      return map;
+    }, asyncResultHandler);
+  }
+
+  /**
+   * Finds a value accepted by the given predicate. The values are converted and checked one by one, and the iteration
+   * stops at the first accepted value, so the remaining values are not converted.
+   *
+   * @param keys               the keys of the entries to check, {@code null} to check all the entries
+   * @param mapper             the function converting the values before they are checked
+   * @param predicate          the predicate
+   * @param asyncResultHandler the result handler receiving the converted value, {@code null} if none is accepted
+   * @param <T>                the type of the converted values
+   */
+  public <T> void find(Collection<K> keys, Function<V, T> mapper, Predicate<T> predicate,
+                       Handler<AsyncResult<T>> asyncResultHandler) {
+    execute(() -> {
+      Iterator<V> values;
+      if (keys == null) {
+        values = syncMap.values().iterator();
+      } else {
+        values = keys.stream().map(syncMap::get).filter(Objects::nonNull).iterator();
+      }
+      while (values.hasNext()) {
+        T converted = mapper.apply(values.next());
+        if (predicate.test(converted)) {
+          return converted;
+        }
+      }
+      return null;
+    }, asyncResultHandler);
   }
 
   public void keySet(Handler<AsyncResult<Set<K>>> asyncResultHandler) {
-    vertx.<Set<K>>executeBlocking(
-        future -> future.complete(syncMap.keySet()),
-        asyncResultHandler
-    );
+    execute(() -> new LinkedHashSet<>(syncMap.keySet()), asyncResultHandler);
   }
 
   public void values(Handler<AsyncResult<List<V>>> asyncResultHandler) {
-    vertx.<List<V>>executeBlocking(
-        future -> future.complete(new ArrayList<>(syncMap.values())),
-        asyncResultHandler
-    );
+    execute(() -> new ArrayList<>(syncMap.values()), asyncResultHandler);
   }
 
   public void get(K k, Handler<AsyncResult<V>> handler) {
-    vertx.<V>executeBlocking(
-        future -> future.complete(syncMap.get(k)),
-        handler
-    );
+    execute(() -> syncMap.get(k), handler);
   }
 
   public void put(K k, V v, Handler<AsyncResult<Void>> handler) {
-    vertx.<Void>executeBlocking(
-        future -> {
-          syncMap.put(k, v);
-          future.complete();
-        },
-        handler
-    );
+    write(() -> {
+      syncMap.put(k, v);
+      return null;
+    }, handler);
+  }
+
+  /**
+   * Replaces the value associated with the given key, only if the key is associated with a value.
+   *
+   * @param k       the key
+   * @param v       the new value
+   * @param handler the result handler receiving the previous value, {@code null} if the key was not associated with a
+   *                value (the map is then not modified)
+   */
+  public void replace(K k, V v, Handler<AsyncResult<V>> handler) {
+    write(() -> syncMap.replace(k, v), handler);
+  }
+
+  /**
+   * Replaces the values associated with the given keys, only for the keys associated with a value.
+   *
+   * @param entries the entries
+   * @param handler the result handler receiving the keys whose value has been replaced
+   */
+  public void replaceAll(Map<K, V> entries, Handler<AsyncResult<Set<K>>> handler) {
+    write(() -> {
+      Set<K> replaced = new LinkedHashSet<>();
+      entries.forEach((k, v) -> {
+        if (syncMap.replace(k, v) != null) {
+          replaced.add(k);
+        }
+      });
+      return replaced;
+    }, handler);
+  }
+
+  /**
+   * Puts all the given entries.
+   *
+   * @param entries the entries
+   * @param handler the completion handler
+   */
+  public void putAll(Map<K, V> entries, Handler<AsyncResult<Void>> handler) {
+    write(() -> {
+      syncMap.putAll(entries);
+      return null;
+    }, handler);
+  }
+
+  /**
+   * Removes the entries associated with the given keys.
+   *
+   * @param keys    the keys
+   * @param handler the result handler receiving the removed entries. Keys without value are not in the resulting map.
+   */
+  public void removeAll(Collection<K> keys, Handler<AsyncResult<Map<K, V>>> handler) {
+    write(() -> {
+      Map<K, V> removed = new LinkedHashMap<>();
+      for (K key : keys) {
+        V value = syncMap.remove(key);
+        if (value != null) {
+          removed.put(key, value);
+        }
+      }
+      return removed;
+    }, handler);
   }
 
   public void remove(K k, Handler<AsyncResult<V>> handler) {
-    vertx.<V>executeBlocking(
-        future -> future.complete(syncMap.remove(k)),
-        handler
-    );
+    write(() -> syncMap.remove(k), handler);
   }
 
 
   public void size(Handler<AsyncResult<Integer>> handler) {
-    vertx.<Integer>executeBlocking(
-        future -> future.complete(syncMap.size()),
-        handler
-    );
+    execute(syncMap::size, handler);
   }
 }
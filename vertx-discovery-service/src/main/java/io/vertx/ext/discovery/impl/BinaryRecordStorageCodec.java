@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.discovery.Record;
+
+/**
+ * A {@link RecordStorageCodec} storing the records as byte arrays, using the binary form of
+ * {@link RecordBinaryFormat}. The stored values are smaller than the JSON strings (which use two bytes per character
+ * on the heap), and are decoded without parsing text.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class BinaryRecordStorageCodec implements RecordStorageCodec<byte[]> {
+
+  public static final BinaryRecordStorageCodec INSTANCE = new BinaryRecordStorageCodec();
+
+  @Override
+  public byte[] encode(Record record) {
+    Buffer buffer = Buffer.buffer(128);
+    new RecordBinaryFormat().write(buffer, record);
+    return buffer.getBytes();
+  }
+
+  @Override
+  public Record decode(Object value) {
+    if (value instanceof String) {
+      return JsonRecordStorageCodec.INSTANCE.decode(value);
+    }
+    Record record = new Record();
+    new RecordBinaryFormat().read(Buffer.buffer((byte[]) value), 0, record);
+    return record;
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
+import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import io.vertx.ext.discovery.spi.RecordCursor;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A backend caching the records read from another backend:
+ * <ul>
+ * <li>the records retrieved by {@link #getRecord(String, Handler)} are kept in a LRU cache, bounded by
+ * {@code max-size} (1000 by default),</li>
+ * <li>the lookups are served from a snapshot of all the records, reloaded once older than {@code ttl} (in ms,
+ * 5000 by default). Concurrent reloads are coalesced.</li>
+ * </ul>
+ * The records stored, updated or removed through this backend are written through the LRU cache, and invalidate the
+ * snapshot. The records modified by other nodes are seen once the cached entries expire: the entries of the LRU cache
+ * also expire after {@code ttl}. With a {@code ttl} of 0, nothing is cached and the reads are delegated.
+ * <p>
+ * The backend is configured using the {@code caching} object of the backend configuration. When set, the discovery
+ * service wraps the selected backend. The counters of the cache are returned by {@link #statistics()}, and, if the
+ * {@code statistics-address} entry is set, sent in reply to the messages received on this event bus address.
+ * <p>
+ * The cached records are frozen, the returned records are copies.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class CachingDiscoveryBackend implements DiscoveryBackend {
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  public static final long DEFAULT_TTL = 5000;
+
+  private final DiscoveryBackend delegate;
+
+  private final AtomicLong recordHits = new AtomicLong();
+  private final AtomicLong recordMisses = new AtomicLong();
+  private final AtomicLong snapshotHits = new AtomicLong();
+  private final AtomicLong snapshotMisses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private long ttl;
+  private Map<String, Entry> records;
+  private MessageConsumer<Object> statisticsConsumer;
+
+  /**
+   * Incremented on each modification, so the results of the reads started before a modification are not cached.
+   */
+  private long generation;
+
+  private volatile Snapshot snapshot;
+
+  /**
+   * The handlers waiting for the snapshot being loaded, {@code null} if no load is in progress.
+   */
+  private List<Waiter> waiters;
+
+  /**
+   * Creates the backend.
+   *
+   * @param delegate the cached backend, not yet initialized
+   */
+  public CachingDiscoveryBackend(DiscoveryBackend delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  @Override
+  public void init(Vertx vertx, JsonObject config) {
+    JsonObject caching = config.getJsonObject("caching", new JsonObject());
+    int maxSize = caching.getInteger("max-size", DEFAULT_MAX_SIZE);
+    ttl = TimeUnit.MILLISECONDS.toNanos(caching.getLong("ttl", DEFAULT_TTL));
+    records = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+    String address = caching.getString("statistics-address");
+    if (address != null) {
+      statisticsConsumer = vertx.eventBus().consumer(address, message -> message.reply(statistics()));
+    }
+    delegate.init(vertx, config);
+  }
+
+  @Override
+  public void close() {
+    if (statisticsConsumer != null) {
+      statisticsConsumer.unregister();
+    }
+    delegate.close();
+  }
+
+  @Override
+  public String name() {
+    return delegate.name();
+  }
+
+  /**
+   * @return the counters of the cache: the hits and misses of the record cache ({@code record-hits},
+   * {@code record-misses}), of the snapshot ({@code snapshot-hits}, {@code snapshot-misses}), the number of records
+   * evicted from the record cache ({@code evictions}), and its size ({@code size})
+   */
+  public JsonObject statistics() {
+    int size;
+    synchronized (this) {
+      size = records.size();
+    }
+    return new JsonObject()
+        .put("record-hits", recordHits.get())
+        .put("record-misses", recordMisses.get())
+        .put("snapshot-hits", snapshotHits.get())
+        .put("snapshot-misses", snapshotMisses.get())
+        .put("evictions", evictions.get())
+        .put("size", size);
+  }
+
+  @Override
+  public void store(Record record, Handler<AsyncResult<Record>> resultHandler) {
+    delegate.store(record, ar -> {
+      if (ar.succeeded()) {
+        written(Collections.singletonList(ar.result()), Collections.emptyList());
+      }
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void remove(Record record, Handler<AsyncResult<Record>> resultHandler) {
+    delegate.remove(record, ar -> {
+      written(Collections.emptyList(), Collections.singletonList(record.getRegistration()));
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void remove(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    delegate.remove(uuid, ar -> {
+      written(Collections.emptyList(), Collections.singletonList(uuid));
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void update(Record record, Handler<AsyncResult<Void>> resultHandler) {
+    delegate.update(record, ar -> {
+      if (ar.succeeded()) {
+        written(Collections.singletonList(record), Collections.emptyList());
+      } else {
+        // The record may have been modified or not
+        written(Collections.emptyList(), Collections.singletonList(record.getRegistration()));
+      }
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    delegate.storeAll(records, ar -> {
+      if (ar.succeeded()) {
+        written(ar.result(), Collections.emptyList());
+      } else {
+        written(Collections.emptyList(), Collections.emptyList());
+      }
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    delegate.removeAll(uuids, ar -> {
+      written(Collections.emptyList(), uuids);
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    delegate.updateAll(records, ar -> {
+      if (ar.succeeded()) {
+        written(records, Collections.emptyList());
+      } else {
+        written(Collections.emptyList(),
+            records.stream().map(Record::getRegistration).collect(Collectors.toList()));
+      }
+      resultHandler.handle(ar);
+    });
+  }
+
+  /**
+   * Writes the given records through the record cache, evicts the given registration ids, and invalidates the
+   * snapshot.
+   */
+  private synchronized void written(List<Record> stored, List<String> removed) {
+    generation++;
+    snapshot = null;
+    long now = System.nanoTime();
+    for (Record record : stored) {
+      if (record.getRegistration() != null) {
+        records.put(record.getRegistration(), new Entry(record.freeze(), now));
+      }
+    }
+    removed.forEach(records::remove);
+  }
+
+  @Override
+  public void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    long requested = System.nanoTime();
+    Entry entry;
+    long version;
+    synchronized (this) {
+      entry = records.get(uuid);
+      version = generation;
+    }
+    if (entry != null && requested - entry.timestamp < ttl) {
+      recordHits.incrementAndGet();
+      resultHandler.handle(Future.succeededFuture(new Record(entry.record)));
+      return;
+    }
+    recordMisses.incrementAndGet();
+    delegate.getRecord(uuid, ar -> {
+      if (ar.succeeded() && ar.result() != null) {
+        Record frozen = ar.result().freeze();
+        synchronized (this) {
+          if (generation == version) {
+            records.put(uuid, new Entry(frozen, requested));
+          }
+        }
+        resultHandler.handle(Future.succeededFuture(new Record(frozen)));
+      } else {
+        resultHandler.handle(ar);
+      }
+    });
+  }
+
+  @Override
+  public void getRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
+    snapshot(ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(ar.result().stream().map(Record::new)
+            .collect(Collectors.toList())));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Gets the records matching the given filter, from the snapshot. Delegated if the {@code ttl} is 0.
+   */
+  @Override
+  public void getRecords(JsonObject filter, boolean includeOutOfService,
+                         Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (ttl == 0) {
+      delegate.getRecords(filter, includeOutOfService, resultHandler);
+      return;
+    }
+    RecordFilter compiled = RecordFilter.compile(filter);
+    snapshot(ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(ar.result().stream()
+            .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+            .filter(compiled::test)
+            .map(Record::new)
+            .collect(Collectors.toList())));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Finds a record accepted by the given filter, in the snapshot. Delegated if the {@code ttl} is 0.
+   */
+  @Override
+  public void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                         Handler<AsyncResult<Record>> resultHandler) {
+    if (ttl == 0) {
+      delegate.findRecord(filter, includeOutOfService, resultHandler);
+      return;
+    }
+    snapshot(ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(ar.result().stream()
+            .filter(record -> (includeOutOfService || record.getStatus() == Status.UP) && filter.apply(record))
+            .findFirst()
+            .map(Record::new)
+            .orElse(null)));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Opens a cursor on the snapshot. Delegated if the {@code ttl} is 0.
+   */
+  @Override
+  public RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    if (ttl == 0) {
+      return delegate.cursor(filter, includeOutOfService);
+    }
+    return DiscoveryBackend.super.cursor(filter, includeOutOfService);
+  }
+
+  /**
+   * Gets the snapshot of the records, reloading it if it is missing or expired. The records are frozen.
+   */
+  private void snapshot(Handler<AsyncResult<List<Record>>> handler) {
+    Snapshot current = snapshot;
+    long requested = System.nanoTime();
+    if (current != null && requested - current.timestamp < ttl) {
+      snapshotHits.incrementAndGet();
+      handler.handle(Future.succeededFuture(current.records));
+      return;
+    }
+    snapshotMisses.incrementAndGet();
+    long version;
+    synchronized (this) {
+      boolean loading = waiters != null;
+      if (!loading) {
+        waiters = new ArrayList<>();
+      }
+      waiters.add(new Waiter(handler, generation));
+      if (loading) {
+        return;
+      }
+      version = generation;
+    }
+    load(version, requested);
+  }
+
+  /**
+   * Loads the snapshot. The waiters that arrived before the load started, or before a modification made during the
+   * load, receive its result. The waiters that arrived after such a modification must see it, so the snapshot is
+   * loaded again for them.
+   *
+   * @param version   the generation when the load started
+   * @param requested the time at which the load started
+   */
+  private void load(long version, long requested) {
+    delegate.getRecords(ar -> {
+      AsyncResult<List<Record>> result;
+      if (ar.succeeded()) {
+        result = Future.succeededFuture(Collections.unmodifiableList(
+            ar.result().stream().map(Record::freeze).collect(Collectors.toList())));
+      } else {
+        result = Future.failedFuture(ar.cause());
+      }
+      List<Waiter> completed = new ArrayList<>();
+      List<Waiter> newer = new ArrayList<>();
+      long next;
+      synchronized (this) {
+        for (Waiter waiter : waiters) {
+          (waiter.version <= version ? completed : newer).add(waiter);
+        }
+        waiters = newer.isEmpty() ? null : newer;
+        next = generation;
+        if (ar.succeeded() && generation == version && ttl > 0) {
+          snapshot = new Snapshot(result.result(), requested);
+        }
+      }
+      completed.forEach(waiter -> waiter.handler.handle(result));
+      if (!newer.isEmpty()) {
+        load(next, System.nanoTime());
+      }
+    });
+  }
+
+  private static class Waiter {
+    private final Handler<AsyncResult<List<Record>>> handler;
+    private final long version;
+
+    private Waiter(Handler<AsyncResult<List<Record>>> handler, long version) {
+      this.handler = handler;
+      this.version = version;
+    }
+  }
+
+  private static class Entry {
+    private final Record record;
+    private final long timestamp;
+
+    private Entry(Record record, long timestamp) {
+      this.record = record;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private static class Snapshot {
+    private final List<Record> records;
+    private final long timestamp;
+
+    private Snapshot(List<Record> records, long timestamp) {
+      this.records = records;
+      this.timestamp = timestamp;
+    }
+  }
+}
@@ -20,24 +20,101 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
+import io.vertx.ext.discovery.Status;
 import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import io.vertx.ext.discovery.spi.RecordCursor;
 
-import java.util.List;
-import java.util.Objects;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
+ * The default backend, storing the records in a (potentially distributed) map.
+ * <p>
+ * When vert.x is not clustered, the backend maintains hash indexes on the {@code name}, {@code type} and
+ * {@code status} of the records, as well as on the metadata keys listed in the {@code indexed-metadata}
+ * configuration entry. Equality filters on these attributes are answered from the indexes instead of scanning the
+ * whole registry. The index is updated before the registry, so a record can be looked up as soon as it is stored,
+ * even by lookups running concurrently with the store. A lookup running concurrently with an update may miss the
+ * record, as the index may already reflect the new version while the registry still contains the previous one.
+ * <p>
+ * When vert.x is clustered, the operations on the distributed map run in worker threads. The {@code worker-pool-size}
+ * configuration entry creates a dedicated worker pool (named after the {@code worker-pool-name} entry) instead of
+ * sharing the vert.x worker pool with the application, and is closed with the backend. Setting the {@code ordered}
+ * entry to {@code false} lets the reads issued from the same context run in parallel; the writes always run in
+ * order.
+ * <p>
+ * The records are stored as JSON strings. The {@code storage-codec} configuration entry selects another
+ * {@link RecordStorageCodec}, such as {@code binary} for a compact binary form.
+ *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class DefaultDiscoveryBackend implements DiscoveryBackend {
-  private AsyncMap<String, String> registry;
+
+  private static final String REGISTRY = "service.registry";
+
+  /**
+   * The default name of the dedicated worker pool.
+   */
+  public static final String DEFAULT_WORKER_POOL_NAME = "vertx-discovery-registry";
+
+  private AsyncMap<String, Object> registry;
+
+  /**
+   * The dedicated worker pool, {@code null} if the vert.x worker pool is used.
+   */
+  private WorkerExecutor executor;
+
+  private RecordStorageCodec<Object> codec;
+
+  /**
+   * The index, {@code null} in clustered mode as the records can be modified by other nodes.
+   */
+  private RecordIndex index;
 
   @Override
   public void init(Vertx vertx, JsonObject config) {
-    this.registry = new AsyncMap<>(vertx, "service.registry");
+    this.codec = storageCodec(config.getString("storage-codec"));
+    int poolSize = config.getInteger("worker-pool-size", 0);
+    if (poolSize > 0 && ((VertxInternal) vertx).getClusterManager() != null) {
+      executor = vertx.createSharedWorkerExecutor(config.getString("worker-pool-name", DEFAULT_WORKER_POOL_NAME),
+          poolSize);
+    }
+    this.registry = new AsyncMap<>(vertx, REGISTRY, executor, config.getBoolean("ordered", true));
+    if (((VertxInternal) vertx).getClusterManager() == null) {
+      LocalMap<String, RecordIndex> indexes = vertx.sharedData().getLocalMap(REGISTRY + ".index");
+      RecordIndex created = new RecordIndex();
+      RecordIndex existing = indexes.putIfAbsent("index", created);
+      index = existing != null ? existing : created;
+
+      List<String> keys = new ArrayList<>();
+      config.getJsonArray("indexed-metadata", new JsonArray()).forEach(key -> keys.add(key.toString()));
+      Map<String, Object> records = SnapshotMap.get(vertx, REGISTRY);
+      index.ensureIndexed(keys, () -> records.values().stream()
+          .map(codec::decode)
+          .collect(Collectors.toList()));
+    }
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.close();
+      executor = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static RecordStorageCodec<Object> storageCodec(String name) {
+    return (RecordStorageCodec<Object>) RecordStorageCodec.forName(name);
   }
 
   @Override
@@ -48,10 +125,16 @@ public class DefaultDiscoveryBackend implements DiscoveryBackend {
     }
 
     record.setRegistration(uuid);
-    registry.put(uuid, record.toJson().encode(), ar -> {
+    if (index != null) {
+      index.add(record);
+    }
+    registry.put(uuid, codec.encode(record), ar -> {
       if (ar.succeeded()) {
         resultHandler.handle(Future.succeededFuture(record));
       } else {
+        if (index != null) {
+          index.remove(uuid);
+        }
         resultHandler.handle(Future.failedFuture(ar.cause()));
       }
     });
@@ -72,8 +155,11 @@ public class DefaultDiscoveryBackend implements DiscoveryBackend {
           // Not found
           resultHandler.handle(Future.failedFuture("Record '" + uuid + "' not found"));
         } else {
+          if (index != null) {
+            index.remove(uuid);
+          }
           resultHandler.handle(Future.succeededFuture(
-              new Record(new JsonObject(ar.result()))));
+              codec.decode(ar.result())));
         }
       } else {
         resultHandler.handle(Future.failedFuture(ar.cause()));
@@ -81,37 +167,245 @@ public class DefaultDiscoveryBackend implements DiscoveryBackend {
     });
   }
 
+  /**
+   * Updates the record, if it is still registered. The update fails if the record does not exist (for instance
+   * because it has been removed concurrently), so it is not registered again.
+   */
   @Override
   public void update(Record record, Handler<AsyncResult<Void>> resultHandler) {
     Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
-    registry.put(record.getRegistration(), record.toJson().encode(), ar -> {
-      if (ar.succeeded()) {
+    String uuid = record.getRegistration();
+    if (index != null) {
+      index.add(record);
+    }
+    registry.replace(uuid, codec.encode(record), ar -> {
+      if (ar.failed()) {
+        // The registry may or may not have been modified
+        reindex(Collections.singleton(uuid));
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      } else if (ar.result() == null) {
+        // Not found
+        if (index != null) {
+          index.remove(uuid);
+        }
+        resultHandler.handle(Future.failedFuture("Record '" + uuid + "' not found"));
+      } else {
         resultHandler.handle(Future.succeededFuture());
+      }
+    });
+  }
+
+  /**
+   * Stores the records in a single operation on the registry.
+   */
+  @Override
+  public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    for (Record record : records) {
+      if (record.getRegistration() != null) {
+        resultHandler.handle(Future.failedFuture(
+            new IllegalArgumentException("The record has already been registered")));
+        return;
+      }
+    }
+
+    Map<String, Object> entries = new LinkedHashMap<>();
+    for (Record record : records) {
+      String uuid = UUID.randomUUID().toString();
+      record.setRegistration(uuid);
+      entries.put(uuid, codec.encode(record));
+    }
+    if (index != null) {
+      records.forEach(index::add);
+    }
+    registry.putAll(entries, ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(new ArrayList<>(records)));
+      } else {
+        if (index != null) {
+          entries.keySet().forEach(index::remove);
+        }
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Removes the records in a single operation on the registry. Unknown ids are ignored.
+   */
+  @Override
+  public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    registry.removeAll(uuids, ar -> {
+      if (ar.succeeded()) {
+        if (index != null) {
+          ar.result().keySet().forEach(index::remove);
+        }
+        resultHandler.handle(Future.succeededFuture(ar.result().values().stream()
+            .map(codec::decode)
+            .collect(Collectors.toList())));
       } else {
         resultHandler.handle(Future.failedFuture(ar.cause()));
       }
     });
   }
 
+  /**
+   * Updates the records in a single operation on the registry. Like {@link #update(Record, Handler)}, the records
+   * that do not exist anymore are not registered again: they are not part of the result.
+   */
+  @Override
+  public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (records.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+      return;
+    }
+    Map<String, Object> entries = new LinkedHashMap<>();
+    for (Record record : records) {
+      Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+      entries.put(record.getRegistration(), codec.encode(record));
+    }
+    if (index != null) {
+      records.forEach(index::add);
+    }
+    registry.replaceAll(entries, ar -> {
+      if (ar.failed()) {
+        // The registry may or may not have been modified
+        reindex(entries.keySet());
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<Record> updated = new ArrayList<>();
+      for (Record record : records) {
+        if (ar.result().contains(record.getRegistration())) {
+          updated.add(record);
+        } else if (index != null) {
+          // Not found
+          index.remove(record.getRegistration());
+        }
+      }
+      if (updated.isEmpty()) {
+        resultHandler.handle(Future.failedFuture("Records " + entries.keySet() + " not found"));
+      } else {
+        resultHandler.handle(Future.succeededFuture(updated));
+      }
+    });
+  }
+
   @Override
   public void getRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
     registry.getAll(ar -> {
       if (ar.succeeded()) {
         resultHandler.handle(Future.succeededFuture(ar.result().values().stream()
-            .map(s -> new Record(new JsonObject(s)))
+            .map(codec::decode)
+            .collect(Collectors.toList())));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Gets the records matching the given filter. When possible the candidates are selected using the index,
+   * otherwise all the records are retrieved and checked against the filter.
+   */
+  @Override
+  public void getRecords(JsonObject filter, boolean includeOutOfService,
+                         Handler<AsyncResult<List<Record>>> resultHandler) {
+    JsonObject query = filter == null ? new JsonObject() : filter;
+    Set<String> candidates = candidates(query, includeOutOfService);
+    RecordFilter compiled = RecordFilter.compile(query);
+    Handler<AsyncResult<Map<String, Object>>> completion = ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(ar.result().values().stream()
+            .map(codec::decode)
+            .filter(compiled::test)
+            .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
             .collect(Collectors.toList())));
       } else {
         resultHandler.handle(Future.failedFuture(ar.cause()));
       }
+    };
+
+    if (candidates == null) {
+      registry.getAll(completion);
+    } else if (candidates.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(Collections.emptyList()));
+    } else {
+      registry.getAll(candidates, completion);
+    }
+  }
+
+  /**
+   * Finds a record accepted by the given filter. The stored records are decoded one by one, and the lookup stops at
+   * the first accepted record. The candidates are selected using the index when possible.
+   */
+  @Override
+  public void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                         Handler<AsyncResult<Record>> resultHandler) {
+    JsonObject query = filter instanceof RecordFilter ? ((RecordFilter) filter).toJson() : new JsonObject();
+    Set<String> candidates = candidates(query, includeOutOfService);
+    if (candidates != null && candidates.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(null));
+      return;
+    }
+    registry.find(candidates, codec::decode,
+        record -> (includeOutOfService || record.getStatus() == Status.UP) && filter.apply(record),
+        resultHandler);
+  }
+
+  /**
+   * Re-indexes the given records from the registry, after a failed write.
+   */
+  private void reindex(Collection<String> uuids) {
+    if (index == null) {
+      return;
+    }
+    registry.getAll(uuids, ar -> {
+      if (ar.succeeded()) {
+        for (String uuid : uuids) {
+          Object value = ar.result().get(uuid);
+          if (value == null) {
+            index.remove(uuid);
+          } else {
+            index.add(codec.decode(value));
+          }
+        }
+      }
     });
   }
 
+  /**
+   * Computes the registration ids of the records that may match the given filter.
+   *
+   * @return the candidates, {@code null} if all the records must be checked
+   */
+  private Set<String> candidates(JsonObject query, boolean includeOutOfService) {
+    Object registration = query.getValue("registration");
+    if (registration instanceof String && !"*".equals(registration)) {
+      return Collections.singleton((String) registration);
+    } else if (index != null) {
+      return index.lookup(query, includeOutOfService);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Opens a cursor on the records matching the given filter. The registration ids of the candidates are collected
+   * when the cursor is opened, and the records are then retrieved batch by batch.
+   */
+  @Override
+  public RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    JsonObject query = filter == null ? new JsonObject() : filter;
+    return new RegistryCursor(candidates(query, includeOutOfService), RecordFilter.compile(query),
+        includeOutOfService);
+  }
+
   @Override
   public void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
     registry.get(uuid, ar -> {
       if (ar.succeeded()) {
         if (ar.result() != null) {
-          resultHandler.handle(Future.succeededFuture(new Record(new JsonObject(ar.result()))));
+          resultHandler.handle(Future.succeededFuture(codec.decode(ar.result())));
         } else {
           resultHandler.handle(Future.succeededFuture(null));
         }
@@ -120,4 +414,83 @@ public class DefaultDiscoveryBackend implements DiscoveryBackend {
       }
     });
   }
+
+  /**
+   * A cursor on the registry. Records removed after the cursor has been opened are skipped, records added after the
+   * cursor has been opened are not returned.
+   */
+  private class RegistryCursor implements RecordCursor {
+
+    private static final int PENDING = 0;
+    private static final int RETURNED = 1;
+    private static final int SKIPPED = 2;
+
+    private final RecordFilter filter;
+    private final boolean includeOutOfService;
+    private Iterator<String> keys;
+
+    private RegistryCursor(Set<String> candidates, RecordFilter filter, boolean includeOutOfService) {
+      this.filter = filter;
+      this.includeOutOfService = includeOutOfService;
+      this.keys = candidates == null ? null : new ArrayList<>(candidates).iterator();
+    }
+
+    @Override
+    public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+      if (keys == null) {
+        // No candidates, iterate over all the registration ids
+        registry.keySet(ar -> {
+          if (ar.succeeded()) {
+            keys = new ArrayList<>(ar.result()).iterator();
+            next(max, resultHandler);
+          } else {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+          }
+        });
+        return;
+      }
+
+      while (true) {
+        List<String> batch = new ArrayList<>();
+        while (keys.hasNext() && batch.size() < max) {
+          batch.add(keys.next());
+        }
+        if (batch.isEmpty()) {
+          resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+          return;
+        }
+
+        // PENDING until either the caller returns from getAll (RETURNED) or a non-matching batch is received before
+        // (SKIPPED), in which case the loop requests the next batch instead of recursing.
+        AtomicInteger state = new AtomicInteger(PENDING);
+        registry.getAll(batch, ar -> {
+          if (ar.failed()) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+            return;
+          }
+          List<Record> records = ar.result().values().stream()
+              .map(codec::decode)
+              .filter(filter::test)
+              .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+              .collect(Collectors.toList());
+          if (records.isEmpty()) {
+            // None of the records of the batch matches, an empty batch would denote the end of the cursor
+            if (!state.compareAndSet(PENDING, SKIPPED)) {
+              next(max, resultHandler);
+            }
+          } else {
+            resultHandler.handle(Future.succeededFuture(records));
+          }
+        });
+        if (state.compareAndSet(PENDING, RETURNED)) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      keys = Collections.emptyIterator();
+    }
+  }
 }
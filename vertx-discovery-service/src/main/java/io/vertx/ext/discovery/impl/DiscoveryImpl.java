@@ -17,13 +17,19 @@
 package io.vertx.ext.discovery.impl;
 
 import io.vertx.core.*;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.discovery.*;
 import io.vertx.ext.discovery.spi.DiscoveryBackend;
 import io.vertx.ext.discovery.spi.DiscoveryBridge;
+import io.vertx.ext.discovery.spi.ListRecordCursor;
+import io.vertx.ext.discovery.spi.RecordCursor;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -35,10 +41,22 @@ import java.util.stream.Collectors;
  */
 public class DiscoveryImpl implements DiscoveryService {
 
+  /**
+   * The names of the backends shipped with this module, only used when explicitly selected.
+   */
+  private static final Set<String> BUILT_IN_BACKENDS = new HashSet<>(Arrays.asList(
+      InMemoryDiscoveryBackend.class.getName(), FileDiscoveryBackend.class.getName()));
+
   private final Vertx vertx;
   private final String announce;
+  private final String batchAnnounce;
   private final String usage;
   private final DiscoveryBackend backend;
+  private final NearCache cache;
+  private final RecordWatcher watcher;
+  private final LeaseManager leases;
+  private final boolean recordCodec;
+  private final boolean removeExpiredRecords;
 
   private final Set<DiscoveryBridge> bridges = new CopyOnWriteArraySet<>();
   private final Set<ServiceReference> bindings = new CopyOnWriteArraySet<>();
@@ -49,10 +67,29 @@ public class DiscoveryImpl implements DiscoveryService {
   public DiscoveryImpl(Vertx vertx, DiscoveryOptions options) {
     this.vertx = vertx;
     this.announce = options.getAnnounceAddress();
+    this.batchAnnounce = options.getBatchAnnounceAddress();
     this.usage = options.getUsageAddress();
+    this.recordCodec = options.isRecordCodec();
+    if (recordCodec) {
+      RecordMessageCodec.register(vertx);
+    }
 
-    this.backend = getBackend(options.getBackendConfiguration().getString("backend-name", null));
+    DiscoveryBackend selected = getBackend(options.getBackendConfiguration().getString("backend-name", null));
+    if (options.getBackendConfiguration().getJsonObject("write-behind") != null) {
+      selected = new WriteBehindDiscoveryBackend(selected);
+    }
+    this.backend = options.getBackendConfiguration().getJsonObject("caching") != null ?
+        new CachingDiscoveryBackend(selected) : selected;
     this.backend.init(vertx, options.getBackendConfiguration());
+    this.cache = options.isNearCache() ?
+        new NearCache(vertx, backend, announce, batchAnnounce,
+        options.getNearCacheReconciliationPeriod()) : null;
+
+    this.watcher = new RecordWatcher(vertx, this, announce, batchAnnounce);
+    this.removeExpiredRecords = options.isRemoveExpiredRecords();
+    this.leases = options.getLeaseAddress() != null ?
+        new LeaseManager(vertx, options.getLeaseAddress(), announce, batchAnnounce, options.getLeaseResolution(),
+            this::expire) : null;
 
     this.id = options.getName() != null ? options.getName() : getNodeId(vertx);
 
@@ -71,11 +108,14 @@ public class DiscoveryImpl implements DiscoveryService {
     Iterator<DiscoveryBackend> iterator = backends.iterator();
 
     if (maybeName == null) {
-      if (!iterator.hasNext()) {
-        return new DefaultDiscoveryBackend();
-      } else {
-        return iterator.next();
+      // Use the first backend provided by another module, the built-in backends must be selected by name
+      while (iterator.hasNext()) {
+        DiscoveryBackend backend = iterator.next();
+        if (!BUILT_IN_BACKENDS.contains(backend.name())) {
+          return backend;
+        }
       }
+      return new DefaultDiscoveryBackend();
     }
 
     if (maybeName.equals(DefaultDiscoveryBackend.class.getName())) {
@@ -112,10 +152,7 @@ public class DiscoveryImpl implements DiscoveryService {
     if (usage == null) {
       return;
     }
-    vertx.eventBus().publish(usage, new JsonObject()
-        .put("type", "bind")
-        .put("record", reference.record().toJson())
-        .put("id", id));
+    sendUsageEvent("bind", reference);
   }
 
   @Override
@@ -130,10 +167,21 @@ public class DiscoveryImpl implements DiscoveryService {
     if (usage == null) {
       return;
     }
-    vertx.eventBus().publish(usage, new JsonObject()
-        .put("type", "release")
-        .put("record", reference.record().toJson())
-        .put("id", id));
+    sendUsageEvent("release", reference);
+  }
+
+  private void sendUsageEvent(String type, ServiceReference reference) {
+    if (recordCodec) {
+      vertx.eventBus().publish(usage, snapshot(reference.record()), new DeliveryOptions()
+          .setCodecName(RecordMessageCodec.NAME)
+          .addHeader("type", type)
+          .addHeader("id", id));
+    } else {
+      vertx.eventBus().publish(usage, new JsonObject()
+          .put("type", type)
+          .put("record", reference.record().toJson())
+          .put("id", id));
+    }
   }
 
   @Override
@@ -175,28 +223,120 @@ public class DiscoveryImpl implements DiscoveryService {
     bindings.forEach(ServiceReference::release);
     bindings.clear();
 
+    watcher.close();
+    if (leases != null) {
+      leases.close();
+    }
+    if (cache != null) {
+      cache.close();
+    }
+
     CompositeFuture.all(futures).setHandler(ar -> {
       if (ar.succeeded()) {
         LOGGER.info("Discovery bridges stopped");
       } else {
         LOGGER.warn("Some discovery bridges did not stopped smoothly", ar.cause());
       }
+      // The bridges may un-publish their records when stopped, so the backend is closed last
+      backend.close();
     });
   }
 
   @Override
   public void publish(Record record, Handler<AsyncResult<Record>> resultHandler) {
-    Status status = record.getStatus() != null
+    backend.store(record.setStatus(publicationStatus(record)), ar -> {
+      if (ar.succeeded()) {
+        announce(ar.result());
+      }
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void publish(Record record, long lease, Handler<AsyncResult<Record>> resultHandler) {
+    if (leases == null) {
+      resultHandler.handle(Future.failedFuture("The leases are disabled"));
+      return;
+    }
+    if (lease <= 0) {
+      resultHandler.handle(Future.failedFuture(new IllegalArgumentException("The lease must be strictly positive")));
+      return;
+    }
+    backend.store(record.setStatus(publicationStatus(record)), ar -> {
+      if (ar.succeeded()) {
+        leases.lease(ar.result().getRegistration(), lease);
+        announce(ar.result());
+      }
+      resultHandler.handle(ar);
+    });
+  }
+
+  @Override
+  public void renew(String id, Handler<AsyncResult<Void>> resultHandler) {
+    if (leases != null && leases.renew(id)) {
+      resultHandler.handle(Future.succeededFuture());
+    } else {
+      resultHandler.handle(Future.failedFuture("No lease for record '" + id + "'"));
+    }
+  }
+
+  /**
+   * Marks the records whose lease has expired as {@code DOWN}, or removes them, and announces the change. Only the
+   * node owning the leases expires them. The update and the removal fail for records un-published in the meantime, so
+   * they are not registered again.
+   *
+   * @param ids the registration ids of the expired records
+   */
+  private void expire(List<String> ids) {
+    if (removeExpiredRecords) {
+      backend.removeAll(ids, ar -> {
+        if (ar.failed()) {
+          LOGGER.warn("Cannot remove the expired records", ar.cause());
+          return;
+        }
+        announce(ar.result().stream()
+            .map(record -> new Record(record).setStatus(Status.DOWN))
+            .collect(Collectors.toList()));
+      });
+      return;
+    }
+    for (String id : ids) {
+      backend.getRecord(id, ar -> {
+        if (ar.failed()) {
+          LOGGER.warn("Cannot retrieve the expired record " + id, ar.cause());
+          return;
+        }
+        if (ar.result() == null || ar.result().getStatus() == Status.DOWN) {
+          return;
+        }
+        Record expired = new Record(ar.result()).setStatus(Status.DOWN);
+        backend.update(expired, updated -> {
+          if (updated.succeeded()) {
+            announce(expired);
+          } else {
+            LOGGER.warn("Cannot mark the expired record " + id + " as DOWN", updated.cause());
+          }
+        });
+      });
+    }
+  }
+
+  private static Status publicationStatus(Record record) {
+    return record.getStatus() != null
         && record.getStatus() != Status.UNKNOWN
         && record.getStatus() != Status.DOWN
         ? record.getStatus() : Status.UP;
+  }
 
-    backend.store(record.setStatus(status), resultHandler);
-    Record announcedRecord = new Record(record);
-    announcedRecord
-        .setRegistration(null)
-        .setStatus(status);
-    vertx.eventBus().publish(announce, announcedRecord.toJson());
+  @Override
+  public void publishAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    records.forEach(record -> record.setStatus(publicationStatus(record)));
+    backend.storeAll(records, ar -> {
+      if (ar.succeeded()) {
+        announce(ar.result());
+      }
+      resultHandler.handle(ar);
+    });
   }
 
   @Override
@@ -208,27 +348,118 @@ public class DiscoveryImpl implements DiscoveryService {
       }
       Record announcedRecord = new Record(record.result());
       announcedRecord
-          .setRegistration(null)
+          .setRegistration(id)
           .setStatus(Status.DOWN);
-      vertx.eventBus().publish(announce, announcedRecord.toJson());
+      announce(announcedRecord);
       resultHandler.handle(Future.succeededFuture());
     });
 
   }
 
   @Override
-  public void getRecord(JsonObject filter,
-                        Handler<AsyncResult<Record>> resultHandler) {
-    boolean includeOutOfService = false;
-    Function<Record, Boolean> accept;
-    if (filter == null) {
-      accept = r -> true;
+  public void unpublishAll(List<String> ids, Handler<AsyncResult<Void>> resultHandler) {
+    backend.removeAll(ids, ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      announce(ar.result().stream()
+          .map(record -> new Record(record).setStatus(Status.DOWN))
+          .collect(Collectors.toList()));
+      resultHandler.handle(Future.succeededFuture());
+    });
+  }
+
+  /**
+   * Sends the announcement of a modification of the given record, and applies it to the near cache if enabled.
+   *
+   * @param record the published, updated or withdrawn record, with its registration id
+   */
+  private void announce(Record record) {
+    if (cache != null) {
+      cache.onLocalModification(record);
+    }
+    if (recordCodec) {
+      vertx.eventBus().publish(announce, snapshot(record),
+          new DeliveryOptions().setCodecName(RecordMessageCodec.NAME));
     } else {
-      includeOutOfService = filter.getString("status") != null;
-      accept = r -> r.match(filter);
+      vertx.eventBus().publish(announce, record.toJson());
+    }
+  }
+
+  /**
+   * Sends the announcements of a batch of modifications, and applies them to the near cache if enabled. When the
+   * batch announce address is set, the batch is announced by a single JSON array on this address. Otherwise, it is
+   * announced record by record on the announce address.
+   *
+   * @param records the published, updated or withdrawn records, with their registration id
+   */
+  private void announce(List<Record> records) {
+    if (batchAnnounce == null) {
+      records.forEach(this::announce);
+      return;
+    }
+    if (records.isEmpty()) {
+      return;
+    }
+    JsonArray batch = new JsonArray();
+    for (Record record : records) {
+      if (cache != null) {
+        cache.onLocalModification(record);
+      }
+      batch.add(record.toJson());
+    }
+    vertx.eventBus().publish(batchAnnounce, batch);
+  }
+
+  /**
+   * Registers a consumer receiving the records announced in batches.
+   *
+   * @param vertx   the vert.x instance
+   * @param address the batch announce address, {@code null} if the batches are not announced separately
+   * @param handler the handler called for each announced record
+   * @return the consumer, {@code null} if the address is {@code null}
+   */
+  static MessageConsumer<JsonArray> consumeBatches(Vertx vertx, String address, Handler<Record> handler) {
+    if (address == null) {
+      return null;
+    }
+    return vertx.eventBus().consumer(address,
+        msg -> msg.body().forEach(json -> handler.handle(new Record((JsonObject) json))));
+  }
+
+  /**
+   * Freezes the given record before sending it with the {@link RecordMessageCodec}. The codec does not copy the
+   * record for local deliveries, so the consumers share the frozen instance.
+   */
+  private static Record snapshot(Record record) {
+    return record.freeze();
+  }
+
+  /**
+   * Decodes the body of an announcement. When the {@link RecordMessageCodec} is enabled, the body is the record
+   * itself.
+   *
+   * @param body the body
+   * @return the announced record
+   */
+  static Record announced(Object body) {
+    if (body instanceof Record) {
+      return (Record) body;
     }
+    return new Record((JsonObject) body);
+  }
 
-    getRecord(accept, includeOutOfService, resultHandler);
+  @Override
+  public void getRecord(JsonObject filter,
+                        Handler<AsyncResult<Record>> resultHandler) {
+    RecordFilter compiled = RecordFilter.compile(filter);
+    boolean includeOutOfService = compiled.hasStatusConstraint();
+    if (cache != null && cache.canServe(filter)) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecord(compiled, includeOutOfService)));
+      return;
+    }
+    backend.findRecord(compiled, includeOutOfService, resultHandler);
   }
 
   @Override
@@ -240,35 +471,41 @@ public class DiscoveryImpl implements DiscoveryService {
   public void getRecord(Function<Record, Boolean> filter, boolean includeOutOfService, Handler<AsyncResult<Record>>
       resultHandler) {
     Objects.requireNonNull(filter);
-    backend.getRecords(list -> {
-      if (list.failed()) {
-        resultHandler.handle(Future.failedFuture(list.cause()));
-      } else {
-        Optional<Record> any = list.result().stream()
-            .filter(filter::apply)
-            .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
-            .findAny();
-        if (any.isPresent()) {
-          resultHandler.handle(Future.succeededFuture(any.get()));
-        } else {
-          resultHandler.handle(Future.succeededFuture(null));
-        }
-      }
-    });
+    if (cache != null && cache.canServe(includeOutOfService)) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecord(filter, includeOutOfService)));
+      return;
+    }
+    backend.findRecord(filter, includeOutOfService, resultHandler);
   }
 
   @Override
   public void getRecords(JsonObject filter, Handler<AsyncResult<List<Record>>> resultHandler) {
-    boolean includeOutOfService = false;
-    Function<Record, Boolean> accept;
-    if (filter == null) {
-      accept = r -> true;
+    RecordFilter compiled = RecordFilter.compile(filter);
+    boolean includeOutOfService = compiled.hasStatusConstraint();
+    if (cache != null && cache.canServe(filter)) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecords(compiled, includeOutOfService)));
+      return;
+    }
+    backend.getRecords(filter, includeOutOfService, resultHandler);
+  }
+
+  @Override
+  public ReadStream<Record> recordStream(JsonObject filter) {
+    RecordFilter compiled = RecordFilter.compile(filter);
+    boolean includeOutOfService = compiled.hasStatusConstraint();
+    RecordCursor cursor;
+    if (cache != null && cache.canServe(filter)) {
+      cursor = new ListRecordCursor(cache.getRecords(compiled, includeOutOfService));
     } else {
-      includeOutOfService = filter.getString("status") != null;
-      accept = r -> r.match(filter);
+      cursor = backend.cursor(filter, includeOutOfService);
     }
+    return new RecordStream(cursor, RecordStream.DEFAULT_BATCH_SIZE);
+  }
 
-    getRecords(accept, includeOutOfService, resultHandler);
+  @Override
+  public RecordWatch watch(JsonObject filter, Handler<RecordEvent> handler) {
+    Objects.requireNonNull(handler);
+    return watcher.watch(filter, handler);
   }
 
   @Override
@@ -279,6 +516,10 @@ public class DiscoveryImpl implements DiscoveryService {
   @Override
   public void getRecords(Function<Record, Boolean> filter, boolean includeOutOfService, Handler<AsyncResult<List<Record>>> resultHandler) {
     Objects.requireNonNull(filter);
+    if (cache != null && cache.canServe(includeOutOfService)) {
+      resultHandler.handle(Future.succeededFuture(cache.getRecords(filter, includeOutOfService)));
+      return;
+    }
     backend.getRecords(list -> {
       if (list.failed()) {
         resultHandler.handle(Future.failedFuture(list.cause()));
@@ -299,12 +540,20 @@ public class DiscoveryImpl implements DiscoveryService {
       if (ar.failed()) {
         resultHandler.handle(Future.failedFuture(ar.cause()));
       } else {
+        announce(record);
         resultHandler.handle(Future.succeededFuture(record));
       }
     });
+  }
 
-    Record announcedRecord = new Record(record);
-    vertx.eventBus().publish(announce, announcedRecord.toJson());
+  @Override
+  public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    backend.updateAll(records, ar -> {
+      if (ar.succeeded()) {
+        announce(ar.result());
+      }
+      resultHandler.handle(ar);
+    });
   }
 
   @Override
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.spi.RecordCursor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A backend for non-clustered vert.x, keeping the records in memory (as the {@link InMemoryDiscoveryBackend}) and
+ * persisting them on the file system, so they survive restarts. The modifications are appended to a journal,
+ * periodically compacted into a snapshot (see {@link RecordJournal}). The operations complete once the modification
+ * has been synced to the disk, and the modifications are applied to the registry in the order they have been written.
+ * <p>
+ * On startup, the registry is rebuilt from the snapshot and the journal by a worker thread. The lookups made in the
+ * meantime are delayed until the registry has been restored.
+ * <p>
+ * This backend is selected by setting the {@code backend-name} entry of the backend configuration to the name of this
+ * class. It is configured using:
+ * <ul>
+ * <li>{@code path}: the directory storing the snapshot and the journal, {@code .vertx/discovery} by default</li>
+ * <li>{@code compaction-threshold}: the size of the journal (in bytes) triggering a compaction, 16MB by default</li>
+ * </ul>
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class FileDiscoveryBackend extends InMemoryDiscoveryBackend {
+
+  private static final String JOURNALS = "vertx.discovery.journals";
+
+  public static final String DEFAULT_PATH = ".vertx/discovery";
+
+  public static final long DEFAULT_COMPACTION_THRESHOLD = 16 * 1024 * 1024;
+
+  private LocalMap<String, RecordJournal> journals;
+  private String path;
+  private RecordJournal journal;
+
+  @Override
+  public void init(Vertx vertx, JsonObject config) {
+    try {
+      path = new File(config.getString("path", DEFAULT_PATH)).getCanonicalPath();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid discovery storage path: " + config.getString("path"), e);
+    }
+    super.init(vertx, config.copy().put("registry-name", "file:" + path));
+
+    journals = vertx.sharedData().getLocalMap(JOURNALS);
+    long threshold = config.getLong("compaction-threshold", DEFAULT_COMPACTION_THRESHOLD);
+    while (true) {
+      RecordJournal created = new RecordJournal(vertx, new File(path), threshold);
+      RecordJournal existing = journals.putIfAbsent(path, created);
+      journal = existing != null ? existing : created;
+      if (journal.open(this::snapshot, this::load)) {
+        return;
+      }
+      // Closed concurrently by its last user, replaced by a new one
+      journals.removeIfPresent(path, journal);
+    }
+  }
+
+  @Override
+  protected void persist(List<Record> stored, List<Record> updated, List<String> removed, Runnable apply,
+                         Handler<AsyncResult<Void>> completion) {
+    journal.append(stored, updated, removed, apply, completion);
+  }
+
+  @Override
+  public void close() {
+    if (journal.close()) {
+      journals.removeIfPresent(path, journal);
+    }
+  }
+
+  /**
+   * Calls the given action once the registry has been restored, or reports the failure to the given handler.
+   */
+  private <T> void whenRestored(Handler<AsyncResult<T>> resultHandler, Runnable action) {
+    journal.whenOpened(ar -> {
+      if (ar.succeeded()) {
+        action.run();
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  @Override
+  public void getRecords(JsonObject filter, boolean includeOutOfService,
+                         Handler<AsyncResult<List<Record>>> resultHandler) {
+    whenRestored(resultHandler, () -> super.getRecords(filter, includeOutOfService, resultHandler));
+  }
+
+  @Override
+  public void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                         Handler<AsyncResult<Record>> resultHandler) {
+    whenRestored(resultHandler, () -> super.findRecord(filter, includeOutOfService, resultHandler));
+  }
+
+  @Override
+  public void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    whenRestored(resultHandler, () -> super.getRecord(uuid, resultHandler));
+  }
+
+  /**
+   * The returned cursor works on a snapshot taken once the registry has been restored, when the first batch is
+   * requested.
+   */
+  @Override
+  public RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    return new RecordCursor() {
+      private RecordCursor cursor;
+
+      @Override
+      public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+        whenRestored(resultHandler, () -> {
+          if (cursor == null) {
+            cursor = FileDiscoveryBackend.super.cursor(filter, includeOutOfService);
+          }
+          cursor.next(max, resultHandler);
+        });
+      }
+
+      @Override
+      public void close() {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
+import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import io.vertx.ext.discovery.spi.RecordCursor;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * A backend for non-clustered vert.x, keeping the records in memory. The records are stored frozen (see
+ * {@link Record#freeze()}) in a {@link PersistentMap}, published through an atomic reference:
+ * <ul>
+ * <li>readers work on a consistent snapshot of the registry, without locks and without decoding the records. Only the
+ * returned records are copied, so the callers can modify them,</li>
+ * <li>writers build a new version of the map and publish it with a compare-and-set, retrying on conflicts. Batch
+ * operations are atomic.</li>
+ * </ul>
+ * The registry is shared by all the instances of this backend created on the same vert.x instance (and using the same
+ * {@code registry-name} configuration entry), but not with the other nodes of a cluster. The operations complete
+ * synchronously, before the methods return.
+ * <p>
+ * This backend is selected by setting the {@code backend-name} entry of the backend configuration to the name of this
+ * class.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class InMemoryDiscoveryBackend implements DiscoveryBackend {
+
+  private static final String REGISTRIES = "vertx.discovery.in-memory";
+
+  private Registry registry;
+
+  @Override
+  public void init(Vertx vertx, JsonObject config) {
+    LocalMap<String, Registry> registries = vertx.sharedData().getLocalMap(REGISTRIES);
+    Registry created = new Registry();
+    Registry existing = registries.putIfAbsent(config.getString("registry-name", "registry"), created);
+    registry = existing != null ? existing : created;
+  }
+
+  /**
+   * Applies a modification to the registry. Sub-classes can override this method to persist the modifications: the
+   * {@code apply} action must then be run once the modification has been persisted, one modification at a time and in
+   * the order they have been persisted, so the registry always matches the persisted state. If the modification cannot
+   * be persisted, {@code apply} must not be run. The default implementation applies the modification immediately.
+   *
+   * @param stored     the records stored, frozen
+   * @param updated    the records updated, frozen. An update is only applied if the record is in the registry
+   * @param removed    the registration ids of the removed records
+   * @param apply      applies the modification to the registry
+   * @param completion the handler to call once the modification has been persisted and applied
+   */
+  protected void persist(List<Record> stored, List<Record> updated, List<String> removed, Runnable apply,
+                         Handler<AsyncResult<Void>> completion) {
+    apply.run();
+    completion.handle(Future.succeededFuture());
+  }
+
+  /**
+   * Replaces the content of the registry with the given records. This method is meant to be used by sub-classes to
+   * restore the registry.
+   *
+   * @param records the records, with their registration id
+   */
+  protected void load(Collection<Record> records) {
+    PersistentMap<String, Record> map = PersistentMap.empty();
+    for (Record record : records) {
+      map = map.plus(record.getRegistration(), record.freeze());
+    }
+    registry.set(map);
+  }
+
+  /**
+   * @return an iterator on a consistent snapshot of the registry. The records are frozen.
+   */
+  protected Iterator<Record> snapshot() {
+    return registry.get().values();
+  }
+
+  /**
+   * Persists and applies a modification, and reports its result, computed from the version of the registry the
+   * modification has been applied to.
+   */
+  private <T> void modify(List<Record> stored, List<Record> updated, List<String> removed,
+                          Function<PersistentMap<String, Record>, AsyncResult<T>> result,
+                          Handler<AsyncResult<T>> resultHandler) {
+    AtomicReference<PersistentMap<String, Record>> previous = new AtomicReference<>();
+    Runnable apply = () -> previous.set(registry.update(map -> {
+      for (Record record : stored) {
+        map = map.plus(record.getRegistration(), record);
+      }
+      for (Record record : updated) {
+        if (map.get(record.getRegistration()) != null) {
+          map = map.plus(record.getRegistration(), record);
+        }
+      }
+      for (String uuid : removed) {
+        map = map.minus(uuid);
+      }
+      return map;
+    }));
+    persist(stored, updated, removed, apply, ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(result.apply(previous.get()));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  @Override
+  public void store(Record record, Handler<AsyncResult<Record>> resultHandler) {
+    if (record.getRegistration() != null) {
+      throw new IllegalArgumentException("The record has already been registered");
+    }
+    String uuid = UUID.randomUUID().toString();
+    record.setRegistration(uuid);
+    modify(Collections.singletonList(record.freeze()), Collections.emptyList(), Collections.emptyList(),
+        previous -> Future.succeededFuture(record), resultHandler);
+  }
+
+  @Override
+  public void remove(Record record, Handler<AsyncResult<Record>> resultHandler) {
+    Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+    remove(record.getRegistration(), resultHandler);
+  }
+
+  @Override
+  public void remove(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    Objects.requireNonNull(uuid, "No registration id in the record");
+    modify(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(uuid), previous -> {
+      Record removed = previous.get(uuid);
+      if (removed == null) {
+        return Future.failedFuture("Record '" + uuid + "' not found");
+      }
+      return Future.succeededFuture(new Record(removed));
+    }, resultHandler);
+  }
+
+  /**
+   * Updates the record, only if it is in the registry: unknown and removed records are not registered again.
+   */
+  @Override
+  public void update(Record record, Handler<AsyncResult<Void>> resultHandler) {
+    String uuid = Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+    modify(Collections.emptyList(), Collections.singletonList(record.freeze()), Collections.emptyList(), previous -> {
+      if (previous.get(uuid) == null) {
+        return Future.failedFuture("Record '" + uuid + "' not found");
+      }
+      return Future.succeededFuture();
+    }, resultHandler);
+  }
+
+  /**
+   * Stores the records atomically.
+   */
+  @Override
+  public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    for (Record record : records) {
+      if (record.getRegistration() != null) {
+        resultHandler.handle(Future.failedFuture(
+            new IllegalArgumentException("The record has already been registered")));
+        return;
+      }
+    }
+    List<Record> frozen = new ArrayList<>(records.size());
+    for (Record record : records) {
+      record.setRegistration(UUID.randomUUID().toString());
+      frozen.add(record.freeze());
+    }
+    List<Record> result = new ArrayList<>(records);
+    modify(frozen, Collections.emptyList(), Collections.emptyList(), previous -> Future.succeededFuture(result),
+        resultHandler);
+  }
+
+  /**
+   * Removes the records atomically. Unknown ids are ignored.
+   */
+  @Override
+  public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    List<String> ids = new ArrayList<>(uuids);
+    modify(Collections.emptyList(), Collections.emptyList(), ids, previous -> {
+      List<Record> removed = new ArrayList<>();
+      for (String uuid : ids) {
+        Record record = previous.get(uuid);
+        if (record != null) {
+          removed.add(new Record(record));
+        }
+      }
+      return Future.succeededFuture(removed);
+    }, resultHandler);
+  }
+
+  /**
+   * Updates the records atomically. Unknown ids are ignored, and are not part of the result.
+   */
+  @Override
+  public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (records.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(Collections.emptyList()));
+      return;
+    }
+    List<Record> frozen = new ArrayList<>(records.size());
+    for (Record record : records) {
+      Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+      frozen.add(record.freeze());
+    }
+    List<Record> candidates = new ArrayList<>(records);
+    modify(Collections.emptyList(), frozen, Collections.emptyList(), previous -> {
+      List<Record> updated = new ArrayList<>();
+      for (Record record : candidates) {
+        if (previous.get(record.getRegistration()) != null) {
+          updated.add(record);
+        }
+      }
+      if (updated.isEmpty()) {
+        List<String> uuids = candidates.stream().map(Record::getRegistration).collect(Collectors.toList());
+        return Future.failedFuture("Records " + uuids + " not found");
+      }
+      return Future.succeededFuture(updated);
+    }, resultHandler);
+  }
+
+  @Override
+  public void getRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
+    getRecords(null, true, resultHandler);
+  }
+
+  /**
+   * Checks the records of the current snapshot against the filter, and only copies the matching ones.
+   */
+  @Override
+  public void getRecords(JsonObject filter, boolean includeOutOfService,
+                         Handler<AsyncResult<List<Record>>> resultHandler) {
+    RecordFilter compiled = RecordFilter.compile(filter);
+    List<Record> result = new ArrayList<>();
+    Iterator<Record> records = registry.get().values();
+    while (records.hasNext()) {
+      Record record = records.next();
+      if (accept(record, compiled, includeOutOfService)) {
+        result.add(new Record(record));
+      }
+    }
+    resultHandler.handle(Future.succeededFuture(result));
+  }
+
+  @Override
+  public RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    return new SnapshotCursor(registry.get().values(), RecordFilter.compile(filter), includeOutOfService);
+  }
+
+  /**
+   * Finds a record in the current snapshot. A {@link RecordFilter} is checked against the stored records, any other
+   * filter receives a copy of each candidate, so it cannot modify the registry.
+   */
+  @Override
+  public void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                         Handler<AsyncResult<Record>> resultHandler) {
+    Iterator<Record> records = registry.get().values();
+    while (records.hasNext()) {
+      Record record = records.next();
+      if (!includeOutOfService && record.getStatus() != Status.UP) {
+        continue;
+      }
+      if (filter instanceof RecordFilter) {
+        if (filter.apply(record)) {
+          resultHandler.handle(Future.succeededFuture(new Record(record)));
+          return;
+        }
+      } else {
+        Record copy = new Record(record);
+        if (filter.apply(copy)) {
+          resultHandler.handle(Future.succeededFuture(copy));
+          return;
+        }
+      }
+    }
+    resultHandler.handle(Future.succeededFuture(null));
+  }
+
+  @Override
+  public void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    Record record = registry.get().get(uuid);
+    resultHandler.handle(Future.succeededFuture(record == null ? null : new Record(record)));
+  }
+
+  private static boolean accept(Record record, Function<Record, Boolean> filter, boolean includeOutOfService) {
+    return (includeOutOfService || record.getStatus() == Status.UP) && filter.apply(record);
+  }
+
+  /**
+   * The registry, shared by the backends of a vert.x instance.
+   */
+  private static class Registry extends AtomicReference<PersistentMap<String, Record>> implements Shareable {
+
+    private Registry() {
+      super(PersistentMap.empty());
+    }
+
+    /**
+     * Applies the given modification, retrying if the registry has been modified concurrently.
+     *
+     * @return the version of the registry the modification has been applied to
+     */
+    private PersistentMap<String, Record> update(UnaryOperator<PersistentMap<String, Record>> modification) {
+      while (true) {
+        PersistentMap<String, Record> current = get();
+        if (compareAndSet(current, modification.apply(current))) {
+          return current;
+        }
+      }
+    }
+  }
+
+  /**
+   * A cursor on a snapshot of the registry: it is not affected by the modifications made after its creation.
+   */
+  private static class SnapshotCursor implements RecordCursor {
+
+    private final RecordFilter filter;
+    private final boolean includeOutOfService;
+    private Iterator<Record> records;
+
+    private SnapshotCursor(Iterator<Record> records, RecordFilter filter, boolean includeOutOfService) {
+      this.records = records;
+      this.filter = filter;
+      this.includeOutOfService = includeOutOfService;
+    }
+
+    @Override
+    public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+      List<Record> batch = new ArrayList<>();
+      while (records.hasNext() && batch.size() < max) {
+        Record record = records.next();
+        if (accept(record, filter, includeOutOfService)) {
+          batch.add(new Record(record));
+        }
+      }
+      resultHandler.handle(Future.succeededFuture(batch));
+    }
+
+    @Override
+    public void close() {
+      records = Collections.emptyIterator();
+    }
+  }
+}
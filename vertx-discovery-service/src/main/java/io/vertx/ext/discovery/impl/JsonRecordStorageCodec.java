@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+
+/**
+ * The default {@link RecordStorageCodec}, storing the records as JSON strings.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class JsonRecordStorageCodec implements RecordStorageCodec<String> {
+
+  public static final JsonRecordStorageCodec INSTANCE = new JsonRecordStorageCodec();
+
+  @Override
+  public String encode(Record record) {
+    return record.encode();
+  }
+
+  @Override
+  public Record decode(Object value) {
+    if (value instanceof byte[]) {
+      return BinaryRecordStorageCodec.INSTANCE.decode(value);
+    }
+    return new Record(new JsonObject((String) value));
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks the leases of the published records, and reports the expired ones.
+ * <p>
+ * The leases are granted and renewed by sending a heartbeat ({@code {"id": registration, "lease": duration, "owner":
+ * node}}) on the lease address. Every node tracks the leases it receives the heartbeats of in a {@link LeaseWheel},
+ * driven by a single periodic timer, but only the node owning a lease (the node that granted or last renewed it)
+ * reports its expiration, so the record is expired once. The other nodes wait twice the lease duration: when the
+ * owner is gone, they take the lease over by sending a heartbeat naming the previous owner. As these takeovers may
+ * cross, the node with the lowest id wins, and reports the expiration one lease duration later. The owner reporting
+ * the expiration sends {@code {"id": registration, "expired": true}}, so the other nodes stop tracking the lease.
+ * Leases are also cancelled when the withdrawal of their record ({@link Status#DOWN}) is announced.
+ * <p>
+ * The leases are only kept in memory: they are lost if all the nodes are restarted.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class LeaseManager {
+
+  private final Vertx vertx;
+  private final String address;
+  private final long resolution;
+  private final LeaseWheel wheel;
+  private final Handler<List<String>> expirationHandler;
+  private final MessageConsumer<JsonObject> heartbeats;
+  private final MessageConsumer<Object> announcements;
+  private final MessageConsumer<JsonArray> batchAnnouncements;
+
+  /**
+   * The id of this node in the heartbeats.
+   */
+  private final String node = UUID.randomUUID().toString();
+
+  /**
+   * The owner of each tracked lease.
+   */
+  private final Map<String, Ownership> owners = new HashMap<>();
+
+  private long timer = -1;
+
+  /**
+   * Creates the lease manager.
+   *
+   * @param vertx             the vert.x instance
+   * @param address           the lease address
+   * @param announce          the announce address
+   * @param batchAnnounce     the batch announce address, {@code null} if the batches are announced record by record
+   * @param resolution        the precision of the expiration in ms
+   * @param expirationHandler the handler receiving the registration ids of the expired records owned by this node
+   */
+  public LeaseManager(Vertx vertx, String address, String announce, String batchAnnounce, long resolution,
+                      Handler<List<String>> expirationHandler) {
+    this.vertx = vertx;
+    this.address = address;
+    this.resolution = resolution;
+    this.wheel = new LeaseWheel(resolution, LeaseWheel.DEFAULT_SLOTS, now());
+    this.expirationHandler = expirationHandler;
+    this.heartbeats = vertx.eventBus().consumer(address, msg -> received(msg.body()));
+    this.announcements = vertx.eventBus().consumer(announce, msg -> onAnnounce(DiscoveryImpl.announced(msg.body())));
+    this.batchAnnouncements = DiscoveryImpl.consumeBatches(vertx, batchAnnounce, this::onAnnounce);
+  }
+
+  private void onAnnounce(Record record) {
+    if (record.getStatus() == Status.DOWN && record.getRegistration() != null) {
+      cancel(record.getRegistration());
+    }
+  }
+
+  private static long now() {
+    return System.nanoTime() / 1000000;
+  }
+
+  /**
+   * Grants a lease to the given record, and sends the heartbeat to the other nodes. This node owns the lease.
+   *
+   * @param id       the registration id
+   * @param duration the lease duration in ms
+   */
+  public void lease(String id, long duration) {
+    own(id, duration, null);
+  }
+
+  /**
+   * Renews the lease of the given record, and sends the heartbeat to the other nodes. This node becomes the owner of
+   * the lease.
+   *
+   * @param id the registration id
+   * @return {@code false} if the record has no lease on this node, because it has expired, or has not been granted
+   * (or renewed since this node started)
+   */
+  public boolean renew(String id) {
+    Ownership ownership;
+    synchronized (this) {
+      ownership = owners.get(id);
+    }
+    if (ownership == null) {
+      return false;
+    }
+    own(id, ownership.duration, null);
+    return true;
+  }
+
+  /**
+   * Makes this node the owner of the lease, and sends the heartbeat to the other nodes.
+   *
+   * @param previous the owner this node takes the lease over from, {@code null} if the lease is granted or renewed
+   */
+  private void own(String id, long duration, String previous) {
+    // Tracked immediately, the heartbeat is received asynchronously
+    synchronized (this) {
+      owners.put(id, new Ownership(node, previous, duration));
+      wheel.renew(id, duration, now());
+    }
+    schedule();
+    JsonObject heartbeat = new JsonObject().put("id", id).put("lease", duration).put("owner", node);
+    if (previous != null) {
+      heartbeat.put("previous", previous);
+    }
+    vertx.eventBus().publish(address, heartbeat);
+  }
+
+  /**
+   * Tracks the lease of the heartbeat sent by another node, for twice its duration, so its owner reports the
+   * expiration first.
+   */
+  private void received(JsonObject heartbeat) {
+    String id = heartbeat.getString("id");
+    if (heartbeat.getBoolean("expired", false)) {
+      cancel(id);
+      return;
+    }
+    String owner = heartbeat.getString("owner");
+    String previous = heartbeat.getString("previous");
+    long duration = heartbeat.getLong("lease");
+    if (node.equals(owner)) {
+      // Already tracked
+      return;
+    }
+    synchronized (this) {
+      Ownership current = owners.get(id);
+      if (previous != null && current != null && !previous.equals(current.owner)
+          && !(previous.equals(current.previous) && owner.compareTo(current.owner) < 0)) {
+        // Another node has already taken the lease over, and has a lower id
+        return;
+      }
+      owners.put(id, new Ownership(owner, previous, duration));
+      wheel.renew(id, 2 * duration, now());
+    }
+    schedule();
+  }
+
+  private synchronized void cancel(String id) {
+    owners.remove(id);
+    wheel.cancel(id);
+  }
+
+  /**
+   * Starts the timer if not already started.
+   */
+  private synchronized void schedule() {
+    if (timer == -1) {
+      timer = vertx.setPeriodic(resolution, l -> tick());
+    }
+  }
+
+  private void tick() {
+    List<String> expired = new ArrayList<>();
+    Map<String, Ownership> abandoned = new HashMap<>();
+    synchronized (this) {
+      for (String id : wheel.advance(now())) {
+        Ownership ownership = owners.remove(id);
+        if (ownership == null) {
+          continue;
+        }
+        if (ownership.owner.equals(node)) {
+          expired.add(id);
+        } else {
+          abandoned.put(id, ownership);
+        }
+      }
+    }
+    // The owner did not renew nor expire the lease in time, it is gone
+    abandoned.forEach((id, ownership) -> own(id, ownership.duration, ownership.owner));
+    synchronized (this) {
+      // Stop the timer when there are no more leases, the next lease restarts it
+      if (wheel.size() == 0 && timer != -1) {
+        vertx.cancelTimer(timer);
+        timer = -1;
+      }
+    }
+    if (!expired.isEmpty()) {
+      expired.forEach(id -> vertx.eventBus().publish(address, new JsonObject().put("id", id).put("expired", true)));
+      expirationHandler.handle(expired);
+    }
+  }
+
+  /**
+   * Stops tracking the leases.
+   */
+  public synchronized void close() {
+    heartbeats.unregister();
+    announcements.unregister();
+    if (batchAnnouncements != null) {
+      batchAnnouncements.unregister();
+    }
+    if (timer != -1) {
+      vertx.cancelTimer(timer);
+      timer = -1;
+    }
+  }
+
+  /**
+   * The owner of a lease.
+   */
+  private static class Ownership {
+    private final String owner;
+    /**
+     * The owner the lease has been taken over from, {@code null} if it has been granted or renewed.
+     */
+    private final String previous;
+    private final long duration;
+
+    private Ownership(String owner, String previous, long duration) {
+      this.owner = owner;
+      this.previous = previous;
+      this.duration = duration;
+    }
+  }
+}
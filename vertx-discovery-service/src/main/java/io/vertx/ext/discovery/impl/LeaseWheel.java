@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hashed timer wheel tracking the lease deadlines of the records. The time is divided in ticks of a fixed duration,
+ * and each lease is stored in the slot of the tick containing its deadline (modulo the number of slots), in a doubly
+ * linked list. Granting, renewing and cancelling a lease are O(1), and advancing the wheel only visits the slots of
+ * the elapsed ticks, so a single timer can drive any number of leases. The deadlines are rounded up to the next tick.
+ * <p>
+ * The time is passed by the caller, in milliseconds, so the wheel does not depend on a clock. The methods are
+ * thread-safe.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class LeaseWheel {
+
+  public static final int DEFAULT_SLOTS = 512;
+
+  private final long tickDuration;
+  private final long origin;
+  private final Lease[] slots;
+  private final int mask;
+  private final Map<String, Lease> leases = new HashMap<>();
+
+  /**
+   * The next tick to process.
+   */
+  private long tick;
+
+  /**
+   * Creates the wheel.
+   *
+   * @param tickDuration the duration of a tick in ms, i.e. the precision of the expiration
+   * @param slots        the number of slots, rounded up to a power of 2
+   * @param now          the current time in ms
+   */
+  public LeaseWheel(long tickDuration, int slots, long now) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("The tick duration must be strictly positive");
+    }
+    int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+    this.tickDuration = tickDuration;
+    this.origin = now;
+    this.slots = new Lease[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Grants or renews the lease of the given record: it expires {@code duration} ms after {@code now}.
+   *
+   * @param id       the registration id
+   * @param duration the lease duration in ms
+   * @param now      the current time in ms
+   */
+  public synchronized void renew(String id, long duration, long now) {
+    Lease lease = leases.get(id);
+    if (lease == null) {
+      lease = new Lease(id);
+      leases.put(id, lease);
+    } else {
+      unlink(lease);
+    }
+    lease.duration = duration;
+    // Rounded up, so the lease never expires early
+    lease.deadline = Math.max(tick, (now + duration - origin + tickDuration - 1) / tickDuration);
+    link(lease);
+  }
+
+  /**
+   * Renews the lease of the given record for the duration it has been granted for.
+   *
+   * @param id  the registration id
+   * @param now the current time in ms
+   * @return the lease duration, -1 if the record has no lease
+   */
+  public synchronized long renew(String id, long now) {
+    Lease lease = leases.get(id);
+    if (lease == null) {
+      return -1;
+    }
+    renew(id, lease.duration, now);
+    return lease.duration;
+  }
+
+  /**
+   * Cancels the lease of the given record.
+   *
+   * @param id the registration id
+   * @return whether or not the record had a lease
+   */
+  public synchronized boolean cancel(String id) {
+    Lease lease = leases.remove(id);
+    if (lease != null) {
+      unlink(lease);
+    }
+    return lease != null;
+  }
+
+  /**
+   * Processes the ticks elapsed until {@code now}, and removes the expired leases.
+   *
+   * @param now the current time in ms
+   * @return the registration ids of the records whose lease has expired, empty if none
+   */
+  public synchronized List<String> advance(long now) {
+    long target = (now - origin) / tickDuration;
+    if (target < tick) {
+      return new ArrayList<>();
+    }
+    List<String> expired = new ArrayList<>();
+    // Each slot is visited once, even if more ticks than slots have elapsed
+    long last = Math.min(target, tick + slots.length - 1);
+    for (long t = tick; t <= last; t++) {
+      Lease lease = slots[(int) (t & mask)];
+      while (lease != null) {
+        Lease next = lease.next;
+        if (lease.deadline <= target) {
+          unlink(lease);
+          leases.remove(lease.id);
+          expired.add(lease.id);
+        }
+        lease = next;
+      }
+    }
+    tick = target + 1;
+    return expired;
+  }
+
+  /**
+   * @return the number of leases
+   */
+  public synchronized int size() {
+    return leases.size();
+  }
+
+  private void link(Lease lease) {
+    int slot = (int) (lease.deadline & mask);
+    lease.slot = slot;
+    lease.previous = null;
+    lease.next = slots[slot];
+    if (lease.next != null) {
+      lease.next.previous = lease;
+    }
+    slots[slot] = lease;
+  }
+
+  private void unlink(Lease lease) {
+    if (lease.previous != null) {
+      lease.previous.next = lease.next;
+    } else {
+      slots[lease.slot] = lease.next;
+    }
+    if (lease.next != null) {
+      lease.next.previous = lease.previous;
+    }
+    lease.previous = null;
+    lease.next = null;
+  }
+
+  private static class Lease {
+    private final String id;
+    private long duration;
+    /**
+     * The tick at which the lease expires.
+     */
+    private long deadline;
+    private int slot;
+    private Lease previous;
+    private Lease next;
+
+    private Lease(String id) {
+      this.id = id;
+    }
+  }
+}
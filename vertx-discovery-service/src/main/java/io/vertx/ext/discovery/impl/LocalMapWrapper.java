@@ -18,6 +18,7 @@ package io.vertx.ext.discovery.impl;
 
 import io.vertx.core.shareddata.LocalMap;
 
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -52,28 +53,29 @@ public class LocalMapWrapper<K, V> implements Map<K, V> {
     return local.values();
   }
 
+  /**
+   * Gets a copy of the entries, read key by key. Entries removed while the copy is built are skipped instead of being
+   * returned with a {@code null} value, and the copy is not affected by later modifications. Setting the value of an
+   * entry writes it to the local map.
+   *
+   * @return the copy of the entries
+   */
   @Override
   public Set<Entry<K, V>> entrySet() {
-    Set<Entry<K, V>> entries = new LinkedHashSet<>();
+    Set<Entry<K, V>> copy = new LinkedHashSet<>();
     for (K key : local.keySet()) {
-      entries.add(new Entry<K, V>() {
-        @Override
-        public K getKey() {
-          return key;
-        }
-
-        @Override
-        public V getValue() {
-          return local.get(key);
-        }
-
-        @Override
-        public V setValue(V value) {
-          return local.put(key, value);
-        }
-      });
+      V value = local.get(key);
+      if (value != null) {
+        copy.add(new AbstractMap.SimpleEntry<K, V>(key, value) {
+          @Override
+          public V setValue(V value) {
+            local.put(key, value);
+            return super.setValue(value);
+          }
+        });
+      }
     }
-    return entries;
+    return copy;
   }
 
   @Override
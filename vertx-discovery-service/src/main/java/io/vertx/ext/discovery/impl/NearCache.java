@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A node-local, read-only replica of the registry. It is loaded from the backend, and then patched using the
+ * announcements received on the announce address. It is periodically reloaded from the backend to repair missed
+ * announcements.
+ * <p>
+ * Records with the {@link Status#DOWN} status are considered as withdrawn, so are never in the cache. Lookups that
+ * may accept such records must be delegated to the backend (see {@link #canServe(boolean)}).
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class NearCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NearCache.class);
+
+  private final Vertx vertx;
+  private final DiscoveryBackend backend;
+  private final MessageConsumer<Object> consumer;
+  private final MessageConsumer<JsonArray> batchConsumer;
+  private final long timer;
+
+  /**
+   * The cached records (registration -> record), {@code null} until the initial load has completed.
+   */
+  private volatile Map<String, Record> records;
+
+  /**
+   * The announcements received while a load is in progress, {@code null} when no load is in progress.
+   */
+  private List<Record> pending;
+
+  /**
+   * Creates the near cache and starts its initial load.
+   *
+   * @param vertx    the vert.x instance
+   * @param backend  the backend
+   * @param announce      the announce address
+   * @param batchAnnounce the batch announce address, {@code null} if the batches are announced record by record
+   * @param period        the reconciliation period in ms, 0 to disable the reconciliation
+   */
+  public NearCache(Vertx vertx, DiscoveryBackend backend, String announce, String batchAnnounce, long period) {
+    this.vertx = vertx;
+    this.backend = backend;
+    this.consumer = vertx.eventBus().consumer(announce,
+        msg -> onAnnounce(DiscoveryImpl.announced(msg.body())));
+    this.batchConsumer = DiscoveryImpl.consumeBatches(vertx, batchAnnounce, this::onAnnounce);
+    this.timer = period > 0 ? vertx.setPeriodic(period, l -> load()) : -1;
+    load();
+  }
+
+  /**
+   * Reloads the records from the backend.
+   */
+  private synchronized void load() {
+    if (pending != null) {
+      // Already loading
+      return;
+    }
+    pending = new ArrayList<>();
+    backend.getRecords(ar -> {
+      synchronized (this) {
+        if (ar.succeeded()) {
+          Map<String, Record> snapshot = new ConcurrentHashMap<>();
+          for (Record record : ar.result()) {
+            if (record.getRegistration() != null && record.getStatus() != Status.DOWN) {
+              snapshot.put(record.getRegistration(), record);
+            }
+          }
+          // Replay the announcements received during the load.
+          pending.forEach(record -> apply(snapshot, record));
+          records = snapshot;
+        } else {
+          LOGGER.warn("Cannot load the records in the near cache", ar.cause());
+        }
+        pending = null;
+      }
+    });
+  }
+
+  private synchronized void onAnnounce(Record record) {
+    if (record.getRegistration() == null) {
+      // Cannot be associated with a cached record, the next reconciliation repairs the cache
+      return;
+    }
+    if (pending != null) {
+      pending.add(record);
+    }
+    if (records != null) {
+      apply(records, record);
+    }
+  }
+
+  private static void apply(Map<String, Record> records, Record record) {
+    if (record.getStatus() == Status.DOWN) {
+      records.remove(record.getRegistration());
+    } else {
+      records.put(record.getRegistration(), record);
+    }
+  }
+
+  /**
+   * Applies a modification made by the current node, so it is visible without waiting for the announcement.
+   *
+   * @param record the published, updated or withdrawn record
+   */
+  public void onLocalModification(Record record) {
+    onAnnounce(record.freeze());
+  }
+
+  /**
+   * Checks whether or not a lookup can be served from the cache. It requires the initial load to be completed, and
+   * the lookup to not accept {@link Status#DOWN} records.
+   *
+   * @param includeOutOfService whether or not the lookup accepts records without the {@code UP} status
+   * @return {@code true} if the lookup can be served from the cache
+   */
+  public boolean canServe(boolean includeOutOfService) {
+    return records != null && !includeOutOfService;
+  }
+
+  /**
+   * Checks whether or not a lookup using the given JSON filter can be served from the cache.
+   *
+   * @param filter the filter, may be {@code null}
+   * @return {@code true} if the lookup can be served from the cache
+   */
+  public boolean canServe(JsonObject filter) {
+    if (filter == null || filter.getValue("status") == null) {
+      return canServe(false);
+    }
+    String status = filter.getValue("status").toString();
+    return records != null && !"*".equals(status) && !Status.DOWN.name().equalsIgnoreCase(status);
+  }
+
+  /**
+   * Gets the cached records accepted by the given filter.
+   *
+   * @param filter              the filter
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @return the matching records, copied so they can be modified by the caller
+   */
+  public List<Record> getRecords(Function<Record, Boolean> filter, boolean includeOutOfService) {
+    return records.values().stream()
+        .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+        .filter(filter::apply)
+        .map(Record::new)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Gets a cached record accepted by the given filter.
+   *
+   * @param filter              the filter
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @return a matching record, copied so it can be modified by the caller, {@code null} if none
+   */
+  public Record getRecord(Function<Record, Boolean> filter, boolean includeOutOfService) {
+    return records.values().stream()
+        .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+        .filter(filter::apply)
+        .findAny()
+        .map(Record::new)
+        .orElse(null);
+  }
+
+  /**
+   * Stops the reconciliation and the processing of the announcements.
+   */
+  public void close() {
+    if (timer != -1) {
+      vertx.cancelTimer(timer);
+    }
+    consumer.unregister();
+    if (batchConsumer != null) {
+      batchConsumer.unregister();
+    }
+  }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable map, implemented as a hash array mapped trie. Modifications return a new map sharing the unmodified
+ * parts of the trie with the current one, so they only copy the nodes on the path to the modified entry.
+ * <p>
+ * Instances are immutable: they can be read concurrently without synchronization, and iterated while being
+ * "modified".
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public final class PersistentMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+  private final Node root;
+  private final int size;
+
+  private PersistentMap(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * @param <K> the type of the keys
+   * @param <V> the type of the values
+   * @return the empty map
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentMap<K, V> empty() {
+    return (PersistentMap<K, V>) EMPTY;
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return whether or not the map is empty
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Gets the value associated with the given key.
+   *
+   * @param key the key, must not be {@code null}
+   * @return the value, {@code null} if none
+   */
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    return root == null ? null : (V) root.get(hash(key), 0, key);
+  }
+
+  /**
+   * Associates the given value to the given key.
+   *
+   * @param key   the key, must not be {@code null}
+   * @param value the value, must not be {@code null}
+   * @return the new map
+   */
+  public PersistentMap<K, V> plus(K key, V value) {
+    Objects.requireNonNull(value);
+    int hash = hash(key);
+    if (root == null) {
+      return new PersistentMap<>(new Leaf(hash, key, value), 1);
+    }
+    boolean[] added = new boolean[1];
+    Node updated = root.put(hash, 0, key, value, added);
+    if (updated == root) {
+      return this;
+    }
+    return new PersistentMap<>(updated, added[0] ? size + 1 : size);
+  }
+
+  /**
+   * Removes the entry associated with the given key.
+   *
+   * @param key the key, must not be {@code null}
+   * @return the new map, the current map if the key is not in the map
+   */
+  public PersistentMap<K, V> minus(Object key) {
+    if (root == null) {
+      return this;
+    }
+    Node updated = root.remove(hash(key), 0, key);
+    if (updated == root) {
+      return this;
+    }
+    return updated == null ? empty() : new PersistentMap<>(updated, size - 1);
+  }
+
+  /**
+   * @return an iterator on the values. As the map is immutable, the iterator is not affected by modifications.
+   */
+  public Iterator<V> values() {
+    return new ValueIterator<>(root);
+  }
+
+  /**
+   * Calls the given action with each entry, in a single pass. As the map is immutable, the iteration is not affected
+   * by modifications.
+   *
+   * @param action the action
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    if (root != null) {
+      root.forEach((BiConsumer<Object, Object>) action);
+    }
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int index(int hash, int shift) {
+    return (hash >>> shift) & MASK;
+  }
+
+  private abstract static class Node {
+
+    abstract Object get(int hash, int shift, Object key);
+
+    /**
+     * @return the updated node, the current node if not modified
+     */
+    abstract Node put(int hash, int shift, Object key, Object value, boolean[] added);
+
+    /**
+     * @return the updated node, the current node if the key is not found, {@code null} if the node is now empty
+     */
+    abstract Node remove(int hash, int shift, Object key);
+
+    abstract void forEach(BiConsumer<Object, Object> action);
+  }
+
+  /**
+   * A node holding a single entry.
+   */
+  private static final class Leaf extends Node {
+    private final int hash;
+    private final Object key;
+    private final Object value;
+
+    private Leaf(int hash, Object key, Object value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    Object get(int hash, int shift, Object key) {
+      return this.hash == hash && this.key.equals(key) ? value : null;
+    }
+
+    @Override
+    Node put(int hash, int shift, Object key, Object value, boolean[] added) {
+      if (this.hash == hash && this.key.equals(key)) {
+        return this.value == value ? this : new Leaf(hash, key, value);
+      }
+      added[0] = true;
+      Leaf leaf = new Leaf(hash, key, value);
+      if (this.hash == hash) {
+        return new Collision(hash, new Leaf[]{this, leaf});
+      }
+      return Branch.pair(shift, this, this.hash, leaf, hash);
+    }
+
+    @Override
+    Node remove(int hash, int shift, Object key) {
+      return this.hash == hash && this.key.equals(key) ? null : this;
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      action.accept(key, value);
+    }
+  }
+
+  /**
+   * A node holding the entries whose keys have the same hash.
+   */
+  private static final class Collision extends Node {
+    private final int hash;
+    private final Leaf[] leaves;
+
+    private Collision(int hash, Leaf[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+    }
+
+    private int find(Object key) {
+      for (int i = 0; i < leaves.length; i++) {
+        if (leaves[i].key.equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object get(int hash, int shift, Object key) {
+      if (this.hash != hash) {
+        return null;
+      }
+      int i = find(key);
+      return i < 0 ? null : leaves[i].value;
+    }
+
+    @Override
+    Node put(int hash, int shift, Object key, Object value, boolean[] added) {
+      if (this.hash != hash) {
+        added[0] = true;
+        return Branch.pair(shift, this, this.hash, new Leaf(hash, key, value), hash);
+      }
+      int i = find(key);
+      if (i >= 0) {
+        if (leaves[i].value == value) {
+          return this;
+        }
+        Leaf[] copy = leaves.clone();
+        copy[i] = new Leaf(hash, key, value);
+        return new Collision(hash, copy);
+      }
+      added[0] = true;
+      Leaf[] copy = Arrays.copyOf(leaves, leaves.length + 1);
+      copy[leaves.length] = new Leaf(hash, key, value);
+      return new Collision(hash, copy);
+    }
+
+    @Override
+    Node remove(int hash, int shift, Object key) {
+      int i = this.hash == hash ? find(key) : -1;
+      if (i < 0) {
+        return this;
+      }
+      if (leaves.length == 2) {
+        return leaves[1 - i];
+      }
+      Leaf[] copy = new Leaf[leaves.length - 1];
+      System.arraycopy(leaves, 0, copy, 0, i);
+      System.arraycopy(leaves, i + 1, copy, i, leaves.length - i - 1);
+      return new Collision(hash, copy);
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      for (Leaf leaf : leaves) {
+        action.accept(leaf.key, leaf.value);
+      }
+    }
+  }
+
+  /**
+   * An inner node, with up to 32 children. The bitmap tells which children are present, the children array only
+   * contains the present ones.
+   */
+  private static final class Branch extends Node {
+    private final int bitmap;
+    private final Node[] children;
+
+    private Branch(int bitmap, Node[] children) {
+      this.bitmap = bitmap;
+      this.children = children;
+    }
+
+    /**
+     * Creates the branch holding two nodes having different hashes.
+     */
+    private static Node pair(int shift, Node a, int hashA, Node b, int hashB) {
+      int indexA = index(hashA, shift);
+      int indexB = index(hashB, shift);
+      if (indexA == indexB) {
+        return new Branch(1 << indexA, new Node[]{pair(shift + BITS, a, hashA, b, hashB)});
+      }
+      return new Branch((1 << indexA) | (1 << indexB), indexA < indexB ? new Node[]{a, b} : new Node[]{b, a});
+    }
+
+    @Override
+    Object get(int hash, int shift, Object key) {
+      int bit = 1 << index(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      return children[Integer.bitCount(bitmap & (bit - 1))].get(hash, shift + BITS, key);
+    }
+
+    @Override
+    Node put(int hash, int shift, Object key, Object value, boolean[] added) {
+      int bit = 1 << index(hash, shift);
+      int i = Integer.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) == 0) {
+        added[0] = true;
+        Node[] copy = new Node[children.length + 1];
+        System.arraycopy(children, 0, copy, 0, i);
+        copy[i] = new Leaf(hash, key, value);
+        System.arraycopy(children, i, copy, i + 1, children.length - i);
+        return new Branch(bitmap | bit, copy);
+      }
+      Node child = children[i].put(hash, shift + BITS, key, value, added);
+      if (child == children[i]) {
+        return this;
+      }
+      Node[] copy = children.clone();
+      copy[i] = child;
+      return new Branch(bitmap, copy);
+    }
+
+    @Override
+    Node remove(int hash, int shift, Object key) {
+      int bit = 1 << index(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int i = Integer.bitCount(bitmap & (bit - 1));
+      Node child = children[i].remove(hash, shift + BITS, key);
+      if (child == children[i]) {
+        return this;
+      }
+      if (child != null) {
+        Node[] copy = children.clone();
+        copy[i] = child;
+        return new Branch(bitmap, copy);
+      }
+      if (children.length == 1) {
+        return null;
+      }
+      Node[] copy = new Node[children.length - 1];
+      System.arraycopy(children, 0, copy, 0, i);
+      System.arraycopy(children, i + 1, copy, i, children.length - i - 1);
+      return new Branch(bitmap & ~bit, copy);
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      for (Node child : children) {
+        child.forEach(action);
+      }
+    }
+  }
+
+  /**
+   * Walks the trie depth-first.
+   */
+  private static final class ValueIterator<V> implements Iterator<V> {
+    private final Deque<Iterator<? extends Node>> stack = new ArrayDeque<>();
+    private Leaf next;
+
+    private ValueIterator(Node root) {
+      if (root != null) {
+        stack.push(Collections.singletonList(root).iterator());
+      }
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (!stack.isEmpty()) {
+        Iterator<? extends Node> iterator = stack.peek();
+        if (!iterator.hasNext()) {
+          stack.pop();
+          continue;
+        }
+        Node node = iterator.next();
+        if (node instanceof Leaf) {
+          next = (Leaf) node;
+          return;
+        } else if (node instanceof Collision) {
+          stack.push(Arrays.asList(((Collision) node).leaves).iterator());
+        } else {
+          stack.push(Arrays.asList(((Branch) node).children).iterator());
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      V value = (V) next.value;
+      advance();
+      return value;
+    }
+  }
+}
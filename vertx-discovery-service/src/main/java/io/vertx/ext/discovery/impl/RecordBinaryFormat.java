@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact binary form of {@link Record}, used to transfer records between cluster nodes.
+ * <p>
+ * The top-level fields are identified by a one byte tag, and absent fields are not written. The location and
+ * metadata are written as typed values. The JSON keys are interned: a key is written once, the following occurrences
+ * in the same message are written as a reference to the first one.
+ * <p>
+ * An instance holds the key table of a single message, so must not be shared.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordBinaryFormat {
+
+  private static final byte END = 0;
+  private static final byte NAME = 1;
+  private static final byte TYPE = 2;
+  private static final byte REGISTRATION = 3;
+  private static final byte STATUS = 4;
+  private static final byte LOCATION = 5;
+  private static final byte METADATA = 6;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte FLOAT = 5;
+  private static final byte TRUE = 6;
+  private static final byte FALSE = 7;
+  private static final byte OBJECT = 8;
+  private static final byte ARRAY = 9;
+  private static final byte BINARY = 10;
+
+  private final Map<String, Integer> writtenKeys = new HashMap<>();
+  private final List<String> readKeys = new ArrayList<>();
+
+  /**
+   * Writes the given record.
+   *
+   * @param buffer the buffer
+   * @param record the record
+   */
+  public void write(Buffer buffer, Record record) {
+    if (record.getName() != null) {
+      buffer.appendByte(NAME);
+      writeString(buffer, record.getName());
+    }
+    if (record.getType() != null) {
+      buffer.appendByte(TYPE);
+      writeString(buffer, record.getType());
+    }
+    if (record.getRegistration() != null) {
+      buffer.appendByte(REGISTRATION);
+      writeString(buffer, record.getRegistration());
+    }
+    if (record.getStatus() != null) {
+      buffer.appendByte(STATUS);
+      buffer.appendByte(statusCode(record.getStatus()));
+    }
+    if (record.getLocation() != null) {
+      buffer.appendByte(LOCATION);
+      writeObject(buffer, record.getLocation());
+    }
+    if (record.getMetadata() != null) {
+      buffer.appendByte(METADATA);
+      writeObject(buffer, record.getMetadata());
+    }
+    buffer.appendByte(END);
+  }
+
+  /**
+   * Reads a record.
+   *
+   * @param buffer   the buffer
+   * @param position the position of the record in the buffer
+   * @param record   the record to fill
+   * @return the position following the record
+   */
+  public int read(Buffer buffer, int position, Record record) {
+    int[] pos = {position};
+    byte tag;
+    while ((tag = buffer.getByte(pos[0]++)) != END) {
+      switch (tag) {
+        case NAME:
+          record.setName(readString(buffer, pos));
+          break;
+        case TYPE:
+          record.setType(readString(buffer, pos));
+          break;
+        case REGISTRATION:
+          record.setRegistration(readString(buffer, pos));
+          break;
+        case STATUS:
+          record.setStatus(status(buffer.getByte(pos[0]++)));
+          break;
+        case LOCATION:
+          record.setLocation(readObject(buffer, pos));
+          break;
+        case METADATA:
+          record.setMetadata(readObject(buffer, pos));
+          break;
+        default:
+          throw new IllegalStateException("Invalid record field tag: " + tag);
+      }
+    }
+    return pos[0];
+  }
+
+  /**
+   * Gets the code written for the given status. The codes are part of the format (records are journaled in this form),
+   * so must not depend on the declaration order of {@link Status}.
+   */
+  private static byte statusCode(Status status) {
+    switch (status) {
+      case UP:
+        return 0;
+      case DOWN:
+        return 1;
+      case OUT_OF_SERVICE:
+        return 2;
+      case UNKNOWN:
+        return 3;
+      default:
+        throw new IllegalArgumentException("Unsupported status: " + status);
+    }
+  }
+
+  private static Status status(byte code) {
+    switch (code) {
+      case 0:
+        return Status.UP;
+      case 1:
+        return Status.DOWN;
+      case 2:
+        return Status.OUT_OF_SERVICE;
+      case 3:
+        return Status.UNKNOWN;
+      default:
+        throw new IllegalStateException("Invalid status code: " + code);
+    }
+  }
+
+  private void writeObject(Buffer buffer, JsonObject json) {
+    buffer.appendInt(json.size());
+    for (String key : json.fieldNames()) {
+      writeKey(buffer, key);
+      writeValue(buffer, json.getValue(key));
+    }
+  }
+
+  private void writeArray(Buffer buffer, JsonArray array) {
+    buffer.appendInt(array.size());
+    for (int i = 0; i < array.size(); i++) {
+      writeValue(buffer, array.getValue(i));
+    }
+  }
+
+  private void writeKey(Buffer buffer, String key) {
+    Integer index = writtenKeys.get(key);
+    if (index != null) {
+      // Reference to a key already written in the message
+      buffer.appendInt(-index - 1);
+    } else {
+      writtenKeys.put(key, writtenKeys.size());
+      writeString(buffer, key);
+    }
+  }
+
+  private void writeValue(Buffer buffer, Object value) {
+    if (value == null) {
+      buffer.appendByte(NULL);
+    } else if (value instanceof String) {
+      buffer.appendByte(STRING);
+      writeString(buffer, (String) value);
+    } else if (value instanceof Integer) {
+      buffer.appendByte(INT).appendInt((Integer) value);
+    } else if (value instanceof Long) {
+      buffer.appendByte(LONG).appendLong((Long) value);
+    } else if (value instanceof Double) {
+      buffer.appendByte(DOUBLE).appendDouble((Double) value);
+    } else if (value instanceof Float) {
+      buffer.appendByte(FLOAT).appendFloat((Float) value);
+    } else if (value instanceof Boolean) {
+      buffer.appendByte((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof JsonObject) {
+      buffer.appendByte(OBJECT);
+      writeObject(buffer, (JsonObject) value);
+    } else if (value instanceof JsonArray) {
+      buffer.appendByte(ARRAY);
+      writeArray(buffer, (JsonArray) value);
+    } else if (value instanceof byte[]) {
+      buffer.appendByte(BINARY).appendInt(((byte[]) value).length).appendBytes((byte[]) value);
+    } else {
+      // Other numbers (short, byte...)
+      if (value instanceof Number) {
+        buffer.appendByte(LONG).appendLong(((Number) value).longValue());
+      } else {
+        throw new IllegalStateException("Unsupported value type: " + value.getClass());
+      }
+    }
+  }
+
+  private static void writeString(Buffer buffer, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    buffer.appendInt(bytes.length).appendBytes(bytes);
+  }
+
+  private JsonObject readObject(Buffer buffer, int[] pos) {
+    int size = buffer.getInt(pos[0]);
+    pos[0] += 4;
+    JsonObject json = new JsonObject();
+    for (int i = 0; i < size; i++) {
+      String key = readKey(buffer, pos);
+      json.put(key, readValue(buffer, pos));
+    }
+    return json;
+  }
+
+  private JsonArray readArray(Buffer buffer, int[] pos) {
+    int size = buffer.getInt(pos[0]);
+    pos[0] += 4;
+    JsonArray array = new JsonArray();
+    for (int i = 0; i < size; i++) {
+      array.add(readValue(buffer, pos));
+    }
+    return array;
+  }
+
+  private String readKey(Buffer buffer, int[] pos) {
+    int length = buffer.getInt(pos[0]);
+    if (length < 0) {
+      pos[0] += 4;
+      return readKeys.get(-length - 1);
+    }
+    String key = readString(buffer, pos);
+    readKeys.add(key);
+    return key;
+  }
+
+  private Object readValue(Buffer buffer, int[] pos) {
+    byte type = buffer.getByte(pos[0]++);
+    Object value;
+    switch (type) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(buffer, pos);
+      case INT:
+        value = buffer.getInt(pos[0]);
+        pos[0] += 4;
+        return value;
+      case LONG:
+        value = buffer.getLong(pos[0]);
+        pos[0] += 8;
+        return value;
+      case DOUBLE:
+        value = buffer.getDouble(pos[0]);
+        pos[0] += 8;
+        return value;
+      case FLOAT:
+        value = buffer.getFloat(pos[0]);
+        pos[0] += 4;
+        return value;
+      case TRUE:
+        return true;
+      case FALSE:
+        return false;
+      case OBJECT:
+        return readObject(buffer, pos);
+      case ARRAY:
+        return readArray(buffer, pos);
+      case BINARY:
+        int length = buffer.getInt(pos[0]);
+        pos[0] += 4;
+        value = buffer.getBytes(pos[0], pos[0] + length);
+        pos[0] += length;
+        return value;
+      default:
+        throw new IllegalStateException("Invalid value type: " + type);
+    }
+  }
+
+  private static String readString(Buffer buffer, int[] pos) {
+    int length = buffer.getInt(pos[0]);
+    pos[0] += 4;
+    String s = buffer.getString(pos[0], pos[0] + length, "UTF-8");
+    pos[0] += length;
+    return s;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Hash indexes on the records stored in the registry. For each indexed attribute ({@code name}, {@code type},
+ * {@code status} and a configurable set of metadata keys), it maps the attribute values to the registration ids of
+ * the records having this value.
+ * <p>
+ * String values are indexed in a case-folded form, as {@link Record#match(JsonObject)} compares them ignoring the case.
+ * The index only narrows the set of candidates, the candidates must still be checked against the filter.
+ * <p>
+ * The index is {@link Shareable} so it can be stored in a local map and shared by all the backends of a vert.x
+ * instance using the same registry. All methods are synchronized.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordIndex implements Shareable {
+
+  private static final List<String> RESERVED = Arrays.asList("name", "type", "status", "registration");
+
+  /**
+   * attribute -> value -> registration ids.
+   */
+  private final Map<String, Map<Object, Set<String>>> indexes = new HashMap<>();
+
+  /**
+   * registration id -> attribute -> indexed value. Used to clean up the indexes on update and removal.
+   */
+  private final Map<String, Map<String, Object>> entries = new HashMap<>();
+
+  private boolean populated;
+
+  public RecordIndex() {
+    indexes.put("name", new HashMap<>());
+    indexes.put("type", new HashMap<>());
+    indexes.put("status", new HashMap<>());
+  }
+
+  /**
+   * Makes sure the given metadata keys are indexed. If the index has just been created, or if some keys were not
+   * indexed yet, the index is rebuilt from the records returned by the given supplier.
+   *
+   * @param metadataKeys the metadata keys to index
+   * @param records      supplies the records currently stored in the registry
+   */
+  public synchronized void ensureIndexed(Collection<String> metadataKeys, Supplier<Collection<Record>> records) {
+    boolean rebuild = !populated;
+    for (String key : metadataKeys) {
+      if (!RESERVED.contains(key) && !indexes.containsKey(key)) {
+        indexes.put(key, new HashMap<>());
+        rebuild = true;
+      }
+    }
+
+    if (rebuild) {
+      indexes.values().forEach(Map::clear);
+      entries.clear();
+      records.get().forEach(this::add);
+      populated = true;
+    }
+  }
+
+  /**
+   * Indexes the given record, replacing the entries of a previous version of the record if any.
+   *
+   * @param record the record, must have a registration id
+   */
+  public synchronized void add(Record record) {
+    String uuid = Objects.requireNonNull(record.getRegistration());
+    remove(uuid);
+
+    Map<String, Object> values = new HashMap<>();
+    for (Map.Entry<String, Map<Object, Set<String>>> index : indexes.entrySet()) {
+      Object value = valueOf(record, index.getKey());
+      if (value != null) {
+        Object key = fold(value);
+        index.getValue().computeIfAbsent(key, k -> new HashSet<>()).add(uuid);
+        values.put(index.getKey(), key);
+      }
+    }
+    entries.put(uuid, values);
+  }
+
+  /**
+   * Removes the record with the given registration id from the index.
+   *
+   * @param uuid the registration id
+   */
+  public synchronized void remove(String uuid) {
+    Map<String, Object> values = entries.remove(uuid);
+    if (values == null) {
+      return;
+    }
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      Map<Object, Set<String>> index = indexes.get(entry.getKey());
+      Set<String> uuids = index.get(entry.getValue());
+      if (uuids != null) {
+        uuids.remove(uuid);
+        if (uuids.isEmpty()) {
+          index.remove(entry.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the registration ids of the records that may match the given filter.
+   *
+   * @param filter              the filter, must not be {@code null}
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @return the set of candidates, {@code null} if the filter cannot be answered from the index (no equality
+   * constraint on an indexed attribute)
+   */
+  public synchronized Set<String> lookup(JsonObject filter, boolean includeOutOfService) {
+    List<Set<String>> matches = new ArrayList<>();
+    for (String key : filter.fieldNames()) {
+      Map<Object, Set<String>> index = indexes.get(key);
+      Object expected = filter.getValue(key);
+      if (index == null || expected == null || "*".equals(expected)) {
+        continue;
+      }
+      matches.add(candidates(index, expected));
+    }
+
+    if (!includeOutOfService) {
+      matches.add(candidates(indexes.get("status"), Status.UP.name()));
+    }
+
+    if (matches.isEmpty()) {
+      return null;
+    }
+
+    // Intersect, starting from the smallest set.
+    matches.sort(Comparator.comparingInt(Set::size));
+    Set<String> result = new HashSet<>(matches.get(0));
+    for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+      result.retainAll(matches.get(i));
+    }
+    return result;
+  }
+
+  private Set<String> candidates(Map<Object, Set<String>> index, Object expected) {
+    // A string value matches the expected value if they are equal ignoring case, any other value if they are equal.
+    Set<String> strings = index.get(fold(expected.toString()));
+    Set<String> others = expected instanceof String ? null : index.get(expected);
+    if (others == null) {
+      return strings == null ? Collections.emptySet() : strings;
+    }
+    if (strings == null) {
+      return others;
+    }
+    Set<String> union = new HashSet<>(strings);
+    union.addAll(others);
+    return union;
+  }
+
+  private static Object valueOf(Record record, String attribute) {
+    switch (attribute) {
+      case "name":
+        return record.getName();
+      case "type":
+        return record.getType();
+      case "status":
+        return record.getStatus() == null ? null : record.getStatus().name();
+      default:
+        return record.getMetadata() == null ? null : record.getMetadata().getValue(attribute);
+    }
+  }
+
+  /**
+   * Computes the index key of a value. Strings that are equal ignoring case get the same key.
+   */
+  private static Object fold(Object value) {
+    if (!(value instanceof String)) {
+      return value;
+    }
+    String s = (String) value;
+    char[] chars = new char[s.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+    }
+    return new String(chars);
+  }
+}
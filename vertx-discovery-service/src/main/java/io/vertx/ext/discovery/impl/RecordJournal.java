@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.*;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.discovery.Record;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * The durable storage of the {@link FileDiscoveryBackend}: an append-only journal of the modifications, periodically
+ * compacted into a snapshot.
+ * <p>
+ * The directory contains a {@code snapshot} file and a {@code journal-<generation>} file. The snapshot contains the
+ * generation of the journal to replay after it. Compacting the journal writes a new snapshot (to a temporary file then
+ * moved atomically), and then starts a new journal with the next generation, so a crash during the compaction never
+ * replays an old journal on top of a newer snapshot.
+ * <p>
+ * Each entry is written as: its length (int), the CRC32 of its content (int), the operation (byte), and the record in
+ * the binary form of {@link RecordBinaryFormat} (store and update) or the registration id (remove). An update is only
+ * replayed if the record is present at that point. At startup, the journal is replayed up to the first incomplete or
+ * corrupted entry, and truncated there.
+ * <p>
+ * Appends are group-committed: the modifications requested while a write is in progress are written, and synced to
+ * the disk, together by the next write. The writes are done by a dedicated worker thread, which also applies the
+ * modifications to the registry once synced, in the order they have been written. A modification that cannot be
+ * written is not applied, and the journal is truncated back to its previous size. The registry is restored by the same
+ * thread, before the first write.
+ * <p>
+ * The journal is {@link Shareable}, so a single instance is used by all the backends of a vert.x instance using the
+ * same directory. It is closed once all these backends are closed.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordJournal implements Shareable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RecordJournal.class);
+
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+  private static final byte UPDATE = 3;
+
+  private static final int SNAPSHOT_MAGIC = 0x56445331;
+
+  private final Vertx vertx;
+  private final File directory;
+  private final long compactionThreshold;
+  private WorkerExecutor executor;
+
+  private FileChannel journal;
+  private long generation;
+  private Supplier<Iterator<Record>> state;
+
+  private int users;
+  private boolean closed;
+  private boolean opened;
+  private Throwable failure;
+  private List<Completion> opening = new ArrayList<>();
+
+  private List<ByteBuffer> pending = new ArrayList<>();
+  private List<Completion> waiters = new ArrayList<>();
+  private boolean writing;
+
+  /**
+   * Creates the journal. The files are not read before the journal is opened.
+   *
+   * @param vertx               the vert.x instance
+   * @param directory           the directory containing the snapshot and the journal
+   * @param compactionThreshold the size (in bytes) of the journal triggering a compaction
+   */
+  public RecordJournal(Vertx vertx, File directory, long compactionThreshold) {
+    this.vertx = vertx;
+    this.directory = directory;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Registers a user of the journal. The first user opens it: the snapshot is read and the journal replayed on the
+   * writer thread, and the restored records are given to the given consumer. Use {@link #whenOpened(Handler)} to wait
+   * for the end of this restoration.
+   *
+   * @param state    supplies the current records, used when compacting the journal
+   * @param restored receives the restored records
+   * @return {@code false} if the journal has already been closed, a new instance must then be created
+   */
+  public synchronized boolean open(Supplier<Iterator<Record>> state, Consumer<Collection<Record>> restored) {
+    if (closed) {
+      return false;
+    }
+    users++;
+    if (executor == null) {
+      this.state = state;
+      executor = vertx.createSharedWorkerExecutor("vertx-discovery-journal-" + directory.getAbsolutePath(), 1);
+      executor.executeBlocking(future -> {
+        restore(restored);
+        future.complete();
+      }, false, ar -> {
+      });
+    }
+    return true;
+  }
+
+  /**
+   * Reads the snapshot and replays the journal. Called from the writer thread.
+   */
+  private void restore(Consumer<Collection<Record>> restored) {
+    Throwable error = null;
+    try {
+      Files.createDirectories(directory.toPath());
+      Map<String, Record> records = new LinkedHashMap<>();
+      generation = readSnapshot(records);
+      File file = journalFile(generation);
+      journal = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      long valid = replay(journal, records);
+      if (valid < journal.size()) {
+        LOGGER.warn("Truncating the incomplete discovery journal " + file + " at " + valid);
+        journal.truncate(valid);
+      }
+      journal.position(valid);
+      deleteOldJournals();
+      restored.accept(records.values());
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Cannot open the discovery journal in " + directory, e);
+      error = e;
+    }
+    List<Completion> completions;
+    synchronized (this) {
+      opened = true;
+      failure = error;
+      completions = opening;
+      opening = null;
+    }
+    for (Completion completion : completions) {
+      completion.complete(error);
+    }
+  }
+
+  /**
+   * Calls the given handler once the registry has been restored, immediately if it is already the case.
+   *
+   * @param handler the handler, called with a failure if the journal cannot be read
+   */
+  public void whenOpened(Handler<AsyncResult<Void>> handler) {
+    Throwable error;
+    synchronized (this) {
+      if (!opened) {
+        opening.add(new Completion(Vertx.currentContext(), null, handler));
+        return;
+      }
+      error = failure;
+    }
+    handler.handle(error == null ? Future.succeededFuture() : Future.failedFuture(error));
+  }
+
+  /**
+   * Unregisters a user of the journal. The last one closes the journal file and the writer thread, once the pending
+   * modifications have been written.
+   *
+   * @return {@code true} if the journal has been closed
+   */
+  public boolean close() {
+    synchronized (this) {
+      if (closed || users == 0 || --users > 0) {
+        return false;
+      }
+      closed = true;
+    }
+    // Executed after the pending writes, the writer thread handling the tasks in order
+    executor.executeBlocking(future -> {
+      try {
+        if (journal != null) {
+          journal.close();
+        }
+      } catch (IOException e) {
+        LOGGER.warn("Cannot close the discovery journal in " + directory, e);
+      }
+      future.complete();
+    }, false, ar -> executor.close());
+    return true;
+  }
+
+  /**
+   * Appends the given modifications, and then applies them. The completion handler is called on the current context
+   * once the modifications have been written, synced and applied.
+   *
+   * @param stored     the stored records
+   * @param updated    the updated records, only applied if present
+   * @param removed    the registration ids of the removed records
+   * @param apply      applies the modifications to the registry
+   * @param completion the completion handler
+   */
+  public void append(List<Record> stored, List<Record> updated, List<String> removed, Runnable apply,
+                     Handler<AsyncResult<Void>> completion) {
+    List<ByteBuffer> entries = new ArrayList<>(stored.size() + updated.size() + removed.size());
+    for (Record record : stored) {
+      entries.add(entry(PUT, record));
+    }
+    for (Record record : updated) {
+      entries.add(entry(UPDATE, record));
+    }
+    for (String uuid : removed) {
+      entries.add(entry(REMOVE, uuid.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    Completion done = new Completion(Vertx.currentContext(), apply, completion);
+    boolean write;
+    synchronized (this) {
+      if (closed) {
+        done.complete(new IllegalStateException("The discovery journal in " + directory + " has been closed"));
+        return;
+      }
+      pending.addAll(entries);
+      waiters.add(done);
+      write = !writing;
+      writing = true;
+    }
+    if (write) {
+      executor.executeBlocking(future -> {
+        writePending();
+        future.complete();
+      }, false, ar -> {
+      });
+    }
+  }
+
+  /**
+   * Writes the pending entries, until there are none. The modifications are applied once synced, and not applied if
+   * they cannot be written.
+   */
+  private void writePending() {
+    while (true) {
+      List<ByteBuffer> entries;
+      List<Completion> completions;
+      Throwable error;
+      synchronized (this) {
+        if (pending.isEmpty() && waiters.isEmpty()) {
+          writing = false;
+          return;
+        }
+        entries = pending;
+        completions = waiters;
+        pending = new ArrayList<>();
+        waiters = new ArrayList<>();
+        error = failure;
+      }
+
+      if (error == null) {
+        error = write(entries);
+      }
+      if (error == null) {
+        for (Completion completion : completions) {
+          completion.apply.run();
+        }
+        try {
+          if (journal.size() > compactionThreshold) {
+            compact();
+          }
+        } catch (IOException | RuntimeException e) {
+          // The modifications are in the journal, the compaction is retried by the next write
+          LOGGER.error("Cannot compact the discovery journal in " + directory, e);
+        }
+      }
+      for (Completion completion : completions) {
+        completion.complete(error);
+      }
+    }
+  }
+
+  /**
+   * Writes and syncs the given entries. On failure, the journal is truncated back to its previous size, so the
+   * entries are not replayed.
+   *
+   * @return the failure, {@code null} if the entries have been written
+   */
+  private Throwable write(List<ByteBuffer> entries) {
+    long start = -1;
+    try {
+      start = journal.position();
+      ByteBuffer[] buffers = entries.toArray(new ByteBuffer[entries.size()]);
+      long remaining = entries.stream().mapToLong(ByteBuffer::remaining).sum();
+      while (remaining > 0) {
+        remaining -= journal.write(buffers);
+      }
+      journal.force(false);
+      return null;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Cannot write the discovery journal in " + directory, e);
+      if (start >= 0) {
+        try {
+          journal.truncate(start);
+          journal.position(start);
+        } catch (IOException truncation) {
+          LOGGER.error("Cannot truncate the discovery journal in " + directory, truncation);
+        }
+      }
+      return e;
+    }
+  }
+
+  /**
+   * Writes the current state in a new snapshot, and starts a new journal. Called from the writer thread.
+   */
+  private void compact() throws IOException {
+    long next = generation + 1;
+    Path tmp = new File(directory, "snapshot.tmp").toPath();
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(12);
+      header.putInt(SNAPSHOT_MAGIC).putLong(next).flip();
+      channel.write(header);
+      Iterator<Record> records = state.get();
+      List<ByteBuffer> chunk = new ArrayList<>();
+      while (records.hasNext()) {
+        chunk.add(entry(PUT, records.next()));
+        if (chunk.size() == 1000 || !records.hasNext()) {
+          for (ByteBuffer entry : chunk) {
+            while (entry.hasRemaining()) {
+              channel.write(entry);
+            }
+          }
+          chunk.clear();
+        }
+      }
+      channel.force(true);
+    }
+    Files.move(tmp, snapshotFile().toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+    FileChannel previous = journal;
+    journal = FileChannel.open(journalFile(next).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    generation = next;
+    previous.close();
+    deleteOldJournals();
+  }
+
+  /**
+   * Reads the snapshot, if any.
+   *
+   * @return the generation of the journal to replay
+   */
+  private long readSnapshot(Map<String, Record> records) throws IOException {
+    File file = snapshotFile();
+    if (!file.isFile()) {
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (mapped.remaining() < 12 || mapped.getInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Invalid discovery snapshot " + file);
+      }
+      long snapshotGeneration = mapped.getLong();
+      if (read(mapped, records) != mapped.limit()) {
+        throw new IOException("Corrupted discovery snapshot " + file);
+      }
+      return snapshotGeneration;
+    }
+  }
+
+  /**
+   * Replays the journal.
+   *
+   * @return the position following the last valid entry
+   */
+  private long replay(FileChannel channel, Map<String, Record> records) throws IOException {
+    if (channel.size() == 0) {
+      return 0;
+    }
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    return read(mapped, records);
+  }
+
+  /**
+   * Applies the entries of the given buffer, from its position, up to the first invalid entry.
+   *
+   * @return the position following the last valid entry
+   */
+  private static long read(ByteBuffer data, Map<String, Record> records) {
+    Buffer buffer = Buffer.buffer(Unpooled.wrappedBuffer(data.duplicate()));
+    int offset = data.position();
+    int position = offset;
+    CRC32 crc = new CRC32();
+    while (data.limit() - position >= 9) {
+      int length = data.getInt(position);
+      int checksum = data.getInt(position + 4);
+      if (length < 1 || data.limit() - position - 8 < length) {
+        break;
+      }
+      ByteBuffer content = data.duplicate();
+      content.position(position + 8).limit(position + 8 + length);
+      crc.reset();
+      crc.update(content);
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      byte operation = data.get(position + 8);
+      if (operation == PUT || operation == UPDATE) {
+        Record record = new Record();
+        // The wrapped buffer starts at the position the data buffer had when wrapped
+        new RecordBinaryFormat().read(buffer, position + 9 - offset, record);
+        if (operation == PUT) {
+          records.put(record.getRegistration(), record);
+        } else {
+          records.replace(record.getRegistration(), record);
+        }
+      } else if (operation == REMOVE) {
+        records.remove(buffer.getString(position + 9 - offset, position + 8 + length - offset, "UTF-8"));
+      } else {
+        break;
+      }
+      position += 8 + length;
+    }
+    return position;
+  }
+
+  private static ByteBuffer entry(byte operation, Record record) {
+    Buffer buffer = Buffer.buffer();
+    new RecordBinaryFormat().write(buffer, record);
+    return entry(operation, buffer.getBytes());
+  }
+
+  private static ByteBuffer entry(byte operation, byte[] payload) {
+    ByteBuffer buffer = ByteBuffer.allocate(9 + payload.length);
+    buffer.putInt(payload.length + 1).putInt(0).put(operation).put(payload).flip();
+    CRC32 crc = new CRC32();
+    ByteBuffer content = buffer.duplicate();
+    content.position(8);
+    crc.update(content);
+    buffer.putInt(4, (int) crc.getValue());
+    return buffer;
+  }
+
+  private File snapshotFile() {
+    return new File(directory, "snapshot");
+  }
+
+  private File journalFile(long generation) {
+    return new File(directory, "journal-" + generation);
+  }
+
+  private void deleteOldJournals() {
+    File[] files = directory.listFiles((dir, name) -> name.startsWith("journal-")
+        && !name.equals("journal-" + generation));
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          LOGGER.warn("Cannot delete the old discovery journal " + file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Completes a modification on the context it has been requested from.
+   */
+  private static class Completion {
+    private final Context context;
+    private final Runnable apply;
+    private final Handler<AsyncResult<Void>> handler;
+
+    private Completion(Context context, Runnable apply, Handler<AsyncResult<Void>> handler) {
+      this.context = context;
+      this.apply = apply;
+      this.handler = handler;
+    }
+
+    private void complete(Throwable failure) {
+      AsyncResult<Void> result = failure == null ? Future.succeededFuture() : Future.failedFuture(failure);
+      if (context != null) {
+        context.runOnContext(v -> handler.handle(result));
+      } else {
+        handler.handle(result);
+      }
+    }
+  }
+}
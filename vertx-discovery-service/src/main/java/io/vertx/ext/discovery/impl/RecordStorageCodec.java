@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.ext.discovery.Record;
+
+/**
+ * Converts the records to the values stored by the {@link DefaultDiscoveryBackend}, and back. The codec is selected
+ * using the {@code storage-codec} entry of the backend configuration: {@code json} (the default) stores the records
+ * as JSON strings, {@code binary} stores them in a compact binary form, any other value is the name of a class
+ * implementing this interface with a public no-argument constructor.
+ * <p>
+ * The stored values must be supported by the vert.x local maps (such as strings, byte arrays or
+ * {@link io.vertx.core.shareddata.Shareable} objects), and when vert.x is clustered, by the cluster manager. All the
+ * nodes must use the same codec, or codecs able to decode the values of each other.
+ *
+ * @param <T> the type of the stored values
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public interface RecordStorageCodec<T> {
+
+  /**
+   * Encodes the given record.
+   *
+   * @param record the record
+   * @return the stored value
+   */
+  T encode(Record record);
+
+  /**
+   * Decodes a stored value. The value may have been stored using another codec, for instance before the codec of the
+   * backend has been changed. Codecs should decode the values of the built-in codecs.
+   *
+   * @param value the stored value
+   * @return the record
+   */
+  Record decode(Object value);
+
+  /**
+   * Gets the codec for the given name.
+   *
+   * @param name the name, {@code json}, {@code binary} or a class name, {@code null} for the JSON codec
+   * @return the codec
+   */
+  static RecordStorageCodec<?> forName(String name) {
+    if (name == null || name.equals("json")) {
+      return JsonRecordStorageCodec.INSTANCE;
+    }
+    if (name.equals("binary")) {
+      return BinaryRecordStorageCodec.INSTANCE;
+    }
+    try {
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      Class<?> clazz = loader != null ? loader.loadClass(name) : Class.forName(name);
+      return (RecordStorageCodec<?>) clazz.newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Cannot instantiate the record storage codec " + name, e);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.spi.RecordCursor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A {@link ReadStream} of records fed by a {@link RecordCursor}. A batch is only requested from the cursor once the
+ * records of the previous batch have been delivered, and no batch is requested while the stream is paused. So, at
+ * most one batch of records is held in memory.
+ * <p>
+ * The stream starts when a handler is set. The cursor is closed once the stream has ended, failed, or when the
+ * handler is unset.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordStream implements ReadStream<Record> {
+
+  /**
+   * The default number of records requested to the cursor at once.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  private final RecordCursor cursor;
+  private final int batchSize;
+
+  private final Deque<Record> buffer = new ArrayDeque<>();
+  private Handler<Record> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+  private boolean paused;
+  private boolean fetching;
+  private boolean delivering;
+  private boolean exhausted;
+  private boolean closed;
+
+  /**
+   * Creates the stream.
+   *
+   * @param cursor    the cursor
+   * @param batchSize the number of records requested to the cursor at once
+   */
+  public RecordStream(RecordCursor cursor, int batchSize) {
+    this.cursor = cursor;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public synchronized RecordStream exceptionHandler(Handler<Throwable> handler) {
+    this.exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public RecordStream handler(Handler<Record> handler) {
+    synchronized (this) {
+      this.handler = handler;
+    }
+    if (handler == null) {
+      close();
+    } else {
+      drain();
+    }
+    return this;
+  }
+
+  @Override
+  public RecordStream pause() {
+    synchronized (this) {
+      paused = true;
+    }
+    return this;
+  }
+
+  @Override
+  public RecordStream resume() {
+    synchronized (this) {
+      paused = false;
+    }
+    drain();
+    return this;
+  }
+
+  @Override
+  public synchronized RecordStream endHandler(Handler<Void> handler) {
+    this.endHandler = handler;
+    return this;
+  }
+
+  /**
+   * Delivers the buffered records, and requests the next batch once the buffer is empty. Batches delivered
+   * synchronously by the cursor are handled in the same loop, so the stack does not grow with the number of batches.
+   */
+  private void drain() {
+    do {
+      Handler<Record> current;
+      Record record;
+      while (true) {
+        synchronized (this) {
+          if (closed || paused || delivering || handler == null) {
+            return;
+          }
+          record = buffer.poll();
+          if (record == null) {
+            break;
+          }
+          // Prevents re-entrant deliveries when the handler resumes the stream
+          delivering = true;
+          current = handler;
+        }
+        try {
+          current.handle(record);
+        } finally {
+          synchronized (this) {
+            delivering = false;
+          }
+        }
+      }
+
+      if (exhausted) {
+        end();
+        return;
+      }
+    } while (fetch());
+  }
+
+  /**
+   * Requests the next batch.
+   *
+   * @return {@code true} if the batch has been received synchronously and must be delivered by the caller
+   */
+  private boolean fetch() {
+    synchronized (this) {
+      if (fetching || closed) {
+        return false;
+      }
+      fetching = true;
+    }
+    boolean[] inline = {true};
+    boolean[] received = {false};
+    cursor.next(batchSize, ar -> {
+      synchronized (this) {
+        fetching = false;
+        if (closed) {
+          return;
+        }
+      }
+      if (ar.failed()) {
+        Handler<Throwable> failure;
+        synchronized (this) {
+          failure = exceptionHandler;
+        }
+        close();
+        if (failure != null) {
+          failure.handle(ar.cause());
+        }
+        return;
+      }
+      synchronized (this) {
+        if (ar.result().isEmpty()) {
+          exhausted = true;
+        } else {
+          buffer.addAll(ar.result());
+        }
+        if (inline[0]) {
+          received[0] = true;
+          return;
+        }
+      }
+      drain();
+    });
+    synchronized (this) {
+      inline[0] = false;
+      return received[0];
+    }
+  }
+
+  private void end() {
+    Handler<Void> end;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      end = endHandler;
+    }
+    close();
+    if (end != null) {
+      end.handle(null);
+    }
+  }
+
+  private void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      buffer.clear();
+    }
+    cursor.close();
+  }
+}
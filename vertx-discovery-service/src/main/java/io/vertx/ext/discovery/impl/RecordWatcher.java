@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.discovery.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Manages the watches of a discovery service instance. A single consumer is registered on the announce address for
+ * all the watches: each announcement is decoded once, and then checked against the (compiled) filter of each watch.
+ * <p>
+ * Each watch keeps the registration ids of the records currently matching its filter, so announcements are turned
+ * into {@link RecordEvent.Type#ADDED}, {@link RecordEvent.Type#MODIFIED} and {@link RecordEvent.Type#REMOVED}
+ * events.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class RecordWatcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RecordWatcher.class);
+
+  private final Vertx vertx;
+  private final String announce;
+  private final String batchAnnounce;
+  private final DiscoveryService discovery;
+
+  private final List<Watch> watches = new CopyOnWriteArrayList<>();
+  private MessageConsumer<Object> consumer;
+  private MessageConsumer<JsonArray> batchConsumer;
+
+  /**
+   * Creates the watcher.
+   *
+   * @param vertx     the vert.x instance
+   * @param discovery the discovery service, used to retrieve the initial snapshot of the watches
+   * @param announce      the announce address
+   * @param batchAnnounce the batch announce address, {@code null} if the batches are announced record by record
+   */
+  public RecordWatcher(Vertx vertx, DiscoveryService discovery, String announce, String batchAnnounce) {
+    this.vertx = vertx;
+    this.discovery = discovery;
+    this.announce = announce;
+    this.batchAnnounce = batchAnnounce;
+  }
+
+  /**
+   * Registers a watch.
+   *
+   * @param filter  the filter
+   * @param handler the handler receiving the events
+   * @return the watch
+   */
+  public synchronized RecordWatch watch(JsonObject filter, Handler<RecordEvent> handler) {
+    if (consumer == null) {
+      // The consumer is registered with the first watch
+      consumer = vertx.eventBus().consumer(announce,
+          msg -> onAnnounce(DiscoveryImpl.announced(msg.body())));
+      batchConsumer = DiscoveryImpl.consumeBatches(vertx, batchAnnounce, this::onAnnounce);
+    }
+    Watch watch = new Watch(RecordFilter.compile(filter), handler);
+    watches.add(watch);
+    watch.load();
+    return watch;
+  }
+
+  private void onAnnounce(Record record) {
+    if (record.getRegistration() == null) {
+      return;
+    }
+    for (Watch watch : watches) {
+      watch.onAnnounce(record);
+    }
+  }
+
+  private synchronized void remove(Watch watch) {
+    watches.remove(watch);
+    if (watches.isEmpty() && consumer != null) {
+      consumer.unregister();
+      consumer = null;
+      if (batchConsumer != null) {
+        batchConsumer.unregister();
+        batchConsumer = null;
+      }
+    }
+  }
+
+  /**
+   * Closes all the watches.
+   */
+  public synchronized void close() {
+    new ArrayList<>(watches).forEach(Watch::close);
+  }
+
+  private class Watch implements RecordWatch {
+
+    private final RecordFilter filter;
+    private final boolean includeOutOfService;
+    private final Handler<RecordEvent> handler;
+
+    /**
+     * The registration ids of the records matching the filter.
+     */
+    private final Set<String> matching = new HashSet<>();
+
+    /**
+     * The announcements received while the snapshot is retrieved, {@code null} once the snapshot has been delivered.
+     */
+    private List<Record> pending = new ArrayList<>();
+
+    private boolean closed;
+
+    private Watch(RecordFilter filter, Handler<RecordEvent> handler) {
+      this.filter = filter;
+      this.includeOutOfService = filter.hasStatusConstraint();
+      this.handler = handler;
+    }
+
+    private void load() {
+      discovery.getRecords(filter.toJson(), ar -> {
+        List<RecordEvent> events = new ArrayList<>();
+        synchronized (this) {
+          if (ar.failed()) {
+            LOGGER.warn("Cannot retrieve the initial records of the watch " + filter, ar.cause());
+          } else {
+            for (Record record : ar.result()) {
+              if (record.getRegistration() != null && matching.add(record.getRegistration())) {
+                events.add(new RecordEvent(RecordEvent.Type.ADDED, record));
+              }
+            }
+          }
+          // Replay the announcements received while retrieving the snapshot
+          for (Record record : pending) {
+            RecordEvent event = apply(record);
+            if (event != null) {
+              events.add(event);
+            }
+          }
+          pending = null;
+        }
+        events.forEach(this::deliver);
+      });
+    }
+
+    private void onAnnounce(Record record) {
+      RecordEvent event;
+      synchronized (this) {
+        if (pending != null) {
+          pending.add(record);
+          return;
+        }
+        event = apply(record);
+      }
+      if (event != null) {
+        deliver(event);
+      }
+    }
+
+    /**
+     * Updates the set of matching records, and computes the resulting event if any.
+     */
+    private RecordEvent apply(Record record) {
+      boolean matches = record.getStatus() != Status.DOWN
+          && (includeOutOfService || record.getStatus() == Status.UP)
+          && filter.test(record);
+      boolean matched = matching.contains(record.getRegistration());
+      if (matches) {
+        matching.add(record.getRegistration());
+        return new RecordEvent(matched ? RecordEvent.Type.MODIFIED : RecordEvent.Type.ADDED, record);
+      } else if (matched) {
+        matching.remove(record.getRegistration());
+        return new RecordEvent(RecordEvent.Type.REMOVED, record);
+      }
+      return null;
+    }
+
+    private void deliver(RecordEvent event) {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+      }
+      try {
+        handler.handle(event);
+      } catch (Exception e) {
+        LOGGER.error("The watch handler of " + filter + " has thrown an exception", e);
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        matching.clear();
+      }
+      remove(this);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A node-local map keeping its entries in a {@link PersistentMap}, published through an atomic reference. Reads work
+ * on the current version of the map without locks, so a full scan ({@link #copy()}, {@link #forEach(BiConsumer)})
+ * is a single pass over a consistent snapshot. Writes build a new version and publish it with a compare-and-set,
+ * retrying on conflicts. {@link #putAll(Map)} is atomic.
+ * <p>
+ * Unlike the vert.x local maps, the values are not copied when they are stored or read: they must not be modified.
+ * The instances are shared by name, see {@link #get(Vertx, String)}. Keys and values must not be {@code null}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class SnapshotMap<K, V> extends AbstractMap<K, V> implements Shareable {
+
+  private static final String MAPS = "vertx.discovery.snapshot-maps";
+
+  private final AtomicReference<PersistentMap<K, V>> map = new AtomicReference<>(PersistentMap.empty());
+
+  /**
+   * Gets the map with the given name, creating it if needed. All the callers using the same name on the same vert.x
+   * instance get the same map.
+   *
+   * @param vertx the vert.x instance
+   * @param name  the name
+   * @param <K>   the type of the keys
+   * @param <V>   the type of the values
+   * @return the map
+   */
+  public static <K, V> SnapshotMap<K, V> get(Vertx vertx, String name) {
+    LocalMap<String, SnapshotMap<K, V>> maps = vertx.sharedData().getLocalMap(MAPS);
+    SnapshotMap<K, V> created = new SnapshotMap<>();
+    SnapshotMap<K, V> existing = maps.putIfAbsent(name, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * Applies the given modification, retrying if the map has been modified concurrently.
+   *
+   * @return the version of the map the modification has been applied to
+   */
+  private PersistentMap<K, V> update(UnaryOperator<PersistentMap<K, V>> modification) {
+    while (true) {
+      PersistentMap<K, V> current = map.get();
+      PersistentMap<K, V> updated = modification.apply(current);
+      if (updated == current || map.compareAndSet(current, updated)) {
+        return current;
+      }
+    }
+  }
+
+  /**
+   * Copies the entries of the current version of the map, in a single pass.
+   *
+   * @return the copy
+   */
+  public Map<K, V> copy() {
+    Map<K, V> copy = new LinkedHashMap<>();
+    map.get().forEach(copy::put);
+    return copy;
+  }
+
+  /**
+   * Calls the given action with each entry of the current version of the map. The modifications made during the
+   * iteration are not seen.
+   *
+   * @param action the action
+   */
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    map.get().forEach(action);
+  }
+
+  @Override
+  public V get(Object key) {
+    return map.get().get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return map.get().size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return map.get().isEmpty();
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return update(current -> current.plus(key, value)).get(key);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    return update(current -> current.get(key) == null ? current.plus(key, value) : current).get(key);
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    return update(current -> current.get(key) != null ? current.plus(key, value) : current).get(key);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return update(current -> current.minus(key)).get(key);
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> entries) {
+    update(current -> {
+      for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+        current = current.plus(entry.getKey(), entry.getValue());
+      }
+      return current;
+    });
+  }
+
+  @Override
+  public void clear() {
+    map.set(PersistentMap.empty());
+  }
+
+  /**
+   * @return a copy of the keys of the current version of the map
+   */
+  @Override
+  public Set<K> keySet() {
+    Set<K> keys = new LinkedHashSet<>();
+    map.get().forEach((key, value) -> keys.add(key));
+    return keys;
+  }
+
+  /**
+   * @return a copy of the values of the current version of the map
+   */
+  @Override
+  public Collection<V> values() {
+    List<V> values = new ArrayList<>();
+    map.get().values().forEachRemaining(values::add);
+    return values;
+  }
+
+  /**
+   * @return a read-only copy of the entries of the current version of the map
+   */
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    Set<Entry<K, V>> entries = new LinkedHashSet<>();
+    map.get().forEach((key, value) -> entries.add(new SimpleImmutableEntry<>(key, value)));
+    return Collections.unmodifiableSet(entries);
+  }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.NoStackTraceThrowable;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.spi.Batches;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import io.vertx.ext.discovery.spi.RecordCursor;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A backend buffering the modifications, and writing them to another backend in bulk (using
+ * {@link DiscoveryBackend#storeAll(List, Handler)}, {@link DiscoveryBackend#updateAll(List, Handler)} and
+ * {@link DiscoveryBackend#removeAll(List, Handler)}). The buffer is flushed {@code window} ms (10 by default) after
+ * the first buffered modification, or as soon as it contains {@code max-batch} modifications (500 by default).
+ * <p>
+ * The modifications of a same record are coalesced: only the last update is written, and a removal replaces the
+ * pending update. Updating or removing a record whose removal is pending (or being written) fails, as the record does
+ * not exist anymore. The flushes are serialized, so the modifications are written in order. The lookups wait for the
+ * pending modifications to be written, so they always see them.
+ * <p>
+ * The stores and removals are acknowledged once written, as their result (the registration id, the removed record)
+ * is provided by the other backend. The updates are acknowledged once written too, unless {@code acknowledge} is set
+ * to {@code buffer}: they are then acknowledged once buffered, and the failures are only logged. Closing the backend
+ * writes the buffered modifications before closing the other backend.
+ * <p>
+ * The backend is configured using the {@code write-behind} object of the backend configuration. When set, the
+ * discovery service wraps the selected backend.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class WriteBehindDiscoveryBackend implements DiscoveryBackend {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindDiscoveryBackend.class);
+
+  public static final long DEFAULT_WINDOW = 10;
+
+  public static final int DEFAULT_MAX_BATCH = 500;
+
+  private final DiscoveryBackend delegate;
+
+  private Vertx vertx;
+  private long window;
+  private int maxBatch;
+  private boolean acknowledgeOnBuffer;
+
+  private List<PendingStore> stores = new ArrayList<>();
+  private Map<String, PendingWrite> writes = new LinkedHashMap<>();
+
+  /**
+   * The actions to execute once the buffered modifications have been written.
+   */
+  private List<Runnable> waiters = new ArrayList<>();
+
+  /**
+   * The actions to execute once the flush in progress has completed, {@code null} if no flush is in progress.
+   */
+  private List<Runnable> flushing;
+
+  /**
+   * The registration ids of the records whose removal is being written.
+   */
+  private Set<String> removing = Collections.emptySet();
+
+  private long timer = -1;
+
+  /**
+   * Creates the backend.
+   *
+   * @param delegate the backend receiving the modifications, not yet initialized
+   */
+  public WriteBehindDiscoveryBackend(DiscoveryBackend delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  @Override
+  public void init(Vertx vertx, JsonObject config) {
+    this.vertx = vertx;
+    JsonObject writeBehind = config.getJsonObject("write-behind", new JsonObject());
+    window = writeBehind.getLong("window", DEFAULT_WINDOW);
+    maxBatch = writeBehind.getInteger("max-batch", DEFAULT_MAX_BATCH);
+    String acknowledge = writeBehind.getString("acknowledge", "flush");
+    if (!"flush".equals(acknowledge) && !"buffer".equals(acknowledge)) {
+      throw new IllegalArgumentException("Unknown acknowledgement mode '" + acknowledge + "', flush or buffer "
+          + "expected");
+    }
+    acknowledgeOnBuffer = "buffer".equals(acknowledge);
+    delegate.init(vertx, config);
+  }
+
+  /**
+   * Writes the buffered modifications, and then closes the other backend.
+   */
+  @Override
+  public void close() {
+    afterPendingWrites(delegate::close);
+  }
+
+  @Override
+  public String name() {
+    return delegate.name();
+  }
+
+  @Override
+  public void store(Record record, Handler<AsyncResult<Record>> resultHandler) {
+    if (record.getRegistration() != null) {
+      resultHandler.handle(Future.failedFuture(
+          new IllegalArgumentException("The record has already been registered")));
+      return;
+    }
+    synchronized (this) {
+      stores.add(new PendingStore(record, resultHandler));
+    }
+    buffered();
+  }
+
+  @Override
+  public void remove(Record record, Handler<AsyncResult<Record>> resultHandler) {
+    Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+    remove(record.getRegistration(), resultHandler);
+  }
+
+  @Override
+  public void remove(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    Objects.requireNonNull(uuid, "No registration id in the record");
+    synchronized (this) {
+      PendingWrite write = writes.get(uuid);
+      if (write == null) {
+        write = new PendingWrite();
+        writes.put(uuid, write);
+      } else if (write.removal) {
+        resultHandler.handle(Future.failedFuture(new RecordNotFoundException(uuid)));
+        return;
+      }
+      write.removal = true;
+      write.record = null;
+      write.removals.add(resultHandler);
+    }
+    buffered();
+  }
+
+  @Override
+  public void update(Record record, Handler<AsyncResult<Void>> resultHandler) {
+    Objects.requireNonNull(record.getRegistration(), "No registration id in the record");
+    String uuid = record.getRegistration();
+    synchronized (this) {
+      PendingWrite write = writes.get(uuid);
+      if (write == null && removing.contains(uuid)) {
+        // Written after the removal, the update would register the record again
+        resultHandler.handle(Future.failedFuture(new RecordNotFoundException(uuid)));
+        return;
+      }
+      if (write == null) {
+        write = new PendingWrite();
+        writes.put(uuid, write);
+      } else if (write.removal) {
+        resultHandler.handle(Future.failedFuture(new RecordNotFoundException(uuid)));
+        return;
+      }
+      // The record is copied, as the caller may modify it before it is written
+      write.record = new Record(record);
+      if (!acknowledgeOnBuffer) {
+        write.updates.add(resultHandler);
+      }
+    }
+    if (acknowledgeOnBuffer) {
+      resultHandler.handle(Future.succeededFuture());
+    }
+    buffered();
+  }
+
+  @Override
+  public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    for (Record record : records) {
+      if (record.getRegistration() != null) {
+        resultHandler.handle(Future.failedFuture(
+            new IllegalArgumentException("The record has already been registered")));
+        return;
+      }
+    }
+    Batches.forEach(records, this::store, resultHandler);
+  }
+
+  /**
+   * Removes the records. Unknown ids are ignored. The records that cannot be removed are not part of the result, the
+   * batch only fails if all the removals fail.
+   */
+  @Override
+  public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    // The unknown ids are reported as null, and ignored
+    Batches.<String, Record>forEach(uuids,
+        (uuid, handler) -> remove(uuid, ar -> {
+          if (ar.failed() && ar.cause() instanceof RecordNotFoundException) {
+            handler.handle(Future.succeededFuture(null));
+          } else {
+            handler.handle(ar);
+          }
+        }),
+        ar -> {
+          if (ar.succeeded()) {
+            ar.result().removeIf(Objects::isNull);
+          }
+          resultHandler.handle(ar);
+        });
+  }
+
+  /**
+   * Updates the records. The records that cannot be updated are not part of the result, the batch only fails if all
+   * the updates fail.
+   */
+  @Override
+  public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    Batches.<Record, Record>forEach(records, (record, handler) -> update(record, ar -> {
+      if (ar.succeeded()) {
+        handler.handle(Future.succeededFuture(record));
+      } else {
+        handler.handle(Future.failedFuture(ar.cause()));
+      }
+    }), resultHandler);
+  }
+
+  @Override
+  public void getRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
+    afterPendingWrites(() -> delegate.getRecords(resultHandler));
+  }
+
+  @Override
+  public void getRecords(JsonObject filter, boolean includeOutOfService,
+                         Handler<AsyncResult<List<Record>>> resultHandler) {
+    afterPendingWrites(() -> delegate.getRecords(filter, includeOutOfService, resultHandler));
+  }
+
+  @Override
+  public void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                         Handler<AsyncResult<Record>> resultHandler) {
+    afterPendingWrites(() -> delegate.findRecord(filter, includeOutOfService, resultHandler));
+  }
+
+  /**
+   * Opens a cursor on the other backend. The pending modifications are written when the first batch is requested.
+   */
+  @Override
+  public RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    return new RecordCursor() {
+      private RecordCursor cursor;
+
+      @Override
+      public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+        if (cursor != null) {
+          cursor.next(max, resultHandler);
+        } else {
+          afterPendingWrites(() -> {
+            cursor = delegate.cursor(filter, includeOutOfService);
+            cursor.next(max, resultHandler);
+          });
+        }
+      }
+
+      @Override
+      public void close() {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+    };
+  }
+
+  @Override
+  public void getRecord(String uuid, Handler<AsyncResult<Record>> resultHandler) {
+    afterPendingWrites(() -> delegate.getRecord(uuid, resultHandler));
+  }
+
+  /**
+   * Schedules the flush of the buffer, or flushes it if it is full.
+   */
+  private void buffered() {
+    boolean full;
+    synchronized (this) {
+      full = stores.size() + writes.size() >= maxBatch;
+      if (!full && timer == -1 && flushing == null) {
+        timer = vertx.setTimer(Math.max(1, window), l -> {
+          synchronized (this) {
+            timer = -1;
+          }
+          flush();
+        });
+      }
+    }
+    if (full) {
+      flush();
+    }
+  }
+
+  /**
+   * Executes the given action once the buffered modifications have been written.
+   */
+  private void afterPendingWrites(Runnable action) {
+    synchronized (this) {
+      if (!stores.isEmpty() || !writes.isEmpty()) {
+        waiters.add(action);
+      } else if (flushing != null) {
+        flushing.add(action);
+        return;
+      } else {
+        action.run();
+        return;
+      }
+    }
+    flush();
+  }
+
+  /**
+   * Writes the buffered modifications, unless a flush is in progress. In this case, they are written once the flush
+   * in progress has completed.
+   */
+  private void flush() {
+    List<PendingStore> storing;
+    Map<String, PendingWrite> writing;
+    List<Runnable> completions;
+    synchronized (this) {
+      if (flushing != null || stores.isEmpty() && writes.isEmpty()) {
+        return;
+      }
+      if (timer != -1) {
+        vertx.cancelTimer(timer);
+        timer = -1;
+      }
+      storing = stores;
+      writing = writes;
+      completions = waiters;
+      stores = new ArrayList<>();
+      writes = new LinkedHashMap<>();
+      waiters = new ArrayList<>();
+      flushing = completions;
+      removing = new HashSet<>();
+      for (Map.Entry<String, PendingWrite> entry : writing.entrySet()) {
+        if (entry.getValue().removal) {
+          removing.add(entry.getKey());
+        }
+      }
+    }
+
+    List<Record> updated = new ArrayList<>();
+    List<String> removed = new ArrayList<>();
+    writing.forEach((uuid, write) -> {
+      if (write.removal) {
+        removed.add(uuid);
+      } else {
+        updated.add(write.record);
+      }
+    });
+
+    AtomicInteger remaining = new AtomicInteger(3);
+    Runnable completed = () -> {
+      if (remaining.decrementAndGet() == 0) {
+        List<Runnable> actions;
+        synchronized (this) {
+          actions = flushing;
+          flushing = null;
+          removing = Collections.emptySet();
+        }
+        actions.forEach(Runnable::run);
+        // Write the modifications buffered during this flush
+        flush();
+      }
+    };
+
+    if (storing.isEmpty()) {
+      completed.run();
+    } else {
+      List<Record> records = new ArrayList<>();
+      storing.forEach(store -> records.add(store.record));
+      delegate.storeAll(records, ar -> {
+        // The records that cannot be stored are not part of the result. The other backend assigns the registration
+        // ids to the given records, so the stored records are matched to the pending stores using these ids.
+        Map<String, Record> stored = new HashMap<>();
+        if (ar.succeeded()) {
+          ar.result().forEach(record -> stored.put(record.getRegistration(), record));
+        }
+        for (PendingStore store : storing) {
+          Record record = store.record.getRegistration() == null ? null : stored.get(store.record.getRegistration());
+          if (record != null) {
+            store.handler.handle(Future.succeededFuture(record));
+          } else if (ar.failed()) {
+            store.handler.handle(Future.failedFuture(ar.cause()));
+          } else {
+            store.handler.handle(Future.failedFuture(new NoStackTraceThrowable("The record could not be stored")));
+          }
+        }
+        completed.run();
+      });
+    }
+
+    if (updated.isEmpty()) {
+      completed.run();
+    } else {
+      delegate.updateAll(updated, ar -> {
+        if (ar.failed() && acknowledgeOnBuffer) {
+          LOGGER.warn("Cannot write the buffered updates", ar.cause());
+        }
+        // The records that cannot be updated, for instance because they do not exist anymore, are not part of the
+        // result
+        Set<String> written = new HashSet<>();
+        if (ar.succeeded()) {
+          ar.result().forEach(record -> written.add(record.getRegistration()));
+        }
+        writing.forEach((uuid, write) -> {
+          if (write.removal) {
+            return;
+          }
+          AsyncResult<Void> result;
+          if (ar.failed()) {
+            result = Future.failedFuture(ar.cause());
+          } else if (written.contains(uuid)) {
+            result = Future.succeededFuture();
+          } else {
+            result = Future.failedFuture(new RecordNotFoundException(uuid));
+          }
+          write.updates.forEach(handler -> handler.handle(result));
+        });
+        completed.run();
+      });
+    }
+
+    if (removed.isEmpty()) {
+      completed.run();
+    } else {
+      delegate.removeAll(removed, ar -> {
+        Map<String, Record> records = new HashMap<>();
+        if (ar.succeeded()) {
+          ar.result().forEach(record -> records.put(record.getRegistration(), record));
+        }
+        removed.forEach(uuid -> {
+          PendingWrite write = writing.get(uuid);
+          Record record = records.get(uuid);
+          for (Handler<AsyncResult<Void>> handler : write.updates) {
+            // Superseded by the removal
+            handler.handle(ar.succeeded() ? Future.succeededFuture() : Future.failedFuture(ar.cause()));
+          }
+          for (Handler<AsyncResult<Record>> handler : write.removals) {
+            if (ar.failed()) {
+              handler.handle(Future.failedFuture(ar.cause()));
+            } else if (record == null) {
+              handler.handle(Future.failedFuture(new RecordNotFoundException(uuid)));
+            } else {
+              handler.handle(Future.succeededFuture(record));
+            }
+          }
+        });
+        completed.run();
+      });
+    }
+  }
+
+  /**
+   * Reports a record that does not exist, so the bulk removals can ignore it.
+   */
+  private static class RecordNotFoundException extends NoStackTraceThrowable {
+    private RecordNotFoundException(String uuid) {
+      super("Record '" + uuid + "' not found");
+    }
+  }
+
+  private static class PendingStore {
+    private final Record record;
+    private final Handler<AsyncResult<Record>> handler;
+
+    private PendingStore(Record record, Handler<AsyncResult<Record>> handler) {
+      this.record = record;
+      this.handler = handler;
+    }
+  }
+
+  /**
+   * The pending update or removal of a record.
+   */
+  private static class PendingWrite {
+    private boolean removal;
+    private Record record;
+    private final List<Handler<AsyncResult<Void>>> updates = new ArrayList<>();
+    private final List<Handler<AsyncResult<Record>>> removals = new ArrayList<>();
+  }
+}
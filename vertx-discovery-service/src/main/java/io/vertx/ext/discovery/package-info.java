@@ -139,7 +139,61 @@
  *
  * Notice that the discovery does not required vert.x clustering. In single-node mode, the map is a local map. It can
  * be populated with {@link io.vertx.ext.discovery.spi.DiscoveryBridge}s.
- * 
+ *
+ * In single-node mode, the default backend also indexes the records on their `name`, `type` and `status`. Metadata
+ * keys can be indexed too by listing them in the `indexed-metadata` entry of the backend configuration. Lookups
+ * using equality filters on indexed attributes do not scan the whole registry.
+ *
+ * In clustered mode, the default backend accesses the distributed map from worker threads. Set `worker-pool-size` in
+ * the backend configuration to use a dedicated worker pool (named `vertx-discovery-registry`, or the value of
+ * `worker-pool-name`) instead of the one shared with your application. By default the operations issued from the
+ * same context are executed in order; set `ordered` to `false` to let independent lookups run in parallel. The
+ * writes are always executed in order.
+ *
+ * The default backend stores the records as JSON strings. Set `storage-codec` to `binary` in the backend
+ * configuration to store them in a compact binary form, smaller on the heap and faster to decode. In clustered mode,
+ * all the nodes should use the same codec.
+ *
+ * When vert.x is not clustered, you can also use the in-memory backend by setting `backend-name` to
+ * `io.vertx.ext.discovery.impl.InMemoryDiscoveryBackend`. It keeps the records in an immutable map replaced
+ * atomically on each modification, so lookups run on a consistent snapshot without locks and without decoding the
+ * records.
+ *
+ * To keep the records across restarts of a non-clustered application, set `backend-name` to
+ * `io.vertx.ext.discovery.impl.FileDiscoveryBackend`. This backend keeps the records in memory too, but also appends
+ * each modification to a journal, periodically compacted into a snapshot. The registry is rebuilt from these files on
+ * startup. The backend configuration accepts:
+ *
+ * * `path`: the directory storing the files (`.vertx/discovery` by default)
+ * * `compaction-threshold`: the size of the journal, in bytes, triggering a compaction (16MB by default)
+ *
+ * The modifications requested while the journal is being written are written, and synced to the disk, together. They
+ * are visible once written, in the order they have been written, and a modification that cannot be written is not
+ * applied. On startup, the registry is restored by a worker thread; the lookups wait for the end of the restoration.
+ * The files are closed when the discovery service is closed.
+ *
+ * Whatever the backend, the reads can be cached by adding a `caching` object to the backend configuration. The
+ * selected backend is then wrapped in a cache:
+ *
+ * * the records retrieved by id are kept in a LRU cache containing up to `max-size` records (1000 by default),
+ * * the lookups are served from a snapshot of the records, reloaded once older than `ttl` milliseconds (5000 by
+ * default). The cached records also expire after this delay, so the modifications made by other nodes are seen.
+ *
+ * The modifications made through the discovery service update the cache. If `statistics-address` is set, the
+ * counters of the cache (hits, misses, evictions) are sent in reply to the messages received on this event bus
+ * address.
+ *
+ * The writes can also be batched by adding a `write-behind` object to the backend configuration. The modifications
+ * are then buffered, and written to the selected backend in bulk:
+ *
+ * * `window`: the delay, in milliseconds, after which the buffered modifications are written (10 by default)
+ * * `max-batch`: the number of buffered modifications triggering the write (500 by default)
+ * * `acknowledge`: `flush` (default) to report the result of the updates once written, `buffer` to report it once
+ * buffered. The publications and removals are always reported once written.
+ *
+ * The successive updates of a same record are coalesced, so only the last one is written. The lookups wait for the
+ * buffered modifications to be written. When both are configured, the cache wraps the write buffer.
+ *
  * == Creating the discovery service
  * 
  * Publishers and consumers must create their own {@link io.vertx.ext.discovery.DiscoveryService}
@@ -173,6 +227,12 @@
  * ----
  * 
  * It is important to keep a reference on the returned records, as this record has been extended by a `registration id`.
+ *
+ * To publish, withdraw or update many records at once (for instance when importing services from another discovery
+ * technology), use {@link io.vertx.ext.discovery.DiscoveryService#publishAll(java.util.List, io.vertx.core.Handler)},
+ * {@link io.vertx.ext.discovery.DiscoveryService#unpublishAll(java.util.List, io.vertx.core.Handler)} and
+ * {@link io.vertx.ext.discovery.DiscoveryService#updateAll(java.util.List, io.vertx.core.Handler)}. The records are
+ * stored in a single operation when the backend supports it.
  * 
  * == Withdrawing services
  * 
@@ -182,6 +242,19 @@
  * ----
  * {@link examples.Examples#example3(DiscoveryService, Record)}
  * ----
+ *
+ * A record published by a node that crashes is never withdrawn. To avoid this, publish the record with a lease using
+ * {@link io.vertx.ext.discovery.DiscoveryService#publish(Record, long, io.vertx.core.Handler)}, and renew it
+ * periodically using {@link io.vertx.ext.discovery.DiscoveryService#renew(java.lang.String, io.vertx.core.Handler)}.
+ * The leases are disabled by default: enable them by setting the `leaseAddress` in the
+ * {@link io.vertx.ext.discovery.DiscoveryOptions}, to the same address on all the nodes. The renewal sends a small
+ * heartbeat on the lease address, and does not access the backend. Every node tracks the leases it receives the
+ * heartbeats of in a hashed timer wheel, driven by a single timer whatever the number of leases. When a lease
+ * expires, the node owning it (the node that granted or last renewed it) marks the record as `DOWN` (or removes it if
+ * `removeExpiredRecords` is set), and the change is announced once. The update (or removal) fails if the record has
+ * been un-published in the meantime, so it is not registered again. If the owner is gone, another node takes the
+ * lease over, and expires the record one lease duration later. The expiration is checked every `leaseResolution`
+ * milliseconds (1000 by default). The leases are only kept in memory: they are lost if all the nodes are restarted.
  * 
  * == Looking for service
  * 
@@ -221,6 +294,16 @@
  * * when using function, set the `includeOutOfService` parameter to `true` in
  * {@link io.vertx.ext.discovery.DiscoveryService#getRecords(java.util.function.Function, boolean, io.vertx.core.Handler)}
  * .
+ *
+ * When the number of matching records may be large, use
+ * {@link io.vertx.ext.discovery.DiscoveryService#recordStream(io.vertx.core.json.JsonObject)} to avoid loading all of
+ * them in memory. The records are retrieved from the backend batch by batch, as you process them, and the retrieval
+ * stops while the stream is paused:
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Examples#example41(DiscoveryService)}
+ * ----
  * 
  * == Retrieving a service reference
  * 
@@ -536,6 +619,29 @@
  * * `DOWN` : the service is not available anymore, you should not use it anymore
  * * `OUT_OF_SERVICE` : the service is not running, you should not use it anymore, but it may come back later.
  *
+ * The `registration` field of the received record contains the registration id of the published record.
+ *
+ * Batch operations ({@link io.vertx.ext.discovery.DiscoveryService#publishAll(java.util.List, io.vertx.core.Handler)},
+ * {@link io.vertx.ext.discovery.DiscoveryService#unpublishAll(java.util.List, io.vertx.core.Handler)} and
+ * {@link io.vertx.ext.discovery.DiscoveryService#updateAll(java.util.List, io.vertx.core.Handler)}) send an event
+ * per record, like the operations on a single record.
+ *
+ * These events are also used to maintain the _near cache_. When enabled with
+ * {@link io.vertx.ext.discovery.DiscoveryOptions#setNearCache(boolean)}, each discovery service keeps a local
+ * replica of the registry, loaded once from the backend and then updated using the received events. Lookups are then
+ * served from memory. The replica is periodically reloaded from the backend to repair missed events (see
+ * {@link io.vertx.ext.discovery.DiscoveryOptions#setNearCacheReconciliationPeriod(long)}).
+ *
+ * Instead of filtering these events yourself, you can watch the records matching a filter with
+ * {@link io.vertx.ext.discovery.DiscoveryService#watch(io.vertx.core.json.JsonObject, io.vertx.core.Handler)}. The
+ * handler first receives an `ADDED` event for each record currently matching the filter, and then `ADDED`,
+ * `MODIFIED` and `REMOVED` events when records enter the set of matching records, are modified, or leave it:
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Examples#example42(DiscoveryService)}
+ * ----
+ *
  * == Listening for service usage
  *
  * Every time a service reference is retrieved (`bind`) or released (`release`), an event is published on the _vertx
@@ -555,6 +661,18 @@
  * You can disable the service usage support by setting the usage address to `null` with
  * {@link io.vertx.ext.discovery.DiscoveryOptions#setUsageAddress(java.lang.String)}.
  *
+ * === Binary events
+ *
+ * By default, the service events and the usage events are JSON objects. With
+ * {@link io.vertx.ext.discovery.DiscoveryOptions#setRecordCodec(boolean)}, they are sent using the
+ * {@link io.vertx.ext.discovery.RecordMessageCodec}: the body of the service events is the
+ * {@link io.vertx.ext.discovery.Record}, and the body of the usage events
+ * is the record, the `type` and `id` being sent as message headers. Local consumers receive the records without copy:
+ * they are frozen (see {@link io.vertx.ext.discovery.Record#freeze()}) and so cannot be modified. Events sent to
+ * other nodes use a compact binary form. Every node consuming these
+ * events must register the codec with
+ * {@link io.vertx.ext.discovery.RecordMessageCodec#register(io.vertx.core.Vertx)}.
+ *
  * 
  * == Service discovery bridges
  * 
@@ -16,8 +16,9 @@
 
 package io.vertx.ext.discovery.rest;
 
-import io.vertx.core.json.Json;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.discovery.DiscoveryService;
 import io.vertx.ext.discovery.Record;
 import io.vertx.ext.web.Router;
@@ -27,6 +28,7 @@ import io.vertx.ext.web.handler.BodyHandler;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Allows publishing the vert.x discovery service as a REST endpoint. It supports retrieving services, but also
@@ -120,7 +122,7 @@ public class DiscoveryRestEndpoint {
       } else {
         routingContext.response().setStatusCode(200)
             .putHeader("Content-Type", "application/json")
-            .end(ar.result().toJson().toString());
+            .end(ar.result().encode());
       }
     });
   }
@@ -146,7 +148,7 @@ public class DiscoveryRestEndpoint {
         } else {
           routingContext.response().setStatusCode(200)
               .putHeader("Content-Type", "application/json")
-              .end(ar.result().toJson().toString());
+              .end(ar.result().encode());
         }
       }
     });
@@ -161,7 +163,7 @@ public class DiscoveryRestEndpoint {
       } else {
         routingContext.response().setStatusCode(201)
             .putHeader("Content-Type", "application/json")
-            .end(ar.result().toJson().toString());
+            .end(ar.result().encode());
       }
     });
   }
@@ -179,13 +181,42 @@ public class DiscoveryRestEndpoint {
         return;
       }
     }
-    discovery.getRecords(filter, ar -> {
-      if (ar.failed()) {
-        routingContext.fail(ar.cause());
+
+    // The records are written one by one, in a chunked response, to avoid loading all of them in memory.
+    HttpServerResponse response = routingContext.response();
+    ReadStream<Record> records = discovery.recordStream(filter);
+    AtomicBoolean first = new AtomicBoolean(true);
+    // Unsetting the handler closes the stream, and releases the backend cursor, when the client disconnects
+    response.closeHandler(v -> records.handler(null));
+    records.exceptionHandler(failure -> {
+      if (first.get()) {
+        routingContext.fail(failure);
       } else {
-        routingContext.response().setStatusCode(200)
+        // The response has already been started
+        response.close();
+      }
+    });
+    records.endHandler(v -> {
+      if (first.get()) {
+        response.setStatusCode(200)
             .putHeader("Content-Type", "application/json")
-            .end(Json.encode(ar.result()));
+            .end("[]");
+      } else {
+        response.end("]");
+      }
+    });
+    records.handler(record -> {
+      if (first.getAndSet(false)) {
+        response.setStatusCode(200)
+            .putHeader("Content-Type", "application/json")
+            .setChunked(true)
+            .write("[" + record.encode());
+      } else {
+        response.write("," + record.encode());
+      }
+      if (response.writeQueueFull()) {
+        records.pause();
+        response.drainHandler(x -> records.resume());
       }
     });
   }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.spi;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Helps implementing batch operations on top of the operations processing a single item.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class Batches {
+
+  private Batches() {
+    // Avoid direct instantiation
+  }
+
+  /**
+   * Applies the given operation to all the items concurrently, and collects the results of the successful
+   * operations. Failed operations are skipped: the batch only fails if all the operations have failed.
+   *
+   * @param items         the items
+   * @param operation     the operation, called with the item and the handler to call with the result
+   * @param resultHandler the handler receiving the results of the successful operations, in the order of the items
+   * @param <T>           the type of items
+   * @param <R>           the type of results
+   */
+  public static <T, R> void forEach(List<T> items, BiConsumer<T, Handler<AsyncResult<R>>> operation,
+                                    Handler<AsyncResult<List<R>>> resultHandler) {
+    if (items.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+      return;
+    }
+
+    List<R> results = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      results.add(null);
+    }
+    boolean[] succeeded = new boolean[items.size()];
+    List<Throwable> failures = new ArrayList<>();
+    AtomicInteger remaining = new AtomicInteger(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      int index = i;
+      operation.accept(items.get(i), ar -> {
+        synchronized (results) {
+          if (ar.succeeded()) {
+            results.set(index, ar.result());
+            succeeded[index] = true;
+          } else {
+            failures.add(ar.cause());
+          }
+        }
+        if (remaining.decrementAndGet() == 0) {
+          List<R> collected = new ArrayList<>();
+          synchronized (results) {
+            for (int j = 0; j < succeeded.length; j++) {
+              if (succeeded[j]) {
+                collected.add(results.get(j));
+              }
+            }
+          }
+          if (collected.isEmpty()) {
+            resultHandler.handle(Future.failedFuture(failures.get(0)));
+          } else {
+            resultHandler.handle(Future.succeededFuture(collected));
+          }
+        }
+      });
+    }
+  }
+}
@@ -17,12 +17,18 @@
 package io.vertx.ext.discovery.spi;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
+import io.vertx.ext.discovery.Status;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * By default the discovery service use a distributed map to store the records. But this backend can be replaced. To
@@ -34,6 +40,12 @@ import java.util.List;
  */
 public interface DiscoveryBackend {
 
+  /**
+   * The number of records requested at once by the default implementation of
+   * {@link #findRecord(Function, boolean, Handler)}.
+   */
+  int FIND_BATCH_SIZE = 20;
+
   /**
    * @return the name of the implementation, used to select the right one (when there are several implementation on
    * the classpath). By default it ruturns the class name of the implementation (as String).
@@ -50,6 +62,14 @@ public interface DiscoveryBackend {
    */
   void init(Vertx vertx, JsonObject config);
 
+  /**
+   * Releases the resources held by the backend, such as worker pools, timers or connections. It is called when the
+   * discovery service is closed. Does nothing by default.
+   */
+  default void close() {
+    // Nothing by default
+  }
+
   /**
    * Stores a record.
    *
@@ -82,6 +102,85 @@ public interface DiscoveryBackend {
    */
   void update(Record record, Handler<AsyncResult<Void>> resultHandler);
 
+  /**
+   * Stores a set of records. The batch is not atomic: records that cannot be stored are not part of the result.
+   * <p>
+   * The default implementation calls {@link #store(Record, Handler)} for each record. Backends able to store several
+   * records at once should override this method.
+   *
+   * @param records       the records
+   * @param resultHandler the completion handler receiving the stored records. The batch fails if no record could be
+   *                      stored
+   */
+  default void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    Batches.<Record, Record>forEach(records, this::store, resultHandler);
+  }
+
+  /**
+   * Removes a set of records based on their UUIDs. The batch is not atomic: records that cannot be removed are not
+   * part of the result. Unknown UUIDs are ignored.
+   * <p>
+   * The default implementation calls {@link #remove(String, Handler)} for each known UUID. Backends able to remove
+   * several records at once should override this method.
+   *
+   * @param uuids         the uuids / registration ids
+   * @param resultHandler the completion handler receiving the removed records. The batch fails if all the removals of
+   *                      known records have failed
+   */
+  default void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+    // The first failure of the removal of a known record, reported if none of them succeeded
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Batches.<String, Record>forEach(uuids, (uuid, handler) -> getRecord(uuid, ar -> {
+      if (ar.failed()) {
+        failure.compareAndSet(null, ar.cause());
+        handler.handle(Future.failedFuture(ar.cause()));
+      } else if (ar.result() == null) {
+        // Unknown, ignored
+        handler.handle(Future.succeededFuture());
+      } else {
+        remove(uuid, removed -> {
+          if (removed.failed()) {
+            failure.compareAndSet(null, removed.cause());
+          }
+          handler.handle(removed);
+        });
+      }
+    }), ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<Record> removed = ar.result().stream()
+          .filter(record -> record != null)
+          .collect(Collectors.toList());
+      if (removed.isEmpty() && failure.get() != null) {
+        resultHandler.handle(Future.failedFuture(failure.get()));
+      } else {
+        resultHandler.handle(Future.succeededFuture(removed));
+      }
+    });
+  }
+
+  /**
+   * Updates a set of records. The batch is not atomic: records that cannot be updated are not part of the result.
+   * <p>
+   * The default implementation calls {@link #update(Record, Handler)} for each record. Backends able to update
+   * several records at once should override this method.
+   *
+   * @param records       the records to update
+   * @param resultHandler the completion handler receiving the updated records. The batch fails if no record could be
+   *                      updated
+   */
+  default void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+    Batches.<Record, Record>forEach(records, (record, handler) -> update(record, ar -> {
+      if (ar.succeeded()) {
+        handler.handle(Future.succeededFuture(record));
+      } else {
+        handler.handle(Future.failedFuture(ar.cause()));
+      }
+    }), resultHandler);
+  }
+
   /**
    * Gets all the records
    *
@@ -89,6 +188,91 @@ public interface DiscoveryBackend {
    */
   void getRecords(Handler<AsyncResult<List<Record>>> resultHandler);
 
+  /**
+   * Gets the records matching the given filter. The filter uses the same syntax as
+   * {@link io.vertx.ext.discovery.DiscoveryService#getRecords(JsonObject, Handler)}.
+   * <p>
+   * The default implementation retrieves all the records and checks them against the filter. Backends able to
+   * evaluate the filter themselves should override this method to only return the matching records.
+   *
+   * @param filter              the filter, {@code null} to accept all records
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @param resultHandler       the result handler
+   */
+  default void getRecords(JsonObject filter, boolean includeOutOfService,
+                          Handler<AsyncResult<List<Record>>> resultHandler) {
+    RecordFilter compiled = RecordFilter.compile(filter);
+    getRecords(ar -> {
+      if (ar.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(ar.result().stream()
+            .filter(compiled::test)
+            .filter(record -> includeOutOfService || record.getStatus() == Status.UP)
+            .collect(Collectors.toList())));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Opens a cursor on the records matching the given filter, so they can be retrieved batch by batch. The filter uses
+   * the same syntax as {@link io.vertx.ext.discovery.DiscoveryService#getRecords(JsonObject, Handler)}.
+   * <p>
+   * The default implementation retrieves all the matching records using
+   * {@link #getRecords(JsonObject, boolean, Handler)} when the first batch is requested. Backends able to iterate over
+   * their records should override this method to load them incrementally.
+   *
+   * @param filter              the filter, {@code null} to accept all records
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @return the cursor
+   */
+  default RecordCursor cursor(JsonObject filter, boolean includeOutOfService) {
+    return new ListRecordCursor(handler -> getRecords(filter, includeOutOfService, handler));
+  }
+
+  /**
+   * Finds a record accepted by the given filter. Unlike {@link #getRecords(JsonObject, boolean, Handler)}, the lookup
+   * stops at the first accepted record, so backends should avoid retrieving and decoding the other records.
+   * <p>
+   * When the filter is a {@link RecordFilter}, backends may use its JSON form to narrow the lookup.
+   * <p>
+   * The default implementation iterates over the records using a {@link #cursor(JsonObject, boolean)}, and closes it
+   * as soon as a record is accepted.
+   *
+   * @param filter              the filter, must not be {@code null}
+   * @param includeOutOfService whether or not records without the {@code UP} status are accepted
+   * @param resultHandler       the result handler receiving the record, {@code null} if no record is accepted
+   */
+  default void findRecord(Function<Record, Boolean> filter, boolean includeOutOfService,
+                          Handler<AsyncResult<Record>> resultHandler) {
+    JsonObject query = filter instanceof RecordFilter ? ((RecordFilter) filter).toJson() : null;
+    RecordCursor cursor = cursor(query, includeOutOfService);
+    Handler<AsyncResult<List<Record>>> batchHandler = new Handler<AsyncResult<List<Record>>>() {
+      @Override
+      public void handle(AsyncResult<List<Record>> ar) {
+        if (ar.failed()) {
+          cursor.close();
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+          return;
+        }
+        if (ar.result().isEmpty()) {
+          cursor.close();
+          resultHandler.handle(Future.succeededFuture(null));
+          return;
+        }
+        for (Record record : ar.result()) {
+          if (filter.apply(record)) {
+            cursor.close();
+            resultHandler.handle(Future.succeededFuture(record));
+            return;
+          }
+        }
+        cursor.next(FIND_BATCH_SIZE, this);
+      }
+    };
+    cursor.next(FIND_BATCH_SIZE, batchHandler);
+  }
+
   /**
    * Get the record with the given uuid.
    *
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.spi;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.discovery.Record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link RecordCursor} on a list of records. The list is loaded when the first batch is requested, and then served
+ * batch by batch. It is used for backends that cannot retrieve the records incrementally.
+ * <p>
+ * Once the list is loaded, the batches are delivered asynchronously on the context having created the cursor, so
+ * consumers requesting the next batch from the result handler do not grow the stack.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class ListRecordCursor implements RecordCursor {
+
+  private final Context context;
+  private final Consumer<Handler<AsyncResult<List<Record>>>> loader;
+  private List<Record> records;
+  private int position;
+  private boolean closed;
+
+  /**
+   * Creates a cursor on the given list.
+   *
+   * @param records the records
+   */
+  public ListRecordCursor(List<Record> records) {
+    this.context = Vertx.currentContext();
+    this.loader = null;
+    this.records = records;
+  }
+
+  /**
+   * Creates a cursor on the list retrieved by the given loader.
+   *
+   * @param loader the loader, called with the handler receiving the list of records
+   */
+  public ListRecordCursor(Consumer<Handler<AsyncResult<List<Record>>>> loader) {
+    this.context = Vertx.currentContext();
+    this.loader = loader;
+  }
+
+  @Override
+  public void next(int max, Handler<AsyncResult<List<Record>>> resultHandler) {
+    if (closed || records != null) {
+      List<Record> batch = closed ? new ArrayList<>() : batch(max);
+      if (context != null) {
+        context.runOnContext(v -> resultHandler.handle(Future.succeededFuture(batch)));
+      } else {
+        resultHandler.handle(Future.succeededFuture(batch));
+      }
+      return;
+    }
+    loader.accept(ar -> {
+      if (ar.succeeded()) {
+        records = closed ? new ArrayList<>() : ar.result();
+        resultHandler.handle(Future.succeededFuture(batch(max)));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  private List<Record> batch(int max) {
+    int end = Math.min(records.size(), position + max);
+    List<Record> batch = new ArrayList<>(records.subList(position, end));
+    position = end;
+    return batch;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    records = null;
+  }
+}
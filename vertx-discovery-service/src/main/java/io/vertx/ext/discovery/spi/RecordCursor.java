@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.spi;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.ext.discovery.Record;
+
+import java.util.List;
+
+/**
+ * A cursor on the records matching a lookup, returned by {@link DiscoveryBackend#cursor}. It lets the records be
+ * retrieved batch by batch instead of being loaded all at once.
+ * <p>
+ * Calls to {@link #next(int, Handler)} must not overlap: the next batch must only be requested once the previous one
+ * has been received.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public interface RecordCursor {
+
+  /**
+   * Retrieves the next batch of records.
+   *
+   * @param max           the maximum number of records to return, the batch may be smaller
+   * @param resultHandler the result handler receiving the batch. An empty list means that there are no more records.
+   */
+  void next(int max, Handler<AsyncResult<List<Record>>> resultHandler);
+
+  /**
+   * Releases the resources held by the cursor. Does nothing by default.
+   */
+  default void close() {
+    // Nothing by default
+  }
+}
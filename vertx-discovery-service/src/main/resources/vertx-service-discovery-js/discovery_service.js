@@ -111,18 +111,52 @@ var DiscoveryService = function(j_val) {
   };
 
   /**
-   Publishes a record.
+   Publishes a record with a lease. The record expires unless its lease is renewed (see {@link DiscoveryService#renew})
+   before the given delay: it is then marked as <code>DOWN</code>, or removed (see
+   {@link DiscoveryOptions}), and the change is announced. The lease is tracked by
+   all the nodes, so the records of a crashed node expire, but it is lost if all the nodes are restarted. The leases
+   must be enabled using {@link DiscoveryOptions}, otherwise the publication fails.
 
    @public
    @param record {Object} the record 
-   @param resultHandler {function} handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to modify and un-register the service. 
+   @param lease {number} the lease duration in ms, must be strictly positive 
+   @param resultHandler {function} handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to renew the lease, modify and un-register the service. 
    */
-  this.publish = function(record, resultHandler) {
+  this.publish = function() {
     var __args = arguments;
     if (__args.length === 2 && (typeof __args[0] === 'object' && __args[0] != null) && typeof __args[1] === 'function') {
-      j_discoveryService["publish(io.vertx.ext.discovery.Record,io.vertx.core.Handler)"](record != null ? new Record(new JsonObject(JSON.stringify(record))) : null, function(ar) {
+      j_discoveryService["publish(io.vertx.ext.discovery.Record,io.vertx.core.Handler)"](__args[0] != null ? new Record(new JsonObject(JSON.stringify(__args[0]))) : null, function(ar) {
       if (ar.succeeded()) {
-        resultHandler(utils.convReturnDataObject(ar.result()), null);
+        __args[1](utils.convReturnDataObject(ar.result()), null);
+      } else {
+        __args[1](null, ar.cause());
+      }
+    });
+    }  else if (__args.length === 3 && (typeof __args[0] === 'object' && __args[0] != null) && typeof __args[1] ==='number' && typeof __args[2] === 'function') {
+      j_discoveryService["publish(io.vertx.ext.discovery.Record,long,io.vertx.core.Handler)"](__args[0] != null ? new Record(new JsonObject(JSON.stringify(__args[0]))) : null, __args[1], function(ar) {
+      if (ar.succeeded()) {
+        __args[2](utils.convReturnDataObject(ar.result()), null);
+      } else {
+        __args[2](null, ar.cause());
+      }
+    });
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+   Renews the lease of a record published with {@link DiscoveryService#publish}, for the same duration. This
+   operation does not access the backend.
+
+   @public
+   @param id {string} the registration id 
+   @param resultHandler {function} handler called when the operation has completed. It fails if the record has no lease anymore, because it has expired or has been un-published. 
+   */
+  this.renew = function(id, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'function') {
+      j_discoveryService["renew(java.lang.String,io.vertx.core.Handler)"](id, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(null, null);
       } else {
         resultHandler(null, ar.cause());
       }
@@ -104,15 +104,37 @@ module VertxServiceDiscovery
       end
       raise ArgumentError, "Invalid arguments when calling close()"
     end
-    #  Publishes a record.
-    # @param [Hash] record the record
-    # @yield handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to modify and un-register the service.
+    #  Publishes a record with a lease. The record expires unless its lease is renewed (see {::VertxServiceDiscovery::DiscoveryService#renew})
+    #  before the given delay: it is then marked as <code>DOWN</code>, or removed (see
+    #  ), and the change is announced. The lease is tracked by
+    #  all the nodes, so the records of a crashed node expire, but it is lost if all the nodes are restarted. The leases
+    #  must be enabled using the lease address option, otherwise the publication fails.
+    # @overload publish(record,resultHandler)
+    #   @param [Hash] record the record
+    #   @yield handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to modify and un-register the service.
+    # @overload publish(record,lease,resultHandler)
+    #   @param [Hash] record the record
+    #   @param [Fixnum] lease the lease duration in ms, must be strictly positive
+    #   @yield handler called when the operation has completed (successfully or not). In case of success, the passed record has a registration id required to renew the lease, modify and un-register the service.
     # @return [void]
-    def publish(record=nil)
-      if record.class == Hash && block_given?
-        return @j_del.java_method(:publish, [Java::IoVertxExtDiscovery::Record.java_class,Java::IoVertxCore::Handler.java_class]).call(Java::IoVertxExtDiscovery::Record.new(::Vertx::Util::Utils.to_json_object(record)),(Proc.new { |ar| yield(ar.failed ? ar.cause : nil, ar.succeeded ? ar.result != nil ? JSON.parse(ar.result.toJson.encode) : nil : nil) }))
+    def publish(param_1=nil,param_2=nil)
+      if param_1.class == Hash && block_given? && param_2 == nil
+        return @j_del.java_method(:publish, [Java::IoVertxExtDiscovery::Record.java_class,Java::IoVertxCore::Handler.java_class]).call(Java::IoVertxExtDiscovery::Record.new(::Vertx::Util::Utils.to_json_object(param_1)),(Proc.new { |ar| yield(ar.failed ? ar.cause : nil, ar.succeeded ? ar.result != nil ? JSON.parse(ar.result.toJson.encode) : nil : nil) }))
+      elsif param_1.class == Hash && param_2.class == Fixnum && block_given?
+        return @j_del.java_method(:publish, [Java::IoVertxExtDiscovery::Record.java_class,Java::long.java_class,Java::IoVertxCore::Handler.java_class]).call(Java::IoVertxExtDiscovery::Record.new(::Vertx::Util::Utils.to_json_object(param_1)),param_2,(Proc.new { |ar| yield(ar.failed ? ar.cause : nil, ar.succeeded ? ar.result != nil ? JSON.parse(ar.result.toJson.encode) : nil : nil) }))
+      end
+      raise ArgumentError, "Invalid arguments when calling publish(param_1,param_2)"
+    end
+    #  Renews the lease of a record published with {::VertxServiceDiscovery::DiscoveryService#publish}, for the same duration. This
+    #  operation does not access the backend.
+    # @param [String] id the registration id
+    # @yield handler called when the operation has completed. It fails if the record has no lease anymore, because it has expired or has been un-published.
+    # @return [void]
+    def renew(id=nil)
+      if id.class == String && block_given?
+        return @j_del.java_method(:renew, [Java::java.lang.String.java_class,Java::IoVertxCore::Handler.java_class]).call(id,(Proc.new { |ar| yield(ar.failed ? ar.cause : nil) }))
       end
-      raise ArgumentError, "Invalid arguments when calling publish(record)"
+      raise ArgumentError, "Invalid arguments when calling renew(id)"
     end
     #  Un-publishes a record.
     # @param [String] id the registration id
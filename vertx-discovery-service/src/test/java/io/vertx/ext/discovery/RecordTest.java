@@ -17,6 +17,8 @@
 package io.vertx.ext.discovery;
 
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.discovery.impl.DiscoveryImpl;
 import org.junit.After;
@@ -24,6 +26,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -77,6 +80,10 @@ public class RecordTest {
     assertThat(record.match(new JsonObject().put("registration", "the-registration"))).isTrue();
     assertThat(record.match(new JsonObject().put("registration", "wrong"))).isFalse();
 
+    record.setType("http-endpoint");
+    assertThat(record.match(new JsonObject().put("type", "http-endpoint"))).isTrue();
+    assertThat(record.match(new JsonObject().put("type", "message-source"))).isFalse();
+
     record.getMetadata().put("foo", "bar").put("key", 2);
     assertThat(record.match(new JsonObject().put("foo", "bar"))).isTrue();
     assertThat(record.match(new JsonObject().put("foo", "bar2"))).isFalse();
@@ -86,6 +93,37 @@ public class RecordTest {
     assertThat(record.match(new JsonObject().put("foo", "*").put("key", 2))).isTrue();
   }
 
+  @Test
+  public void testCompiledFilter() {
+    Record record = new Record().setName("Name").setType("http-endpoint").setStatus(Status.UP);
+    record.getMetadata().put("foo", "Bar").put("key", 2);
+
+    RecordFilter filter = RecordFilter.compile(new JsonObject().put("name", "name").put("foo", "bar").put("key", 2));
+    assertThat(filter.test(record)).isTrue();
+    assertThat(filter.apply(record)).isTrue();
+    assertThat(filter.test(new Record().setName("Name"))).isFalse();
+    assertThat(filter.hasStatusConstraint()).isFalse();
+
+    assertThat(RecordFilter.compile(null).test(record)).isTrue();
+    assertThat(RecordFilter.compile(new JsonObject()).test(record)).isTrue();
+
+    filter = RecordFilter.compile(new JsonObject().put("status", "*").put("type", "*").put("foo", "*"));
+    assertThat(filter.hasStatusConstraint()).isTrue();
+    assertThat(filter.test(record)).isTrue();
+    assertThat(filter.test(new Record().setType("http-endpoint"))).isFalse();
+
+    assertThat(RecordFilter.compile(new JsonObject().put("status", "not-a-status")).test(record)).isFalse();
+    assertThat(RecordFilter.compile(new JsonObject().put("name", (String) null)).test(record)).isFalse();
+    assertThat(RecordFilter.compile(new JsonObject().put("key", "2")).test(record)).isFalse();
+
+    // The filter is copied when compiled
+    JsonObject json = new JsonObject().put("name", "Name");
+    filter = RecordFilter.compile(json);
+    json.put("name", "Other");
+    assertThat(filter.test(record)).isTrue();
+    assertThat(filter.toJson().getString("name")).isEqualTo("Name");
+  }
+
   @Test
   public void testMatchWithFilterFunction() {
     Record record1 = new Record().setName("Name");
@@ -288,4 +326,81 @@ public class RecordTest {
     assertThat(matches).hasSize(5);
   }
 
-}
\ No newline at end of file
+
+  @Test
+  public void testMessageCodec() {
+    Record record = new Record()
+        .setName("Hello")
+        .setType("http-endpoint")
+        .setRegistration("1234")
+        .setStatus(Status.OUT_OF_SERVICE)
+        .setLocation(new JsonObject().put(Record.ENDPOINT, "http://acme.org").put("port", 8080).put("ssl", false))
+        .setMetadata(new JsonObject()
+            .put("key", "A")
+            .put("ratio", 0.5)
+            .put("since", 1L)
+            .put("tags", new JsonArray().add("a").add(1).addNull())
+            .put("nested", new JsonObject().put("key", "B").put("port", 9090)));
+
+    RecordMessageCodec codec = new RecordMessageCodec();
+    Buffer buffer = Buffer.buffer("prefix");
+    codec.encodeToWire(buffer, record);
+    Record decoded = codec.decodeFromWire("prefix".length(), buffer);
+    assertThat(decoded.toJson()).isEqualTo(record.toJson());
+
+    // Local deliveries do not copy the record
+    assertThat(codec.transform(record)).isSameAs(record);
+  }
+
+  @Test
+  public void testFreeze() {
+    Record record = new Record().setName("Hello")
+        .setMetadata(new JsonObject().put("key", "A"))
+        .setLocation(new JsonObject().put(Record.ENDPOINT, "address"));
+    Record frozen = record.freeze();
+    assertThat(frozen.isFrozen()).isTrue();
+    assertThat(record.isFrozen()).isFalse();
+    assertThat(frozen.freeze()).isSameAs(frozen);
+    assertThat(frozen.toJson()).isEqualTo(record.toJson());
+
+    // The encoded form is computed once
+    assertThat(frozen.encode()).isEqualTo(record.encode());
+    assertThat(frozen.encode()).isSameAs(frozen.encode());
+
+    // The frozen record does not share the location and metadata of the original record
+    record.getMetadata().put("key", "B");
+    assertThat(frozen.getMetadata().getString("key")).isEqualTo("A");
+
+    try {
+      frozen.setStatus(Status.DOWN);
+      fail("Frozen records cannot be modified");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    // Nor can its location and metadata, so the cached encoded forms stay accurate
+    Record nested = new Record().setMetadata(new JsonObject().put("tags", new JsonArray().add("a"))
+        .put("sub", new JsonObject().put("key", "A"))).freeze();
+    for (Runnable modification : Arrays.<Runnable>asList(
+        () -> frozen.getMetadata().put("key", "B"),
+        () -> frozen.getLocation().remove(Record.ENDPOINT),
+        () -> nested.getMetadata().getJsonArray("tags").add("b"),
+        () -> nested.getMetadata().getJsonObject("sub").put("key", "B"))) {
+      try {
+        modification.run();
+        fail("The location and metadata of frozen records cannot be modified");
+      } catch (UnsupportedOperationException e) {
+        // Expected
+      }
+    }
+    assertThat(frozen.encode()).contains("\"key\":\"A\"");
+    // The JSON representation is a copy
+    frozen.toJson().getJsonObject("metadata").put("key", "B");
+    assertThat(frozen.getMetadata().getString("key")).isEqualTo("A");
+
+    Record copy = new Record(frozen);
+    assertThat(copy.isFrozen()).isFalse();
+    copy.setStatus(Status.DOWN).getMetadata().put("key", "C");
+    assertThat(frozen.getMetadata().getString("key")).isEqualTo("A");
+  }
+}
@@ -16,6 +16,7 @@
 
 package io.vertx.ext.discovery.impl;
 
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -126,4 +127,52 @@ public class AsyncMapTest {
     });
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testOperationsCompleteAsynchronously(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(x -> {
+      Context caller = vertx.getOrCreateContext();
+      AtomicBoolean returned = new AtomicBoolean();
+      map.put("key", "value", v -> {
+        // The handler is called after the method has returned, on the caller context
+        context.assertTrue(returned.get());
+        context.assertEquals(caller, Vertx.currentContext());
+        AtomicBoolean returned2 = new AtomicBoolean();
+        map.get("key", value -> {
+          context.assertTrue(returned2.get());
+          context.assertEquals(value.result(), "value");
+          async.complete();
+        });
+        returned2.set(true);
+      });
+      returned.set(true);
+    });
+  }
+
+  @Test
+  public void testGetAllReturnsACopy(TestContext context) {
+    Async async = context.async();
+    map.put("k1", "v1", v ->
+        map.getAll(all -> {
+          context.assertTrue(all.succeeded());
+          map.put("k2", "v2", v2 -> {
+            context.assertEquals(all.result().size(), 1);
+            context.assertEquals(all.result().get("k1"), "v1");
+            async.complete();
+          });
+        }));
+  }
+
+  @Test
+  public void testMapsWithTheSameNameShareTheirEntries(TestContext context) {
+    Async async = context.async();
+    AsyncMap<String, String> other = new AsyncMap<>(vertx, "some-name");
+    map.put("shared", "value", v ->
+        other.getAll(all -> {
+          context.assertTrue(all.succeeded());
+          context.assertEquals(all.result().get("shared"), "value");
+          async.complete();
+        }));
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.DiscoveryOptions;
+import io.vertx.ext.discovery.DiscoveryService;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+/**
+ * Runs the backend tests on the {@link CachingDiscoveryBackend}, and checks the caching.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class CachingDiscoveryBackendTest extends DefaultDiscoveryBackendTest {
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    backend = create(new JsonObject());
+  }
+
+  private CachingDiscoveryBackend create(JsonObject caching) {
+    CachingDiscoveryBackend backend = new CachingDiscoveryBackend(new DefaultDiscoveryBackend());
+    backend.init(vertx, new JsonObject().put("caching", caching));
+    return backend;
+  }
+
+  private static Record store(DiscoveryBackend backend, String name) {
+    AtomicReference<Record> stored = new AtomicReference<>();
+    backend.store(new Record().setName(name).setStatus(Status.UP), ar -> stored.set(ar.result()));
+    await().untilAtomic(stored, not(nullValue()));
+    return stored.get();
+  }
+
+  private static Record get(DiscoveryBackend backend, String uuid) {
+    AtomicBoolean completed = new AtomicBoolean();
+    AtomicReference<Record> record = new AtomicReference<>();
+    backend.getRecord(uuid, ar -> {
+      record.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    return record.get();
+  }
+
+  private static List<Record> getAll(DiscoveryBackend backend) {
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    backend.getRecords(ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    return records.get();
+  }
+
+  @Test
+  public void testRecordCache() {
+    CachingDiscoveryBackend cache = create(new JsonObject().put("ttl", 500));
+    Record record = store(cache, "my-service");
+
+    // Written through
+    assertThat(get(cache, record.getRegistration()).getName()).isEqualTo("my-service");
+    assertThat(cache.statistics().getLong("record-hits")).isEqualTo(1);
+    assertThat(cache.statistics().getLong("record-misses")).isEqualTo(0);
+
+    // The returned records are copies
+    get(cache, record.getRegistration()).setName("changed");
+    assertThat(get(cache, record.getRegistration()).getName()).isEqualTo("my-service");
+
+    // A modification made by another backend is seen once the entry has expired
+    DefaultDiscoveryBackend other = new DefaultDiscoveryBackend();
+    other.init(vertx, new JsonObject());
+    AtomicBoolean completed = new AtomicBoolean();
+    other.update(new Record(record).setName("updated"), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    assertThat(get(cache, record.getRegistration()).getName()).isEqualTo("my-service");
+    await().until(() -> "updated".equals(get(cache, record.getRegistration()).getName()));
+    assertThat(cache.statistics().getLong("record-misses")).isGreaterThan(0);
+
+    // Removals evict the record
+    completed.set(false);
+    cache.remove(record.getRegistration(), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    assertThat(get(cache, record.getRegistration())).isNull();
+  }
+
+  @Test
+  public void testEviction() {
+    CachingDiscoveryBackend cache = create(new JsonObject().put("max-size", 2));
+    Record first = store(cache, "my-service-1");
+    store(cache, "my-service-2");
+    store(cache, "my-service-3");
+    assertThat(cache.statistics().getLong("evictions")).isEqualTo(1);
+    assertThat(cache.statistics().getInteger("size")).isEqualTo(2);
+
+    assertThat(get(cache, first.getRegistration()).getName()).isEqualTo("my-service-1");
+    assertThat(cache.statistics().getLong("record-misses")).isEqualTo(1);
+  }
+
+  @Test
+  public void testSnapshot() {
+    CachingDiscoveryBackend cache = create(new JsonObject());
+    store(cache, "my-service-1");
+    assertThat(getAll(cache)).hasSize(1);
+    assertThat(getAll(cache)).hasSize(1);
+    assertThat(cache.statistics().getLong("snapshot-misses")).isEqualTo(1);
+    assertThat(cache.statistics().getLong("snapshot-hits")).isEqualTo(1);
+
+    // Invalidated by the modifications
+    store(cache, "my-service-2");
+    assertThat(getAll(cache)).hasSize(2);
+    assertThat(cache.statistics().getLong("snapshot-misses")).isEqualTo(2);
+
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    cache.getRecords(new JsonObject().put("name", "my-service-2"), false, ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    assertThat(records.get()).hasSize(1);
+    assertThat(cache.statistics().getLong("snapshot-hits")).isEqualTo(2);
+  }
+
+  @Test
+  public void testReadersArrivingAfterAWriteDoNotJoinAnOlderLoad() {
+    AtomicReference<Runnable> delayed = new AtomicReference<>();
+    AtomicBoolean first = new AtomicBoolean(true);
+    CachingDiscoveryBackend cache = new CachingDiscoveryBackend(new DefaultDiscoveryBackend() {
+      @Override
+      public void getRecords(Handler<AsyncResult<List<Record>>> resultHandler) {
+        super.getRecords(ar -> {
+          if (first.getAndSet(false)) {
+            // The first load completes once released by the test
+            delayed.set(() -> resultHandler.handle(ar));
+          } else {
+            resultHandler.handle(ar);
+          }
+        });
+      }
+    });
+    cache.init(vertx, new JsonObject());
+    store(cache, "my-service-1");
+
+    AtomicReference<List<Record>> before = new AtomicReference<>();
+    cache.getRecords(ar -> before.set(ar.result()));
+    await().untilAtomic(delayed, not(nullValue()));
+    store(cache, "my-service-2");
+    AtomicReference<List<Record>> after = new AtomicReference<>();
+    cache.getRecords(ar -> after.set(ar.result()));
+
+    delayed.get().run();
+    await().untilAtomic(before, not(nullValue()));
+    await().untilAtomic(after, not(nullValue()));
+    assertThat(before.get()).hasSize(1);
+    // Arrived after the write, so the snapshot has been loaded again
+    assertThat(after.get()).hasSize(2);
+  }
+
+  @Test
+  public void testWrappedByTheDiscoveryService() {
+    DiscoveryService discovery = new DiscoveryImpl(vertx, new DiscoveryOptions().setBackendConfiguration(
+        new JsonObject().put("caching", new JsonObject().put("statistics-address", "discovery-cache"))));
+    AtomicReference<Record> published = new AtomicReference<>();
+    discovery.publish(new Record().setName("my-service"), ar -> published.set(ar.result()));
+    await().untilAtomic(published, not(nullValue()));
+
+    AtomicReference<Record> found = new AtomicReference<>();
+    discovery.getRecord(new JsonObject().put("name", "my-service"), ar -> found.set(ar.result()));
+    await().untilAtomic(found, not(nullValue()));
+
+    AtomicReference<JsonObject> statistics = new AtomicReference<>();
+    vertx.eventBus().<JsonObject>send("discovery-cache", "", reply -> statistics.set(reply.result().body()));
+    await().untilAtomic(statistics, not(nullValue()));
+    assertThat(statistics.get().getLong("snapshot-misses")).isEqualTo(1);
+    discovery.close();
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the backend tests with the binary storage codec.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class DefaultDiscoveryBackendBinaryTest extends DefaultDiscoveryBackendTest {
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    backend = new DefaultDiscoveryBackend();
+    backend.init(vertx, new JsonObject().put("storage-codec", "binary"));
+  }
+
+  @Test
+  public void testCodecsDecodeTheValuesOfEachOther() {
+    Record record = new Record().setName("Hello").setRegistration("1").setStatus(Status.UP)
+        .setMetadata(new JsonObject().put("key", "A"));
+
+    byte[] binary = BinaryRecordStorageCodec.INSTANCE.encode(record);
+    String json = JsonRecordStorageCodec.INSTANCE.encode(record);
+    assertThat(binary.length).isLessThan(json.length());
+
+    assertThat(BinaryRecordStorageCodec.INSTANCE.decode(json).toJson()).isEqualTo(record.toJson());
+    assertThat(JsonRecordStorageCodec.INSTANCE.decode(binary).toJson()).isEqualTo(record.toJson());
+    assertThat(RecordStorageCodec.forName(null)).isSameAs(JsonRecordStorageCodec.INSTANCE);
+    assertThat(RecordStorageCodec.forName(JsonRecordStorageCodec.class.getName()))
+        .isInstanceOf(JsonRecordStorageCodec.class);
+  }
+}
@@ -17,9 +17,12 @@
 package io.vertx.ext.discovery.impl;
 
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.RecordFilter;
 import io.vertx.ext.discovery.Status;
+import io.vertx.ext.discovery.spi.DiscoveryBackend;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +31,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static com.jayway.awaitility.Awaitility.await;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -41,7 +45,7 @@ import static org.hamcrest.core.IsNot.not;
 public class DefaultDiscoveryBackendTest {
 
 
-  protected DefaultDiscoveryBackend backend;
+  protected DiscoveryBackend backend;
   protected Vertx vertx;
 
   @Before
@@ -53,6 +57,7 @@ public class DefaultDiscoveryBackendTest {
 
   @After
   public void tearDown() {
+    backend.close();
     AtomicBoolean completed = new AtomicBoolean();
     vertx.close(ar -> completed.set(ar.succeeded()));
     await().untilAtomic(completed, is(true));
@@ -145,4 +150,88 @@ public class DefaultDiscoveryBackendTest {
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testFilteredLookup() {
+    backend.init(vertx, new JsonObject().put("indexed-metadata", new JsonArray().add("zone")));
+
+    Record record1 = new Record().setName("service-a").setType("http-endpoint").setStatus(Status.UP)
+        .setMetadata(new JsonObject().put("zone", "eu"));
+    Record record2 = new Record().setName("service-a").setType("eventbus-service-proxy").setStatus(Status.UP)
+        .setMetadata(new JsonObject().put("zone", "us"));
+    Record record3 = new Record().setName("service-b").setType("http-endpoint").setStatus(Status.OUT_OF_SERVICE)
+        .setMetadata(new JsonObject().put("zone", "eu"));
+
+    AtomicBoolean completed = new AtomicBoolean();
+    backend.store(record1, ar -> backend.store(record2, ar2 -> backend.store(record3, ar3 ->
+        completed.set(ar3.succeeded()))));
+    await().untilAtomic(completed, is(true));
+
+    assertThat(lookup(new JsonObject().put("name", "SERVICE-A"), false)).hasSize(2);
+    assertThat(lookup(new JsonObject().put("name", "service-a").put("zone", "eu"), false))
+        .extracting(Record::getRegistration).containsExactly(record1.getRegistration());
+    assertThat(lookup(new JsonObject().put("type", "http-endpoint"), false))
+        .extracting(Record::getRegistration).containsExactly(record1.getRegistration());
+    assertThat(lookup(new JsonObject().put("type", "http-endpoint"), true)).hasSize(2);
+    assertThat(lookup(new JsonObject().put("zone", "eu").put("status", "out_of_service"), false)).isEmpty();
+    assertThat(lookup(new JsonObject().put("zone", "eu").put("status", "out_of_service"), true))
+        .extracting(Record::getRegistration).containsExactly(record3.getRegistration());
+    assertThat(lookup(new JsonObject().put("registration", record2.getRegistration()), false))
+        .extracting(Record::getName).containsExactly("service-a");
+    assertThat(lookup(new JsonObject().put("zone", "*"), true)).hasSize(3);
+    assertThat(lookup(new JsonObject().put("name", "missing"), true)).isEmpty();
+    assertThat(lookup(new JsonObject().put("registration", 42), true)).isEmpty();
+    assertThat(lookup(null, false)).hasSize(2);
+
+    // Update and removal must be reflected in the lookups
+    completed.set(false);
+    backend.update(record1.setMetadata(new JsonObject().put("zone", "us")), ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    assertThat(lookup(new JsonObject().put("zone", "us"), false)).hasSize(2);
+    assertThat(lookup(new JsonObject().put("zone", "eu"), false)).isEmpty();
+
+    completed.set(false);
+    backend.remove(record2, ar -> completed.set(ar.succeeded()));
+    await().untilAtomic(completed, is(true));
+    assertThat(lookup(new JsonObject().put("zone", "us"), false))
+        .extracting(Record::getRegistration).containsExactly(record1.getRegistration());
+  }
+
+  @Test
+  public void testFindRecord() {
+    Record record1 = new Record().setName("service-a").setStatus(Status.OUT_OF_SERVICE);
+    Record record2 = new Record().setName("service-a").setStatus(Status.UP)
+        .setMetadata(new JsonObject().put("zone", "eu"));
+
+    AtomicBoolean completed = new AtomicBoolean();
+    backend.store(record1, ar -> backend.store(record2, ar2 -> completed.set(ar2.succeeded())));
+    await().untilAtomic(completed, is(true));
+
+    assertThat(find(r -> "service-a".equals(r.getName()), false).getRegistration())
+        .isEqualTo(record2.getRegistration());
+    assertThat(find(r -> r.getStatus() == Status.OUT_OF_SERVICE, true).getRegistration())
+        .isEqualTo(record1.getRegistration());
+    assertThat(find(r -> r.getStatus() == Status.OUT_OF_SERVICE, false)).isNull();
+    assertThat(find(RecordFilter.compile(new JsonObject().put("zone", "eu")), false).getRegistration())
+        .isEqualTo(record2.getRegistration());
+    assertThat(find(RecordFilter.compile(new JsonObject().put("name", "missing")), true)).isNull();
+  }
+
+  private Record find(Function<Record, Boolean> filter, boolean includeOutOfService) {
+    AtomicReference<Record> result = new AtomicReference<>();
+    AtomicBoolean completed = new AtomicBoolean();
+    backend.findRecord(filter, includeOutOfService, ar -> {
+      result.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    return result.get();
+  }
+
+  private List<Record> lookup(JsonObject filter, boolean includeOutOfService) {
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    backend.getRecords(filter, includeOutOfService, ar -> result.set(ar.result()));
+    await().untilAtomic(result, not(nullValue()));
+    return result.get();
+  }
+
+}
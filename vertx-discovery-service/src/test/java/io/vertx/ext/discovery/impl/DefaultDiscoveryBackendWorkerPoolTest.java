@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Runs the backend tests in clustered mode, using a dedicated worker pool and unordered executions.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class DefaultDiscoveryBackendWorkerPoolTest extends DefaultDiscoveryBackendTest {
+
+  @Before
+  public void setUp() {
+    Vertx.clusteredVertx(new VertxOptions().setClusterHost("127.0.0.1"), ar -> {
+      vertx = ar.result();
+    });
+    await().until(() -> vertx != null);
+    backend = new DefaultDiscoveryBackend();
+    backend.init(vertx, new JsonObject().put("worker-pool-size", 4).put("ordered", false));
+  }
+
+  @Test
+  public void testWritesStayOrdered() {
+    AtomicInteger removed = new AtomicInteger();
+    for (int i = 0; i < 50; i++) {
+      Record record = new Record().setName("ordered-" + i);
+      backend.store(record, ar -> {
+      });
+      // Issued before the store completes, must not overtake it
+      backend.remove(record.getRegistration(), ar -> removed.incrementAndGet());
+    }
+    await().untilAtomic(removed, is(50));
+
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    backend.getRecords(ar -> records.set(ar.result()));
+    await().untilAtomic(records, notNullValue());
+    assertThat(records.get()).isEmpty();
+  }
+}
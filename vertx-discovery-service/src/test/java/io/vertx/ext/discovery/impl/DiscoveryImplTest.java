@@ -18,7 +18,9 @@ package io.vertx.ext.discovery.impl;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.discovery.*;
 import io.vertx.ext.discovery.spi.DiscoveryBridge;
 import io.vertx.ext.discovery.types.EventBusService;
@@ -31,8 +33,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.jayway.awaitility.Awaitility.await;
@@ -165,6 +170,186 @@ public class DiscoveryImplTest {
     assertThat(found.get()).isNull();
   }
 
+  @Test
+  public void testRecordStream() {
+    AtomicInteger published = new AtomicInteger();
+    for (int i = 0; i < 250; i++) {
+      discovery.publish(new Record().setName("record-" + i)
+          .setMetadata(new JsonObject().put("key", i % 2 == 0 ? "even" : "odd")), ar -> published.incrementAndGet());
+    }
+    await().untilAtomic(published, is(250));
+
+    List<Record> streamed = new ArrayList<>();
+    AtomicBoolean ended = new AtomicBoolean();
+    ReadStream<Record> stream = discovery.recordStream(new JsonObject().put("key", "even"));
+    stream.endHandler(v -> ended.set(true));
+    stream.handler(record -> {
+      streamed.add(record);
+      if (streamed.size() == 10) {
+        // Pause the stream and resume it later
+        stream.pause();
+        vertx.setTimer(100, l -> stream.resume());
+      }
+    });
+    await().untilAtomic(ended, is(true));
+    assertThat(streamed).hasSize(125);
+    assertThat(streamed.stream().map(Record::getRegistration).distinct().count()).isEqualTo(125);
+    for (Record record : streamed) {
+      assertThat(record.getMetadata().getString("key")).isEqualTo("even");
+    }
+
+    streamed.clear();
+    ended.set(false);
+    discovery.recordStream(new JsonObject().put("key", "none"))
+        .endHandler(v -> ended.set(true))
+        .handler(streamed::add);
+    await().untilAtomic(ended, is(true));
+    assertThat(streamed).isEmpty();
+  }
+
+  @Test
+  public void testWatch() {
+    Record record1 = new Record().setName("watched").setMetadata(new JsonObject().put("zone", "eu"));
+    Record record2 = new Record().setName("other");
+    AtomicInteger published = new AtomicInteger();
+    discovery.publish(record1, ar -> published.incrementAndGet());
+    discovery.publish(record2, ar -> published.incrementAndGet());
+    await().untilAtomic(published, is(2));
+
+    List<RecordEvent> events = new CopyOnWriteArrayList<>();
+    RecordWatch watch = discovery.watch(new JsonObject().put("name", "watched"), events::add);
+
+    // Initial snapshot
+    await().until(() -> events.size() == 1);
+    assertThat(events.get(0).type()).isEqualTo(RecordEvent.Type.ADDED);
+    assertThat(events.get(0).record().getRegistration()).isEqualTo(record1.getRegistration());
+
+    // A new matching record
+    Record record3 = new Record().setName("watched");
+    discovery.publish(record3, ar -> published.incrementAndGet());
+    await().until(() -> events.size() == 2);
+    assertThat(events.get(1).type()).isEqualTo(RecordEvent.Type.ADDED);
+    assertThat(events.get(1).record().getRegistration()).isEqualTo(record3.getRegistration());
+
+    // Modification of a matching record
+    discovery.update(record1.setMetadata(new JsonObject().put("zone", "us")), ar -> {
+    });
+    await().until(() -> events.size() == 3);
+    assertThat(events.get(2).type()).isEqualTo(RecordEvent.Type.MODIFIED);
+    assertThat(events.get(2).record().getMetadata().getString("zone")).isEqualTo("us");
+
+    // The record leaves the set of matching records
+    discovery.update(record1.setStatus(Status.OUT_OF_SERVICE), ar -> {
+    });
+    await().until(() -> events.size() == 4);
+    assertThat(events.get(3).type()).isEqualTo(RecordEvent.Type.REMOVED);
+    assertThat(events.get(3).record().getRegistration()).isEqualTo(record1.getRegistration());
+
+    // Withdrawal
+    discovery.unpublish(record3.getRegistration(), ar -> {
+    });
+    await().until(() -> events.size() == 5);
+    assertThat(events.get(4).type()).isEqualTo(RecordEvent.Type.REMOVED);
+    assertThat(events.get(4).record().getRegistration()).isEqualTo(record3.getRegistration());
+
+    // Non matching records do not produce events, closed watches do not receive events anymore
+    AtomicBoolean done = new AtomicBoolean();
+    discovery.update(record2.setMetadata(new JsonObject().put("zone", "eu")), ar -> done.set(true));
+    await().untilAtomic(done, is(true));
+    watch.close();
+    done.set(false);
+    discovery.publish(new Record().setName("watched"), ar -> done.set(true));
+    await().untilAtomic(done, is(true));
+    assertThat(events).hasSize(5);
+  }
+
+  @Test
+  public void testBatchOperations() {
+    List<Object> announces = new CopyOnWriteArrayList<>();
+    vertx.eventBus().consumer(DiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS, msg -> announces.add(msg.body()));
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      records.add(new Record().setName("batch-" + i));
+    }
+    AtomicReference<List<Record>> result = new AtomicReference<>();
+    discovery.publishAll(records, ar -> result.set(ar.result()));
+    await().until(() -> result.get() != null);
+    assertThat(result.get()).hasSize(5);
+    for (Record record : records) {
+      assertThat(record.getRegistration()).isNotNull();
+      assertThat(record.getStatus()).isEqualTo(Status.UP);
+    }
+
+    // An announcement per record
+    await().until(() -> announces.size() == 5);
+    for (Object announce : announces) {
+      assertThat(announce).isInstanceOf(JsonObject.class);
+    }
+
+    result.set(null);
+    records.forEach(record -> record.getMetadata().put("updated", true));
+    discovery.updateAll(records, ar -> result.set(ar.result()));
+    await().until(() -> result.get() != null);
+    await().until(() -> announces.size() == 10);
+    AtomicReference<List<Record>> found = new AtomicReference<>();
+    discovery.getRecords(new JsonObject().put("updated", true), ar -> found.set(ar.result()));
+    await().until(() -> found.get() != null);
+    assertThat(found.get()).hasSize(5);
+
+    // Unknown ids are ignored
+    List<String> ids = new ArrayList<>();
+    records.forEach(record -> ids.add(record.getRegistration()));
+    ids.add("unknown");
+    AtomicBoolean done = new AtomicBoolean();
+    discovery.unpublishAll(ids, ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+    await().until(() -> announces.size() == 15);
+    for (Object json : announces.subList(10, 15)) {
+      assertThat(new Record((JsonObject) json).getStatus()).isEqualTo(Status.DOWN);
+    }
+
+    found.set(null);
+    discovery.getRecords((JsonObject) null, ar -> found.set(ar.result()));
+    await().until(() -> found.get() != null);
+    assertThat(found.get()).isEmpty();
+  }
+
+  @Test
+  public void testBatchAnnouncements() {
+    DiscoveryService batching = new DiscoveryImpl(vertx,
+        new DiscoveryOptions().setBatchAnnounceAddress("vertx.discovery.batches"));
+    List<Object> announces = new CopyOnWriteArrayList<>();
+    List<JsonArray> batches = new CopyOnWriteArrayList<>();
+    vertx.eventBus().consumer(DiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS, msg -> announces.add(msg.body()));
+    vertx.eventBus().<JsonArray>consumer("vertx.discovery.batches", msg -> batches.add(msg.body()));
+    List<RecordEvent> events = new CopyOnWriteArrayList<>();
+    RecordWatch watch = batching.watch(new JsonObject().put("name", "batch"), events::add);
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      records.add(new Record().setName("batch"));
+    }
+    AtomicBoolean done = new AtomicBoolean();
+    batching.publishAll(records, ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+
+    // A single announcement for the batch, received by the watches
+    await().until(() -> batches.size() == 1);
+    assertThat(batches.get(0).size()).isEqualTo(5);
+    await().until(() -> events.stream().map(event -> event.record().getRegistration()).distinct().count() == 5);
+    assertThat(announces).isEmpty();
+
+    // Single modifications are still announced on the announce address
+    done.set(false);
+    batching.unpublish(records.get(0).getRegistration(), ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+    await().until(() -> announces.size() == 1);
+    assertThat(batches).hasSize(1);
+    watch.close();
+    batching.close();
+  }
+
   @Test
   public void testAnnounce() {
     List<Record> announces = new ArrayList<>();
@@ -202,6 +387,39 @@ public class DiscoveryImplTest {
     assertThat(announces.get(2).getStatus()).isEqualTo(Status.DOWN);
   }
 
+  @Test
+  public void testAnnounceWithRecordCodec() {
+    DiscoveryService binary = new DiscoveryImpl(vertx, new DiscoveryOptions().setRecordCodec(true));
+    List<Object> announces = new CopyOnWriteArrayList<>();
+    vertx.eventBus().consumer(DiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS, msg -> announces.add(msg.body()));
+    List<Record> announced = new CopyOnWriteArrayList<>();
+    binary.watch(new JsonObject().put("name", "*"), event -> announced.add(event.record()));
+
+    Record record = new Record()
+        .setName("Hello")
+        .setMetadata(new JsonObject().put("key", "A"))
+        .setLocation(new JsonObject().put(Record.ENDPOINT, "address"));
+    binary.publish(record, r -> {
+    });
+    await().until(() -> announces.size() == 1);
+    assertThat(announces.get(0)).isInstanceOf(Record.class);
+    assertThat(((Record) announces.get(0)).getName()).isEqualTo("Hello");
+    assertThat(((Record) announces.get(0)).getMetadata().getString("key")).isEqualTo("A");
+    assertThat(((Record) announces.get(0)).getStatus()).isEqualTo(Status.UP);
+    // The announced record is a frozen snapshot, not the published instance
+    assertThat(announces.get(0)).isNotSameAs(record);
+    assertThat(((Record) announces.get(0)).isFrozen()).isTrue();
+
+    binary.publishAll(Arrays.asList(new Record().setName("a"), new Record().setName("b")), ar -> {
+    });
+    await().until(() -> announces.size() == 3);
+    assertThat(announces.get(1)).isInstanceOf(Record.class);
+    assertThat(announces.get(2)).isInstanceOf(Record.class);
+    await().until(() -> announced.size() == 3);
+
+    binary.close();
+  }
+
   @Test
   public void testServiceUsage() throws InterruptedException {
     List<JsonObject> usages = new ArrayList<>();
@@ -298,6 +516,154 @@ public class DiscoveryImplTest {
     await().untilAtomic(closed, is(true));
   }
 
+  @Test
+  public void testNearCache() {
+    DiscoveryService cached = new DiscoveryImpl(vertx, new DiscoveryOptions().setNearCache(true));
+
+    Record record = new Record()
+        .setName("Hello")
+        .setMetadata(new JsonObject().put("key", "A"))
+        .setLocation(new JsonObject().put(Record.ENDPOINT, "address"));
+
+    // Published by another discovery service, so the cache is updated by the announce
+    discovery.publish(record, (r) -> {
+    });
+    await().until(() -> record.getRegistration() != null);
+
+    AtomicReference<Record> found = new AtomicReference<>();
+    await().until(() -> {
+      cached.getRecord(new JsonObject().put("key", "A"), ar -> found.set(ar.result()));
+      return found.get() != null;
+    });
+    assertThat(found.get().getRegistration()).isEqualTo(record.getRegistration());
+    assertThat(found.get().getLocation().getString(Record.ENDPOINT)).isEqualTo("address");
+
+    // Modifying the returned record must not modify the cache
+    found.get().getMetadata().put("key", "B");
+    List<Record> list = new ArrayList<>();
+    cached.getRecords(new JsonObject().put("key", "A"), ar -> list.addAll(ar.result()));
+    assertThat(list).hasSize(1);
+
+    // Withdrawn by the cached discovery service, immediately visible
+    AtomicBoolean done = new AtomicBoolean();
+    cached.unpublish(record.getRegistration(), ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+    list.clear();
+    cached.getRecords(r -> true, ar -> list.addAll(ar.result()));
+    assertThat(list).isEmpty();
+
+    cached.close();
+  }
+
+  @Test
+  public void testLeases() throws InterruptedException {
+    DiscoveryOptions options = new DiscoveryOptions().setLeaseAddress("vertx.discovery.leases").setLeaseResolution(50);
+    DiscoveryService publisher = new DiscoveryImpl(vertx, options);
+    DiscoveryService observer = new DiscoveryImpl(vertx, options);
+    DiscoveryService other = new DiscoveryImpl(vertx, options);
+    List<Record> withdrawn = new CopyOnWriteArrayList<>();
+    vertx.eventBus().consumer(DiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS, msg -> {
+      Record announced = DiscoveryImpl.announced(msg.body());
+      if (announced.getStatus() == Status.DOWN) {
+        withdrawn.add(announced);
+      }
+    });
+
+    Record record = new Record().setName("leased");
+    AtomicBoolean done = new AtomicBoolean();
+    publisher.publish(record, 300, ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+
+    // Kept while renewed
+    for (int i = 0; i < 6; i++) {
+      Thread.sleep(100);
+      done.set(false);
+      publisher.renew(record.getRegistration(), ar -> done.set(ar.succeeded()));
+      assertThat(done.get()).isTrue();
+    }
+    assertThat(withdrawn).isEmpty();
+
+    // The publisher stops renewing the lease, one of the other nodes takes it over, and marks the record as DOWN
+    publisher.close();
+    await().until(() -> withdrawn.size() > 0);
+    Thread.sleep(500);
+    assertThat(withdrawn).hasSize(1);
+    assertThat(withdrawn.get(0).getRegistration()).isEqualTo(record.getRegistration());
+    AtomicReference<Record> found = new AtomicReference<>();
+    discovery.getRecord(new JsonObject().put("name", "leased").put("status", "down"), ar -> found.set(ar.result()));
+    await().until(() -> found.get() != null);
+    assertThat(found.get().getStatus()).isEqualTo(Status.DOWN);
+
+    AtomicBoolean failed = new AtomicBoolean();
+    observer.renew(record.getRegistration(), ar -> failed.set(ar.failed()));
+    assertThat(failed.get()).isTrue();
+    failed.set(false);
+    other.renew(record.getRegistration(), ar -> failed.set(ar.failed()));
+    assertThat(failed.get()).isTrue();
+    observer.close();
+    other.close();
+  }
+
+  @Test
+  public void testLeasesAreDisabledByDefault() {
+    AtomicBoolean failed = new AtomicBoolean();
+    discovery.publish(new Record().setName("leased"), 100, ar -> failed.set(ar.failed()));
+    assertThat(failed.get()).isTrue();
+  }
+
+  @Test
+  public void testUpdateOfUnpublishedRecord() {
+    Record record = new Record().setName("unpublished");
+    AtomicBoolean done = new AtomicBoolean();
+    discovery.publish(record, ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+    done.set(false);
+    discovery.unpublish(record.getRegistration(), ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+
+    // The update does not register the record again
+    AtomicBoolean failed = new AtomicBoolean();
+    discovery.update(record.setStatus(Status.DOWN), ar -> failed.set(ar.failed()));
+    await().untilAtomic(failed, is(true));
+    List<Record> list = new ArrayList<>();
+    done.set(false);
+    discovery.getRecords(r -> "unpublished".equals(r.getName()), true, ar -> {
+      list.addAll(ar.result());
+      done.set(ar.succeeded());
+    });
+    await().untilAtomic(done, is(true));
+    assertThat(list).isEmpty();
+  }
+
+  @Test
+  public void testExpiredRecordRemoval() {
+    DiscoveryService leased = new DiscoveryImpl(vertx,
+        new DiscoveryOptions().setLeaseAddress("vertx.discovery.leases").setLeaseResolution(50)
+            .setRemoveExpiredRecords(true));
+    AtomicBoolean withdrawn = new AtomicBoolean();
+    vertx.eventBus().consumer(DiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS, msg -> {
+      if (DiscoveryImpl.announced(msg.body()).getStatus() == Status.DOWN) {
+        withdrawn.set(true);
+      }
+    });
+
+    Record record = new Record().setName("leased");
+    AtomicBoolean done = new AtomicBoolean();
+    leased.publish(record, 100, ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+    await().untilAtomic(withdrawn, is(true));
+
+    List<Record> list = new ArrayList<>();
+    done.set(false);
+    leased.getRecords(r -> true, true, ar -> {
+      list.addAll(ar.result());
+      done.set(ar.succeeded());
+    });
+    await().untilAtomic(done, is(true));
+    assertThat(list).isEmpty();
+    leased.close();
+  }
+
   @Test
   public void testName() {
     DiscoveryOptions options = new DiscoveryOptions().setName("my-name");
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+/**
+ * Runs the backend tests on the {@link FileDiscoveryBackend}, and checks the records survive restarts.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class FileDiscoveryBackendTest extends DefaultDiscoveryBackendTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    try {
+      directory = Files.createTempDirectory("vertx-discovery").toFile();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    vertx = Vertx.vertx();
+    backend = create(new JsonObject());
+  }
+
+  @After
+  @Override
+  public void tearDown() {
+    super.tearDown();
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (!file.delete()) {
+      throw new IllegalStateException("Cannot delete " + file);
+    }
+  }
+
+  private FileDiscoveryBackend create(JsonObject config) {
+    FileDiscoveryBackend backend = new FileDiscoveryBackend();
+    backend.init(vertx, config.put("path", directory.getAbsolutePath()));
+    return backend;
+  }
+
+  private void restart(JsonObject config) {
+    backend.close();
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(ar.succeeded()));
+    await().untilAtomic(closed, is(true));
+    vertx = Vertx.vertx();
+    backend = create(config);
+  }
+
+  private List<Record> storeAll(int count) {
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      records.add(new Record().setName("record-" + i).setStatus(Status.UP)
+          .setMetadata(new JsonObject().put("index", i)));
+    }
+    AtomicReference<List<Record>> stored = new AtomicReference<>();
+    backend.storeAll(records, ar -> stored.set(ar.result()));
+    await().untilAtomic(stored, not(nullValue()));
+    return stored.get();
+  }
+
+  private List<Record> records() {
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    backend.getRecords(ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    return records.get();
+  }
+
+  @Test
+  public void testRestart() {
+    List<Record> stored = storeAll(10);
+
+    Record updated = stored.get(0).setStatus(Status.OUT_OF_SERVICE);
+    AtomicBoolean done = new AtomicBoolean();
+    backend.update(updated, ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+
+    AtomicReference<Record> removed = new AtomicReference<>();
+    backend.remove(stored.get(1).getRegistration(), ar -> removed.set(ar.result()));
+    await().untilAtomic(removed, not(nullValue()));
+
+    restart(new JsonObject());
+
+    List<Record> records = records();
+    assertThat(records).hasSize(9);
+    assertThat(records.stream().map(Record::getRegistration).collect(Collectors.toSet()))
+        .doesNotContain(stored.get(1).getRegistration());
+    AtomicReference<Record> found = new AtomicReference<>();
+    backend.getRecord(updated.getRegistration(), ar -> found.set(ar.result()));
+    await().untilAtomic(found, not(nullValue()));
+    assertThat(found.get().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    assertThat(found.get().getMetadata().getInteger("index")).isEqualTo(0);
+  }
+
+  @Test
+  public void testUpdateOfRemovedRecordIsNotReplayed() {
+    List<Record> stored = storeAll(2);
+    AtomicReference<Record> removed = new AtomicReference<>();
+    backend.remove(stored.get(0).getRegistration(), ar -> removed.set(ar.result()));
+    await().untilAtomic(removed, not(nullValue()));
+
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    backend.update(stored.get(0).setStatus(Status.DOWN), ar -> failure.set(ar.cause()));
+    await().untilAtomic(failure, not(nullValue()));
+    assertThat(failure.get().getMessage()).contains("not found");
+
+    restart(new JsonObject());
+
+    assertThat(records()).hasSize(1);
+    assertThat(records().get(0).getRegistration()).isEqualTo(stored.get(1).getRegistration());
+  }
+
+  @Test
+  public void testCompaction() {
+    JsonObject config = new JsonObject().put("compaction-threshold", 1024);
+    restart(config);
+    List<Record> stored = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      stored.addAll(storeAll(20));
+    }
+    assertThat(new File(directory, "snapshot")).isFile();
+    // The compacted journals have been deleted
+    assertThat(directory.list((dir, name) -> name.startsWith("journal-"))).hasSize(1);
+    assertThat(new File(directory, "journal-0")).doesNotExist();
+
+    restart(config);
+    assertThat(new HashSet<>(records().stream().map(Record::getRegistration).collect(Collectors.toList())))
+        .isEqualTo(stored.stream().map(Record::getRegistration).collect(Collectors.toSet()));
+  }
+
+  @Test
+  public void testIncompleteJournal() throws IOException {
+    storeAll(5);
+    backend.close();
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(ar.succeeded()));
+    await().untilAtomic(closed, is(true));
+
+    // Simulate a crash in the middle of a write
+    File journal = new File(directory, "journal-0");
+    long length = journal.length();
+    try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+      file.seek(length);
+      file.writeInt(100);
+      file.writeInt(42);
+      file.write(new byte[] {1, 2, 3});
+    }
+
+    vertx = Vertx.vertx();
+    backend = create(new JsonObject());
+    assertThat(records()).hasSize(5);
+    assertThat(journal.length()).isEqualTo(length);
+
+    storeAll(1);
+    restart(new JsonObject());
+    assertThat(records()).hasSize(6);
+  }
+
+  @Test
+  public void testConcurrentUpdatesAreReplayedInOrder() {
+    Record record = storeAll(1).get(0);
+    AtomicInteger completed = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      Record update = new Record(record).setMetadata(new JsonObject().put("index", i));
+      // Requested from different contexts, so they are written concurrently
+      vertx.runOnContext(v -> backend.update(update, ar -> completed.incrementAndGet()));
+      vertx.getOrCreateContext().runOnContext(v -> backend.update(update, ar -> completed.incrementAndGet()));
+    }
+    await().untilAtomic(completed, is(200));
+    AtomicReference<Record> before = new AtomicReference<>();
+    backend.getRecord(record.getRegistration(), ar -> before.set(ar.result()));
+    await().untilAtomic(before, not(nullValue()));
+
+    restart(new JsonObject());
+    AtomicReference<Record> after = new AtomicReference<>();
+    backend.getRecord(record.getRegistration(), ar -> after.set(ar.result()));
+    await().untilAtomic(after, not(nullValue()));
+    assertThat(after.get().getMetadata().getInteger("index"))
+        .isEqualTo(before.get().getMetadata().getInteger("index"));
+  }
+
+  @Test
+  public void testLookupsWaitForTheRestoration() {
+    storeAll(50);
+    backend.close();
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(ar.succeeded()));
+    await().untilAtomic(closed, is(true));
+
+    vertx = Vertx.vertx();
+    backend = create(new JsonObject());
+    // Requested right after the initialization, while the journal may still be replayed
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    backend.getRecords(ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    assertThat(records.get()).hasSize(50);
+  }
+}
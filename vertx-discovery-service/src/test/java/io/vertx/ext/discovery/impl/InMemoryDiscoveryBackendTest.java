@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.DiscoveryOptions;
+import io.vertx.ext.discovery.DiscoveryService;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.spi.RecordCursor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.IsNot.not;
+
+/**
+ * Runs the backend tests on the {@link InMemoryDiscoveryBackend}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class InMemoryDiscoveryBackendTest extends DefaultDiscoveryBackendTest {
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    backend = new InMemoryDiscoveryBackend();
+    backend.init(vertx, new JsonObject());
+  }
+
+  @Test
+  public void testSelectionByName() {
+    DiscoveryService discovery = new DiscoveryImpl(vertx, new DiscoveryOptions().setBackendConfiguration(
+        new JsonObject().put("backend-name", InMemoryDiscoveryBackend.class.getName())));
+    AtomicReference<Record> published = new AtomicReference<>();
+    discovery.publish(new Record().setName("hello"), ar -> published.set(ar.result()));
+    // The in-memory backend completes synchronously and shares its registry with the other instances
+    assertThat(published.get()).isNotNull();
+    AtomicReference<Record> found = new AtomicReference<>();
+    backend.getRecord(published.get().getRegistration(), ar -> found.set(ar.result()));
+    assertThat(found.get().getName()).isEqualTo("hello");
+    discovery.close();
+
+    // Without name, the default backend is used
+    DiscoveryService other = new DiscoveryImpl(vertx, new DiscoveryOptions());
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    other.getRecords(new JsonObject(), ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    assertThat(records.get()).isEmpty();
+    other.close();
+  }
+
+  @Test
+  public void testCursorOnSnapshot() {
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(new Record().setName("record-" + i));
+    }
+    backend.storeAll(records, ar -> {
+    });
+
+    RecordCursor cursor = backend.cursor(null, false);
+    // Removed after the cursor creation, still returned
+    backend.remove(records.get(0), ar -> {
+    });
+
+    List<Record> read = new ArrayList<>();
+    AtomicReference<List<Record>> batch = new AtomicReference<>();
+    do {
+      cursor.next(3, ar -> batch.set(ar.result()));
+      read.addAll(batch.get());
+    } while (!batch.get().isEmpty());
+    assertThat(read).hasSize(10);
+  }
+
+  @Test
+  public void testUpdateOfMissingRecords() {
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      records.add(new Record().setName("record-" + i));
+    }
+    backend.storeAll(records, ar -> {
+    });
+    backend.remove(records.get(0), ar -> {
+    });
+
+    // Updating a removed record does not register it again
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    backend.update(records.get(0).setName("updated"), ar -> failure.set(ar.cause()));
+    assertThat(failure.get().getMessage()).isEqualTo("Record '" + records.get(0).getRegistration() + "' not found");
+
+    records.get(1).setName("updated");
+    AtomicReference<List<Record>> updated = new AtomicReference<>();
+    backend.updateAll(records, ar -> updated.set(ar.result()));
+    assertThat(updated.get()).containsExactly(records.get(1));
+
+    AtomicReference<List<Record>> all = new AtomicReference<>();
+    backend.getRecords(ar -> all.set(ar.result()));
+    assertThat(all.get()).hasSize(1);
+    assertThat(all.get().get(0).getName()).isEqualTo("updated");
+
+    backend.remove(records.get(1), ar -> {
+    });
+    AtomicReference<Throwable> none = new AtomicReference<>();
+    backend.updateAll(records, ar -> none.set(ar.cause()));
+    assertThat(none.get()).isNotNull();
+  }
+
+  @Test
+  public void testFilterReceivesCopies() {
+    backend.store(new Record().setName("hello").setMetadata(new JsonObject().put("key", "A")), ar -> {
+    });
+
+    AtomicReference<Record> found = new AtomicReference<>();
+    backend.findRecord(record -> {
+      // Modifying the candidate must not alter the stored record
+      record.setName("modified");
+      record.getMetadata().put("key", "B");
+      return true;
+    }, true, ar -> found.set(ar.result()));
+    assertThat(found.get()).isNotNull();
+
+    AtomicReference<Record> stored = new AtomicReference<>();
+    backend.getRecord(found.get().getRegistration(), ar -> stored.set(ar.result()));
+    assertThat(stored.get().getName()).isEqualTo("hello");
+    assertThat(stored.get().getMetadata().getString("key")).isEqualTo("A");
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the {@link LeaseWheel}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class LeaseWheelTest {
+
+  @Test
+  public void testExpiration() {
+    LeaseWheel wheel = new LeaseWheel(100, 8, 0);
+    wheel.renew("a", 250, 0);
+    wheel.renew("b", 1000, 0);
+    assertThat(wheel.size()).isEqualTo(2);
+
+    // Never expires early
+    assertThat(wheel.advance(200)).isEmpty();
+    assertThat(wheel.advance(300)).containsExactly("a");
+    assertThat(wheel.advance(900)).isEmpty();
+    // More ticks than slots elapsed
+    assertThat(wheel.advance(5000)).containsExactly("b");
+    assertThat(wheel.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRenewalAndCancellation() {
+    LeaseWheel wheel = new LeaseWheel(100, 8, 0);
+    wheel.renew("a", 300, 0);
+    wheel.renew("b", 300, 0);
+    assertThat(wheel.advance(200)).isEmpty();
+
+    // Renewed for the same duration
+    assertThat(wheel.renew("a", 200)).isEqualTo(300);
+    assertThat(wheel.cancel("b")).isTrue();
+    assertThat(wheel.advance(400)).isEmpty();
+    assertThat(wheel.advance(500)).containsExactly("a");
+
+    assertThat(wheel.renew("a", 500)).isEqualTo(-1);
+    assertThat(wheel.cancel("a")).isFalse();
+  }
+
+  @Test
+  public void testManyLeases() {
+    LeaseWheel wheel = new LeaseWheel(10, LeaseWheel.DEFAULT_SLOTS, 0);
+    for (int i = 0; i < 100000; i++) {
+      wheel.renew(Integer.toString(i), 1000 + (i % 10000), 0);
+    }
+    assertThat(wheel.size()).isEqualTo(100000);
+
+    // Extend the even leases
+    for (int i = 0; i < 100000; i += 2) {
+      wheel.renew(Integer.toString(i), 20000, 0);
+    }
+
+    Set<String> expired = new HashSet<>();
+    for (long now = 0; now <= 11000; now += 10) {
+      List<String> ids = wheel.advance(now);
+      for (String id : ids) {
+        int i = Integer.parseInt(id);
+        long deadline = i % 2 == 0 ? 20000 : 1000 + (i % 10000);
+        assertThat(now).isGreaterThanOrEqualTo(deadline);
+        assertThat(now - deadline).isLessThan(10);
+      }
+      expired.addAll(ids);
+    }
+    assertThat(expired).hasSize(50000);
+    assertThat(wheel.size()).isEqualTo(50000);
+    assertThat(wheel.advance(20000)).hasSize(50000);
+  }
+}
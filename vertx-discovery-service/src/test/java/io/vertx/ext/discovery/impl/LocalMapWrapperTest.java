@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.data.MapEntry.entry;
@@ -131,6 +132,22 @@ public class LocalMapWrapperTest {
     assertThat(map.size()).isEqualTo(0);
   }
 
-
+  @Test
+  public void testEntrySetSnapshot() {
+    map.put("k1", "v1");
+    map.put("k2", "v2");
+
+    Set<Map.Entry<String, String>> entries = map.entrySet();
+    // The snapshot is not affected by later modifications
+    map.remove("k1");
+    assertThat(entries).hasSize(2);
+    for (Map.Entry<String, String> e : entries) {
+      assertThat(e.getValue()).isNotNull();
+    }
+
+    // Setting a value writes it to the local map
+    entries.stream().filter(e -> e.getKey().equals("k2")).forEach(e -> e.setValue("v3"));
+    assertThat(local.get("k2")).isEqualTo("v3");
+  }
 
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class PersistentMapTest {
+
+  @Test
+  public void testPutGetAndRemove() {
+    PersistentMap<String, Integer> map = PersistentMap.empty();
+    Map<String, Integer> expected = new HashMap<>();
+    Random random = new Random(0);
+    for (int i = 0; i < 10000; i++) {
+      String key = Integer.toString(random.nextInt(5000));
+      if (random.nextInt(3) == 0) {
+        map = map.minus(key);
+        expected.remove(key);
+      } else {
+        map = map.plus(key, i);
+        expected.put(key, i);
+      }
+    }
+
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+    }
+    List<Integer> values = new ArrayList<>();
+    map.values().forEachRemaining(values::add);
+    assertThat(values).hasSize(expected.size());
+    assertThat(new HashSet<>(values)).isEqualTo(new HashSet<>(expected.values()));
+  }
+
+  @Test
+  public void testImmutability() {
+    PersistentMap<String, String> empty = PersistentMap.empty();
+    PersistentMap<String, String> one = empty.plus("a", "1");
+    PersistentMap<String, String> two = one.plus("b", "2");
+    PersistentMap<String, String> removed = two.minus("a");
+
+    assertThat(empty.isEmpty()).isTrue();
+    assertThat(one.size()).isEqualTo(1);
+    assertThat(two.size()).isEqualTo(2);
+    assertThat(removed.size()).isEqualTo(1);
+    assertThat(two.get("a")).isEqualTo("1");
+    assertThat(removed.get("a")).isNull();
+    assertThat(removed.minus("missing")).isSameAs(removed);
+  }
+
+  @Test
+  public void testHashCollisions() {
+    // "Aa" and "BB" have the same hash code
+    PersistentMap<String, String> map = PersistentMap.<String, String>empty()
+        .plus("Aa", "1").plus("BB", "2").plus("C", "3");
+    assertThat(map.size()).isEqualTo(3);
+    assertThat(map.get("Aa")).isEqualTo("1");
+    assertThat(map.get("BB")).isEqualTo("2");
+    map = map.minus("Aa");
+    assertThat(map.get("Aa")).isNull();
+    assertThat(map.get("BB")).isEqualTo("2");
+    assertThat(map.size()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.MapEntry.entry;
+
+/**
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class SnapshotMapTest {
+
+  private Vertx vertx;
+  private SnapshotMap<String, String> map;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    map = SnapshotMap.get(vertx, "test-snapshot-map");
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testMapsAreSharedByName() {
+    map.put("key", "value");
+    assertThat(SnapshotMap.<String, String>get(vertx, "test-snapshot-map").get("key")).isEqualTo("value");
+    assertThat(SnapshotMap.<String, String>get(vertx, "another-map")).isEmpty();
+  }
+
+  @Test
+  public void testConditionalOperations() {
+    assertThat(map.replace("key", "value")).isNull();
+    assertThat(map).isEmpty();
+    assertThat(map.putIfAbsent("key", "value")).isNull();
+    assertThat(map.putIfAbsent("key", "other")).isEqualTo("value");
+    assertThat(map.replace("key", "other")).isEqualTo("value");
+    assertThat(map.put("key", "last")).isEqualTo("other");
+    assertThat(map.remove("key")).isEqualTo("last");
+    assertThat(map.remove("key")).isNull();
+    assertThat(map.containsKey("key")).isFalse();
+  }
+
+  @Test
+  public void testCopyIsASnapshot() {
+    Map<String, String> entries = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      entries.put("k" + i, "v" + i);
+    }
+    map.putAll(entries);
+
+    Map<String, String> copy = map.copy();
+    map.remove("k1");
+    map.put("k2", "changed");
+    assertThat(copy).hasSize(100).contains(entry("k1", "v1"), entry("k2", "v2"));
+    assertThat(map).hasSize(99).contains(entry("k2", "changed"));
+    assertThat(map.keySet()).hasSize(99).doesNotContain("k1");
+    assertThat(map.values()).hasSize(99).contains("changed");
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2011-2016 The original author or authors
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ *
+ *      The Eclipse Public License is available at
+ *      http://www.eclipse.org/legal/epl-v10.html
+ *
+ *      The Apache License v2.0 is available at
+ *      http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.discovery.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.discovery.Record;
+import io.vertx.ext.discovery.Status;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+/**
+ * Runs the backend tests on the {@link WriteBehindDiscoveryBackend}, and checks the batching.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+public class WriteBehindDiscoveryBackendTest extends DefaultDiscoveryBackendTest {
+
+  private final List<String> writes = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    backend = create(new JsonObject());
+  }
+
+  /**
+   * Creates a backend writing to a {@link DefaultDiscoveryBackend} recording the bulk writes.
+   */
+  private WriteBehindDiscoveryBackend create(JsonObject writeBehind) {
+    WriteBehindDiscoveryBackend backend = new WriteBehindDiscoveryBackend(new DefaultDiscoveryBackend() {
+      @Override
+      public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+        writes.add("store:" + records.size());
+        super.storeAll(records, resultHandler);
+      }
+
+      @Override
+      public void updateAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+        writes.add("update:" + records.size());
+        super.updateAll(records, resultHandler);
+      }
+
+      @Override
+      public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+        writes.add("remove:" + uuids.size());
+        super.removeAll(uuids, resultHandler);
+      }
+    });
+    backend.init(vertx, new JsonObject().put("write-behind", writeBehind));
+    return backend;
+  }
+
+  private static Record get(WriteBehindDiscoveryBackend backend, String uuid) {
+    AtomicBoolean completed = new AtomicBoolean();
+    AtomicReference<Record> record = new AtomicReference<>();
+    backend.getRecord(uuid, ar -> {
+      record.set(ar.result());
+      completed.set(ar.succeeded());
+    });
+    await().untilAtomic(completed, is(true));
+    return record.get();
+  }
+
+  private Record store(WriteBehindDiscoveryBackend backend, String name) {
+    AtomicReference<Record> stored = new AtomicReference<>();
+    backend.store(new Record().setName(name).setStatus(Status.UP), ar -> stored.set(ar.result()));
+    // Writes the buffered record without waiting for the window to elapse
+    backend.getRecords(ar -> {
+    });
+    await().untilAtomic(stored, not(nullValue()));
+    writes.clear();
+    return stored.get();
+  }
+
+  @Test
+  public void testBatching() {
+    WriteBehindDiscoveryBackend buffer = create(new JsonObject().put("window", 60000).put("max-batch", 3));
+    AtomicInteger stored = new AtomicInteger();
+    buffer.store(new Record().setName("my-service-1"), ar -> stored.incrementAndGet());
+    buffer.store(new Record().setName("my-service-2"), ar -> stored.incrementAndGet());
+    assertThat(writes).isEmpty();
+
+    // Full buffer
+    buffer.store(new Record().setName("my-service-3"), ar -> stored.incrementAndGet());
+    await().untilAtomic(stored, is(3));
+    assertThat(writes).containsExactly("store:3");
+
+    // Lookups write the buffered modifications first
+    writes.clear();
+    AtomicReference<Record> record = new AtomicReference<>();
+    buffer.store(new Record().setName("my-service-4"), ar -> record.set(ar.result()));
+    AtomicReference<List<Record>> records = new AtomicReference<>();
+    buffer.getRecords(ar -> records.set(ar.result()));
+    await().untilAtomic(records, not(nullValue()));
+    assertThat(records.get()).hasSize(4);
+    assertThat(record.get().getRegistration()).isNotNull();
+    assertThat(writes).containsExactly("store:1");
+  }
+
+  @Test
+  public void testCoalescing() {
+    WriteBehindDiscoveryBackend buffer = create(new JsonObject().put("window", 60000));
+    Record record = store(buffer, "my-service");
+
+    AtomicInteger updated = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      buffer.update(new Record(record).setName("my-service-" + i), ar -> {
+        if (ar.succeeded()) {
+          updated.incrementAndGet();
+        }
+      });
+    }
+    assertThat(get(buffer, record.getRegistration()).getName()).isEqualTo("my-service-2");
+    assertThat(updated.get()).isEqualTo(3);
+    assertThat(writes).containsExactly("update:1");
+
+    // The removal replaces the pending update, and the record cannot be updated anymore
+    writes.clear();
+    AtomicReference<Record> removed = new AtomicReference<>();
+    AtomicBoolean failed = new AtomicBoolean();
+    buffer.update(new Record(record).setName("my-service-3"), ar -> updated.incrementAndGet());
+    buffer.remove(record.getRegistration(), ar -> removed.set(ar.result()));
+    buffer.update(new Record(record).setName("my-service-4"), ar -> failed.set(ar.failed()));
+    assertThat(failed.get()).isTrue();
+    assertThat(get(buffer, record.getRegistration())).isNull();
+    assertThat(removed.get().getName()).isEqualTo("my-service-2");
+    assertThat(updated.get()).isEqualTo(4);
+    assertThat(writes).containsExactly("remove:1");
+  }
+
+  @Test
+  public void testAcknowledgementOnBuffer() {
+    WriteBehindDiscoveryBackend buffer = create(new JsonObject().put("window", 100).put("acknowledge", "buffer"));
+    Record record = store(buffer, "my-service");
+
+    AtomicBoolean completed = new AtomicBoolean();
+    buffer.update(new Record(record).setName("updated"), ar -> completed.set(ar.succeeded()));
+    assertThat(completed.get()).isTrue();
+    assertThat(writes).isEmpty();
+
+    // Written once the window has elapsed
+    await().until(() -> writes.contains("update:1"));
+    assertThat(get(buffer, record.getRegistration()).getName()).isEqualTo("updated");
+  }
+
+  @Test
+  public void testCloseWritesTheBufferedModifications() {
+    WriteBehindDiscoveryBackend buffer = create(new JsonObject().put("window", 60000).put("acknowledge", "buffer"));
+    Record record = store(buffer, "my-service");
+
+    AtomicBoolean completed = new AtomicBoolean();
+    buffer.update(new Record(record).setName("updated"), ar -> completed.set(ar.succeeded()));
+    assertThat(completed.get()).isTrue();
+    assertThat(writes).isEmpty();
+
+    buffer.close();
+    await().until(() -> writes.contains("update:1"));
+  }
+
+  @Test
+  public void testPartialBatches() {
+    WriteBehindDiscoveryBackend buffer = new WriteBehindDiscoveryBackend(new DefaultDiscoveryBackend() {
+      @Override
+      public void storeAll(List<Record> records, Handler<AsyncResult<List<Record>>> resultHandler) {
+        // The rejected records are left out of the result, as for a partial failure
+        super.storeAll(records.stream().filter(record -> !record.getName().startsWith("rejected"))
+            .collect(Collectors.toList()), resultHandler);
+      }
+    });
+    buffer.init(vertx, new JsonObject().put("write-behind", new JsonObject().put("window", 60000)));
+
+    AtomicReference<List<Record>> stored = new AtomicReference<>();
+    AtomicReference<Throwable> rejected = new AtomicReference<>();
+    buffer.store(new Record().setName("rejected"), ar -> rejected.set(ar.cause()));
+    buffer.storeAll(Arrays.asList(new Record().setName("service-1"), new Record().setName("rejected-too"),
+        new Record().setName("service-2")), ar -> stored.set(ar.result()));
+    buffer.getRecords(ar -> {
+    });
+    await().untilAtomic(stored, not(nullValue()));
+    assertThat(stored.get()).extracting("name").containsExactly("service-1", "service-2");
+    assertThat(rejected.get()).isNotNull();
+
+    // Removed behind the back of the buffer
+    DefaultDiscoveryBackend other = new DefaultDiscoveryBackend();
+    other.init(vertx, new JsonObject());
+    AtomicBoolean removed = new AtomicBoolean();
+    other.remove(stored.get().get(0).getRegistration(), ar -> removed.set(ar.succeeded()));
+    await().untilAtomic(removed, is(true));
+
+    AtomicReference<Throwable> notFound = new AtomicReference<>();
+    buffer.update(new Record(stored.get().get(0)).setName("updated"), ar -> notFound.set(ar.cause()));
+    AtomicReference<List<Record>> updated = new AtomicReference<>();
+    buffer.updateAll(Collections.singletonList(new Record(stored.get().get(1)).setName("updated")),
+        ar -> updated.set(ar.result()));
+    buffer.getRecords(ar -> {
+    });
+    await().untilAtomic(updated, not(nullValue()));
+    await().untilAtomic(notFound, not(nullValue()));
+    assertThat(updated.get()).extracting("registration").containsExactly(stored.get().get(1).getRegistration());
+    assertThat(get(buffer, stored.get().get(0).getRegistration())).isNull();
+    buffer.close();
+  }
+
+  @Test
+  public void testRemovalsInProgress() {
+    AtomicReference<Runnable> removal = new AtomicReference<>();
+    AtomicBoolean failing = new AtomicBoolean();
+    WriteBehindDiscoveryBackend buffer = new WriteBehindDiscoveryBackend(new DefaultDiscoveryBackend() {
+      @Override
+      public void removeAll(List<String> uuids, Handler<AsyncResult<List<Record>>> resultHandler) {
+        if (failing.get()) {
+          resultHandler.handle(Future.failedFuture("boom"));
+        } else {
+          // Held until the test releases it
+          removal.set(() -> super.removeAll(uuids, resultHandler));
+        }
+      }
+    });
+    buffer.init(vertx, new JsonObject().put("write-behind", new JsonObject().put("window", 60000)));
+    Record record = store(buffer, "my-service");
+    Record other = store(buffer, "my-other-service");
+
+    AtomicReference<Record> removed = new AtomicReference<>();
+    buffer.remove(record.getRegistration(), ar -> removed.set(ar.result()));
+    buffer.getRecords(ar -> {
+    });
+    await().untilAtomic(removal, not(nullValue()));
+
+    // Written after the removal, the update would register the record again
+    AtomicBoolean failed = new AtomicBoolean();
+    buffer.update(new Record(record).setName("updated"), ar -> failed.set(ar.failed()));
+    assertThat(failed.get()).isTrue();
+
+    removal.get().run();
+    await().untilAtomic(removed, not(nullValue()));
+    assertThat(get(buffer, record.getRegistration())).isNull();
+
+    // Only the unknown ids are ignored by the bulk removal, the other failures are reported
+    failing.set(true);
+    AtomicBoolean removeAllFailed = new AtomicBoolean();
+    buffer.removeAll(Collections.singletonList(other.getRegistration()), ar -> removeAllFailed.set(ar.failed()));
+    buffer.getRecords(ar -> {
+    });
+    await().untilAtomic(removeAllFailed, is(true));
+    buffer.close();
+  }
+}